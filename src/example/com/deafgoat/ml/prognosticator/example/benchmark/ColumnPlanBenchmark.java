@@ -0,0 +1,167 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator.example.benchmark;
+
+// Java
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// SuperCSV
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+// Weka
+import weka.core.Attribute;
+import weka.core.Utils;
+
+// Prognosticator
+import com.deafgoat.ml.prognosticator.Attributes;
+import com.deafgoat.ml.prognosticator.ColumnDecoder;
+import com.deafgoat.ml.prognosticator.ColumnPlan;
+import com.deafgoat.ml.prognosticator.ConfigReader;
+import com.deafgoat.ml.prognosticator.DateParser;
+import com.deafgoat.ml.prognosticator.NominalDictionary;
+
+/**
+ * Compares the rows per second decoded by the interpreted per cell lookups
+ * ARFFWriter used to perform against the compiled ColumnPlan. The weather dump
+ * is decoded repeatedly from memory so that only decoding is measured.
+ */
+public class ColumnPlanBenchmark {
+    static final String _config = "src/example/com/deafgoat/ml/prognosticator/example/weather/weatherConfig.json";
+    static final int _passes = 2000;
+
+    /**
+     * Decodes all records with a compiled plan
+     */
+    static double compiled(ColumnPlan plan, List<List<String>> records, int numAttributes) throws Exception {
+        double checksum = 0;
+        double[] values;
+        for (List<String> record : records) {
+            values = new double[numAttributes];
+            plan.decode(record, values);
+            checksum += values[0];
+        }
+        return checksum;
+    }
+
+    /**
+     * Decodes all records resolving the attribute of each cell as it is read
+     */
+    static double interpreted(ConfigReader config, String[] header, List<List<String>> records,
+            Map<String, Integer> attributeMap, Map<String, NominalDictionary> nominalRange, Attribute date)
+            throws Exception {
+        double checksum = 0;
+        double[] values;
+        int index;
+        String name, type, value;
+        Attributes attribute;
+        for (List<String> record : records) {
+            values = new double[attributeMap.size()];
+            for (int i = 0; i < record.size(); i++) {
+                value = record.get(i).trim();
+                index = config._attributeMap.get(config._dumpFile).get(header[i].trim().toLowerCase());
+                attribute = config._attributes.get(config._dumpFile).get(index);
+                if (!attribute.isInclude()) {
+                    continue;
+                }
+                name = attribute.getAttributeName();
+                type = attribute.getAttributeType();
+                if (value.equals("") || value.equals("?")) {
+                    values[attributeMap.get(name)] = Utils.missingValue();
+                } else if (type.equals("numeric")) {
+                    values[attributeMap.get(name)] = Double.parseDouble(value);
+                } else if (type.equals("date")) {
+                    values[attributeMap.get(name)] = date.parseDate(value);
+                } else if (type.equals("nominal")) {
+                    values[attributeMap.get(name)] = nominalRange.get(name).code(value);
+                }
+            }
+            checksum += values[0];
+        }
+        return checksum;
+    }
+
+    /**
+     * Runs the benchmark
+     */
+    public static void main(final String[] pArgs) throws Exception {
+        ConfigReader config = new ConfigReader(_config);
+        config.readConfig();
+        config.setAttributeMap();
+        CsvListReader reader = new CsvListReader(new FileReader(config._dumpFile), CsvPreference.EXCEL_PREFERENCE);
+        String[] header = reader.getCSVHeader(true);
+        List<List<String>> records = new ArrayList<List<String>>();
+        List<String> record;
+        while ((record = reader.read()) != null) {
+            records.add(new ArrayList<String>(record));
+        }
+        reader.close();
+
+        // lay out the included attributes and their nominal ranges
+        ColumnPlan plan = new ColumnPlan(header, config);
+        Attribute date = new Attribute("date", config._dateFormat);
+        Map<String, Integer> attributeMap = new HashMap<String, Integer>();
+        Map<String, NominalDictionary> nominalRange = new HashMap<String, NominalDictionary>();
+        Attributes attribute;
+        for (int i = 0; i < plan.numColumns(); i++) {
+            attribute = plan.getAttribute(i);
+            if (attribute == null) {
+                continue;
+            }
+            int target = attributeMap.size();
+            String type = attribute.getAttributeType();
+            attributeMap.put(attribute.getAttributeName(), target);
+            if (type.equals("numeric")) {
+                plan.setDecoder(i, ColumnDecoder.numeric(target));
+            } else if (type.equals("date")) {
+                plan.setDecoder(i, ColumnDecoder.date(target, DateParser.forFormat(config._dateFormat)));
+            } else if (type.equals("nominal")) {
+                NominalDictionary dictionary = new NominalDictionary();
+                for (List<String> r : records) {
+                    dictionary.intern(r.get(i).trim());
+                }
+                nominalRange.put(attribute.getAttributeName(), dictionary);
+                plan.setDecoder(i, ColumnDecoder.nominal(target, dictionary));
+            }
+        }
+
+        // warm up both paths before timing them
+        for (int pass = 0; pass < _passes / 10; pass++) {
+            interpreted(config, header, records, attributeMap, nominalRange, date);
+            compiled(plan, records, attributeMap.size());
+        }
+        long start = System.nanoTime();
+        for (int pass = 0; pass < _passes; pass++) {
+            interpreted(config, header, records, attributeMap, nominalRange, date);
+        }
+        long interpretedTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int pass = 0; pass < _passes; pass++) {
+            compiled(plan, records, attributeMap.size());
+        }
+        long compiledTime = System.nanoTime() - start;
+
+        long rows = (long) _passes * records.size();
+        System.out.format("%-42s = %10d%n", "rows decoded per run", rows);
+        System.out.format("%-42s = %10.0f%n", "interpreted rows/sec", rows * 1e9 / interpretedTime);
+        System.out.format("%-42s = %10.0f%n", "compiled rows/sec", rows * 1e9 / compiledTime);
+    }
+}
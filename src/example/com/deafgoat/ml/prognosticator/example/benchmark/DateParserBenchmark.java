@@ -0,0 +1,112 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator.example.benchmark;
+
+// Java
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Weka
+import weka.core.Attribute;
+
+// Prognosticator
+import com.deafgoat.ml.prognosticator.DateParser;
+
+/**
+ * Compares the date cells per second parsed by a WEKA date attribute against
+ * the cached DateParser, on one thread and shared by one thread per core. The
+ * cells repeat a few thousand timestamps, as the timestamp columns of a dump
+ * do.
+ */
+public class DateParserBenchmark {
+    static final String _format = "yyyy-MM-dd HH:mm:ss";
+    static final int _cells = 2000000;
+    static final int _distinct = 3000;
+
+    /**
+     * Parses all cells with a date attribute
+     */
+    static double attribute(Attribute date, String[] cells) throws Exception {
+        double checksum = 0;
+        for (String cell : cells) {
+            checksum += date.parseDate(cell);
+        }
+        return checksum;
+    }
+
+    /**
+     * Parses all cells with a date parser
+     */
+    static double parser(DateParser parser, String[] cells) throws Exception {
+        double checksum = 0;
+        for (String cell : cells) {
+            checksum += parser.parse(cell);
+        }
+        return checksum;
+    }
+
+    /**
+     * Runs the benchmark
+     */
+    public static void main(final String[] pArgs) throws Exception {
+        final String[] cells = new String[_cells];
+        for (int i = 0; i < _cells; i++) {
+            int t = (int) ((i * 7919L) % _distinct);
+            cells[i] = String.format("2012-%02d-%02d %02d:%02d:00", t % 12 + 1, t % 28 + 1, t % 24, t % 60);
+        }
+        Attribute date = new Attribute("date", _format);
+        final DateParser dateParser = new DateParser(_format);
+
+        // warm up both paths before timing them
+        attribute(date, cells);
+        parser(dateParser, cells);
+        long start = System.nanoTime();
+        attribute(date, cells);
+        long attributeTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        parser(dateParser, cells);
+        long parserTime = System.nanoTime() - start;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Double>> results = new ArrayList<Future<Double>>();
+        start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(new Callable<Double>() {
+                @Override
+                public Double call() throws Exception {
+                    return parser(dateParser, cells);
+                }
+            }));
+        }
+        for (Future<Double> result : results) {
+            result.get();
+        }
+        long sharedTime = System.nanoTime() - start;
+        executor.shutdown();
+
+        System.out.format("%-42s = %10d%n", "date cells parsed per run", _cells);
+        System.out.format("%-42s = %10.0f%n", "attribute cells/sec", _cells * 1e9 / attributeTime);
+        System.out.format("%-42s = %10.0f%n", "parser cells/sec", _cells * 1e9 / parserTime);
+        System.out.format("%-42s = %10.0f%n", "shared parser cells/sec on " + threads + " threads", (double) threads
+                * _cells * 1e9 / sharedTime);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator.example.benchmark;
+
+// Java
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.List;
+
+// Apache Commons
+import org.apache.commons.io.FileUtils;
+
+// Prognosticator
+import com.deafgoat.ml.prognosticator.CsvDumpReader;
+import com.deafgoat.ml.prognosticator.DumpReader;
+import com.deafgoat.ml.prognosticator.MappedDumpReader;
+
+/**
+ * Compares the rows per second read by the SuperCSV and memory-mapped dump
+ * readers. The weather dump is replicated into a larger temporary dump whose
+ * numeric cells are parsed and whose other cells are materialized.
+ */
+public class DumpReaderBenchmark {
+    static final String _dump = "src/example/com/deafgoat/ml/prognosticator/example/weather/weather.csv";
+    static final int _copies = 500;
+
+    /**
+     * Reads all records of a dump, returning a checksum of its cells
+     */
+    static double read(DumpReader reader, boolean[] numeric) throws Exception {
+        double checksum = 0;
+        reader.readHeader();
+        while (reader.read()) {
+            for (int i = 0; i < reader.size(); i++) {
+                if (reader.isMissing(i)) {
+                    continue;
+                } else if (numeric[i]) {
+                    checksum += reader.getDouble(i);
+                } else {
+                    checksum += reader.get(i).length();
+                }
+            }
+        }
+        reader.close();
+        return checksum;
+    }
+
+    /**
+     * Runs the benchmark
+     */
+    public static void main(final String[] pArgs) throws Exception {
+        List<String> lines = FileUtils.readLines(new File(_dump));
+        File dump = File.createTempFile("dump", ".csv");
+        dump.deleteOnExit();
+        StringBuilder csv = new StringBuilder(lines.get(0)).append('\n');
+        for (int copy = 0; copy < _copies; copy++) {
+            for (String line : lines.subList(1, lines.size())) {
+                csv.append(line).append('\n');
+            }
+        }
+        FileUtils.writeStringToFile(dump, csv.toString());
+        long rows = (long) _copies * (lines.size() - 1);
+
+        // columns whose cells all parse as numbers are read as numbers
+        DumpReader scan = new CsvDumpReader(new FileReader(_dump), null);
+        boolean[] numeric = new boolean[scan.readHeader().length];
+        Arrays.fill(numeric, true);
+        while (scan.read()) {
+            for (int i = 0; i < scan.size(); i++) {
+                try {
+                    if (numeric[i] && !scan.isMissing(i)) {
+                        scan.getDouble(i);
+                    }
+                } catch (NumberFormatException e) {
+                    numeric[i] = false;
+                }
+            }
+        }
+        scan.close();
+
+        double superCsv = 0, mapped = 0;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            read(new CsvDumpReader(new FileReader(dump), null), numeric);
+            long middle = System.nanoTime();
+            read(new MappedDumpReader(dump.getPath()), numeric);
+            long end = System.nanoTime();
+            // the first run warms up both readers
+            if (run > 0) {
+                superCsv = Math.max(superCsv, rows * 1e9 / (middle - start));
+                mapped = Math.max(mapped, rows * 1e9 / (end - middle));
+            }
+        }
+        System.out.format("%-42s = %10d%n", "rows read per run", rows);
+        System.out.format("%-42s = %10.0f%n", "supercsv rows/sec", superCsv);
+        System.out.format("%-42s = %10.0f%n", "mapped rows/sec", mapped);
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator.example.benchmark;
+
+// Java
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// SuperCSV
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+// Prognosticator
+import com.deafgoat.ml.prognosticator.Attributes;
+import com.deafgoat.ml.prognosticator.ColumnDecoder;
+import com.deafgoat.ml.prognosticator.ConfigReader;
+import com.deafgoat.ml.prognosticator.DerivedFeature;
+import com.deafgoat.ml.prognosticator.ExpressionFeature;
+import com.deafgoat.ml.prognosticator.FeatureRow;
+import com.deafgoat.ml.prognosticator.NominalDictionary;
+import com.deafgoat.ml.prognosticator.UserDefinedAttribute;
+
+/**
+ * Compares the rows per second a temperature change feature is derived at by a
+ * user defined attribute working on strings, a hand-written derived feature and
+ * the same feature compiled from the expression "Temp3pm - Temp9am". The
+ * weather dump is evaluated repeatedly from memory so that only the feature is
+ * measured.
+ */
+public class ExpressionBenchmark {
+    static final String _dump = "src/example/com/deafgoat/ml/prognosticator/example/weather/weather.csv";
+    static final int _passes = 20000;
+
+    /**
+     * Derives the feature from decoded rows
+     */
+    static double derived(FeatureRow row, List<double[]> rows) throws Exception {
+        double checksum = 0;
+        for (double[] values : rows) {
+            row.compute(values, null);
+            checksum += values[2];
+        }
+        return checksum;
+    }
+
+    /**
+     * Derives the feature from raw records, decoding its string value
+     */
+    static double userDefined(UserDefinedAttribute attribute, ColumnDecoder decoder, List<List<String>> records,
+            Map<String, Integer> columnMap, double[] values) throws Exception {
+        double checksum = 0;
+        for (List<String> record : records) {
+            decoder.decode(attribute.getAttributeValue(record, columnMap, null), values);
+            checksum += values[2];
+        }
+        return checksum;
+    }
+
+    /**
+     * Runs the benchmark
+     */
+    public static void main(final String[] pArgs) throws Exception {
+        CsvListReader reader = new CsvListReader(new FileReader(_dump), CsvPreference.EXCEL_PREFERENCE);
+        String[] header = reader.getCSVHeader(true);
+        Map<String, Integer> columnMap = new HashMap<String, Integer>();
+        for (int i = 0; i < header.length; i++) {
+            columnMap.put(header[i].trim(), i);
+        }
+        List<List<String>> records = new ArrayList<List<String>>();
+        List<double[]> rows = new ArrayList<double[]>();
+        List<String> record;
+        while ((record = reader.read()) != null) {
+            records.add(new ArrayList<String>(record));
+            rows.add(new double[] { Double.parseDouble(record.get(columnMap.get("Temp3pm"))),
+                    Double.parseDouble(record.get(columnMap.get("Temp9am"))), 0 });
+        }
+        reader.close();
+
+        final Attributes attribute = Attributes.createAttribute("TempChange", "TempChange", "numeric", true);
+        UserDefinedAttribute userDefined = new UserDefinedAttribute() {
+            @Override
+            public String getAttributeName() {
+                return attribute.getAttributeName();
+            }
+
+            @Override
+            public String getAttributeValue(List<String> instance, Map<String, Integer> attributeMap,
+                    ConfigReader config) {
+                return Double.toString(Double.parseDouble(instance.get(attributeMap.get("Temp3pm")))
+                        - Double.parseDouble(instance.get(attributeMap.get("Temp9am"))));
+            }
+
+            @Override
+            public Attributes getUserDefinedAttribute() {
+                return attribute;
+            }
+        };
+        DerivedFeature handWritten = new DerivedFeature() {
+            @Override
+            public void compute(FeatureRow row) {
+                row.set(row.value(0) - row.value(1));
+            }
+
+            @Override
+            public Attributes getAttribute() {
+                return attribute;
+            }
+
+            @Override
+            public String[] getInputs() {
+                return new String[] { "Temp3pm", "Temp9am" };
+            }
+        };
+        DerivedFeature expression = new ExpressionFeature(attribute, "Temp3pm - Temp9am", null);
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        slots.put("Temp3pm", 0);
+        slots.put("Temp9am", 1);
+        List<NominalDictionary> dictionaries = new ArrayList<NominalDictionary>();
+        ColumnDecoder decoder = ColumnDecoder.numeric(2);
+        FeatureRow handWrittenRow = new FeatureRow(handWritten, decoder, slots, dictionaries, null, null, null);
+        FeatureRow expressionRow = new FeatureRow(expression, decoder, slots, dictionaries, null, null, null);
+        double[] values = new double[3];
+
+        // warm up all paths before timing them
+        for (int pass = 0; pass < _passes / 10; pass++) {
+            userDefined(userDefined, decoder, records, columnMap, values);
+            derived(handWrittenRow, rows);
+            derived(expressionRow, rows);
+        }
+        long start = System.nanoTime();
+        for (int pass = 0; pass < _passes; pass++) {
+            userDefined(userDefined, decoder, records, columnMap, values);
+        }
+        long userDefinedTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int pass = 0; pass < _passes; pass++) {
+            derived(handWrittenRow, rows);
+        }
+        long handWrittenTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int pass = 0; pass < _passes; pass++) {
+            derived(expressionRow, rows);
+        }
+        long expressionTime = System.nanoTime() - start;
+
+        long count = (long) _passes * rows.size();
+        System.out.format("%-42s = %10d%n", "rows derived per run", count);
+        System.out.format("%-42s = %10.0f%n", "user defined attribute rows/sec", count * 1e9 / userDefinedTime);
+        System.out.format("%-42s = %10.0f%n", "hand-written feature rows/sec", count * 1e9 / handWrittenTime);
+        System.out.format("%-42s = %10.0f%n", "compiled expression rows/sec", count * 1e9 / expressionTime);
+    }
+}
@@ -17,16 +17,22 @@
 package com.deafgoat.ml.prognosticator;
 
 // Java
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 // Log4j
 import org.apache.log4j.Logger;
@@ -36,15 +42,15 @@ import org.json.JSONException;
 
 // SuperCSV
 import org.supercsv.cellprocessor.ift.CellProcessor;
-import org.supercsv.io.CsvListReader;
-import org.supercsv.io.ICsvListReader;
-import org.supercsv.prefs.CsvPreference;
 
 // Weka
 import weka.core.Attribute;
 import weka.core.DenseInstance;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.SparseInstance;
 import weka.core.Utils;
+import weka.core.converters.AbstractSaver;
 
 /**
  * This class helps us create ARFF files from CSV dumps using custom
@@ -52,6 +58,67 @@ import weka.core.Utils;
  */
 public final class ARFFWriter {
 
+    /**
+     * the value reserving index 0 of string attributes while instances may be
+     * stored sparse
+     */
+    private static final String SPARSE_STRING = "\u0000";
+
+    /**
+     * the number of instances whose values decide their sparsity
+     */
+    private static final int SPARSITY_SAMPLE = 1000;
+
+    /**
+     * Adds an extracted instance to the data set, or streams it out. While
+     * sparsity is undecided the instance is held back and its values sampled.
+     * 
+     * @param weight
+     *            The weight of the instance
+     * @param values
+     *            The values of the instance
+     * @throws IOException
+     *             If a streamed instance can not be written
+     */
+    private void addInstance(double weight, double[] values) throws IOException {
+        _statistics.add(weight, values);
+        if (_sparse != null) {
+            storeInstance(_sparse ? new SparseInstance(weight, values) : new DenseInstance(weight, values));
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == 0) {
+                _sampledZeros++;
+            }
+        }
+        _sampledValues += values.length;
+        _sampledInstances.add(new DenseInstance(weight, values));
+        if (_saver != null) {
+            // streamed string attributes only hold the value of the current
+            // record, so keep the values of held back records aside
+            String[] strings = new String[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if (_data.attribute(i).isString() && !Utils.isMissingValue(values[i])) {
+                    strings[i] = _data.attribute(i).value((int) values[i]);
+                }
+            }
+            _sampledStrings.add(strings);
+        }
+        if (_sampledInstances.size() == SPARSITY_SAMPLE) {
+            decideSparsity();
+        }
+    }
+
+    /**
+     * Adds a feature derived from the decoded values of each row
+     * 
+     * @param feature
+     *            The feature to add
+     */
+    public void addDerivedFeature(DerivedFeature feature) {
+        _derivedFeatures.add(feature);
+    }
+
     /**
      * Allows the user to add posite features for learning
      */
@@ -61,16 +128,143 @@ public final class ARFFWriter {
         _userDefinedAttributes = new ArrayList<UserDefinedAttribute>();
         // add each of the user defined attributes. e.g.
         // _userDefinedAttributes.add(new TempChange());
+        // derived features can instead be declared as expressions in the
+        // configuration, or provided on the class path through ServiceLoader
 
         // do not edit the lines below this
-        Attributes attribute = null;
+        _features = new ArrayList<DerivedFeature>(_config._derivedFeatures);
+        _features.addAll(_derivedFeatures);
         for (UserDefinedAttribute userDefined : _userDefinedAttributes) {
-            attribute = userDefined.getUserDefinedAttribute();
+            _features.add(new UserDefinedFeature(userDefined));
+        }
+        Attributes attribute = null;
+        for (DerivedFeature feature : _features) {
+            attribute = feature.getAttribute();
             setType(attribute, false);
             _logger.info("Added " + attribute.getAttributeName());
         }
     }
 
+    /**
+     * Compiles the decoder of an attribute from its WEKA type
+     * 
+     * @param attribute
+     *            The attribute to decode
+     * @param index
+     *            The index of the WEKA attribute to decode to
+     * @return the attribute decoder
+     */
+    private ColumnDecoder compileDecoder(Attributes attribute, int index) {
+        String name = attribute.getAttributeName();
+        String type = attribute.getAttributeType();
+        if (type.equals("numeric")) {
+            return ColumnDecoder.numeric(index);
+        } else if (type.equals("string")) {
+            // streamed instances only need the value of the current record
+            return _saver != null ? ColumnDecoder.streamingString(index, _data.attribute(index),
+                    _sparse == null ? SPARSE_STRING : null) : ColumnDecoder.string(index, _data.attribute(index));
+        } else if (type.equals("date")) {
+            return ColumnDecoder.date(index, DateParser.forFormat(_config._dateFormat));
+        } else if (type.equals("nominal")) {
+            return ColumnDecoder.nominal(index, _nominalRange.get(name));
+        }
+        _logger.warn("Found unanticipated attribute type: " + name + " = " + type);
+        return ColumnDecoder.skip();
+    }
+
+    /**
+     * Decides from the sampled instances whether instances are stored sparse,
+     * then stores the sampled instances
+     * 
+     * @throws IOException
+     *             If a streamed instance can not be written
+     */
+    private void decideSparsity() throws IOException {
+        if (_sparse != null) {
+            return;
+        }
+        double zeros = _sampledValues == 0 ? 0 : (double) _sampledZeros / _sampledValues;
+        _sparse = zeros > _sparseThreshold;
+        _logger.info(String.format("%.1f%% of sampled values are zero, storing %s instances", zeros * 100,
+                _sparse ? "sparse" : "dense"));
+        Instance instance;
+        String[] strings;
+        for (int r = 0; r < _sampledInstances.size(); r++) {
+            instance = _sampledInstances.get(r);
+            if (_saver != null) {
+                strings = _sampledStrings.get(r);
+                for (int i = 0; i < strings.length; i++) {
+                    if (strings[i] != null) {
+                        _data.attribute(i).setStringValue(SPARSE_STRING);
+                        _data.attribute(i).addStringValue(strings[i]);
+                    }
+                }
+            }
+            storeInstance(_sparse ? new SparseInstance(instance) : instance);
+        }
+        _sampledInstances = null;
+        _sampledStrings = null;
+    }
+
+    /**
+     * Extract the instances buffered by ingestDump, remapping provisional
+     * nominal codes to their final index in the WEKA attribute
+     * 
+     * @throws IOException
+     *             If a streamed instance can not be written
+     */
+    private void extractBufferedInstances() throws IOException {
+        int slots = _slotAttributes.size();
+        int[] location = new int[slots];
+        int[][] remap = new int[slots][];
+        double value;
+        double[] row;
+        Integer index;
+        Attributes attribute;
+        NominalDictionary dictionary;
+        for (int i = 0; i < slots; i++) {
+            attribute = _slotAttributes.get(i);
+            index = _attributeMap.get(attribute.getAttributeName());
+            dictionary = _slotDictionaries.get(i);
+            location[i] = index == null ? -1 : index;
+            if (index == null || dictionary == null) {
+                continue;
+            }
+            if (attribute.getAttributeType().equals("nominal")) {
+                remap[i] = dictionary.recode(_nominalRange.get(attribute.getAttributeName()));
+            } else {
+                // string values keep their order of first appearance
+                remap[i] = new int[dictionary.size()];
+                for (int k = 0; k < remap[i].length; k++) {
+                    remap[i][k] = _data.attribute(index).addStringValue(dictionary.value(k));
+                }
+            }
+        }
+        if (_logger.isDebugEnabled()) {
+            _logger.debug("Now extracting buffered instances");
+        }
+        for (int r = 0; r < _bufferedRows.size(); r++) {
+            row = _bufferedRows.get(r);
+            _values = new double[_data.numAttributes()];
+            for (int i = 0; i < slots; i++) {
+                if (location[i] < 0) {
+                    continue;
+                }
+                value = row[i];
+                if (remap[i] != null && !Utils.isMissingValue(value)) {
+                    value = remap[i][(int) value];
+                }
+                _values[location[i]] = value;
+            }
+            // the last slot holds the instance weight
+            addInstance(row[slots], _values);
+            _bufferedRows.set(r, null);
+        }
+        decideSparsity();
+        _bufferedRows = null;
+        _logger.info("Done. Extracted " + _data.numInstances() + " records!");
+    }
+
     /**
      * Extract the instances from the .CSV file
      * 
@@ -79,34 +273,49 @@ public final class ARFFWriter {
      * @throws ParseException
      */
     private void extractInstances() throws IOException, ParseException {
-        int index, count = 0;
-        String curValue = null;
-        String classValue = null;
-        List<String> dump;
+        int count = 0;
+        Integer index;
+        String value, classValue = null;
         Attributes attribute;
         setReader(_inCSV);
-        String[] header = _reader.getCSVHeader(true);
+        String[] header = _reader.readHeader();
+        // resolve the decoder of each column once rather than for every cell
+        ColumnPlan plan = new ColumnPlan(header, _config);
+        for (int i = 0; i < plan.numColumns(); i++) {
+            attribute = plan.getAttribute(i);
+            if (attribute != null && (index = _attributeMap.get(attribute.getAttributeName())) != null) {
+                plan.setDecoder(i, compileDecoder(attribute, index));
+            }
+        }
+        // bind the derived features to the WEKA attribute layout
+        List<NominalDictionary> dictionaries = new ArrayList<NominalDictionary>();
+        for (int i = 0; i < _data.numAttributes(); i++) {
+            dictionaries.add(_data.attribute(i).isNominal() ? _nominalRange.get(_data.attribute(i).name()) : null);
+        }
+        List<FeatureRow> features = new ArrayList<FeatureRow>();
+        for (DerivedFeature feature : _features) {
+            attribute = feature.getAttribute();
+            index = _attributeMap.get(attribute.getAttributeName());
+            if (index != null) {
+                features.add(new FeatureRow(feature, compileDecoder(attribute, index), _attributeMap, dictionaries,
+                        _data, _internalMap, _config));
+            }
+        }
         _values = new double[_data.numAttributes()];
         if (_logger.isDebugEnabled()) {
             _logger.debug("Now extracting instances");
         }
 
-        while ((dump = _reader.read(_processing)) != null) {
-            for (int i = 0; i < dump.size(); i++) {
-                curValue = dump.get(i).trim();
-                index = _config._attributeMap.get(_config._dumpFile).get(header[i].trim().toLowerCase());
-                attribute = _config._attributes.get(_config._dumpFile).get(index);
-                // only consider attributes marked as 'include'
-                if (attribute.isInclude()) {
-                    // insert attribute into double instance array
-                    insertValue(attribute, curValue);
-                    if (attribute.getAttributeName().equals(_config._classValue)) {
-                        classValue = curValue;
-                    }
-                }
+        while (_reader.read()) {
+            // insert attributes into double instance array
+            value = plan.decode(_reader, _values);
+            if (value != null) {
+                classValue = value;
+            }
+            // insert the derived features of this instance
+            for (FeatureRow feature : features) {
+                feature.compute(_values, _reader);
             }
-            // insert user defined feature for this instance
-            setUserDefinedAttributes(dump);
             count += 1;
             if (count % 10000 == 0) {
                 if (_logger.isDebugEnabled()) {
@@ -114,16 +323,17 @@ public final class ARFFWriter {
                 }
             }
             // add weights according to instance class value
-            if (classValue.equals(_config._positiveClassValue)) {
-                _data.add(new DenseInstance(_config._positiveClassWeight, _values));
+            if (_config._positiveClassValue.equals(classValue)) {
+                addInstance(_config._positiveClassWeight, _values);
             } else {
-                _data.add(new DenseInstance(_config._negativeClassWeight, _values));
+                addInstance(_config._negativeClassWeight, _values);
             }
             _values = new double[_data.numAttributes()];
             if (_logger.isDebugEnabled()) {
                 _logger.debug("Processed " + count + " records.");
             }
         }
+        decideSparsity();
         _logger.info("Done. Processed " + count + " records!");
     }
 
@@ -145,6 +355,77 @@ public final class ARFFWriter {
         }
     }
 
+    /**
+     * @return the statistics of the instances written, or null before they are
+     *         extracted
+     */
+    public ColumnStatistics getStatistics() {
+        return _statistics;
+    }
+
+    /**
+     * Reads the dump in a single pass. Nominal ranges are discovered while each
+     * record is buffered with provisional (first seen) codes for its nominal
+     * and string values; missing attribute counts are collected on the way. In
+     * parallel mode the dump, or each shard matching its glob, is split into
+     * chunks that are ingested concurrently and merged in file order.
+     * 
+     * @throws IOException
+     * @throws ParseException
+     * @throws InterruptedException
+     */
+    private void ingestDump() throws IOException, ParseException, InterruptedException {
+        List<ChunkIngest> ingests = new ArrayList<ChunkIngest>();
+        if (_parallel) {
+            List<String> files = CsvChunk.expand(_inCSV);
+            _header = CsvChunk.readHeader(files.get(0));
+            setInternalMap();
+            int threads = _threads > 0 ? _threads : Runtime.getRuntime().availableProcessors();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                // record boundaries are found on the pool, a range per thread
+                for (String file : files) {
+                    if (!Arrays.equals(_header, CsvChunk.readHeader(file))) {
+                        throw new IOException("Header of " + file + " differs from that of " + files.get(0));
+                    }
+                    for (CsvChunk chunk : CsvChunk.split(file, threads, pool)) {
+                        ingests.add(new ChunkIngest(_config, _header, _features, _internalMap, _dumpReader, chunk));
+                    }
+                }
+                _logger.info("Ingesting " + files.size() + " file(s) in " + ingests.size() + " chunk(s) on "
+                        + threads + " thread(s)");
+                for (Future<ChunkIngest> future : pool.invokeAll(ingests)) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                } else if (e.getCause() instanceof ParseException) {
+                    throw (ParseException) e.getCause();
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            setReader(_inCSV);
+            _header = _reader.readHeader();
+            setInternalMap();
+            ChunkIngest ingest = new ChunkIngest(_config, _header, _features, _internalMap, _dumpReader, null);
+            ingest.ingest(_reader);
+            ingests.add(ingest);
+        }
+        if (ingests.isEmpty()) {
+            // an empty dump still lays out its slots
+            ingests.add(new ChunkIngest(_config, _header, _features, _internalMap, _dumpReader, null));
+        }
+        mergeIngests(ingests);
+        setBufferedNominalRange();
+        _logger.info("Done. Ingested " + _bufferedRows.size() + " records!");
+    }
+
     /**
      * Initializes our instances object once we've added all our dump and
      * user-defined features
@@ -152,57 +433,133 @@ public final class ARFFWriter {
     private void initializeInstances() {
         _logger.info("Initializing instances object");
         _data = new Instances(_config._relation, _attributes, 0);
+        // sparsity is sampled from the first instances unless it is disabled
+        _sparse = _sparseThreshold < 1 ? null : Boolean.FALSE;
+        if (_sparse == null) {
+            // sparse ARFF omits values coded 0, so no string may take index 0
+            for (int i = 0; i < _data.numAttributes(); i++) {
+                if (_data.attribute(i).isString()) {
+                    _data.attribute(i).addStringValue(SPARSE_STRING);
+                }
+            }
+        }
+        _sampledInstances = new ArrayList<Instance>();
+        _sampledStrings = new ArrayList<String[]>();
+        _sampledValues = 0;
+        _sampledZeros = 0;
+        _statistics = new ColumnStatistics(_data);
     }
 
     /**
-     * Inserts the value of an attribute at the appropriate position
+     * Merges chunk ingests in file order. The dictionaries of later chunks are
+     * interned into those of the first, and their records recoded, so the
+     * provisional codes are exactly those a sequential ingest would assign.
+     * The leading records of a chunk without a class value are weighted by the
+     * last class value of the chunks before it, as a sequential ingest would.
      * 
-     * @param attribute
-     *            The attribute object
-     * @param value
-     *            The attribute value to insert
-     * @throws ParseException
+     * @param ingests
+     *            The chunk ingests in file order
      */
-    private void insertValue(Attributes attribute, String value) throws ParseException {
-        String name = attribute.getAttributeName();
-        String type = attribute.getAttributeType();
-        if (value.equals("") || value.equals("?")) {
-            _values[_attributeMap.get(name)] = Utils.missingValue();
-        } else if (type.equals("numeric")) {
-            _values[_attributeMap.get(name)] = Double.parseDouble(value);
-        } else if (type.equals("string")) {
-            _values[_attributeMap.get(name)] = _data.attribute(_attributeMap.get(name)).addStringValue(value);
-        } else if (type.equals("date")) {
-            _values[_attributeMap.get(name)] = _data.attribute(_attributeMap.get(name)).parseDate(value);
-        } else if (type.equals("nominal")) {
-            _values[_attributeMap.get(name)] = _nominalRange.get(name).indexOf(value);
-        } else {
-            _logger.warn("Found unanticipated entry set: " + name + " = " + value);
+    private void mergeIngests(List<ChunkIngest> ingests) {
+        ChunkIngest first = ingests.get(0);
+        _slotAttributes = first.getSlotAttributes();
+        _columnSlotCount = first.getColumnSlotCount();
+        _slotDictionaries = first.getDictionaries();
+        _nominalOrder = first.getNominalOrder();
+        _bufferedRows = first.getRows();
+        int slots = _slotAttributes.size();
+        int[] attCount = first.getAttributeCounts();
+        List<Integer> attOrder = new ArrayList<Integer>(first.getAttributeOrder());
+        int[][] remap = new int[slots][];
+        NominalDictionary dictionary;
+        String classValue = first.getLastClassValue();
+        for (int k = 1; k < ingests.size(); k++) {
+            ChunkIngest ingest = ingests.get(k);
+            for (int i = 0; i < ingest.getLeadingUnclassified(); i++) {
+                ingest.getRows().get(i)[slots] = ingest.weightOf(classValue);
+            }
+            if (ingest.getLastClassValue() != null) {
+                classValue = ingest.getLastClassValue();
+            }
+            for (int i : ingest.getAttributeOrder()) {
+                if (attCount[i] == 0) {
+                    attOrder.add(i);
+                }
+            }
+            for (int i = 0; i < attCount.length; i++) {
+                attCount[i] += ingest.getAttributeCounts()[i];
+            }
+            for (int slot : ingest.getNominalOrder()) {
+                if (!_nominalOrder.contains(slot)) {
+                    _nominalOrder.add(slot);
+                }
+            }
+            for (int slot = 0; slot < slots; slot++) {
+                dictionary = ingest.getDictionaries().get(slot);
+                if (dictionary != null) {
+                    for (String value : dictionary.values()) {
+                        _slotDictionaries.get(slot).intern(value);
+                    }
+                    remap[slot] = dictionary.recode(_slotDictionaries.get(slot));
+                }
+            }
+            for (double[] row : ingest.getRows()) {
+                for (int slot = 0; slot < slots; slot++) {
+                    if (remap[slot] != null && !Utils.isMissingValue(row[slot])) {
+                        row[slot] = remap[slot][(int) row[slot]];
+                    }
+                }
+                _bufferedRows.add(row);
+            }
+        }
+        _attributeCount = new HashMap<String, Integer>();
+        for (int i : attOrder) {
+            _attributeCount.put(_header[i], attCount[i]);
         }
     }
 
     /**
-     * Prints missing count of all attributes across all instances
+     * Prints missing count of all attributes across all instances. Once the
+     * ARFF has been written the counts come from its column statistics, kept in
+     * memory or in the sidecar next to it, rather than from a scan of the dump.
      * 
      * @throws IOException
      */
     public void printMissingAttributeCount() throws IOException {
-        List<String> dump;
-        setReader(_inCSV);
-        String[] header = _reader.getCSVHeader(true);
-        Map<String, Integer> attCount = new HashMap<String, Integer>();
-        if (_logger.isDebugEnabled()) {
-            _logger.debug("Discovering missing attributes");
+        ColumnStatistics statistics = _statistics;
+        if (statistics == null && _outARFF != null && new File(ColumnStatistics.sidecarOf(_outARFF)).exists()) {
+            try {
+                statistics = ColumnStatistics.load(ColumnStatistics.sidecarOf(_outARFF));
+            } catch (JSONException e) {
+                _logger.warn("Could not read column statistics of " + _outARFF + ": " + e.getMessage());
+            }
         }
-        // iterate through all records to discover
-        // data set nominal attribute ranges.
-        while ((dump = _reader.read(_processing)) != null) {
-            for (int i = 0; i < dump.size(); i++) {
-                if (!dump.get(i).equals("")) {
-                    if (!attCount.containsKey(header[i])) {
-                        attCount.put(header[i], 1);
-                    } else {
-                        attCount.put(header[i], attCount.get(header[i]) + 1);
+        if (statistics != null) {
+            // print the count of non-missing values of each attribute
+            for (int i = 0; i < statistics.numAttributes(); i++) {
+                System.out.format("%-42s = %10d%n", statistics.getName(i),
+                        statistics.getNumInstances() - statistics.getMissing(i));
+            }
+            return;
+        }
+        Map<String, Integer> attCount = _attributeCount;
+        if (attCount == null) {
+            attCount = new HashMap<String, Integer>();
+            setReader(_inCSV);
+            String[] header = _reader.readHeader();
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Discovering missing attributes");
+            }
+            // iterate through all records to discover
+            // data set nominal attribute ranges.
+            while (_reader.read()) {
+                for (int i = 0; i < _reader.size(); i++) {
+                    if (!_reader.isEmpty(i)) {
+                        if (!attCount.containsKey(header[i])) {
+                            attCount.put(header[i], 1);
+                        } else {
+                            attCount.put(header[i], attCount.get(header[i]) + 1);
+                        }
                     }
                 }
             }
@@ -214,7 +571,8 @@ public final class ARFFWriter {
     }
 
     /**
-     * Saves an Instances object to .ARFF
+     * Saves an Instances object to .ARFF, with its column statistics in a
+     * sidecar
      * 
      * @param instances
      *            The set of instances to write
@@ -224,10 +582,29 @@ public final class ARFFWriter {
      *             If instances object can not be written
      */
     public void saveInstancesToARFF(Instances instances, String outFile) throws IOException {
+        saveInstancesToARFF(instances, outFile, ColumnStatistics.of(instances));
+    }
+
+    /**
+     * Saves an Instances object to .ARFF, with its column statistics in a
+     * sidecar
+     * 
+     * @param instances
+     *            The set of instances to write
+     * @param outFile
+     *            The file to which to write the instances
+     * @param statistics
+     *            The column statistics of the instances
+     * @throws IOException
+     *             If instances object can not be written
+     */
+    private void saveInstancesToARFF(Instances instances, String outFile, ColumnStatistics statistics)
+            throws IOException {
         if (_logger.isDebugEnabled()) {
             _logger.debug("Now saving instances");
         }
         InstancesWriter.writeInstances(instances, outFile);
+        statistics.save(ColumnStatistics.sidecarOf(outFile));
         if (_logger.isDebugEnabled()) {
             _logger.debug("Saved instances to " + outFile);
         }
@@ -255,6 +632,34 @@ public final class ARFFWriter {
         setType(_target, true);
     }
 
+    /**
+     * Rebuilds the nominal ranges from the values buffered by ingestDump. The
+     * ranges are replayed in their order of discovery so that attributes and
+     * their values are laid out exactly as setNominalRange lays them out.
+     */
+    private void setBufferedNominalRange() {
+        String name;
+        Map<String, NominalDictionary> nominalAttRange = new HashMap<String, NominalDictionary>();
+        List<Integer> order = new ArrayList<Integer>();
+        for (int slot = _columnSlotCount; slot < _slotAttributes.size(); slot++) {
+            if (_slotAttributes.get(slot).getAttributeType().equals("nominal")) {
+                nominalAttRange.put(_slotAttributes.get(slot).getAttributeName(), new NominalDictionary());
+                order.add(slot);
+            }
+        }
+        order.addAll(_nominalOrder);
+        for (int slot : order) {
+            name = _slotAttributes.get(slot).getAttributeName();
+            if (nominalAttRange.get(name) == null) {
+                nominalAttRange.put(name, new NominalDictionary());
+            }
+            for (String value : _slotDictionaries.get(slot).values()) {
+                nominalAttRange.get(name).intern(value);
+            }
+        }
+        setNominalAttributes(nominalAttRange);
+    }
+
     /**
      * Sets internal map for user-defined features note that features defined by
      * user may use attributes that are not marked as 'include' in the
@@ -268,31 +673,74 @@ public final class ARFFWriter {
         }
     }
 
+    /**
+     * Converts discovered nominal ranges to their final dictionaries and adds
+     * their WEKA attributes. Values are ordered as a hash set iterates them,
+     * which is the order ARFF files have always been written with.
+     * 
+     * @param nominalAttRange
+     *            Mapping of nominal attribute name to its discovered values
+     */
+    private void setNominalAttributes(Map<String, NominalDictionary> nominalAttRange) {
+        ArrayList<String> curAttribute;
+        Set<String> ordered;
+        // convert the discovered values to their final dictionaries
+        _nominalRange = new HashMap<String, NominalDictionary>();
+        for (Entry<String, NominalDictionary> entry : nominalAttRange.entrySet()) {
+            ordered = new HashSet<String>();
+            for (String value : entry.getValue().values()) {
+                ordered.add(value);
+            }
+            _nominalRange.put(entry.getKey(), NominalDictionary.forValues(new ArrayList<String>(ordered)));
+        }
+        // add the list to our attributes object
+        for (Entry<String, NominalDictionary> entry : _nominalRange.entrySet()) {
+            curAttribute = new ArrayList<String>(entry.getValue().values());
+            // convenience check to ensure class attribute is added last
+            if (entry.getKey().equals(_config._classValue)) {
+                _targetRange = curAttribute;
+            } else {
+                _attributes.add(new Attribute(entry.getKey(), curAttribute));
+            }
+        }
+    }
+
     /**
      * Discovers the set of possible configurations for nominal attributes
      * 
      * @throws IOException
      */
-    private void setNominalRange() throws IOException {
+    private void setNominalRange() throws IOException, ParseException {
         int index = 0;
-        List<String> dump;
         Attributes attribute;
         setReader(_inCSV);
         String key, name, value = null;
-        _header = _reader.getCSVHeader(true);
-        Map<String, Set<String>> nominalAttRange = new HashMap<String, Set<String>>();
-        for (UserDefinedAttribute uda : _userDefinedAttributes) {
-            nominalAttRange.put(uda.getAttributeName(), new HashSet<String>());
+        _header = _reader.readHeader();
+        Map<String, NominalDictionary> nominalAttRange = new HashMap<String, NominalDictionary>();
+        List<Integer> nominalFeatures = new ArrayList<Integer>();
+        for (int j = 0; j < _features.size(); j++) {
+            if (_features.get(j).getAttribute().getAttributeType().equals("nominal")) {
+                nominalAttRange.put(_features.get(j).getAttribute().getAttributeName(), new NominalDictionary());
+                nominalFeatures.add(j);
+            }
         }
         setInternalMap();
+        // nominal features are derived from decoded records to discover their
+        // range, once per record
+        ChunkIngest features = nominalFeatures.isEmpty() ? null : new ChunkIngest(_config, _header, _features,
+                _internalMap, _dumpReader, null);
+        double[] row = features == null ? null : new double[features.getSlotAttributes().size()];
         if (_logger.isDebugEnabled()) {
             _logger.debug("Discovering nominal ranges");
         }
         // iterate through all records to discover
         // data set nominal attribute ranges.
-        while ((dump = _reader.read(_processing)) != null) {
-            for (int i = 0; i < dump.size(); i++) {
-                value = dump.get(i).trim();
+        while (_reader.read()) {
+            if (features != null) {
+                features.decode(_reader, row);
+            }
+            for (int i = 0; i < _reader.size(); i++) {
+                value = _reader.get(i).trim();
                 if (!value.equals("")) {
                     key = _header[i].trim();
                     try {
@@ -306,44 +754,38 @@ public final class ARFFWriter {
                     if (attribute.getAttributeType().equals("nominal") && attribute.isInclude()) {
                         name = attribute.getAttributeName();
                         if (nominalAttRange.get(name) == null) {
-                            nominalAttRange.put(name, new HashSet<String>());
-                        }
-                        nominalAttRange.get(name).add(value);
-                        for (UserDefinedAttribute uda : _userDefinedAttributes) {
-                            if (uda.getUserDefinedAttribute().isInclude()) {
-                                name = uda.getAttributeName();
-                                value = uda.getAttributeValue(dump, _internalMap, _config);
-                                if (!value.equals("")) {
-                                    nominalAttRange.get(name).add(value);
-                                }
-                            }
+                            nominalAttRange.put(name, new NominalDictionary());
                         }
+                        nominalAttRange.get(name).intern(value);
                     }
                 }
             }
         }
-
-        ArrayList<String> curAttribute;
-        // convert the sets to ordered lists for later retrieval
-        _nominalRange = new HashMap<String, ArrayList<String>>();
-        for (Entry<String, Set<String>> entry : nominalAttRange.entrySet()) {
-            _nominalRange.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
-        }
-        ArrayList<String> _value;
-        // add the list to our attributes object
-        for (Entry<String, ArrayList<String>> entry : _nominalRange.entrySet()) {
-            _value = entry.getValue();
-            curAttribute = new ArrayList<String>();
-            for (String s : _value) {
-                curAttribute.add(s);
-            }
-            // convenience check to ensure class attribute is added last
-            if (entry.getKey().equals(_config._classValue)) {
-                _targetRange = curAttribute;
-            } else {
-                _attributes.add(new Attribute(entry.getKey(), curAttribute));
+        for (int j : nominalFeatures) {
+            name = _features.get(j).getAttribute().getAttributeName();
+            for (String discovered : features.getDictionaries().get(features.getColumnSlotCount() + j).values()) {
+                nominalAttRange.get(name).intern(discovered);
             }
         }
+
+        setNominalAttributes(nominalAttRange);
+    }
+
+    /**
+     * @param dumpReader
+     *            The type of reader the dump is read with, DumpReader.MAPPED or
+     *            DumpReader.SUPERCSV
+     */
+    public void setDumpReader(String dumpReader) {
+        _dumpReader = dumpReader;
+    }
+
+    /**
+     * @param parallel
+     *            Indicates if the dump should be ingested in parallel chunks
+     */
+    public void setParallel(boolean parallel) {
+        _parallel = parallel;
     }
 
     /**
@@ -353,7 +795,48 @@ public final class ARFFWriter {
      * @throws IOException
      */
     private void setReader(String inCSV) throws IOException {
-        _reader = new CsvListReader(new FileReader(inCSV), CsvPreference.EXCEL_PREFERENCE);
+        if (_reader != null) {
+            _reader.close();
+        }
+        if (DumpReader.MAPPED.equals(_dumpReader)) {
+            _reader = new MappedDumpReader(inCSV);
+        } else {
+            _reader = new CsvDumpReader(new FileReader(inCSV), _processing);
+        }
+    }
+
+    /**
+     * @param singlePass
+     *            Indicates if the dump should be converted in a single pass
+     */
+    public void setSinglePass(boolean singlePass) {
+        _singlePass = singlePass;
+    }
+
+    /**
+     * @param sparseThreshold
+     *            The share of zero values above which instances are stored
+     *            sparse, 1 to always store them dense
+     */
+    public void setSparseThreshold(double sparseThreshold) {
+        _sparseThreshold = sparseThreshold;
+    }
+
+    /**
+     * @param streaming
+     *            Indicates if instances should be written as they are extracted
+     *            rather than held in memory
+     */
+    public void setStreaming(boolean streaming) {
+        _streaming = streaming;
+    }
+
+    /**
+     * @param threads
+     *            The number of threads of a parallel ingest, 0 for one per core
+     */
+    public void setThreads(int threads) {
+        _threads = threads;
     }
 
     /**
@@ -390,17 +873,20 @@ public final class ARFFWriter {
     }
 
     /**
-     * Sets the values of all user defined features on current instance
+     * Adds an instance to the data set, or streams it out
      * 
-     * @throws ParseException
+     * @param instance
+     *            The instance to store
+     * @throws IOException
+     *             If a streamed instance can not be written
      */
-    private void setUserDefinedAttributes(List<String> instance) throws ParseException {
-        Attributes attribute = null;
-        String value = null;
-        for (UserDefinedAttribute userDefined : _userDefinedAttributes) {
-            attribute = userDefined.getUserDefinedAttribute();
-            value = userDefined.getAttributeValue(instance, _internalMap, _config);
-            insertValue(attribute, value);
+    private void storeInstance(Instance instance) throws IOException {
+        if (_saver != null) {
+            // stream the instance out rather than holding it
+            instance.setDataset(_data);
+            _saver.writeIncremental(instance);
+        } else {
+            _data.add(instance);
         }
     }
 
@@ -414,21 +900,46 @@ public final class ARFFWriter {
         _logger.info("Beginning ARFF creation");
         // add any other interesting attributes
         addUserDefinedAttributes();
-        // predetermines the range of nominal attributes
-        setNominalRange();
+        boolean buffered = (_singlePass || _parallel) && !_streaming;
+        if (buffered) {
+            // reads the dump once, discovering nominal ranges on the way
+            ingestDump();
+        } else {
+            // predetermines the range of nominal attributes
+            setNominalRange();
+        }
         // sets the attribute types of all other attributes
         setAttributeType();
         // internal method used to track attribute index
         generateAttributeMap();
         // initializes the instances object
         initializeInstances();
-        // extracts the instance from the dump
-        extractInstances();
-        // saves the instances to file
-        saveInstancesToARFF(_data, _outARFF);
+        if (_streaming) {
+            // writes the header now and each instance as it is extracted
+            _saver = InstancesWriter.startInstances(_data, _outARFF);
+            extractInstances();
+            _saver.writeIncremental(null);
+            _saver = null;
+            // statistics were collected as the instances streamed past
+            _statistics.save(ColumnStatistics.sidecarOf(_outARFF));
+        } else if (buffered) {
+            // remaps the buffered instances to their final codes
+            extractBufferedInstances();
+            saveInstancesToARFF(_data, _outARFF, _statistics);
+        } else {
+            // extracts the instance from the dump
+            extractInstances();
+            // saves the instances to file
+            saveInstancesToARFF(_data, _outARFF, _statistics);
+        }
         _logger.info("Finished ARFF creation");
     }
 
+    /**
+     * contains the count of non-empty values of each dump column
+     */
+    private Map<String, Integer> _attributeCount;
+
     /**
      * contains a mapping of WEKA attribute name to its location
      */
@@ -439,6 +950,16 @@ public final class ARFFWriter {
      */
     private ArrayList<Attribute> _attributes;
 
+    /**
+     * the records buffered during a single pass ingest
+     */
+    private List<double[]> _bufferedRows;
+
+    /**
+     * the number of slots taken by dump columns in the buffered record
+     */
+    private int _columnSlotCount;
+
     /**
      * the handle to the configuration reader
      */
@@ -449,6 +970,21 @@ public final class ARFFWriter {
      */
     private Instances _data;
 
+    /**
+     * the features added through addDerivedFeature
+     */
+    private List<DerivedFeature> _derivedFeatures;
+
+    /**
+     * the type of reader the dump is read with
+     */
+    private String _dumpReader;
+
+    /**
+     * the derived features written, including adapted user defined attributes
+     */
+    private List<DerivedFeature> _features;
+
     /**
      * the headers of the CSV dump
      */
@@ -474,16 +1010,26 @@ public final class ARFFWriter {
      */
     private Logger _logger;
 
+    /**
+     * the slots of nominal dump attributes in order of discovery
+     */
+    private List<Integer> _nominalOrder;
+
     /**
      * contains a mapping of nominal attributes to their range
      */
-    private Map<String, ArrayList<String>> _nominalRange;
+    private Map<String, NominalDictionary> _nominalRange;
 
     /**
      * the target ARFF file to be written to
      */
     private String _outARFF;
 
+    /**
+     * indicates if the dump should be ingested in parallel chunks
+     */
+    private boolean _parallel;
+
     /**
      * the cell processing object
      */
@@ -492,7 +1038,67 @@ public final class ARFFWriter {
     /**
      * the CSV dump reader
      */
-    private ICsvListReader _reader;
+    private DumpReader _reader;
+
+    /**
+     * the saver instances are streamed to
+     */
+    private AbstractSaver _saver;
+
+    /**
+     * the instances held back while sparsity is sampled
+     */
+    private List<Instance> _sampledInstances;
+
+    /**
+     * the streamed string values of the held back instances
+     */
+    private List<String[]> _sampledStrings;
+
+    /**
+     * the number of values sampled
+     */
+    private long _sampledValues;
+
+    /**
+     * the number of sampled values that are zero
+     */
+    private long _sampledZeros;
+
+    /**
+     * indicates if the dump should be converted in a single pass
+     */
+    private boolean _singlePass;
+
+    /**
+     * the attribute held by each slot of the buffered record
+     */
+    private List<Attributes> _slotAttributes;
+
+    /**
+     * the provisional dictionaries of nominal and string slots
+     */
+    private List<NominalDictionary> _slotDictionaries;
+
+    /**
+     * indicates if instances are stored sparse, null while undecided
+     */
+    private Boolean _sparse;
+
+    /**
+     * the share of zero values above which instances are stored sparse
+     */
+    private double _sparseThreshold;
+
+    /**
+     * the column statistics collected as instances are extracted
+     */
+    private ColumnStatistics _statistics;
+
+    /**
+     * indicates if instances are written as they are extracted
+     */
+    private boolean _streaming;
 
     /**
      * holds the target class of the data set
@@ -504,6 +1110,11 @@ public final class ARFFWriter {
      */
     private ArrayList<String> _targetRange;
 
+    /**
+     * the number of threads of a parallel ingest
+     */
+    private int _threads;
+
     /**
      * the list of user-defined attributes
      */
@@ -521,6 +1132,8 @@ public final class ARFFWriter {
      */
     public ARFFWriter() throws IOException {
         _logger = Logger.getLogger(AppLogger.class.getName());
+        _sparseThreshold = 1;
+        _derivedFeatures = new ArrayList<DerivedFeature>();
     }
 
     /**
@@ -536,12 +1149,22 @@ public final class ARFFWriter {
         _config.readConfig();
         _config.setAttributeMap();
         _attributes = new ArrayList<Attribute>();
+        _derivedFeatures = new ArrayList<DerivedFeature>();
         // We don't want to enforce any constraints for now
         int columnSize = _config._attributes.get(_config._dumpFile).size();
         _processing = new CellProcessor[columnSize];
         _outARFF = _config._dumpARFF;
         _inCSV = _config._dumpFile;
-        setReader(_inCSV);
+        _singlePass = _config._singlePass;
+        _parallel = _config._parallelIngest;
+        _threads = _config._ingestThreads;
+        _dumpReader = _config._dumpReader;
+        _streaming = _config._streaming;
+        _sparseThreshold = _config._sparseThreshold;
+        // a parallel ingest may be given a glob of shard files
+        if (!_parallel) {
+            setReader(_inCSV);
+        }
     }
 
     /**
@@ -559,12 +1182,22 @@ public final class ARFFWriter {
         _config.readConfig();
         _config.setAttributeMap();
         _attributes = new ArrayList<Attribute>();
+        _derivedFeatures = new ArrayList<DerivedFeature>();
         // We don't want to enforce any constraints for now
         int columnSize = _config._attributes.get(_config._dumpFile).size();
         _processing = new CellProcessor[columnSize];
         _outARFF = outARFF;
         _inCSV = inCSV;
-        setReader(_inCSV);
+        _singlePass = _config._singlePass;
+        _parallel = _config._parallelIngest;
+        _threads = _config._ingestThreads;
+        _dumpReader = _config._dumpReader;
+        _streaming = _config._streaming;
+        _sparseThreshold = _config._sparseThreshold;
+        // a parallel ingest may be given a glob of shard files
+        if (!_parallel) {
+            setReader(_inCSV);
+        }
     }
 
 }
@@ -18,12 +18,20 @@ package com.deafgoat.ml.prognosticator;
 
 //Java
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 //Log4j
 import org.apache.log4j.Logger;
@@ -33,58 +41,100 @@ import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.core.Attribute;
+import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+//Mongo
+import com.mongodb.DBObject;
 
 /**
  * Builds and cross validates models, classifies test instances.
  */
 public final class AppClassifier {
+
     /**
-     * Perform cross-validation on data set/builds model
+     * Creates a classifier
+     * 
+     * @param name
+     *            The name of the classifier, either fully qualified or
+     *            relative to its WEKA classifier package
+     * @param options
+     *            The WEKA options of the classifier
+     * @return the classifier
+     * @throws Exception
+     *             If the classifier can not be found or its options are not
+     *             valid
+     */
+    public static Classifier createClassifier(String name, String options) throws Exception {
+        String className = name;
+        if (name.indexOf('.') < 0) {
+            String base = "weka.classifiers.";
+            String[] groups = new String[] { "bayes.", "functions.", "lazy.", "meta.", "misc.", "rules.", "trees." };
+            for (int i = 0; i < groups.length; i++) {
+                try {
+                    className = Class.forName(base + groups[i] + name).getName();
+                    break;
+                } catch (ClassNotFoundException e) {
+                    if (i == groups.length - 1) {
+                        throw new Exception("Could not find classifier " + name, e);
+                    }
+                }
+            }
+        }
+        return AbstractClassifier.forName(className, Utils.splitOptions(options));
+    }
+
+    /**
+     * Perform cross-validation on data set/builds model. The folds run
+     * concurrently, each predicting its test instances with its own classifier
+     * copy, while the saved model is trained on the full training set. The
+     * predictions are recorded in fold order, so the evaluation is identical
+     * to that of a sequential run.
      * 
      * @throws Exception
      */
     public void crossValidate() throws Exception {
         // stratify nominal target class
-        if (_trainInstances.classAttribute().isNominal()) {
-            _trainInstances.stratify(_folds);
-        }
+        final Folds folds = new Folds(_trainInstances, _folds);
         _eval = new Evaluation(_trainInstances);
-        for (int n = 0; n < _folds; n++) {
-
-            if (_logger.isDebugEnabled()) {
-                _logger.debug("Cross validation fold: " + (n + 1));
+        int threads = _threads > 0 ? _threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, _folds + 1));
+        try {
+            // the full model is the longest task, start it first
+            Future<Classifier> model = pool.submit(new Callable<Classifier>() {
+                @Override
+                public Classifier call() throws Exception {
+                    Classifier classifier = AbstractClassifier.makeCopy(_cls);
+                    try {
+                        classifier.buildClassifier(new Instances(folds.getData()));
+                    } catch (Exception e) {
+                        _logger.debug(_config._classifier + " can not handle "
+                                + getAttributeType(_trainInstances.classAttribute()) + " class attributes");
+                    }
+                    return classifier;
+                }
+            });
+            List<Future<FoldEvaluation>> evaluations = new ArrayList<Future<FoldEvaluation>>();
+            for (int n = 0; n < _folds; n++) {
+                evaluations.add(pool.submit(new FoldEvaluation(_cls, folds, n)));
             }
-            _train = _trainInstances.trainCV(_folds, n);
-            _test = _trainInstances.testCV(_folds, n);
-            _clsCopy = AbstractClassifier.makeCopy(_cls);
-            try {
-                _clsCopy.buildClassifier(_train);
-            } catch (Exception e) {
-                _logger.debug(_config._classifier + " can not handle " + getAttributeType(_test.classAttribute())
-                        + " class attributes");
+            for (int n = 0; n < _folds; n++) {
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("Cross validation fold: " + (n + 1));
+                }
+                evaluations.get(n).get().evaluate(_eval);
             }
-
-            try {
-                _eval.evaluateModel(_clsCopy, _test);
-            } catch (Exception e) {
-                _logger.debug("Can not evaluate model");
+            _clsCopy = model.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
+            throw e;
+        } finally {
+            pool.shutdown();
         }
-
-        if (_config._writeToMongoDB) {
-            _logger.info("Writing model to mongoDB");
-            // save the trained model
-            saveModel();
-            // save CV performance of trained model
-            writeToMongoDB(_eval);
-        }
-
-        if (_config._writeToFile) {
-            _logger.info("Writing model to file");
-            SerializationHelper.write(_config._modelFile, _clsCopy);
-        }
+        persistModel();
     }
 
     /**
@@ -96,58 +146,101 @@ public final class AppClassifier {
      *             If model can not be evaluated
      */
     public void errorAnalysis(String attribute) throws Exception {
+        errorAnalysis(new String[] { attribute });
+        BufferedWriter writer = null;
+        for (Entry<String, PredictionBatch> entry : _predictionList.entrySet()) {
+            writer = new BufferedWriter(new FileWriter(entry.getKey()));
+            entry.getValue().writeAttribute(writer, attribute);
+            writer.close();
+        }
+    }
+
+    /**
+     * Profiles the confidence of classified instances against several
+     * attributes with a single scoring pass over the test instances. The
+     * profiles are kept in memory rather than written to the error analysis
+     * files.
+     * 
+     * @param attributes
+     *            The focal attributes for error analysis
+     * @throws Exception
+     *             If model can not be evaluated
+     */
+    public void errorAnalysis(String[] attributes) throws Exception {
         readModel();
         _logger.info("Performing error analysis");
-        Evaluation eval = new Evaluation(_testInstances);
-        eval.evaluateModel(_cls, _testInstances);
-        _predictionList = new HashMap<String, List<Prediction>>();
-        String predicted, actual = null;
-        double[] distribution = null;
-        _predictionList.put(_config._truePositives, new ArrayList<Prediction>());
-        _predictionList.put(_config._trueNegatives, new ArrayList<Prediction>());
-        _predictionList.put(_config._falsePositives, new ArrayList<Prediction>());
-        _predictionList.put(_config._falseNegatives, new ArrayList<Prediction>());
-        for (int i = 0; i < _testInstances.numInstances(); i++) {
-            distribution = _cls.distributionForInstance(_testInstances.instance(i));
-            actual = _testInstances.classAttribute().value((int) _testInstances.instance(i).classValue());
-            predicted = _testInstances.classAttribute().value((int) _cls.classifyInstance(_testInstances.instance(i)));
-            // 0 is negative, 1 is positive
-            if (!predicted.equals(actual)) {
-                if (actual.equals(_config._negativeClassValue)) {
-                    _predictionList.get(_config._falsePositives).add(
-                            new Prediction(i + 1, predicted, distribution, _fullData.instance(i)));
-                } else if (actual.equals(_config._positiveClassValue)) {
-                    _predictionList.get(_config._falseNegatives).add(
-                            new Prediction(i + 1, predicted, distribution, _fullData.instance(i)));
+        Prediction.Dataset dataset = new Prediction.Dataset(_fullData, _testInstances.classAttribute());
+        // resolve the class codes once rather than comparing values per instance
+        NominalDictionary classes = NominalDictionary.forAttribute(_testInstances.classAttribute());
+        final int positive = classes.code(_config._positiveClassValue);
+        final int negative = classes.code(_config._negativeClassValue);
+        // the least confident predictions are reported first
+        final HashMap<String, TopPredictions> selections = new HashMap<String, TopPredictions>();
+        for (String name : new String[] { _config._truePositives, _config._trueNegatives, _config._falsePositives,
+                _config._falseNegatives }) {
+            selections.put(name, new TopPredictions(_config._maxCount, Double.NEGATIVE_INFINITY,
+                    TopPredictions.Order.ASCENDING));
+        }
+        final Scorer scorer = new Scorer(_cls, _testInstances.classAttribute());
+        // each block of distributions is folded into the selections as it is
+        // scored
+        scorer.score(_testInstances, 1, new Scorer.Sink() {
+            @Override
+            public void failed(int index, Exception e) throws Exception {
+                throw e;
+            }
+
+            @Override
+            public void scored(int index, double[] distribution) {
+                int actual = (int) _testInstances.instance(index).classValue();
+                int predictedCode = (int) scorer.classify(distribution);
+                TopPredictions selection;
+                // 0 is negative, 1 is positive
+                if (predictedCode != actual) {
+                    selection = actual == negative ? selections.get(_config._falsePositives)
+                            : actual == positive ? selections.get(_config._falseNegatives) : null;
+                } else {
+                    selection = actual == negative ? selections.get(_config._trueNegatives)
+                            : actual == positive ? selections.get(_config._truePositives) : null;
                 }
-            } else if (predicted.equals(actual)) {
-                if (actual.equals(_config._negativeClassValue)) {
-                    _predictionList.get(_config._trueNegatives).add(
-                            new Prediction(i + 1, predicted, distribution, _fullData.instance(i)));
-                } else if (actual.equals(_config._positiveClassValue)) {
-                    _predictionList.get(_config._truePositives).add(
-                            new Prediction(i + 1, predicted, distribution, _fullData.instance(i)));
+                if (selection != null) {
+                    selection.add(index + 1, predictedCode, Prediction.confidence(distribution));
                 }
             }
+        });
+        _predictionList = new HashMap<String, PredictionBatch>();
+        _profiles = new HashMap<String, HashMap<String, ConfidenceProfile>>();
+        for (String attribute : attributes) {
+            _profiles.put(attribute, new HashMap<String, ConfidenceProfile>());
         }
-        BufferedWriter writer = null;
-        String name, prediction = null;
-        for (Entry<String, List<Prediction>> entry : _predictionList.entrySet()) {
-            name = entry.getKey();
-            Collections.sort(_predictionList.get(name), Collections.reverseOrder());
-            writer = new BufferedWriter(new FileWriter(name));
-            List<Prediction> predictions = _predictionList.get(name);
-            for (int count = 0; count < predictions.size(); count++) {
-                if (count < _config._maxCount) {
-                    prediction = predictions.get(count).attributeDistribution(attribute);
-                    if (Double.parseDouble(prediction.split(_delimeter)[1]) >= _config._minProb) {
-                        writer.write(prediction + "\n");
-                    }
-                } else {
-                    break;
+        PredictionBatch selected;
+        ConfidenceProfile[] profiles = new ConfidenceProfile[attributes.length];
+        Instance instance;
+        int[] rows;
+        int count;
+        for (Entry<String, TopPredictions> entry : selections.entrySet()) {
+            selected = entry.getValue().sorted(dataset);
+            // minProb applies once selected, maxCount counts every prediction
+            rows = new int[selected.size()];
+            count = 0;
+            for (int row = 0; row < selected.size(); row++) {
+                if (selected.getConfidence(row) >= _config._minProb) {
+                    rows[count++] = row;
+                }
+            }
+            selected = selected.select(Arrays.copyOf(rows, count));
+            _predictionList.put(entry.getKey(), selected);
+            for (int i = 0; i < attributes.length; i++) {
+                profiles[i] = new ConfidenceProfile(dataset, attributes[i]);
+                _profiles.get(attributes[i]).put(entry.getKey(), profiles[i]);
+            }
+            // visit each selected instance once for all attributes
+            for (int row = 0; row < selected.size(); row++) {
+                instance = selected.getInstance(row);
+                for (ConfidenceProfile profile : profiles) {
+                    profile.add(instance, selected.getConfidence(row));
                 }
             }
-            writer.close();
         }
     }
 
@@ -190,6 +283,34 @@ public final class AppClassifier {
         }
     }
 
+    /**
+     * Returns the confidence profiles of an attribute made by the last error
+     * analysis
+     * 
+     * @param attribute
+     *            The focal attribute of the error analysis
+     * @return the profiles of the attribute by output file, or null if the
+     *         attribute was not analysed
+     */
+    public Map<String, ConfidenceProfile> getConfidenceProfiles(String attribute) {
+        return _profiles == null ? null : _profiles.get(attribute);
+    }
+
+    /**
+     * @return the predictions reported by the last error analysis, by output
+     *         file
+     */
+    public Map<String, PredictionBatch> getErrorAnalysis() {
+        return _predictionList;
+    }
+
+    /**
+     * @return the evaluation of the last cross-validation
+     */
+    public Evaluation getEvaluation() {
+        return _eval;
+    }
+
     /**
      * Initialize instances classifier.
      * 
@@ -197,17 +318,48 @@ public final class AppClassifier {
      *             If the classifier can not be initialized.
      */
     public void initializeClassifier() throws Exception {
-        String base = "weka.classifiers.";
-        String[] groups = new String[] { "bayes.", "functions.", "lazy.", "meta.", "misc.", "rules.", "trees." };
-        for (int i = 0; i < groups.length; i++) {
-            try {
-                _cls = AbstractClassifier.forName(base + groups[i] + _config._classifier, null);
-                break;
-            } catch (Exception e) {
-                if (i == groups.length - 1) {
-                    _logger.error("Could not create classifier - msg: " + e.getMessage(), e);
-                }
-            }
+        try {
+            _cls = createClassifier(_config._classifier, _config._classifierOptions);
+        } catch (Exception e) {
+            _logger.error("Could not create classifier - msg: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the key the trained model is cached under
+     * 
+     * @param mongo
+     *            Indicates if the model is stored in mongoDB rather than to
+     *            file
+     * @return the relation and location of the model
+     */
+    private String modelKey(boolean mongo) {
+        if (mongo) {
+            return _config._relation + "@mongodb://" + _config._host + ":" + _config._port + "/" + _config._db + "."
+                    + _config._modelCollection;
+        }
+        return _config._relation + "@" + new File(_config._modelFile).getAbsolutePath();
+    }
+
+    /**
+     * Writes the model trained on the full training set and its evaluation
+     * 
+     * @throws Exception
+     *             If the model can not be written
+     */
+    private void persistModel() throws Exception {
+        if (_config._writeToMongoDB) {
+            _logger.info("Writing model to mongoDB");
+            // save the trained model
+            saveModel();
+            // save CV performance of trained model
+            writeToMongoDB(_eval);
+        }
+
+        if (_config._writeToFile) {
+            _logger.info("Writing model to file");
+            ModelStore.save(new File(_config._modelFile), _clsCopy, new Instances(_trainInstances, 0));
+            ModelCache.getInstance().invalidate(modelKey(false));
         }
     }
 
@@ -220,84 +372,52 @@ public final class AppClassifier {
     public void predict() throws Exception {
         _logger.info("Predicting test instances");
         readModel();
-        String predicted = null;
-        Prediction prediction = null;
-        double[] distribution = null;
-        HashMap<String, String> result = null;
-        MongoResult mongoResult = null;
-        ArrayList<Prediction> predictionList = new ArrayList<Prediction>();
-        ArrayList<HashMap<String, String>> predictions = new ArrayList<HashMap<String, String>>();
-
-        for (int i = 0; i < _testInstances.numInstances(); i++) {
-            try {
-                distribution = _cls.distributionForInstance(_testInstances.instance(i));
-                predicted = _testInstances.classAttribute().value(
-                        (int) _cls.classifyInstance(_testInstances.instance(i)));
-                prediction = new Prediction(i + 1, predicted, distribution, _fullData.instance(i));
-
-                if (_testInstances.classAttribute().isNominal() && _config._onlyPosNominal) {
-                    // write only 'positive' predictions to file
-                    if (predicted.equals(_config._positiveClassValue)) {
-                        predictionList.add(prediction);
-                    }
-                } else {
-                    predictionList.add(prediction);
-                }
-            } catch (Exception e) {
+        Attribute classAttribute = _testInstances.classAttribute();
+        Prediction.Dataset dataset = new Prediction.Dataset(_fullData, classAttribute);
+        // all predictions are written to the database, the best to file
+        final PredictionBatch predictions = new PredictionBatch(dataset, _config._writeToMongoDB ? _testInstances
+                .numInstances() : 0, false);
+        final TopPredictions predictionList = new TopPredictions(_config._maxCount, _config._minProb,
+                classAttribute.isNumeric() ? TopPredictions.Order.ADDED : TopPredictions.Order.DESCENDING);
+        // write only 'positive' nominal predictions to file
+        final boolean onlyPositive = classAttribute.isNominal() && _config._onlyPosNominal;
+        final int positive = classAttribute.indexOfValue(_config._positiveClassValue);
+        final Scorer scorer = new Scorer(_cls, classAttribute);
+        Scorer.Sink sink = new Scorer.Sink() {
+            @Override
+            public void failed(int index, Exception e) {
                 _logger.debug(_config._classifier + " does not provide instance prediction distribution");
             }
 
-            // writing ALL predictions to database
-            if (_config._writeToMongoDB) {
-                result = new HashMap<String, String>();
-                if (_testInstances.classAttribute().isNumeric()) {
-                    result.put("confidence", "");
-                } else {
-                    result.put("confidence", prediction.getConfidence().toString());
+            @Override
+            public void scored(int index, double[] distribution) {
+                int predictedCode = (int) scorer.classify(distribution);
+                double confidence = Prediction.confidence(distribution);
+                if (!onlyPositive || predictedCode == positive) {
+                    predictionList.add(index + 1, predictedCode, confidence);
+                }
+                if (_config._writeToMongoDB) {
+                    predictions.add(index + 1, predictedCode, confidence);
                 }
-                result.put(_config._classValue, prediction.getPrediction());
-                predictions.add(result);
             }
-        }
+        };
+        // instances that can not be scored are skipped
+        scorer.score(_testInstances, _config._predictionThreads, sink);
 
         if (_config._writeToFile) {
             _logger.info("Writing predictions to file");
-            // sort prediction list
-            try {
-                Collections.sort(predictionList);
-            } catch (Exception e) {
-                _logger.debug("Can not use prediction compareTo");
-            }
-
             BufferedWriter writer = new BufferedWriter(new FileWriter(_config._predictionFile));
-            String value = null;
-            double confidence = 0.0;
-            int count = 0;
-            int index = 0;
-            for (Prediction entry : predictionList) {
-                confidence = entry.getConfidence();
-                value = entry.getPrediction();
-                index = entry.getIndex();
-                if (count < _config._maxCount) {
-                    if (confidence >= _config._minProb) {
-                        if (_testInstances.classAttribute().isNumeric()) {
-                            writer.write(index + _delimeter + value + "\n");
-                        } else {
-                            writer.write(index + _delimeter + confidence + _delimeter + value + "\n");
-                        }
-                        count += 1;
-                    }
-                } else {
-                    break;
-                }
-            }
+            // the selected predictions are the most confident ones over minProb
+            predictionList.sorted(dataset).writePredictions(writer);
             writer.close();
         }
 
         if (_config._writeToMongoDB) {
             _logger.info("Writing predictions to mongoDB");
-            mongoResult = new MongoResult(_config._host, _config._port, _config._db, _config._predictionCollection);
-            mongoResult.writeResult(_config._relation, predictions);
+            MongoResult mongoResult = new MongoResult(_config._host, _config._port, _config._db,
+                    _config._predictionCollection);
+            mongoResult.writeResult(_config._relation, _config._classValue, predictions);
+            mongoResult.close();
         }
     }
 
@@ -317,48 +437,185 @@ public final class AppClassifier {
     }
 
     /**
-     * Reads the trained model
+     * Reads the trained model, reusing the model cached by the process as long
+     * as the stored model is unchanged
      * 
      * @throws Exception
      *             If the model can not be read.
      */
     public void readModel() throws Exception {
+        ModelCache cache = ModelCache.getInstance();
+        cache.setCapacity(_config._modelCacheSize);
+        ModelCache.Loader loader;
+        // the model file takes precedence over the model in mongoDB
+        if (_config._writeToFile) {
+            final File file = new File(_config._modelFile);
+            loader = new ModelCache.Loader() {
+                @Override
+                public Classifier load() throws Exception {
+                    if (_logger.isDebugEnabled()) {
+                        _logger.debug("Deserializing model");
+                    }
+                    ModelStore.Header header = ModelStore.loadHeader(file);
+                    if (header != null && _testInstances != null
+                            && header.getSchemaHash() != ModelStore.schemaHash(_testInstances)) {
+                        _logger.warn("Model " + header + " was trained on a different schema");
+                    }
+                    return ModelStore.load(file);
+                }
+            };
+            // the cache budget counts the serialized size rather than the
+            // deflated size stored; raw serialized models are their own size
+            long size = file.length();
+            ModelStore.Header stored = file.exists() ? ModelStore.loadHeader(file) : null;
+            if (stored != null && stored.getSize() >= 0) {
+                size = stored.getSize();
+            }
+            _cls = cache.get(modelKey(false), file.lastModified(), size, loader);
+        } else if (_config._writeToMongoDB) {
+            final MongoResult mongoResult = new MongoResult(_config._host, _config._port, _config._db,
+                    _config._modelCollection);
+            try {
+                DBObject stored = mongoResult.readModelVersion(_config._relation);
+                long version = -1, size = 0;
+                if (stored != null && stored.get(MongoResult.MODEL_VERSION) != null) {
+                    version = ((Number) stored.get(MongoResult.MODEL_VERSION)).longValue();
+                    size = ((Number) stored.get(MongoResult.MODEL_SIZE)).longValue();
+                }
+                loader = new ModelCache.Loader() {
+                    @Override
+                    public Classifier load() throws Exception {
+                        if (_logger.isDebugEnabled()) {
+                            _logger.debug("Deserializing model");
+                        }
+                        return mongoResult.readModel(_config._relation);
+                    }
+                };
+                _cls = cache.get(modelKey(true), version, size, loader);
+            } finally {
+                mongoResult.close();
+            }
+        }
         if (_logger.isDebugEnabled()) {
-            _logger.debug("Deserializing model");
+            _logger.debug("Model cache: " + cache);
+        }
+    }
+
+    /**
+     * Saves the trained model
+     * 
+     * @throws Exception
+     *             If the model can not be saved
+     */
+    public void saveModel() throws Exception {
+        if (_logger.isDebugEnabled()) {
+            _logger.debug("Serializing model");
         }
 
         if (_config._writeToMongoDB) {
             MongoResult mongoResult = new MongoResult(_config._host, _config._port, _config._db,
                     _config._modelCollection);
-            _cls = mongoResult.readModel(_config._relation);
+            mongoResult.writeModel(_config._relation, _clsCopy, new Instances(_trainInstances, 0));
             mongoResult.close();
+            ModelCache.getInstance().invalidate(modelKey(true));
         }
 
         if (_config._writeToFile) {
-            _cls = (Classifier) SerializationHelper.read(_config._modelFile);
+            ModelStore.save(new File(_config._modelFile), _clsCopy, new Instances(_trainInstances, 0));
+            ModelCache.getInstance().invalidate(modelKey(false));
         }
     }
 
     /**
-     * Saves the trained model
+     * Searches the hyperparameters configured in the search section, keeping
+     * the best candidate. The best candidate is trained on the full training
+     * set and written with its evaluation as cross validation would, along
+     * with the leaderboard of all candidates.
      * 
      * @throws Exception
-     *             If the model can not be saved
+     *             If no candidate can be evaluated
      */
-    public void saveModel() throws Exception {
-        if (_logger.isDebugEnabled()) {
-            _logger.debug("Serializing model");
+    public void search() throws Exception {
+        if (_config._search == null) {
+            throw new Exception("No hyperparameter search is configured");
         }
+        ParameterSearch search = new ParameterSearch(new Instances(_trainInstances), _folds, _config._search);
+        search.run();
+        ParameterSearch.Candidate best = search.getBest();
+        if (best == null) {
+            throw new Exception("No candidate could be evaluated");
+        }
+        _logger.info("Best candidate: " + best.getName() + " " + best.getOptions());
+        _config._classifier = best.getName();
+        _config._classifierOptions = best.getOptions();
+        _cls = best.getClassifier();
+        _eval = best.getEvaluation();
+        _clsCopy = AbstractClassifier.makeCopy(_cls);
+        _clsCopy.buildClassifier(new Instances(search.getFolds().getData()));
+        persistModel();
+
+        StringWriter leaderboard = new StringWriter();
+        search.writeLeaderboard(leaderboard);
+        writeReport("leaderboard", _config._search.optString("leaderboard", _config._modelFile + ".leaderboard"),
+                leaderboard.toString());
+    }
+
+    /**
+     * Compares the classifiers configured in the tournament section on the
+     * same folds, reporting the metric of each classifier next to its training
+     * time and scoring latency. The evaluation of the winner is kept; no model
+     * is written.
+     * 
+     * @throws Exception
+     *             If no classifier can be evaluated
+     */
+    public void tournament() throws Exception {
+        if (_config._tournament == null) {
+            throw new Exception("No tournament is configured");
+        }
+        Tournament tournament = new Tournament(new Instances(_trainInstances), _folds, _config._tournament);
+        tournament.run();
+        StringWriter report = new StringWriter();
+        tournament.writeReport(report);
+        _logger.info("Tournament results\n" + report);
+        writeReport("tournament", _config._tournament.optString("report", _config._modelFile + ".tournament"),
+                report.toString());
+        ParameterSearch.Candidate winner = tournament.getWinner();
+        if (winner == null) {
+            throw new Exception("No classifier could be evaluated");
+        }
+        _config._classifier = winner.getName();
+        _config._classifierOptions = winner.getOptions();
+        _cls = winner.getClassifier();
+        _eval = winner.getEvaluation();
+    }
 
+    /**
+     * Writes a report to file and/or as an experiment in mongoDB
+     * 
+     * @param name
+     *            The name of the experiment
+     * @param path
+     *            The path of the report file
+     * @param report
+     *            The report
+     * @throws Exception
+     *             If the report can not be written
+     */
+    private void writeReport(String name, String path, String report) throws Exception {
         if (_config._writeToMongoDB) {
             MongoResult mongoResult = new MongoResult(_config._host, _config._port, _config._db,
                     _config._modelCollection);
-            mongoResult.writeModel(_config._relation, _clsCopy);
+            mongoResult.writeExperiment(_config._relation, name, report);
             mongoResult.close();
         }
-
         if (_config._writeToFile) {
-            SerializationHelper.write(_config._modelFile, _clsCopy);
+            FileWriter writer = new FileWriter(path);
+            try {
+                writer.write(report);
+            } finally {
+                writer.close();
+            }
         }
     }
 
@@ -391,7 +648,7 @@ public final class AppClassifier {
     private Classifier _cls;
 
     /**
-     * handle to a copy of the classifier object
+     * handle to the classifier trained on the full training set
      */
     private Classifier _clsCopy;
 
@@ -400,11 +657,6 @@ public final class AppClassifier {
      */
     private ConfigReader _config;
 
-    /**
-     * the delimeter to use in the prediction file
-     */
-    private static final String _delimeter = "\t";
-
     /**
      * handle AbstractClassifier the evaluation object
      */
@@ -426,14 +678,15 @@ public final class AppClassifier {
     private Logger _logger;
 
     /**
-     * contains all predictions made on test data
+     * the predictions reported by the last error analysis, by output file
      */
-    private HashMap<String, List<Prediction>> _predictionList;
+    private HashMap<String, PredictionBatch> _predictionList;
 
     /**
-     * holds test data (used in CV)
+     * the confidence profiles made by the last error analysis, by attribute
+     * and output file
      */
-    private Instances _test;
+    private HashMap<String, HashMap<String, ConfidenceProfile>> _profiles;
 
     /**
      * holds initialized test data
@@ -441,9 +694,9 @@ public final class AppClassifier {
     private Instances _testInstances;
 
     /**
-     * holds training data (used in CV)
+     * the number of threads cross-validation folds run on, 0 for one per core
      */
-    private Instances _train;
+    private int _threads;
 
     /**
      * holds initialized training data
@@ -499,6 +752,7 @@ public final class AppClassifier {
     public AppClassifier(Instances trainData, int fold, ConfigReader config) throws Exception {
         _folds = fold;
         _config = config;
+        _threads = config._foldThreads;
         _trainInstances = new Instances(trainData);
         _logger = AppLogger.getLogger();
     }
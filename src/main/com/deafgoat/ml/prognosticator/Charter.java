@@ -23,6 +23,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 
 // Log4j
@@ -48,18 +49,30 @@ public class Charter {
      * Creates data set containing categorical attributes along with prediction
      * confidence
      * 
+     * @param profiles
+     *            The confidence profiles of an error analysis by output file,
+     *            may be null
      * @param files
-     *            List of files containing predictions to chart
+     *            List of files containing predictions to chart, read from the
+     *            profiles when they hold them
      * @return the series collection to chart
      */
-    private DefaultCategoryDataset createCategoricalDataset(String[] files) {
+    private DefaultCategoryDataset createCategoricalDataset(Map<String, ConfidenceProfile> profiles, String[] files) {
         _logger.info("Collating data");
         BufferedReader br = null;
         // final XYSeriesCollection dataset = new XYSeriesCollection();
         final DefaultCategoryDataset dataset = new DefaultCategoryDataset();
 
         XYSeries prediction = null;
+        ConfidenceProfile profile;
         for (String dataFile : files) {
+            profile = profiles == null ? null : profiles.get(dataFile);
+            if (profile != null) {
+                for (Entry<String, Double> entry : profile.getAverageConfidence().entrySet()) {
+                    dataset.addValue(entry.getValue(), entry.getKey(), dataFile);
+                }
+                continue;
+            }
             try {
                 String sCurrentLine;
                 prediction = new XYSeries(dataFile);
@@ -105,16 +118,33 @@ public class Charter {
      * Creates data set containing numeric attributes along with prediction
      * confidence
      * 
+     * @param profiles
+     *            The confidence profiles of an error analysis by output file,
+     *            may be null
      * @param files
-     *            List of files containing predictions to chart
+     *            List of files containing predictions to chart, read from the
+     *            profiles when they hold them
      * @return the series collection to chart
      */
-    private XYSeriesCollection createNumericDataset(String[] files) {
+    private XYSeriesCollection createNumericDataset(Map<String, ConfidenceProfile> profiles, String[] files) {
         _logger.info("Collating data");
         BufferedReader br = null;
         XYSeries prediction = null;
         final XYSeriesCollection dataset = new XYSeriesCollection();
+        ConfidenceProfile profile;
+        double[] values, confidences;
         for (String dataFile : files) {
+            profile = profiles == null ? null : profiles.get(dataFile);
+            if (profile != null) {
+                prediction = new XYSeries(dataFile);
+                values = profile.getValues();
+                confidences = profile.getConfidences();
+                for (int i = 0; i < values.length; i++) {
+                    prediction.add(values[i], confidences[i]);
+                }
+                dataset.addSeries(prediction);
+                continue;
+            }
             try {
                 String sCurrentLine;
                 br = new BufferedReader(new FileReader(dataFile));
@@ -172,7 +202,25 @@ public class Charter {
      * @return chart The chart to be drawn
      */
     public JFreeChart getCategoricalChart(String[] files) throws IOException {
-        DefaultCategoryDataset dataset = createCategoricalDataset(files);
+        return getCategoricalChart(null, files);
+    }
+
+    /**
+     * Charts data set containing categorical attributes against with prediction
+     * confidence, reading the confidence profiles of an error analysis in
+     * memory
+     * 
+     * @param profiles
+     *            The confidence profiles of an error analysis by output file
+     * @param files
+     *            List of files containing predictions to chart
+     * @throws IOException
+     *             If a file missing from the profiles can not be read
+     * @return chart The chart to be drawn
+     */
+    public JFreeChart getCategoricalChart(Map<String, ConfidenceProfile> profiles, String[] files)
+            throws IOException {
+        DefaultCategoryDataset dataset = createCategoricalDataset(profiles, files);
         JFreeChart chart = ChartFactory.createBarChart3D(_chartName, // chart
                                                                      // title
                 "Attribute", // domain axis label
@@ -197,7 +245,24 @@ public class Charter {
      * @return chart The chart to be drawn
      */
     public JFreeChart getNumericChart(String[] files) throws IOException {
-        XYSeriesCollection dataset = createNumericDataset(files);
+        return getNumericChart(null, files);
+    }
+
+    /**
+     * Charts data set containing numeric attributes against with prediction
+     * confidence, reading the confidence profiles of an error analysis in
+     * memory
+     * 
+     * @param profiles
+     *            The confidence profiles of an error analysis by output file
+     * @param files
+     *            List of files containing predictions to chart
+     * @throws IOException
+     *             If a file missing from the profiles can not be read
+     * @return chart The chart to be drawn
+     */
+    public JFreeChart getNumericChart(Map<String, ConfidenceProfile> profiles, String[] files) throws IOException {
+        XYSeriesCollection dataset = createNumericDataset(profiles, files);
         JFreeChart chart = ChartFactory.createScatterPlot(_chartName, // chart
                                                                       // title
                 "Values", // domain axis label
@@ -229,7 +294,7 @@ public class Charter {
                 _experimenter._config);
         sc.errorAnalysis(category);
         Charter pd = new Charter(category);
-        JFreeChart chart = pd.getCategoricalChart(files);
+        JFreeChart chart = pd.getCategoricalChart(sc.getConfidenceProfiles(category), files);
         pd.saveChart(category, chart);
     }
 
@@ -258,10 +323,11 @@ public class Charter {
         String[] categories = categoryList.toArray(new String[categoryList.size()]);
         Charter pd = null;
         JFreeChart chart = null;
+        // score the test instances once for all categories
+        sc.errorAnalysis(categories);
         for (String category : categories) {
-            sc.errorAnalysis(category);
             pd = new Charter(category);
-            chart = pd.getCategoricalChart(files);
+            chart = pd.getCategoricalChart(sc.getConfidenceProfiles(category), files);
             if (mode) {
                 pd.drawChart(_chartName, chart);
                 Thread.sleep(5000);
@@ -303,7 +369,7 @@ public class Charter {
                 _experimenter._config);
         Charter pd = new Charter(numeric);
         sc.errorAnalysis(numeric);
-        JFreeChart chart = pd.getNumericChart(files);
+        JFreeChart chart = pd.getNumericChart(sc.getConfidenceProfiles(numeric), files);
         pd.saveChart(numeric, chart);
     }
 
@@ -331,10 +397,11 @@ public class Charter {
         String[] numerics = numericsList.toArray(new String[numericsList.size()]);
         Charter pd = null;
         JFreeChart chart = null;
+        // score the test instances once for all numerics
+        sc.errorAnalysis(numerics);
         for (String numeric : numerics) {
-            sc.errorAnalysis(numeric);
             pd = new Charter(numeric);
-            chart = pd.getNumericChart(files);
+            chart = pd.getNumericChart(sc.getConfidenceProfiles(numeric), files);
             if (mode) {
                 pd.drawChart(_chartName, chart);
                 Thread.sleep(5000);
@@ -0,0 +1,368 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+/**
+ * Buffers the records of a dump, or of a chunk of it, with provisional (first
+ * seen) codes for their nominal and string values. Each ingest discovers its
+ * own dictionaries so that chunks can be ingested concurrently and merged in
+ * file order afterwards.
+ */
+public final class ChunkIngest implements Callable<ChunkIngest> {
+
+    /**
+     * Ingests the records of the chunk
+     * 
+     * @return this ingest
+     * @throws IOException
+     * @throws ParseException
+     */
+    @Override
+    public ChunkIngest call() throws IOException, ParseException {
+        DumpReader reader = _chunk.open(_readerType);
+        try {
+            ingest(reader);
+        } finally {
+            reader.close();
+        }
+        return this;
+    }
+
+    /**
+     * Compiles the discovery decoder of an attribute from its WEKA type
+     * 
+     * @param attribute
+     *            The attribute to decode
+     * @param slot
+     *            The slot to decode to
+     * @return the attribute decoder
+     */
+    private ColumnDecoder compileDecoder(Attributes attribute, int slot) {
+        String name = attribute.getAttributeName();
+        String type = attribute.getAttributeType();
+        if (type.equals("numeric")) {
+            return ColumnDecoder.numeric(slot);
+        } else if (type.equals("string")) {
+            return ColumnDecoder.stringDiscovery(slot, _dictionaries.get(slot));
+        } else if (type.equals("date")) {
+            return ColumnDecoder.date(slot, DateParser.forFormat(_config._dateFormat));
+        } else if (type.equals("nominal")) {
+            // only dump columns take part in the order of nominal attributes
+            return ColumnDecoder.nominalDiscovery(slot, _dictionaries.get(slot), slot < _columnSlotCount ? _nominalOrder
+                    : null);
+        }
+        _logger.warn("Found unanticipated attribute type: " + name + " = " + type);
+        return ColumnDecoder.skip();
+    }
+
+    /**
+     * Decodes the current record of a reader and computes its derived features
+     * 
+     * @param reader
+     *            The reader positioned at the record
+     * @param row
+     *            The buffered record to decode into
+     * @return the trimmed class value of the record or null if the dump has no
+     *         class column
+     * @throws ParseException
+     */
+    public String decode(DumpReader reader, double[] row) throws ParseException {
+        String classValue = _plan.decode(reader, row);
+        // compute each derived feature once for this record
+        for (int j = 0; j < _features.length; j++) {
+            _features[j].compute(row, reader);
+        }
+        return classValue;
+    }
+
+    /**
+     * @return the count of non-empty values of each dump column
+     */
+    public int[] getAttributeCounts() {
+        return _attributeCounts;
+    }
+
+    /**
+     * @return the dump columns in order of their first non-empty value
+     */
+    public List<Integer> getAttributeOrder() {
+        return _attributeOrder;
+    }
+
+    /**
+     * @return the number of slots taken by dump columns in the buffered record
+     */
+    public int getColumnSlotCount() {
+        return _columnSlotCount;
+    }
+
+    /**
+     * @return the provisional dictionaries of nominal and string slots
+     */
+    public List<NominalDictionary> getDictionaries() {
+        return _dictionaries;
+    }
+
+    /**
+     * @return the last class value of the ingested records or null if none has
+     *         one
+     */
+    public String getLastClassValue() {
+        return _lastClassValue;
+    }
+
+    /**
+     * @return the number of leading records ingested before the first class
+     *         value, which are weighted as negative until merged after the
+     *         records of a previous chunk
+     */
+    public int getLeadingUnclassified() {
+        return _leadingUnclassified;
+    }
+
+    /**
+     * @return the slots of nominal dump attributes in order of discovery
+     */
+    public List<Integer> getNominalOrder() {
+        return _nominalOrder;
+    }
+
+    /**
+     * @return the buffered records; the last slot of each holds its weight
+     */
+    public List<double[]> getRows() {
+        return _rows;
+    }
+
+    /**
+     * @return the attribute held by each slot of the buffered record
+     */
+    public List<Attributes> getSlotAttributes() {
+        return _slotAttributes;
+    }
+
+    /**
+     * Buffers all records of a reader
+     * 
+     * @param reader
+     *            The reader positioned at the first record
+     * @return the number of records ingested
+     * @throws IOException
+     * @throws ParseException
+     */
+    public int ingest(DumpReader reader) throws IOException, ParseException {
+        int count = 0;
+        int slots = _slotAttributes.size();
+        String value;
+        double[] row;
+        while (reader.read()) {
+            row = new double[slots + 1];
+            for (int i = 0; i < reader.size(); i++) {
+                if (!reader.isEmpty(i)) {
+                    if (_attributeCounts[i]++ == 0) {
+                        _attributeOrder.add(i);
+                    }
+                }
+            }
+            value = decode(reader, row);
+            if (value != null) {
+                _lastClassValue = value;
+            } else if (_lastClassValue == null) {
+                _leadingUnclassified++;
+            }
+            // records without a class cell take the class value of the
+            // previous record
+            row[slots] = weightOf(_lastClassValue);
+            _rows.add(row);
+            count += 1;
+            if (count % 10000 == 0) {
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("Ingested " + count + " records.");
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the weight of a record according to its class value
+     * 
+     * @param classValue
+     *            The class value of the record, null if it has none
+     * @return the positive class weight if the class value is positive, the
+     *         negative class weight otherwise
+     */
+    public double weightOf(String classValue) {
+        if (_config._positiveClassValue.equals(classValue)) {
+            return _config._positiveClassWeight;
+        }
+        return _config._negativeClassWeight;
+    }
+
+    /**
+     * the count of non-empty values of each dump column
+     */
+    private int[] _attributeCounts;
+
+    /**
+     * the dump columns in order of their first non-empty value
+     */
+    private List<Integer> _attributeOrder;
+
+    /**
+     * the chunk to ingest
+     */
+    private CsvChunk _chunk;
+
+    /**
+     * the number of slots taken by dump columns in the buffered record
+     */
+    private int _columnSlotCount;
+
+    /**
+     * the handle to the configuration reader
+     */
+    private ConfigReader _config;
+
+    /**
+     * the provisional dictionaries of nominal and string slots
+     */
+    private List<NominalDictionary> _dictionaries;
+
+    /**
+     * the views computing the derived features of each record
+     */
+    private FeatureRow[] _features;
+
+    /**
+     * the last class value of the ingested records
+     */
+    private String _lastClassValue;
+
+    /**
+     * the number of records ingested before the first class value
+     */
+    private int _leadingUnclassified;
+
+    /**
+     * a handle to the logging object
+     */
+    private Logger _logger;
+
+    /**
+     * the slots of nominal dump attributes in order of discovery
+     */
+    private List<Integer> _nominalOrder;
+
+    /**
+     * the compiled decoding plan of the dump columns
+     */
+    private ColumnPlan _plan;
+
+    /**
+     * the type of dump reader chunks are read with
+     */
+    private String _readerType;
+
+    /**
+     * the buffered records
+     */
+    private List<double[]> _rows;
+
+    /**
+     * the attribute held by each slot of the buffered record
+     */
+    private List<Attributes> _slotAttributes;
+
+    /**
+     * Class constructor - assigns a slot in the buffered record to each
+     * included dump column and to each derived feature, and compiles their
+     * discovery decoders.
+     * 
+     * @param config
+     *            The configuration holding the dump attributes
+     * @param header
+     *            The header of the CSV dump
+     * @param features
+     *            The derived features to ingest
+     * @param internalMap
+     *            Mapping of internal attribute name to its location
+     * @param readerType
+     *            The type of dump reader the chunk is read with
+     * @param chunk
+     *            The chunk to ingest when called, may be null if the records
+     *            are passed to ingest instead
+     */
+    public ChunkIngest(ConfigReader config, String[] header, List<DerivedFeature> features,
+            Map<String, Integer> internalMap, String readerType, CsvChunk chunk) {
+        _logger = Logger.getLogger(AppLogger.class.getName());
+        _config = config;
+        _readerType = readerType;
+        _chunk = chunk;
+        _plan = new ColumnPlan(header, config);
+        _slotAttributes = new ArrayList<Attributes>();
+        int[] columnSlots = new int[header.length];
+        for (int i = 0; i < header.length; i++) {
+            columnSlots[i] = -1;
+            if (_plan.getAttribute(i) != null) {
+                columnSlots[i] = _slotAttributes.size();
+                _slotAttributes.add(_plan.getAttribute(i));
+            }
+        }
+        _columnSlotCount = _slotAttributes.size();
+        for (DerivedFeature feature : features) {
+            _slotAttributes.add(feature.getAttribute());
+        }
+        _nominalOrder = new ArrayList<Integer>();
+        _dictionaries = new ArrayList<NominalDictionary>();
+        for (Attributes slotAttribute : _slotAttributes) {
+            String type = slotAttribute.getAttributeType();
+            boolean coded = type.equals("nominal") || type.equals("string");
+            _dictionaries.add(coded ? new NominalDictionary() : null);
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (columnSlots[i] >= 0) {
+                _plan.setDecoder(i, compileDecoder(_plan.getAttribute(i), columnSlots[i]));
+            }
+        }
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        for (int slot = 0; slot < _slotAttributes.size(); slot++) {
+            slots.put(_slotAttributes.get(slot).getAttributeName(), slot);
+        }
+        _features = new FeatureRow[features.size()];
+        for (int j = 0; j < _features.length; j++) {
+            int slot = _columnSlotCount + j;
+            _features[j] = new FeatureRow(features.get(j), compileDecoder(_slotAttributes.get(slot), slot), slots,
+                    _dictionaries, null, internalMap, config);
+        }
+        _attributeCounts = new int[header.length];
+        _attributeOrder = new ArrayList<Integer>();
+        _rows = new ArrayList<double[]>();
+    }
+}
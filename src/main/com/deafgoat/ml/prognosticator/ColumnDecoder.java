@@ -0,0 +1,476 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+import java.util.List;
+
+// Weka
+import weka.core.Attribute;
+import weka.core.Utils;
+
+/**
+ * Decodes the cells of one dump column into a slot of the instance value
+ * array. A decoder is resolved once per column from the attribute type, so
+ * decoding a cell involves no attribute lookups or type comparisons.
+ */
+public abstract class ColumnDecoder {
+
+    /**
+     * The kinds of column decoders
+     */
+    public enum Kind {
+        DATE, NOMINAL, NUMERIC, SKIP, STRING
+    }
+
+    /**
+     * Decodes date cells with a shared date parser
+     */
+    private static final class DateDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(String value, double[] values) throws ParseException {
+            values[_target] = isMissing(value) ? Utils.missingValue() : _parser.parse(value);
+        }
+
+        /**
+         * the parser of the date format
+         */
+        private final DateParser _parser;
+
+        /**
+         * @param target
+         *            The slot to decode to
+         * @param parser
+         *            The parser of the date format
+         */
+        DateDecoder(int target, DateParser parser) {
+            super(Kind.DATE, target);
+            _parser = parser;
+        }
+    }
+
+    /**
+     * Decodes nominal cells to their code in a dictionary
+     */
+    private static final class NominalDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(String value, double[] values) {
+            values[_target] = isMissing(value) ? Utils.missingValue() : _dictionary.code(value);
+        }
+
+        /**
+         * the dictionary of the nominal attribute
+         */
+        private final NominalDictionary _dictionary;
+
+        /**
+         * @param target
+         *            The slot to decode to
+         * @param dictionary
+         *            The dictionary of the nominal attribute
+         */
+        NominalDecoder(int target, NominalDictionary dictionary) {
+            super(Kind.NOMINAL, target);
+            _dictionary = dictionary;
+        }
+    }
+
+    /**
+     * Decodes nominal cells to provisional codes, interning values as they are
+     * discovered
+     */
+    private static final class NominalDiscoveryDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(String value, double[] values) {
+            if (value.length() == 0) {
+                values[_target] = Utils.missingValue();
+                return;
+            }
+            // '?' is part of the discovered range but decodes as missing
+            int code = _dictionary.intern(value);
+            if (!_discovered) {
+                _discovered = true;
+                if (_order != null) {
+                    _order.add(_target);
+                }
+            }
+            values[_target] = isMissing(value) ? Utils.missingValue() : code;
+        }
+
+        /**
+         * the dictionary of the nominal attribute
+         */
+        private final NominalDictionary _dictionary;
+
+        /**
+         * indicates if a value has been discovered
+         */
+        private boolean _discovered;
+
+        /**
+         * the slots of nominal attributes in order of discovery
+         */
+        private final List<Integer> _order;
+
+        /**
+         * @param target
+         *            The slot to decode to
+         * @param dictionary
+         *            The dictionary to intern values into
+         * @param order
+         *            The list to record the order of discovery into
+         */
+        NominalDiscoveryDecoder(int target, NominalDictionary dictionary, List<Integer> order) {
+            super(Kind.NOMINAL, target);
+            _dictionary = dictionary;
+            _order = order;
+        }
+    }
+
+    /**
+     * Decodes numeric cells
+     */
+    private static final class NumericDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(DumpReader reader, int column, double[] values) {
+            values[_target] = reader.isMissing(column) ? Utils.missingValue() : reader.getDouble(column);
+        }
+
+        @Override
+        public void decode(String value, double[] values) {
+            values[_target] = isMissing(value) ? Utils.missingValue() : Double.parseDouble(value);
+        }
+
+        /**
+         * @param target
+         *            The slot to decode to
+         */
+        NumericDecoder(int target) {
+            super(Kind.NUMERIC, target);
+        }
+    }
+
+    /**
+     * Ignores the cells of excluded columns
+     */
+    private static final class SkipDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(DumpReader reader, int column, double[] values) {
+        }
+
+        @Override
+        public void decode(String value, double[] values) {
+        }
+
+        /**
+         * Class constructor
+         */
+        SkipDecoder() {
+            super(Kind.SKIP, -1);
+        }
+    }
+
+    /**
+     * Decodes string cells of instances that are written out as soon as they
+     * are decoded; the attribute only holds the value of the current record
+     */
+    private static final class StreamingStringDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(String value, double[] values) {
+            if (isMissing(value)) {
+                values[_target] = Utils.missingValue();
+            } else if (_reserved == null) {
+                _attribute.setStringValue(value);
+                values[_target] = 0;
+            } else {
+                _attribute.setStringValue(_reserved);
+                values[_target] = _attribute.addStringValue(value);
+            }
+        }
+
+        /**
+         * the string attribute holding the current value
+         */
+        private final Attribute _attribute;
+
+        /**
+         * the value held at index 0 ahead of the current value, or null
+         */
+        private final String _reserved;
+
+        /**
+         * @param target
+         *            The slot to decode to
+         * @param attribute
+         *            The string attribute holding the current value
+         * @param reserved
+         *            The value to hold at index 0 ahead of the current value,
+         *            or null
+         */
+        StreamingStringDecoder(int target, Attribute attribute, String reserved) {
+            super(Kind.STRING, target);
+            _attribute = attribute;
+            _reserved = reserved;
+        }
+    }
+
+    /**
+     * Decodes string cells to their index in a string attribute
+     */
+    private static final class StringDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(String value, double[] values) {
+            values[_target] = isMissing(value) ? Utils.missingValue() : _attribute.addStringValue(value);
+        }
+
+        /**
+         * the string attribute holding the values
+         */
+        private final Attribute _attribute;
+
+        /**
+         * @param target
+         *            The slot to decode to
+         * @param attribute
+         *            The string attribute holding the values
+         */
+        StringDecoder(int target, Attribute attribute) {
+            super(Kind.STRING, target);
+            _attribute = attribute;
+        }
+    }
+
+    /**
+     * Decodes string cells to provisional codes in order of first appearance
+     */
+    private static final class StringDiscoveryDecoder extends ColumnDecoder {
+
+        @Override
+        public void decode(String value, double[] values) {
+            values[_target] = isMissing(value) ? Utils.missingValue() : _dictionary.intern(value);
+        }
+
+        /**
+         * the dictionary to intern values into
+         */
+        private final NominalDictionary _dictionary;
+
+        /**
+         * @param target
+         *            The slot to decode to
+         * @param dictionary
+         *            The dictionary to intern values into
+         */
+        StringDiscoveryDecoder(int target, NominalDictionary dictionary) {
+            super(Kind.STRING, target);
+            _dictionary = dictionary;
+        }
+    }
+
+    /**
+     * the decoder for cells that are not used
+     */
+    private static final ColumnDecoder SKIP = new SkipDecoder();
+
+    /**
+     * Returns a decoder for date cells
+     * 
+     * @param target
+     *            The slot to decode to
+     * @param parser
+     *            The parser of the date format, which may be shared across
+     *            threads
+     * @return the date decoder
+     */
+    public static ColumnDecoder date(int target, DateParser parser) {
+        return new DateDecoder(target, parser);
+    }
+
+    /**
+     * Returns a decoder for nominal cells whose range is already known
+     * 
+     * @param target
+     *            The slot to decode to
+     * @param dictionary
+     *            The dictionary of the nominal attribute
+     * @return the nominal decoder
+     */
+    public static ColumnDecoder nominal(int target, NominalDictionary dictionary) {
+        return new NominalDecoder(target, dictionary);
+    }
+
+    /**
+     * Returns a decoder for nominal cells whose range is being discovered
+     * 
+     * @param target
+     *            The slot to decode to
+     * @param dictionary
+     *            The dictionary to intern values into
+     * @param order
+     *            The list the target is added to once its first value is
+     *            discovered, may be null
+     * @return the nominal decoder
+     */
+    public static ColumnDecoder nominalDiscovery(int target, NominalDictionary dictionary, List<Integer> order) {
+        return new NominalDiscoveryDecoder(target, dictionary, order);
+    }
+
+    /**
+     * Returns a decoder for numeric cells
+     * 
+     * @param target
+     *            The slot to decode to
+     * @return the numeric decoder
+     */
+    public static ColumnDecoder numeric(int target) {
+        return new NumericDecoder(target);
+    }
+
+    /**
+     * Returns the decoder for cells that are not used
+     * 
+     * @return the skip decoder
+     */
+    public static ColumnDecoder skip() {
+        return SKIP;
+    }
+
+    /**
+     * Returns a decoder for string cells of instances that are written out as
+     * soon as they are decoded
+     * 
+     * @param target
+     *            The slot to decode to
+     * @param attribute
+     *            The string attribute holding the current value
+     * @param reserved
+     *            The value to hold at index 0 ahead of the current value, so
+     *            no value is coded 0, or null
+     * @return the string decoder
+     */
+    public static ColumnDecoder streamingString(int target, Attribute attribute, String reserved) {
+        return new StreamingStringDecoder(target, attribute, reserved);
+    }
+
+    /**
+     * Returns a decoder for string cells
+     * 
+     * @param target
+     *            The slot to decode to
+     * @param attribute
+     *            The string attribute holding the values
+     * @return the string decoder
+     */
+    public static ColumnDecoder string(int target, Attribute attribute) {
+        return new StringDecoder(target, attribute);
+    }
+
+    /**
+     * Returns a decoder for string cells whose values are being discovered
+     * 
+     * @param target
+     *            The slot to decode to
+     * @param dictionary
+     *            The dictionary to intern values into
+     * @return the string decoder
+     */
+    public static ColumnDecoder stringDiscovery(int target, NominalDictionary dictionary) {
+        return new StringDiscoveryDecoder(target, dictionary);
+    }
+
+    /**
+     * Indicates if a cell holds a missing value
+     * 
+     * @param value
+     *            The trimmed cell value
+     * @return true if the cell is empty or '?'
+     */
+    static boolean isMissing(String value) {
+        return value.length() == 0 || (value.length() == 1 && value.charAt(0) == '?');
+    }
+
+    /**
+     * Decodes a cell of the current record of a reader into the value array
+     * 
+     * @param reader
+     *            The reader positioned at the record
+     * @param column
+     *            The column of the cell
+     * @param values
+     *            The instance value array to decode into
+     * @throws ParseException
+     *             If a date can not be parsed
+     */
+    public void decode(DumpReader reader, int column, double[] values) throws ParseException {
+        decode(reader.get(column).trim(), values);
+    }
+
+    /**
+     * Decodes a cell into the value array
+     * 
+     * @param value
+     *            The trimmed cell value
+     * @param values
+     *            The instance value array to decode into
+     * @throws ParseException
+     *             If a date can not be parsed
+     */
+    public abstract void decode(String value, double[] values) throws ParseException;
+
+    /**
+     * @return the kind of this decoder
+     */
+    public Kind getKind() {
+        return _kind;
+    }
+
+    /**
+     * @return the slot this decoder writes to
+     */
+    public int getTarget() {
+        return _target;
+    }
+
+    /**
+     * the kind of this decoder
+     */
+    private final Kind _kind;
+
+    /**
+     * the slot this decoder writes to
+     */
+    protected final int _target;
+
+    /**
+     * @param kind
+     *            The kind of this decoder
+     * @param target
+     *            The slot this decoder writes to
+     */
+    protected ColumnDecoder(Kind kind, int target) {
+        _kind = kind;
+        _target = target;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.List;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+/**
+ * Compiled decoding plan for the columns of a CSV dump. The plan resolves the
+ * configured attribute of each header column once; its decoders then turn each
+ * record into an instance value array without per cell lookups.
+ */
+public final class ColumnPlan {
+
+    /**
+     * Decodes the current record of a reader into the value array
+     * 
+     * @param reader
+     *            The reader positioned at the record
+     * @param values
+     *            The instance value array to decode into
+     * @return the trimmed class value of the record or null if the dump has no
+     *         class column
+     * @throws ParseException
+     *             If a date can not be parsed
+     */
+    public String decode(DumpReader reader, double[] values) throws ParseException {
+        int size = reader.size();
+        for (int i = 0; i < size; i++) {
+            _decoders[i].decode(reader, i, values);
+        }
+        return _classColumn >= 0 && _classColumn < size ? reader.get(_classColumn).trim() : null;
+    }
+
+    /**
+     * Decodes a record into the value array
+     * 
+     * @param record
+     *            The cells of the record
+     * @param values
+     *            The instance value array to decode into
+     * @return the trimmed class value of the record or null if the dump has no
+     *         class column
+     * @throws ParseException
+     *             If a date can not be parsed
+     */
+    public String decode(List<String> record, double[] values) throws ParseException {
+        String value, classValue = null;
+        for (int i = 0; i < record.size(); i++) {
+            value = record.get(i).trim();
+            _decoders[i].decode(value, values);
+            if (i == _classColumn) {
+                classValue = value;
+            }
+        }
+        return classValue;
+    }
+
+    /**
+     * Returns the configured attribute of a column
+     * 
+     * @param column
+     *            The column index
+     * @return the attribute or null if the column is not included
+     */
+    public Attributes getAttribute(int column) {
+        return _attributes[column];
+    }
+
+    /**
+     * @return the column holding the class attribute or -1 if there is none
+     */
+    public int getClassColumn() {
+        return _classColumn;
+    }
+
+    /**
+     * Returns the decoder of a column
+     * 
+     * @param column
+     *            The column index
+     * @return the column decoder
+     */
+    public ColumnDecoder getDecoder(int column) {
+        return _decoders[column];
+    }
+
+    /**
+     * @return the number of columns in the dump
+     */
+    public int numColumns() {
+        return _decoders.length;
+    }
+
+    /**
+     * Sets the decoder of a column
+     * 
+     * @param column
+     *            The column index
+     * @param decoder
+     *            The column decoder
+     */
+    public void setDecoder(int column, ColumnDecoder decoder) {
+        _decoders[column] = decoder;
+    }
+
+    /**
+     * the included attribute of each column
+     */
+    private Attributes[] _attributes;
+
+    /**
+     * the column holding the class attribute
+     */
+    private int _classColumn;
+
+    /**
+     * the decoder of each column
+     */
+    private ColumnDecoder[] _decoders;
+
+    /**
+     * Class constructor - resolves the configured attribute of each header
+     * column. Decoders default to skipping their column.
+     * 
+     * @param header
+     *            The header of the CSV dump
+     * @param config
+     *            The configuration holding the dump attributes
+     */
+    public ColumnPlan(String[] header, ConfigReader config) {
+        Logger logger = Logger.getLogger(AppLogger.class.getName());
+        HashMap<String, Integer> attributeMap = config._attributeMap.get(config._dumpFile);
+        List<Attributes> attributes = config._attributes.get(config._dumpFile);
+        Integer index;
+        _attributes = new Attributes[header.length];
+        _decoders = new ColumnDecoder[header.length];
+        _classColumn = -1;
+        for (int i = 0; i < header.length; i++) {
+            _decoders[i] = ColumnDecoder.skip();
+            index = attributeMap.get(header[i].trim().toLowerCase());
+            if (index == null) {
+                logger.error("Could not find specified configuration attribute " + header[i]);
+                continue;
+            }
+            // only consider attributes marked as 'include'
+            if (attributes.get(index).isInclude()) {
+                _attributes[i] = attributes.get(index);
+                if (_attributes[i].getAttributeName().equals(config._classValue)) {
+                    _classColumn = i;
+                }
+            }
+        }
+    }
+}
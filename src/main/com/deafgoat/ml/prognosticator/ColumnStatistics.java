@@ -0,0 +1,523 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+// Apache IO
+import org.apache.commons.io.IOUtils;
+
+// JSON
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Weka
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Per attribute statistics of a data set, collected in a single pass as
+ * instances are added: missing and distinct counts of every attribute, and min,
+ * max, weighted mean and variance of numeric and date attributes. Distinct
+ * counts are exact up to DistinctCounter.EXACT_LIMIT values and estimated
+ * beyond. Statistics are saved as a JSON sidecar next to the data file
+ * so that filters and reports can use them without scanning the data again.
+ */
+public final class ColumnStatistics {
+
+    /**
+     * the extension appended to a data file to name its sidecar
+     */
+    public static final String SIDECAR_EXTENSION = ".stats.json";
+
+    /**
+     * Loads the statistics saved in a sidecar
+     * 
+     * @param file
+     *            The sidecar file
+     * @return the statistics
+     * @throws IOException
+     *             If the sidecar can not be read
+     * @throws JSONException
+     *             If the sidecar can not be parsed
+     */
+    public static ColumnStatistics load(String file) throws IOException, JSONException {
+        Reader reader = new FileReader(file);
+        JSONObject json;
+        try {
+            json = new JSONObject(IOUtils.toString(reader));
+        } finally {
+            reader.close();
+        }
+        JSONArray attributes = json.getJSONArray("attributes");
+        ColumnStatistics statistics = new ColumnStatistics(attributes.length());
+        statistics._numInstances = json.getLong("instances");
+        statistics._sumOfWeights = json.getDouble("sumOfWeights");
+        JSONObject attribute;
+        for (int i = 0; i < attributes.length(); i++) {
+            attribute = attributes.getJSONObject(i);
+            statistics._names[i] = attribute.getString("name");
+            statistics._types[i] = attribute.getString("type");
+            statistics._missing[i] = attribute.getLong("missing");
+            statistics._distinct[i] = attribute.getLong("distinct");
+            statistics._distinctExact[i] = attribute.getBoolean("distinctExact");
+            statistics._min[i] = attribute.optDouble("min");
+            statistics._max[i] = attribute.optDouble("max");
+            statistics._mean[i] = attribute.optDouble("mean");
+            statistics._variance[i] = attribute.optDouble("variance");
+        }
+        return statistics;
+    }
+
+    /**
+     * Collects the statistics of a data set
+     * 
+     * @param data
+     *            The data set
+     * @return the statistics of the data set
+     */
+    public static ColumnStatistics of(Instances data) {
+        ColumnStatistics statistics = new ColumnStatistics(data);
+        Instance instance;
+        for (int i = 0; i < data.numInstances(); i++) {
+            instance = data.instance(i);
+            statistics.add(instance.weight(), instance.toDoubleArray());
+        }
+        return statistics;
+    }
+
+    /**
+     * Puts a statistic into a JSON object unless it is undefined
+     * 
+     * @param json
+     *            The JSON object
+     * @param key
+     *            The name of the statistic
+     * @param value
+     *            The statistic
+     * @throws JSONException
+     *             If the statistic can not be put
+     */
+    private static void putDefined(JSONObject json, String key, double value) throws JSONException {
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            json.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the sidecar of a data file
+     * 
+     * @param dataFile
+     *            The ARFF or columnar data file
+     * @return the name of the sidecar of the file
+     */
+    public static String sidecarOf(String dataFile) {
+        return dataFile + SIDECAR_EXTENSION;
+    }
+
+    /**
+     * Adds the values of an instance
+     * 
+     * @param weight
+     *            The weight of the instance
+     * @param values
+     *            The values of the instance, coded as in the data set header
+     */
+    public void add(double weight, double[] values) {
+        _finished = false;
+        _numInstances++;
+        _sumOfWeights += weight;
+        double value, delta;
+        for (int i = 0; i < values.length; i++) {
+            value = values[i];
+            // missing values are NaN
+            if (value != value) {
+                _missing[i]++;
+                continue;
+            }
+            if (_header.attribute(i).isString()) {
+                _counters[i].add(_header.attribute(i).value((int) value));
+                continue;
+            }
+            _counters[i].add(value);
+            if (!_numeric[i]) {
+                continue;
+            }
+            if (value < _min[i] || _min[i] != _min[i]) {
+                _min[i] = value;
+            }
+            if (value > _max[i] || _max[i] != _max[i]) {
+                _max[i] = value;
+            }
+            // weighted running variance, with the mean kept as WEKA computes it
+            _sum[i] += weight * value;
+            _weight[i] += weight;
+            delta = value - _runningMean[i];
+            _runningMean[i] += weight / _weight[i] * delta;
+            _m2[i] += weight * delta * (value - _runningMean[i]);
+        }
+    }
+
+    /**
+     * Indicates if these statistics describe a data set, checking its header,
+     * instance count and total weight
+     * 
+     * @param data
+     *            The data set
+     * @return true if the statistics were collected from the same data
+     */
+    public boolean describes(Instances data) {
+        if (data.numAttributes() != _names.length || data.numInstances() != _numInstances
+                || data.sumOfWeights() != _sumOfWeights) {
+            return false;
+        }
+        for (int i = 0; i < _names.length; i++) {
+            if (!data.attribute(i).name().equals(_names[i])
+                    || !Attribute.typeToString(data.attribute(i)).equals(_types[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Completes collection, deriving the statistics from the accumulators once
+     * for all the values added so far
+     */
+    private void finish() {
+        if (_counters == null || _finished) {
+            return;
+        }
+        _finished = true;
+        for (int i = 0; i < _names.length; i++) {
+            _distinct[i] = _counters[i].count();
+            _distinctExact[i] = _counters[i].isExact();
+            if (_weight[i] > 0) {
+                _mean[i] = _sum[i] / _weight[i];
+            }
+            if (_weight[i] > 1) {
+                _variance[i] = _m2[i] / (_weight[i] - 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the distinct count of an attribute
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return the number of distinct non-missing values
+     */
+    public long getDistinct(int index) {
+        finish();
+        return _distinct[index];
+    }
+
+    /**
+     * Returns the max of an attribute
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return the largest non-missing value or NaN if there is none or the
+     *         attribute is not numeric
+     */
+    public double getMax(int index) {
+        return _max[index];
+    }
+
+    /**
+     * Returns the weighted mean of an attribute
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return the weighted mean of the non-missing values or NaN if there is
+     *         none or the attribute is not numeric
+     */
+    public double getMean(int index) {
+        finish();
+        return _mean[index];
+    }
+
+    /**
+     * Returns the min of an attribute
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return the smallest non-missing value or NaN if there is none or the
+     *         attribute is not numeric
+     */
+    public double getMin(int index) {
+        return _min[index];
+    }
+
+    /**
+     * Returns the missing count of an attribute
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return the number of missing values
+     */
+    public long getMissing(int index) {
+        return _missing[index];
+    }
+
+    /**
+     * Returns the name of an attribute
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return the attribute name
+     */
+    public String getName(int index) {
+        return _names[index];
+    }
+
+    /**
+     * @return the number of instances
+     */
+    public long getNumInstances() {
+        return _numInstances;
+    }
+
+    /**
+     * @return the total weight of the instances
+     */
+    public double getSumOfWeights() {
+        return _sumOfWeights;
+    }
+
+    /**
+     * Returns the weighted variance of an attribute
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return the weighted sample variance of the non-missing values or NaN if
+     *         their total weight is not above 1 or the attribute is not numeric
+     */
+    public double getVariance(int index) {
+        finish();
+        return _variance[index];
+    }
+
+    /**
+     * Indicates if the distinct count of an attribute is exact
+     * 
+     * @param index
+     *            The index of the attribute
+     * @return true if the count is exact, false if it is estimated
+     */
+    public boolean isDistinctExact(int index) {
+        finish();
+        return _distinctExact[index];
+    }
+
+    /**
+     * @return the number of attributes
+     */
+    public int numAttributes() {
+        return _names.length;
+    }
+
+    /**
+     * Saves the statistics as a JSON sidecar
+     * 
+     * @param file
+     *            The sidecar file
+     * @throws IOException
+     *             If the sidecar can not be written
+     */
+    public void save(String file) throws IOException {
+        finish();
+        Writer writer = new FileWriter(new File(file));
+        try {
+            JSONObject json = new JSONObject();
+            json.put("instances", _numInstances);
+            json.put("sumOfWeights", _sumOfWeights);
+            JSONArray attributes = new JSONArray();
+            JSONObject attribute;
+            for (int i = 0; i < _names.length; i++) {
+                attribute = new JSONObject();
+                attribute.put("name", _names[i]);
+                attribute.put("type", _types[i]);
+                attribute.put("missing", _missing[i]);
+                putDefined(attribute, "min", _min[i]);
+                putDefined(attribute, "max", _max[i]);
+                putDefined(attribute, "mean", _mean[i]);
+                putDefined(attribute, "variance", _variance[i]);
+                attribute.put("distinct", _distinct[i]);
+                attribute.put("distinctExact", _distinctExact[i]);
+                attributes.put(attribute);
+            }
+            json.put("attributes", attributes);
+            writer.write(json.toString(2));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * the distinct value counters of each attribute while collecting
+     */
+    private DistinctCounter[] _counters;
+
+    /**
+     * the distinct count of each attribute
+     */
+    private long[] _distinct;
+
+    /**
+     * indicates if the distinct count of each attribute is exact
+     */
+    private boolean[] _distinctExact;
+
+    /**
+     * indicates if the statistics were derived since the last values were
+     * added
+     */
+    private boolean _finished;
+
+    /**
+     * the data set while collecting, whose string attributes resolve the
+     * string values added
+     */
+    private Instances _header;
+
+    /**
+     * the sum of squared deviations from the running mean of each attribute
+     */
+    private double[] _m2;
+
+    /**
+     * the max of each attribute
+     */
+    private double[] _max;
+
+    /**
+     * the weighted mean of each attribute
+     */
+    private double[] _mean;
+
+    /**
+     * the min of each attribute
+     */
+    private double[] _min;
+
+    /**
+     * the missing count of each attribute
+     */
+    private long[] _missing;
+
+    /**
+     * the name of each attribute
+     */
+    private String[] _names;
+
+    /**
+     * indicates if each attribute is numeric or a date while collecting
+     */
+    private boolean[] _numeric;
+
+    /**
+     * the number of instances
+     */
+    private long _numInstances;
+
+    /**
+     * the running weighted mean of each attribute
+     */
+    private double[] _runningMean;
+
+    /**
+     * the weighted sum of each attribute
+     */
+    private double[] _sum;
+
+    /**
+     * the total weight of the instances
+     */
+    private double _sumOfWeights;
+
+    /**
+     * the type of each attribute
+     */
+    private String[] _types;
+
+    /**
+     * the weighted variance of each attribute
+     */
+    private double[] _variance;
+
+    /**
+     * the total weight of the non-missing values of each attribute
+     */
+    private double[] _weight;
+
+    /**
+     * Class constructor - starts collecting the statistics of a data set
+     * 
+     * @param header
+     *            The data set, or its header, whose attributes code the values
+     *            added
+     */
+    public ColumnStatistics(Instances header) {
+        this(header.numAttributes());
+        _header = header;
+        _counters = new DistinctCounter[_names.length];
+        _sum = new double[_names.length];
+        _weight = new double[_names.length];
+        _runningMean = new double[_names.length];
+        _m2 = new double[_names.length];
+        _numeric = new boolean[_names.length];
+        for (int i = 0; i < _names.length; i++) {
+            _names[i] = header.attribute(i).name();
+            _types[i] = Attribute.typeToString(header.attribute(i));
+            _numeric[i] = header.attribute(i).isNumeric();
+            _counters[i] = new DistinctCounter();
+        }
+    }
+
+    /**
+     * @param numAttributes
+     *            The number of attributes
+     */
+    private ColumnStatistics(int numAttributes) {
+        _names = new String[numAttributes];
+        _types = new String[numAttributes];
+        _missing = new long[numAttributes];
+        _distinct = new long[numAttributes];
+        _distinctExact = new boolean[numAttributes];
+        _min = new double[numAttributes];
+        _max = new double[numAttributes];
+        _mean = new double[numAttributes];
+        _variance = new double[numAttributes];
+        Arrays.fill(_min, Double.NaN);
+        Arrays.fill(_max, Double.NaN);
+        Arrays.fill(_mean, Double.NaN);
+        Arrays.fill(_variance, Double.NaN);
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+// Weka
+import weka.core.Attribute;
+
+/**
+ * Layout of the binary columnar dataset format, a compact alternative to ARFF
+ * for files whose name ends in {@link #EXTENSION}. A file holds a magic number
+ * and version, its row groups, a footer and the offset of the footer:
+ * 
+ * <pre>
+ * int magic, int version
+ * row group*  one block per attribute followed by the weights and sparse
+ *             blocks
+ * footer      relation, class index, attribute names, types, nominal
+ *             dictionaries and date formats, then for each row group its
+ *             offset, length, row count and per attribute min/max
+ * long footer offset, int magic
+ * </pre>
+ * 
+ * Numeric and date blocks hold one double per row. Nominal blocks hold each
+ * dictionary code in the fewest bytes that fit the dictionary, with the largest
+ * code of that width marking a missing value. String blocks hold the length of
+ * each UTF-8 value, -1 if missing, followed by its bytes. The weights block is
+ * a single flag byte when all weights are 1, otherwise the flag and one double
+ * per row. The sparse block is a single flag byte when no row is sparse,
+ * otherwise the flag and one byte per row set for rows read back as sparse
+ * instances. All values are big endian.
+ */
+public final class ColumnarFormat {
+
+    /**
+     * type code of date attributes
+     */
+    static final byte DATE = 3;
+
+    /**
+     * the file name extension of the columnar format
+     */
+    public static final String EXTENSION = ".pcol";
+
+    /**
+     * the number of bytes of the trailer holding the footer offset
+     */
+    static final int FOOTER_TRAILER = 12;
+
+    /**
+     * magic number starting and ending each file ("PCOL")
+     */
+    static final int MAGIC = 0x50434F4C;
+
+    /**
+     * type code of nominal attributes
+     */
+    static final byte NOMINAL = 1;
+
+    /**
+     * type code of numeric attributes
+     */
+    static final byte NUMERIC = 0;
+
+    /**
+     * type code of string attributes
+     */
+    static final byte STRING = 2;
+
+    /**
+     * the character set of strings
+     */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * the format version written
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Indicates if a file is in the columnar format
+     * 
+     * @param file
+     *            The name of the file
+     * @return true if the file name ends in the columnar extension
+     */
+    public static boolean isColumnar(String file) {
+        return file != null && file.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}
+     * 
+     * @param buffer
+     *            The buffer positioned at the string
+     * @return the string
+     */
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Returns the type code of an attribute
+     * 
+     * @param attribute
+     *            The attribute
+     * @return the type code of the attribute
+     * @throws IOException
+     *             If the attribute type can not be stored
+     */
+    static byte typeOf(Attribute attribute) throws IOException {
+        switch (attribute.type()) {
+        case Attribute.NUMERIC:
+            return NUMERIC;
+        case Attribute.NOMINAL:
+            return NOMINAL;
+        case Attribute.STRING:
+            return STRING;
+        case Attribute.DATE:
+            return DATE;
+        default:
+            throw new IOException("Unsupported type of attribute " + attribute.name());
+        }
+    }
+
+    /**
+     * Returns the number of bytes each code of a nominal attribute is stored in
+     * 
+     * @param numValues
+     *            The number of values of the attribute
+     * @return the code width in bytes
+     */
+    static int widthOf(int numValues) {
+        // the largest code of each width is reserved for missing values
+        if (numValues < 0xFF) {
+            return 1;
+        }
+        return numValues < 0xFFFF ? 2 : 4;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length and bytes
+     * 
+     * @param out
+     *            The stream to write to
+     * @param value
+     *            The string to write
+     * @throws IOException
+     *             If the stream can not be written
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Class constructor - the format is not instantiated
+     */
+    private ColumnarFormat() {
+    }
+}
@@ -0,0 +1,399 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Weka
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+/**
+ * Loads instances saved in the binary columnar format described by
+ * {@link ColumnarFormat}. The footer and each row group are memory-mapped and
+ * decoded column by column. When a range is set on an attribute, row groups
+ * whose min/max lie outside the range are skipped without being mapped and the
+ * rows of the remaining groups are filtered.
+ */
+public final class ColumnarLoader {
+
+    /**
+     * Instances that take the decoded rows as they are rather than adding a
+     * copy of each, as Instances.add does
+     */
+    private static final class Rows extends Instances {
+
+        /**
+         * for serialization
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Adds a row without copying it
+         * 
+         * @param row
+         *            The row to add
+         */
+        void addRow(Instance row) {
+            row.setDataset(this);
+            m_Instances.add(row);
+        }
+
+        /**
+         * Class constructor
+         * 
+         * @param relation
+         *            The name of the relation
+         * @param attributes
+         *            The attributes of the rows
+         * @param capacity
+         *            The number of rows to allocate for
+         */
+        Rows(String relation, ArrayList<Attribute> attributes, int capacity) {
+            super(relation, attributes, capacity);
+        }
+    }
+
+    /**
+     * Resolves the bounds of a range given as attribute values
+     * 
+     * @param attribute
+     *            The attribute the range is on
+     * @param from
+     *            The lowest value in the range
+     * @param to
+     *            The highest value in the range
+     * @return the lowest and highest internal value in the range
+     * @throws ParseException
+     *             If a date attribute value can not be parsed
+     */
+    static double[] bounds(Attribute attribute, String from, String to) throws ParseException {
+        if (attribute.isDate()) {
+            return new double[] { attribute.parseDate(from), attribute.parseDate(to) };
+        }
+        return new double[] { Double.parseDouble(from), Double.parseDouble(to) };
+    }
+
+    /**
+     * Decodes one row group
+     * 
+     * @param buffer
+     *            The mapped row group
+     * @param rows
+     *            The number of rows in the group
+     * @param data
+     *            The instances to add the kept rows to
+     * @param rangeIndex
+     *            The attribute the range is on or -1 if there is none
+     * @param min
+     *            The lowest value in the range
+     * @param max
+     *            The highest value in the range
+     */
+    private void decodeGroup(ByteBuffer buffer, int rows, Rows data, int rangeIndex, double min, double max) {
+        int numAttributes = _types.length;
+        double[][] values = new double[rows][numAttributes];
+        String[][] strings = new String[numAttributes][];
+        double[] column = new double[rows];
+        int code, missing, width;
+        for (int i = 0; i < numAttributes; i++) {
+            switch (_types[i]) {
+            case ColumnarFormat.NOMINAL:
+                width = ColumnarFormat.widthOf(data.attribute(i).numValues());
+                missing = width == 1 ? 0xFF : width == 2 ? 0xFFFF : -1;
+                for (int r = 0; r < rows; r++) {
+                    code = width == 1 ? buffer.get() & 0xFF : width == 2 ? buffer.getShort() & 0xFFFF : buffer
+                            .getInt();
+                    values[r][i] = code == missing ? Utils.missingValue() : code;
+                }
+                break;
+            case ColumnarFormat.STRING:
+                strings[i] = new String[rows];
+                int length;
+                for (int r = 0; r < rows; r++) {
+                    length = buffer.getInt();
+                    if (length < 0) {
+                        values[r][i] = Utils.missingValue();
+                    } else {
+                        byte[] bytes = new byte[length];
+                        buffer.get(bytes);
+                        strings[i][r] = new String(bytes, ColumnarFormat.UTF8);
+                    }
+                }
+                break;
+            default:
+                buffer.asDoubleBuffer().get(column);
+                buffer.position(buffer.position() + rows * 8);
+                for (int r = 0; r < rows; r++) {
+                    values[r][i] = column[r];
+                }
+            }
+        }
+        if (buffer.get() != 0) {
+            buffer.asDoubleBuffer().get(column);
+            buffer.position(buffer.position() + rows * 8);
+        } else {
+            Arrays.fill(column, 1);
+        }
+        byte[] sparse = null;
+        if (buffer.get() != 0) {
+            sparse = new byte[rows];
+            buffer.get(sparse);
+        }
+        double value;
+        for (int r = 0; r < rows; r++) {
+            if (rangeIndex >= 0) {
+                value = values[r][rangeIndex];
+                // missing values are NaN and never in range
+                if (!(value >= min && value <= max)) {
+                    continue;
+                }
+            }
+            for (int i = 0; i < numAttributes; i++) {
+                if (strings[i] != null && strings[i][r] != null) {
+                    values[r][i] = data.attribute(i).addStringValue(strings[i][r]);
+                }
+            }
+            if (sparse != null && sparse[r] != 0) {
+                data.addRow(new SparseInstance(column[r], values[r]));
+            } else {
+                data.addRow(new DenseInstance(column[r], values[r]));
+            }
+        }
+    }
+
+    /**
+     * @return the number of row groups in the file, available after reading
+     */
+    public int getRowGroups() {
+        return _rowGroups;
+    }
+
+    /**
+     * @return the number of row groups skipped by the range, available after
+     *         reading
+     */
+    public int getSkippedRowGroups() {
+        return _skippedRowGroups;
+    }
+
+    /**
+     * Maps a region of the file
+     * 
+     * @param channel
+     *            The channel of the file
+     * @param position
+     *            The offset of the region
+     * @param size
+     *            The length of the region
+     * @return the mapped region
+     * @throws IOException
+     *             If the region can not be mapped
+     */
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    /**
+     * Reads the instances held in the file
+     * 
+     * @return the instances read
+     * @throws IOException
+     *             If the file can not be read or is not in the columnar format
+     * @throws ParseException
+     *             If a date in the range can not be parsed
+     */
+    public Instances read() throws IOException, ParseException {
+        RandomAccessFile file = new RandomAccessFile(_filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            ByteBuffer header = size < 8 + ColumnarFormat.FOOTER_TRAILER ? null : map(channel, 0, 8);
+            if (header == null || header.getInt() != ColumnarFormat.MAGIC) {
+                throw new IOException(_filename + " is not a columnar file");
+            }
+            int version = header.getInt();
+            if (version != ColumnarFormat.VERSION) {
+                throw new IOException(_filename + " is in an unsupported columnar format version " + version);
+            }
+            ByteBuffer trailer = map(channel, size - ColumnarFormat.FOOTER_TRAILER, ColumnarFormat.FOOTER_TRAILER);
+            long footerOffset = trailer.getLong();
+            if (trailer.getInt() != ColumnarFormat.MAGIC) {
+                throw new IOException(_filename + " is truncated");
+            }
+            ByteBuffer footer = map(channel, footerOffset, size - ColumnarFormat.FOOTER_TRAILER - footerOffset);
+
+            // rebuilds the header from the schema
+            String relation = ColumnarFormat.readString(footer);
+            int classIndex = footer.getInt();
+            int numAttributes = footer.getInt();
+            ArrayList<Attribute> attributes = new ArrayList<Attribute>(numAttributes);
+            _types = new byte[numAttributes];
+            String name;
+            for (int i = 0; i < numAttributes; i++) {
+                name = ColumnarFormat.readString(footer);
+                _types[i] = footer.get();
+                switch (_types[i]) {
+                case ColumnarFormat.NOMINAL:
+                    int numValues = footer.getInt();
+                    ArrayList<String> values = new ArrayList<String>(numValues);
+                    for (int v = 0; v < numValues; v++) {
+                        values.add(ColumnarFormat.readString(footer));
+                    }
+                    attributes.add(new Attribute(name, values));
+                    break;
+                case ColumnarFormat.STRING:
+                    attributes.add(new Attribute(name, (ArrayList<String>) null));
+                    break;
+                case ColumnarFormat.DATE:
+                    attributes.add(new Attribute(name, ColumnarFormat.readString(footer)));
+                    break;
+                default:
+                    attributes.add(new Attribute(name));
+                }
+            }
+
+            // reads the row group index
+            _rowGroups = footer.getInt();
+            long[] offsets = new long[_rowGroups];
+            long[] lengths = new long[_rowGroups];
+            int[] rows = new int[_rowGroups];
+            double[][] stats = new double[_rowGroups][numAttributes * 2];
+            for (int g = 0; g < _rowGroups; g++) {
+                offsets[g] = footer.getLong();
+                lengths[g] = footer.getLong();
+                rows[g] = footer.getInt();
+                footer.asDoubleBuffer().get(stats[g]);
+                footer.position(footer.position() + numAttributes * 16);
+            }
+
+            // resolves the range and the row groups it keeps
+            int rangeIndex = -1;
+            double min = 0, max = 0;
+            if (_rangeAttribute != null) {
+                for (int i = 0; i < numAttributes; i++) {
+                    if (attributes.get(i).name().equals(_rangeAttribute)) {
+                        rangeIndex = i;
+                    }
+                }
+                if (rangeIndex < 0
+                        || (_types[rangeIndex] != ColumnarFormat.NUMERIC && _types[rangeIndex] != ColumnarFormat.DATE)) {
+                    throw new IOException("Can not range over attribute " + _rangeAttribute);
+                }
+                double[] bounds = bounds(attributes.get(rangeIndex), _rangeFrom, _rangeTo);
+                min = bounds[0];
+                max = bounds[1];
+            }
+            boolean[] keep = new boolean[_rowGroups];
+            int capacity = 0;
+            _skippedRowGroups = 0;
+            for (int g = 0; g < _rowGroups; g++) {
+                // a group whose values are all missing has NaN stats
+                keep[g] = rangeIndex < 0
+                        || (stats[g][rangeIndex * 2] <= max && stats[g][rangeIndex * 2 + 1] >= min);
+                if (keep[g]) {
+                    capacity += rows[g];
+                } else {
+                    _skippedRowGroups++;
+                }
+            }
+            Rows data = new Rows(relation, attributes, capacity);
+            data.setClassIndex(classIndex);
+            for (int g = 0; g < _rowGroups; g++) {
+                if (keep[g]) {
+                    decodeGroup(map(channel, offsets[g], lengths[g]), rows[g], data, rangeIndex, min, max);
+                }
+            }
+            return data;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Restricts the rows read to those whose value of an attribute lies in a
+     * range. Values are given as they appear in the data, so date attributes
+     * take dates in their own format.
+     * 
+     * @param attribute
+     *            The name of a numeric or date attribute
+     * @param from
+     *            The lowest value in the range
+     * @param to
+     *            The highest value in the range
+     */
+    public void setRange(String attribute, String from, String to) {
+        _rangeAttribute = attribute;
+        _rangeFrom = from;
+        _rangeTo = to;
+    }
+
+    /**
+     * the file to read from
+     */
+    private final String _filename;
+
+    /**
+     * the attribute the range is on
+     */
+    private String _rangeAttribute;
+
+    /**
+     * the lowest value in the range
+     */
+    private String _rangeFrom;
+
+    /**
+     * the highest value in the range
+     */
+    private String _rangeTo;
+
+    /**
+     * the number of row groups in the file
+     */
+    private int _rowGroups;
+
+    /**
+     * the number of row groups skipped by the range
+     */
+    private int _skippedRowGroups;
+
+    /**
+     * the type code of each attribute
+     */
+    private byte[] _types;
+
+    /**
+     * @param filename
+     *            The columnar file to read from
+     */
+    public ColumnarLoader(String filename) {
+        _filename = filename;
+    }
+}
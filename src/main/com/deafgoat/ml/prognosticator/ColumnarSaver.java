@@ -0,0 +1,536 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Weka
+import weka.core.Attribute;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.converters.AbstractSaver;
+import weka.core.converters.BatchConverter;
+import weka.core.converters.IncrementalConverter;
+
+/**
+ * Saves instances in the binary columnar format described by
+ * {@link ColumnarFormat}. Instances are buffered column by column and written
+ * out a row group at a time, so incremental saving holds at most one row group
+ * in memory.
+ */
+public class ColumnarSaver extends AbstractSaver implements BatchConverter, IncrementalConverter {
+
+    /**
+     * Counts the bytes written through it in a long, as DataOutputStream
+     * counts in an int that saturates past 2 GB
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * @return the number of bytes written
+         */
+        long getCount() {
+            return _count;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            _count += length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            _count++;
+        }
+
+        /**
+         * the number of bytes written
+         */
+        private long _count;
+
+        /**
+         * @param out
+         *            The stream to write to
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+    }
+
+    /**
+     * the default number of rows in each row group
+     */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 1 << 16;
+
+    /**
+     * the version of this class
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Adds an instance to the current row group, writing the group out once it
+     * is full
+     * 
+     * @param instance
+     *            The instance to add
+     * @throws IOException
+     *             If a full row group can not be written
+     */
+    private void add(Instance instance) throws IOException {
+        double value;
+        for (int i = 0; i < _types.length; i++) {
+            value = instance.value(i);
+            if (_types[i] == ColumnarFormat.STRING) {
+                _strings[i][_rows] = instance.isMissing(i) ? null : instance.stringValue(i);
+            } else {
+                _columns[i][_rows] = value;
+                // missing values are NaN and never widen the stats
+                if (value < _min[i] || _min[i] != _min[i]) {
+                    _min[i] = value;
+                }
+                if (value > _max[i] || _max[i] != _max[i]) {
+                    _max[i] = value;
+                }
+            }
+        }
+        _weights[_rows] = instance.weight();
+        _sparse[_rows] = instance instanceof SparseInstance;
+        if (++_rows == _rowGroupSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the last row group and the footer, then closes the destination
+     * 
+     * @throws IOException
+     *             If the file can not be completed
+     */
+    private void close() throws IOException {
+        flush();
+        _out.flush();
+        long footer = _counter.getCount();
+        ColumnarFormat.writeString(_out, _structure.relationName());
+        _out.writeInt(_structure.classIndex());
+        _out.writeInt(_types.length);
+        Attribute attribute;
+        for (int i = 0; i < _types.length; i++) {
+            attribute = _structure.attribute(i);
+            ColumnarFormat.writeString(_out, attribute.name());
+            _out.writeByte(_types[i]);
+            if (_types[i] == ColumnarFormat.NOMINAL) {
+                _out.writeInt(attribute.numValues());
+                for (int v = 0; v < attribute.numValues(); v++) {
+                    ColumnarFormat.writeString(_out, attribute.value(v));
+                }
+            } else if (_types[i] == ColumnarFormat.DATE) {
+                ColumnarFormat.writeString(_out, attribute.getDateFormat());
+            }
+        }
+        _out.writeInt(_groupRows.size());
+        double[] stats;
+        for (int g = 0; g < _groupRows.size(); g++) {
+            _out.writeLong(_groupOffsets.get(g));
+            _out.writeLong(_groupLengths.get(g));
+            _out.writeInt(_groupRows.get(g));
+            stats = _groupStats.get(g);
+            for (int i = 0; i < stats.length; i++) {
+                _out.writeDouble(stats[i]);
+            }
+        }
+        _out.writeLong(footer);
+        _out.writeInt(ColumnarFormat.MAGIC);
+        _out.close();
+        _out = null;
+        _counter = null;
+        _destination = null;
+        _columns = null;
+        _strings = null;
+    }
+
+    /**
+     * Writes the buffered rows out as a row group
+     * 
+     * @throws IOException
+     *             If the row group can not be written
+     */
+    private void flush() throws IOException {
+        if (_rows == 0) {
+            return;
+        }
+        _out.flush();
+        long offset = _counter.getCount();
+        for (int i = 0; i < _types.length; i++) {
+            writeColumn(i);
+        }
+        boolean weighted = false;
+        for (int r = 0; r < _rows; r++) {
+            if (_weights[r] != 1) {
+                weighted = true;
+                break;
+            }
+        }
+        _out.writeByte(weighted ? 1 : 0);
+        if (weighted) {
+            for (int r = 0; r < _rows; r++) {
+                _out.writeDouble(_weights[r]);
+            }
+        }
+        boolean sparse = false;
+        for (int r = 0; r < _rows; r++) {
+            if (_sparse[r]) {
+                sparse = true;
+                break;
+            }
+        }
+        _out.writeByte(sparse ? 1 : 0);
+        if (sparse) {
+            for (int r = 0; r < _rows; r++) {
+                _out.writeByte(_sparse[r] ? 1 : 0);
+            }
+        }
+        _out.flush();
+        _groupOffsets.add(offset);
+        _groupLengths.add(_counter.getCount() - offset);
+        _groupRows.add(_rows);
+        _groupStats.add(statistics());
+        _rows = 0;
+        resetStatistics();
+    }
+
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.enable(Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capability.NUMERIC_ATTRIBUTES);
+        result.enable(Capability.DATE_ATTRIBUTES);
+        result.enable(Capability.STRING_ATTRIBUTES);
+        result.enable(Capability.MISSING_VALUES);
+        result.enableAllClasses();
+        result.enable(Capability.MISSING_CLASS_VALUES);
+        result.enable(Capability.NO_CLASS);
+        return result;
+    }
+
+    /**
+     * @return the extension of files written by this saver
+     */
+    @Override
+    public String getFileExtension() {
+        return ColumnarFormat.EXTENSION;
+    }
+
+    /**
+     * @return the revision of this saver
+     */
+    @Override
+    public String getRevision() {
+        return Integer.toString(ColumnarFormat.VERSION);
+    }
+
+    /**
+     * Opens the destination and lays out the column buffers for the structure
+     * 
+     * @param structure
+     *            The header of the instances to write
+     * @throws IOException
+     *             If the destination can not be opened
+     */
+    private void open(Instances structure) throws IOException {
+        if (_destination == null) {
+            throw new IOException("No destination has been set");
+        }
+        _structure = new Instances(structure, 0);
+        int numAttributes = structure.numAttributes();
+        _types = new byte[numAttributes];
+        _columns = new double[numAttributes][];
+        _strings = new String[numAttributes][];
+        _min = new double[numAttributes];
+        _max = new double[numAttributes];
+        for (int i = 0; i < numAttributes; i++) {
+            _types[i] = ColumnarFormat.typeOf(structure.attribute(i));
+            if (_types[i] == ColumnarFormat.STRING) {
+                _strings[i] = new String[_rowGroupSize];
+            } else {
+                _columns[i] = new double[_rowGroupSize];
+            }
+        }
+        _weights = new double[_rowGroupSize];
+        _sparse = new boolean[_rowGroupSize];
+        _groupOffsets = new ArrayList<Long>();
+        _groupLengths = new ArrayList<Long>();
+        _groupRows = new ArrayList<Integer>();
+        _groupStats = new ArrayList<double[]>();
+        _rows = 0;
+        resetStatistics();
+        _counter = new CountingOutputStream(_destination);
+        _out = new DataOutputStream(new BufferedOutputStream(_counter, 1 << 16));
+        _out.writeInt(ColumnarFormat.MAGIC);
+        _out.writeInt(ColumnarFormat.VERSION);
+    }
+
+    @Override
+    public void resetOptions() {
+        super.resetOptions();
+        _rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+    }
+
+    /**
+     * Resets the min/max of the current row group
+     */
+    private void resetStatistics() {
+        for (int i = 0; i < _min.length; i++) {
+            _min[i] = Double.NaN;
+            _max[i] = Double.NaN;
+        }
+    }
+
+    @Override
+    public void setDestination(File file) throws IOException {
+        setDestination(new FileOutputStream(file));
+    }
+
+    @Override
+    public void setDestination(OutputStream output) throws IOException {
+        _destination = output;
+    }
+
+    @Override
+    public void setFile(File file) throws IOException {
+        setDestination(file);
+    }
+
+    /**
+     * Sets the number of rows in each row group; smaller groups let range
+     * predicates skip more precisely at the cost of more footer entries
+     * 
+     * @param rowGroupSize
+     *            The number of rows in each row group
+     */
+    public void setRowGroupSize(int rowGroupSize) {
+        if (rowGroupSize < 1) {
+            throw new IllegalArgumentException("Row groups must hold at least one row");
+        }
+        _rowGroupSize = rowGroupSize;
+    }
+
+    /**
+     * @return the min and max of each attribute in the current row group,
+     *         interleaved
+     */
+    private double[] statistics() {
+        double[] stats = new double[_min.length * 2];
+        for (int i = 0; i < _min.length; i++) {
+            stats[i * 2] = _min[i];
+            stats[i * 2 + 1] = _max[i];
+        }
+        return stats;
+    }
+
+    @Override
+    public void writeBatch() throws IOException {
+        Instances instances = getInstances();
+        if (instances == null) {
+            throw new IOException("No instances to save");
+        }
+        if (getRetrieval() == INCREMENTAL) {
+            throw new IOException("Batch and incremental saving cannot be mixed");
+        }
+        setRetrieval(BATCH);
+        setWriteMode(WRITE);
+        open(instances);
+        for (int i = 0; i < instances.numInstances(); i++) {
+            add(instances.instance(i));
+        }
+        close();
+        setWriteMode(WAIT);
+    }
+
+    /**
+     * Writes the column of an attribute for the buffered rows
+     * 
+     * @param index
+     *            The index of the attribute
+     * @throws IOException
+     *             If the column can not be written
+     */
+    private void writeColumn(int index) throws IOException {
+        switch (_types[index]) {
+        case ColumnarFormat.NOMINAL:
+            double[] codes = _columns[index];
+            int width = ColumnarFormat.widthOf(_structure.attribute(index).numValues());
+            for (int r = 0; r < _rows; r++) {
+                int code = codes[r] != codes[r] ? -1 : (int) codes[r];
+                if (width == 1) {
+                    _out.writeByte(code);
+                } else if (width == 2) {
+                    _out.writeShort(code);
+                } else {
+                    _out.writeInt(code);
+                }
+            }
+            break;
+        case ColumnarFormat.STRING:
+            String[] strings = _strings[index];
+            for (int r = 0; r < _rows; r++) {
+                if (strings[r] == null) {
+                    _out.writeInt(-1);
+                } else {
+                    ColumnarFormat.writeString(_out, strings[r]);
+                }
+                strings[r] = null;
+            }
+            break;
+        default:
+            double[] values = _columns[index];
+            for (int r = 0; r < _rows; r++) {
+                _out.writeDouble(values[r]);
+            }
+        }
+    }
+
+    @Override
+    public void writeIncremental(Instance instance) throws IOException {
+        if (getRetrieval() == BATCH || getRetrieval() == NONE) {
+            throw new IOException("Batch and incremental saving cannot be mixed");
+        }
+        if (getWriteMode() == CANCEL) {
+            cancel();
+            return;
+        }
+        if (getWriteMode() == STRUCTURE_READY) {
+            open(getInstances());
+            setWriteMode(WRITE);
+        }
+        if (getWriteMode() != WRITE) {
+            throw new IOException("No instances information available");
+        }
+        if (instance != null) {
+            add(instance);
+        } else {
+            // a null instance completes the file
+            close();
+            resetStructure();
+        }
+    }
+
+    /**
+     * the buffered values of each non-string attribute
+     */
+    private transient double[][] _columns;
+
+    /**
+     * the stream counting the bytes written to the destination
+     */
+    private transient CountingOutputStream _counter;
+
+    /**
+     * the stream to save to
+     */
+    private transient OutputStream _destination;
+
+    /**
+     * the byte length of each row group written
+     */
+    private transient List<Long> _groupLengths;
+
+    /**
+     * the offset of each row group written
+     */
+    private transient List<Long> _groupOffsets;
+
+    /**
+     * the number of rows of each row group written
+     */
+    private transient List<Integer> _groupRows;
+
+    /**
+     * the interleaved min/max of each row group written
+     */
+    private transient List<double[]> _groupStats;
+
+    /**
+     * the max of each attribute in the current row group
+     */
+    private transient double[] _max;
+
+    /**
+     * the min of each attribute in the current row group
+     */
+    private transient double[] _min;
+
+    /**
+     * the stream writing the file
+     */
+    private transient DataOutputStream _out;
+
+    /**
+     * the number of rows in each row group
+     */
+    private int _rowGroupSize;
+
+    /**
+     * the number of rows buffered in the current row group
+     */
+    private transient int _rows;
+
+    /**
+     * indicates if each buffered row is sparse
+     */
+    private transient boolean[] _sparse;
+
+    /**
+     * the buffered values of each string attribute
+     */
+    private transient String[][] _strings;
+
+    /**
+     * the header of the instances being written
+     */
+    private transient Instances _structure;
+
+    /**
+     * the type code of each attribute
+     */
+    private transient byte[] _types;
+
+    /**
+     * the weight of each buffered row
+     */
+    private transient double[] _weights;
+
+    /**
+     * Class constructor
+     */
+    public ColumnarSaver() {
+        resetOptions();
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+// Weka
+import weka.core.Attribute;
+import weka.core.Instance;
+
+/**
+ * Confidence of the predictions of one error analysis outcome against the
+ * values of one attribute. Numeric attributes keep each value along with its
+ * prediction confidence; other attributes are reduced to the average
+ * confidence of each value.
+ */
+public final class ConfidenceProfile {
+
+    /**
+     * Adds the prediction made on an instance
+     * 
+     * @param instance
+     *            The predicted instance
+     * @param confidence
+     *            The prediction confidence
+     */
+    public void add(Instance instance, double confidence) {
+        if (_numeric) {
+            if (instance.isMissing(_location)) {
+                return;
+            }
+            if (_size == _values.length) {
+                _values = Arrays.copyOf(_values, Math.max(16, _size * 2));
+                _confidences = Arrays.copyOf(_confidences, _values.length);
+            }
+            _values[_size] = instance.value(_location);
+            _confidences[_size] = confidence;
+        } else {
+            String value = instance.toString(_location);
+            double[] total = _totals.get(value);
+            if (total == null) {
+                total = new double[2];
+                _totals.put(value, total);
+            }
+            total[0] += confidence;
+            total[1]++;
+        }
+        _size++;
+    }
+
+    /**
+     * @return the name of the attribute
+     */
+    public String getAttribute() {
+        return _attribute;
+    }
+
+    /**
+     * @return the average prediction confidence of each value of a non-numeric
+     *         attribute
+     */
+    public Map<String, Double> getAverageConfidence() {
+        HashMap<String, Double> averages = new HashMap<String, Double>();
+        for (Entry<String, double[]> entry : _totals.entrySet()) {
+            averages.put(entry.getKey(), entry.getValue()[0] / entry.getValue()[1]);
+        }
+        return averages;
+    }
+
+    /**
+     * @return the prediction confidence of each value of a numeric attribute
+     */
+    public double[] getConfidences() {
+        return Arrays.copyOf(_confidences, _numeric ? _size : 0);
+    }
+
+    /**
+     * @return the non-missing values of a numeric attribute, in the order they
+     *         were added
+     */
+    public double[] getValues() {
+        return Arrays.copyOf(_values, _numeric ? _size : 0);
+    }
+
+    /**
+     * @return true if the attribute is numeric
+     */
+    public boolean isNumeric() {
+        return _numeric;
+    }
+
+    /**
+     * @return the number of predictions profiled
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * the name of the attribute
+     */
+    private final String _attribute;
+
+    /**
+     * the prediction confidence of each numeric value
+     */
+    private double[] _confidences;
+
+    /**
+     * the location of the attribute
+     */
+    private final int _location;
+
+    /**
+     * indicates if the attribute is numeric
+     */
+    private final boolean _numeric;
+
+    /**
+     * the number of predictions profiled
+     */
+    private int _size;
+
+    /**
+     * the total confidence and count of each non-numeric value
+     */
+    private final HashMap<String, double[]> _totals;
+
+    /**
+     * the numeric values
+     */
+    private double[] _values;
+
+    /**
+     * Class constructor
+     * 
+     * @param dataset
+     *            The dataset the predictions are made on
+     * @param attribute
+     *            The name of the attribute
+     */
+    public ConfidenceProfile(Prediction.Dataset dataset, String attribute) {
+        _attribute = attribute;
+        _location = dataset.attributeIndex(attribute);
+        Attribute source = dataset.getSource().attribute(_location);
+        _numeric = source.isNumeric() && !source.isDate();
+        _totals = new HashMap<String, double[]>();
+        _values = new double[0];
+        _confidences = new double[0];
+    }
+}
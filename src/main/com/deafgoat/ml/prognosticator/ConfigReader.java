@@ -19,9 +19,12 @@ package com.deafgoat.ml.prognosticator;
 // Java
 import java.io.FileReader;
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.ServiceLoader;
 
 // Apache IO/Logger
 import org.apache.commons.io.IOUtils;
@@ -67,6 +70,12 @@ public final class ConfigReader {
         // Read in top-level table dump configuration
         JSONObject data = _configJSON.getJSONObject("dump");
         _dumpFile = data.getString("file");
+        _singlePass = data.optBoolean("singlePass", false);
+        _parallelIngest = data.optBoolean("parallel", false);
+        _ingestThreads = data.optInt("threads", 0);
+        _dumpReader = data.optString("reader", DumpReader.SUPERCSV);
+        _streaming = data.optBoolean("streaming", false);
+        _sparseThreshold = data.optDouble("sparseThreshold", 1);
         _attributes = new HashMap<String, ArrayList<Attributes>>();
         _attributes.put(_dumpFile, new ArrayList<Attributes>());
         JSONArray array = data.getJSONArray("attributes");
@@ -82,6 +91,53 @@ public final class ConfigReader {
         if (_logger.isDebugEnabled()) {
             _logger.debug("Read " + _attributes.get(_dumpFile).size() + " attribute(s) for " + _dumpFile);
         }
+        readDerivedFeatures(data.optJSONArray("derivedAttributes"));
+    }
+
+    /**
+     * Loads the derived features provided on the class path, then compiles
+     * those declared as expressions
+     * 
+     * @param array
+     *            The declared derived attributes, may be null
+     * @throws JSONException
+     *             If a declaration can not be parsed or compiled
+     */
+    private void readDerivedFeatures(JSONArray array) throws JSONException {
+        _derivedFeatures = new ArrayList<DerivedFeature>();
+        for (DerivedFeature feature : ServiceLoader.load(DerivedFeature.class)) {
+            _derivedFeatures.add(feature);
+            _logger.info("Loaded derived feature " + feature.getAttribute().getAttributeName());
+        }
+        if (array == null) {
+            return;
+        }
+        JSONObject rec;
+        JSONArray labels;
+        List<String> labelList;
+        String name;
+        for (int i = 0; i < array.length(); i++) {
+            rec = array.getJSONObject(i);
+            name = rec.getString("attributeName");
+            labels = rec.optJSONArray("labels");
+            labelList = null;
+            if (labels != null) {
+                labelList = new ArrayList<String>();
+                for (int j = 0; j < labels.length(); j++) {
+                    labelList.add(labels.getString(j));
+                }
+            }
+            try {
+                _derivedFeatures.add(new ExpressionFeature(Attributes.createAttribute(name, name,
+                        rec.optString("attributeType", "numeric"), rec.optBoolean("include", true)).getObject(),
+                        rec.getString("expression"), labelList));
+            } catch (ParseException e) {
+                throw new JSONException("Could not compile derived attribute " + name + ": " + e.getMessage());
+            }
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Compiled derived attribute " + name);
+            }
+        }
     }
 
     /**
@@ -105,9 +161,14 @@ public final class ConfigReader {
         _relation = _configJSON.getString("name");
         _testARFF = classify.getString("testARFF");
         _modelFile = model.getString("outputModel");
+        _modelCacheSize = model.optLong("cacheSize", ModelCache.DEFAULT_CAPACITY >> 20) << 20;
         _classifier = model.getString("classifier");
+        _classifierOptions = model.optString("options", "");
+        _search = classifier.optJSONObject("search");
+        _tournament = classifier.optJSONObject("tournament");
         _dumpARFF = _configJSON.getString("dumpARFF");
         _folds = crossValidation.getString("numFolds");
+        _foldThreads = crossValidation.optInt("threads", 0);
         _trainingARFF = classify.getString("trainingARFF");
         _writeToFile = classifier.getBoolean("writeToFile");
         _writeToMongoDB = classifier.getBoolean("writeToMongoDB");
@@ -133,6 +194,7 @@ public final class ConfigReader {
         }
         _minProb = Double.parseDouble(prediction.getString("minProb"));
         _onlyPosNominal = prediction.getBoolean("onlyPosNominal");
+        _predictionThreads = prediction.optInt("threads", 1);
         JSONObject _data = _configJSON.getJSONObject("data");
         _classValue = _data.getString("classValue");
     }
@@ -166,6 +228,11 @@ public final class ConfigReader {
      */
     public String _classifier;
 
+    /**
+     * the WEKA options of the classifier
+     */
+    public String _classifierOptions;
+
     /**
      * the attribute to predict
      */
@@ -196,6 +263,12 @@ public final class ConfigReader {
      */
     public String _db;
 
+    /**
+     * the derived features loaded from the class path and declared in the dump
+     * configuration
+     */
+    public List<DerivedFeature> _derivedFeatures;
+
     /**
      * where to save the converted CSV
      */
@@ -206,6 +279,11 @@ public final class ConfigReader {
      */
     public String _dumpFile;
 
+    /**
+     * the type of reader the CSV dump is read with
+     */
+    public String _dumpReader;
+
     /**
      * where to store predictions for false negatives
      */
@@ -221,11 +299,21 @@ public final class ConfigReader {
      */
     public String _folds;
 
+    /**
+     * the number of threads cross-validation folds run on, 0 for one per core
+     */
+    public int _foldThreads;
+
     /**
      * the database hostname
      */
     public String _host;
 
+    /**
+     * the number of threads of a parallel dump ingest, 0 for one per core
+     */
+    public int _ingestThreads;
+
     /**
      * a handle to the logging object
      */
@@ -241,6 +329,11 @@ public final class ConfigReader {
      */
     public double _minProb;
 
+    /**
+     * the memory budget of the model cache in bytes
+     */
+    public long _modelCacheSize;
+
     /**
      * the application experiment models/results collection
      */
@@ -266,6 +359,11 @@ public final class ConfigReader {
      */
     public boolean _onlyPosNominal;
 
+    /**
+     * flag indicating whether to ingest the dump in parallel chunks
+     */
+    public boolean _parallelIngest;
+
     /**
      * the application database port
      */
@@ -291,16 +389,46 @@ public final class ConfigReader {
      */
     public String _predictionFile;
 
+    /**
+     * the number of threads test instances are scored on, 0 for one per core
+     */
+    public int _predictionThreads;
+
     /**
      * name of the relationship
      */
     public String _relation;
 
+    /**
+     * the hyperparameter search configuration, or null if none is configured
+     */
+    public JSONObject _search;
+
+    /**
+     * indicates if the dump should be converted to ARFF in a single pass
+     */
+    public boolean _singlePass;
+
+    /**
+     * the share of zero values above which dump instances are stored sparse
+     */
+    public double _sparseThreshold;
+
+    /**
+     * flag indicating whether to stream instances to the dump ARFF
+     */
+    public boolean _streaming;
+
     /**
      * where to save the test portion of dump ARFF
      */
     public String _testARFF;
 
+    /**
+     * the tournament configuration, or null if none is configured
+     */
+    public JSONObject _tournament;
+
     /**
      * where to save the training portion of dump ARFF
      */
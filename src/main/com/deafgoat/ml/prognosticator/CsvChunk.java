@@ -0,0 +1,434 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * A byte range of a CSV dump holding whole records. Chunks are aligned to
+ * record boundaries so that each can be parsed independently of the others.
+ */
+public final class CsvChunk {
+
+    /**
+     * Limits a stream to the bytes of a chunk
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        @Override
+        public int read() throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                _remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, _remaining));
+            if (read > 0) {
+                _remaining -= read;
+            }
+            return read;
+        }
+
+        /**
+         * the number of bytes left in the chunk
+         */
+        private long _remaining;
+
+        /**
+         * @param in
+         *            The stream positioned at the start of the chunk
+         * @param length
+         *            The length of the chunk
+         */
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            _remaining = length;
+        }
+    }
+
+    /**
+     * Scans a byte range of a dump for its quote parity and for the first
+     * record boundary it holds under either quote state at its start, so that
+     * ranges can be scanned concurrently before the quote state at the start
+     * of each is known.
+     */
+    private static final class Scan implements Callable<Scan> {
+
+        @Override
+        public Scan call() throws IOException {
+            RandomAccessFile in = new RandomAccessFile(_file, "r");
+            try {
+                in.seek(_start);
+                byte[] buffer = new byte[1 << 16];
+                long position = _start;
+                int read;
+                // tracks the state of a range starting unquoted, the state of
+                // a range starting quoted is its opposite
+                boolean quoted = false;
+                while (position < _end
+                        && (read = in.read(buffer, 0, (int) Math.min(buffer.length, _end - position))) > 0) {
+                    for (int i = 0; i < read; i++) {
+                        position++;
+                        // escaped quotes toggle twice and leave the state as is
+                        if (buffer[i] == '"') {
+                            quoted = !quoted;
+                        } else if (buffer[i] == '\n') {
+                            int state = quoted ? 1 : 0;
+                            if (_boundaries[state] < 0) {
+                                _boundaries[state] = position;
+                            }
+                        }
+                    }
+                }
+                _odd = quoted;
+            } finally {
+                in.close();
+            }
+            return this;
+        }
+
+        /**
+         * the offset just past the first newline outside quotes, if the range
+         * starts unquoted (0) or quoted (1), or -1 if there is none
+         */
+        private final long[] _boundaries;
+
+        /**
+         * the offset just past the last byte of the range
+         */
+        private final long _end;
+
+        /**
+         * the dump holding the range
+         */
+        private final String _file;
+
+        /**
+         * indicates if the range holds an odd number of quotes
+         */
+        private boolean _odd;
+
+        /**
+         * the offset of the first byte of the range
+         */
+        private final long _start;
+
+        /**
+         * @param file
+         *            The dump holding the range
+         * @param start
+         *            The offset of the first byte of the range
+         * @param end
+         *            The offset just past the last byte of the range
+         */
+        Scan(String file, long start, long end) {
+            _file = file;
+            _start = start;
+            _end = end;
+            _boundaries = new long[] { -1, -1 };
+        }
+    }
+
+    /**
+     * Expands a glob of shard files. Only the file name may hold the '*' and
+     * '?' wildcards; matching files are returned sorted by name.
+     * 
+     * @param pattern
+     *            The file or glob of shard files
+     * @return the matching files
+     * @throws FileNotFoundException
+     *             If no file matches the glob
+     */
+    public static List<String> expand(String pattern) throws FileNotFoundException {
+        File file = new File(pattern);
+        String name = file.getName();
+        if (name.indexOf('*') < 0 && name.indexOf('?') < 0) {
+            return Arrays.asList(pattern);
+        }
+        File parent = file.getParentFile();
+        File directory = parent == null ? new File(".") : parent;
+        StringBuilder regex = new StringBuilder();
+        for (String part : name.split("(?=[*?])|(?<=[*?])")) {
+            if (part.equals("*")) {
+                regex.append(".*");
+            } else if (part.equals("?")) {
+                regex.append('.');
+            } else if (part.length() > 0) {
+                regex.append(Pattern.quote(part));
+            }
+        }
+        Pattern glob = Pattern.compile(regex.toString());
+        List<String> files = new ArrayList<String>();
+        String[] names = directory.list();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String candidate : names) {
+                if (glob.matcher(candidate).matches() && new File(directory, candidate).isFile()) {
+                    files.add(parent == null ? candidate : new File(parent, candidate).getPath());
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            throw new FileNotFoundException("No shard files match " + pattern);
+        }
+        return files;
+    }
+
+    /**
+     * Reads the header of a CSV dump
+     * 
+     * @param file
+     *            The CSV dump
+     * @return the header columns
+     * @throws IOException
+     */
+    public static String[] readHeader(String file) throws IOException {
+        DumpReader reader = new CsvDumpReader(new FileReader(file), null);
+        try {
+            return reader.readHeader();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Finds the end of the header of a CSV dump
+     * 
+     * @param file
+     *            The CSV dump
+     * @return the offset just past the first newline outside quotes, or -1 if
+     *         there is none
+     * @throws IOException
+     */
+    private static long headerEnd(String file) throws IOException {
+        long position = 0;
+        boolean quoted = false;
+        byte[] buffer = new byte[1 << 12];
+        int read;
+        InputStream in = new FileInputStream(file);
+        try {
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    position++;
+                    if (buffer[i] == '"') {
+                        quoted = !quoted;
+                    } else if (buffer[i] == '\n' && !quoted) {
+                        return position;
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return -1;
+    }
+
+    /**
+     * Splits the records of a CSV dump, skipping its header, into chunks of
+     * roughly equal size, finding record boundaries on threads of its own
+     * 
+     * @param file
+     *            The CSV dump
+     * @param chunks
+     *            The number of chunks to split into
+     * @return the non-empty chunks in file order
+     * @throws IOException
+     * @throws InterruptedException
+     * @see #split(String, int, ExecutorService)
+     */
+    public static List<CsvChunk> split(String file, int chunks) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(chunks);
+        try {
+            return split(file, chunks, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits the records of a CSV dump, skipping its header, into chunks of
+     * roughly equal size. The records are cut into one byte range per chunk,
+     * scanned concurrently for their quote parity and for their first newline
+     * under either quote state at their start. The quote state at the start
+     * of each range then follows from the parities of the ranges before it,
+     * so record boundaries are never placed on newlines within quoted cells
+     * and no thread reads the whole dump.
+     * 
+     * @param file
+     *            The CSV dump
+     * @param chunks
+     *            The number of chunks to split into
+     * @param pool
+     *            The pool the ranges are scanned on
+     * @return the non-empty chunks in file order
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static List<CsvChunk> split(String file, int chunks, ExecutorService pool) throws IOException,
+            InterruptedException {
+        long length = new File(file).length();
+        long start = headerEnd(file);
+        List<CsvChunk> split = new ArrayList<CsvChunk>();
+        if (start < 0) {
+            return split;
+        }
+        long step = Math.max(1, (length - start + chunks - 1) / chunks);
+        // the boundary of each range is the first record end at or past its
+        // target offset, so range k starts on the byte before its target
+        List<Scan> scans = new ArrayList<Scan>();
+        long from = start, to;
+        for (int k = 1; from < length; k++) {
+            to = Math.min(length, start + k * step - 1);
+            scans.add(new Scan(file, from, to));
+            from = to;
+        }
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(start);
+        boolean quoted = false;
+        try {
+            List<Future<Scan>> futures = pool.invokeAll(scans);
+            Scan scan;
+            long boundary;
+            for (int k = 0; k < futures.size(); k++) {
+                scan = futures.get(k).get();
+                // the first range lies before the first target
+                boundary = k == 0 ? -1 : scan._boundaries[quoted ? 1 : 0];
+                if (boundary > boundaries.get(boundaries.size() - 1)) {
+                    boundaries.add(boundary);
+                }
+                quoted ^= scan._odd;
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        boundaries.add(length);
+        for (int i = 1; i < boundaries.size(); i++) {
+            if (boundaries.get(i) > boundaries.get(i - 1)) {
+                split.add(new CsvChunk(file, boundaries.get(i - 1), boundaries.get(i)));
+            }
+        }
+        return split;
+    }
+
+    /**
+     * @return the offset just past the last byte of the chunk
+     */
+    public long getEnd() {
+        return _end;
+    }
+
+    /**
+     * @return the CSV dump holding the chunk
+     */
+    public String getFile() {
+        return _file;
+    }
+
+    /**
+     * @return the offset of the first byte of the chunk
+     */
+    public long getStart() {
+        return _start;
+    }
+
+    /**
+     * Opens a reader over the records of the chunk
+     * 
+     * @param readerType
+     *            The type of dump reader to open
+     * @return the dump reader
+     * @throws IOException
+     */
+    public DumpReader open(String readerType) throws IOException {
+        if (DumpReader.MAPPED.equals(readerType)) {
+            return new MappedDumpReader(_file, _start, _end);
+        }
+        InputStream in = new FileInputStream(_file);
+        long skipped = 0;
+        while (skipped < _start) {
+            long skip = in.skip(_start - skipped);
+            if (skip <= 0) {
+                in.close();
+                throw new IOException("Could not seek to offset " + _start + " of " + _file);
+            }
+            skipped += skip;
+        }
+        return new CsvDumpReader(new InputStreamReader(new RangeInputStream(in, _end - _start)), null);
+    }
+
+    /**
+     * the offset just past the last byte of the chunk
+     */
+    private final long _end;
+
+    /**
+     * the CSV dump holding the chunk
+     */
+    private final String _file;
+
+    /**
+     * the offset of the first byte of the chunk
+     */
+    private final long _start;
+
+    /**
+     * Class constructor
+     * 
+     * @param file
+     *            The CSV dump holding the chunk
+     * @param start
+     *            The offset of the first byte of the chunk
+     * @param end
+     *            The offset just past the last byte of the chunk
+     */
+    public CsvChunk(String file, long start, long end) {
+        _file = file;
+        _start = start;
+        _end = end;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+// SuperCSV
+import org.supercsv.cellprocessor.ift.CellProcessor;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+/**
+ * Reads a CSV dump through SuperCSV. This is the compatibility reader; it
+ * materializes every cell as a String.
+ */
+public final class CsvDumpReader implements DumpReader {
+
+    @Override
+    public void close() throws IOException {
+        _reader.close();
+    }
+
+    @Override
+    public String get(int column) {
+        return _record.get(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return Double.parseDouble(_record.get(column).trim());
+    }
+
+    @Override
+    public List<String> getRecord() {
+        return _record;
+    }
+
+    @Override
+    public boolean isEmpty(int column) {
+        return _record.get(column).equals("");
+    }
+
+    @Override
+    public boolean isMissing(int column) {
+        return ColumnDecoder.isMissing(_record.get(column).trim());
+    }
+
+    @Override
+    public boolean read() throws IOException {
+        _record = _processing == null ? _reader.read() : _reader.read(_processing);
+        return _record != null;
+    }
+
+    @Override
+    public String[] readHeader() throws IOException {
+        return _reader.getCSVHeader(true);
+    }
+
+    @Override
+    public int size() {
+        return _record.size();
+    }
+
+    /**
+     * the cell processing object
+     */
+    private CellProcessor[] _processing;
+
+    /**
+     * the SuperCSV reader
+     */
+    private ICsvListReader _reader;
+
+    /**
+     * the current record
+     */
+    private List<String> _record;
+
+    /**
+     * Class constructor
+     * 
+     * @param reader
+     *            The character stream of the dump
+     * @param processing
+     *            The cell processing object, may be null
+     */
+    public CsvDumpReader(Reader reader, CellProcessor[] processing) {
+        _reader = new CsvListReader(reader, CsvPreference.EXCEL_PREFERENCE);
+        _processing = processing;
+    }
+}
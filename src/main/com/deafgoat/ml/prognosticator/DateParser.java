@@ -0,0 +1,147 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe parser of date cells to epoch millis, matching the strict
+ * parsing of WEKA date attributes. Each thread parses with its own formatter,
+ * and recently parsed strings are held in a direct mapped cache of immutable
+ * entries, so repeated dates skip parsing and no locks are taken. Parsers are
+ * shared per date format.
+ */
+public final class DateParser {
+
+    /**
+     * A parsed string and its epoch millis
+     */
+    private static final class Entry {
+
+        /**
+         * the epoch millis of the string
+         */
+        final double _millis;
+
+        /**
+         * the parsed string
+         */
+        final String _value;
+
+        /**
+         * @param value
+         *            The parsed string
+         * @param millis
+         *            The epoch millis of the string
+         */
+        Entry(String value, double millis) {
+            _value = value;
+            _millis = millis;
+        }
+    }
+
+    /**
+     * the number of entries in each cache, a power of two
+     */
+    static final int CACHE_SIZE = 4096;
+
+    /**
+     * the parser shared by each date format
+     */
+    private static final ConcurrentMap<String, DateParser> PARSERS = new ConcurrentHashMap<String, DateParser>();
+
+    /**
+     * Returns the parser shared by all users of a date format
+     * 
+     * @param format
+     *            The SimpleDateFormat pattern of the dates
+     * @return the parser of the format
+     */
+    public static DateParser forFormat(String format) {
+        DateParser parser = PARSERS.get(format);
+        if (parser == null) {
+            PARSERS.putIfAbsent(format, new DateParser(format));
+            parser = PARSERS.get(format);
+        }
+        return parser;
+    }
+
+    /**
+     * @return the SimpleDateFormat pattern of the dates
+     */
+    public String getFormat() {
+        return _format;
+    }
+
+    /**
+     * Parses a date to its epoch millis
+     * 
+     * @param value
+     *            The date to parse
+     * @return the epoch millis of the date
+     * @throws ParseException
+     *             If the date can not be parsed
+     */
+    public double parse(String value) throws ParseException {
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        // entries are immutable, so a racing read sees a whole entry or none
+        Entry entry = _cache[slot];
+        if (entry != null && entry._value.equals(value)) {
+            return entry._millis;
+        }
+        double millis = _formatter.get().parse(value).getTime();
+        _cache[slot] = new Entry(value, millis);
+        return millis;
+    }
+
+    /**
+     * the recently parsed strings by the hash of the string
+     */
+    private final Entry[] _cache;
+
+    /**
+     * the SimpleDateFormat pattern of the dates
+     */
+    private final String _format;
+
+    /**
+     * the formatter of each thread
+     */
+    private final ThreadLocal<SimpleDateFormat> _formatter;
+
+    /**
+     * @param format
+     *            The SimpleDateFormat pattern of the dates
+     */
+    public DateParser(final String format) {
+        _format = format;
+        _cache = new Entry[CACHE_SIZE];
+        _formatter = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                SimpleDateFormat formatter = new SimpleDateFormat(format);
+                formatter.setLenient(false);
+                return formatter;
+            }
+        };
+    }
+}
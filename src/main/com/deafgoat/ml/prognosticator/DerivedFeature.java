@@ -0,0 +1,58 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+
+/**
+ * Abstract class that allows users to define composite features computed from
+ * the decoded values of each row. A feature is computed exactly once per row
+ * and writes its value straight into the row, so no value is formatted to a
+ * string and parsed back. Rows are computed concurrently during a parallel
+ * ingest, so compute must not change state shared across rows.
+ */
+public abstract class DerivedFeature {
+
+    /**
+     * Computes the value of the feature for a row. Inputs are read with
+     * FeatureRow.value and FeatureRow.string, by their position in getInputs,
+     * and the value is written with FeatureRow.set, FeatureRow.setNominal or
+     * FeatureRow.setMissing.
+     * 
+     * @param row
+     *            The decoded row
+     * @throws ParseException
+     *             If a value can not be parsed
+     */
+    public abstract void compute(FeatureRow row) throws ParseException;
+
+    /**
+     * Returns the attribute the feature derives
+     * 
+     * @return the attribute holding the feature
+     */
+    public abstract Attributes getAttribute();
+
+    /**
+     * Returns the attributes the feature reads. They must be included
+     * attributes of the dump or features derived before this one.
+     * 
+     * @return the names of the input attributes
+     */
+    public abstract String[] getInputs();
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+/**
+ * Counts the distinct values of a column. Values are counted exactly until
+ * {@link #EXACT_LIMIT} have been seen, after which the count is estimated with
+ * a HyperLogLog sketch of 2^{@link #PRECISION} registers (about 1.6% standard
+ * error) so memory stays bounded however many values the column has.
+ */
+public final class DistinctCounter {
+
+    /**
+     * the number of distinct values counted exactly
+     */
+    static final int EXACT_LIMIT = 4096;
+
+    /**
+     * the number of hash bits selecting a register
+     */
+    static final int PRECISION = 12;
+
+    /**
+     * Mixes the bits of a key so that similar keys hash far apart
+     * 
+     * @param key
+     *            The key to mix
+     * @return the 64 bit hash of the key
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Adds a numeric value
+     * 
+     * @param value
+     *            The value to add
+     */
+    public void add(double value) {
+        // -0.0 and 0.0 are the same value
+        add(value == 0 ? 0L : Double.doubleToLongBits(value));
+    }
+
+    /**
+     * Adds the key of a value
+     * 
+     * @param key
+     *            The key identifying the value
+     */
+    private void add(long key) {
+        if (_keys == null) {
+            sketch(key);
+            return;
+        }
+        if (!hold(key) || _size <= EXACT_LIMIT) {
+            return;
+        }
+        // too many values to hold, so move them into the sketch
+        _registers = new byte[1 << PRECISION];
+        if (_zero) {
+            sketch(0L);
+        }
+        for (int i = 0; i < _keys.length; i++) {
+            if (_keys[i] != 0) {
+                sketch(_keys[i]);
+            }
+        }
+        _keys = null;
+    }
+
+    /**
+     * Adds a string value
+     * 
+     * @param value
+     *            The value to add
+     */
+    public void add(String value) {
+        long key = value.hashCode();
+        for (int i = 0; i < value.length(); i++) {
+            key = key * 0x100000001b3L + value.charAt(i);
+        }
+        add(key);
+    }
+
+    /**
+     * @return the number of distinct values added, estimated once more than
+     *         {@link #EXACT_LIMIT} have been added
+     */
+    public long count() {
+        if (_keys != null) {
+            return _size;
+        }
+        int m = _registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            sum += 1.0 / (1L << _registers[i]);
+            if (_registers[i] == 0) {
+                zeros++;
+            }
+        }
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Holds a key while counting exactly
+     * 
+     * @param key
+     *            The key to hold
+     * @return true if the key was not held yet
+     */
+    private boolean hold(long key) {
+        // 0 marks an empty slot, so it is held outside the hash table
+        if (key == 0) {
+            if (_zero) {
+                return false;
+            }
+            _zero = true;
+            _size++;
+            return true;
+        }
+        int slot = slot(key);
+        if (_keys[slot] == key) {
+            return false;
+        }
+        _keys[slot] = key;
+        _size++;
+        if (_size * 2 > _keys.length) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the count is exact
+     */
+    public boolean isExact() {
+        return _keys != null;
+    }
+
+    /**
+     * Doubles the hash table, rehashing all held keys
+     */
+    private void resize() {
+        long[] keys = _keys;
+        _keys = new long[keys.length * 2];
+        _mask = _keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                _keys[slot(keys[i])] = keys[i];
+            }
+        }
+    }
+
+    /**
+     * Records a key in the sketch
+     * 
+     * @param key
+     *            The key to record
+     */
+    private void sketch(long key) {
+        long hash = mix(key);
+        int register = (int) (hash >>> (64 - PRECISION));
+        // the rank is the position of the first set bit after the register bits
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > _registers[register]) {
+            _registers[register] = rank;
+        }
+    }
+
+    /**
+     * Finds the hash table slot holding a key, or the empty slot where it
+     * belongs
+     * 
+     * @param key
+     *            The non-zero key to find
+     * @return the slot of the key
+     */
+    private int slot(long key) {
+        int slot = (int) mix(key) & _mask;
+        while (_keys[slot] != 0 && _keys[slot] != key) {
+            slot = (slot + 1) & _mask;
+        }
+        return slot;
+    }
+
+    /**
+     * the non-zero key held in each hash table slot while counting exactly,
+     * null once estimating
+     */
+    private long[] _keys;
+
+    /**
+     * mask reducing a hash to a hash table slot
+     */
+    private int _mask;
+
+    /**
+     * the registers of the sketch once estimating
+     */
+    private byte[] _registers;
+
+    /**
+     * the number of keys held while counting exactly
+     */
+    private int _size;
+
+    /**
+     * indicates if the zero key is held
+     */
+    private boolean _zero;
+
+    /**
+     * Class constructor
+     */
+    public DistinctCounter() {
+        _keys = new long[16];
+        _mask = _keys.length - 1;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads the records of a CSV dump one at a time. Cells of the current record
+ * are accessed by column so that implementations can decode numbers without
+ * materializing the cell as a String.
+ */
+public interface DumpReader {
+
+    /**
+     * the reader backed by a memory-mapped tokenizer
+     */
+    String MAPPED = "mapped";
+
+    /**
+     * the reader backed by SuperCSV
+     */
+    String SUPERCSV = "supercsv";
+
+    /**
+     * Closes the reader
+     * 
+     * @throws IOException
+     */
+    void close() throws IOException;
+
+    /**
+     * Returns a cell of the current record
+     * 
+     * @param column
+     *            The column of the cell
+     * @return the cell value
+     */
+    String get(int column);
+
+    /**
+     * Parses a cell of the current record as a number
+     * 
+     * @param column
+     *            The column of the cell
+     * @return the trimmed cell value as a double
+     * @throws NumberFormatException
+     *             If the cell does not hold a number
+     */
+    double getDouble(int column);
+
+    /**
+     * @return the cells of the current record
+     */
+    List<String> getRecord();
+
+    /**
+     * Indicates if a cell of the current record is empty
+     * 
+     * @param column
+     *            The column of the cell
+     * @return true if the cell holds no characters
+     */
+    boolean isEmpty(int column);
+
+    /**
+     * Indicates if a cell of the current record holds a missing value
+     * 
+     * @param column
+     *            The column of the cell
+     * @return true if the trimmed cell is empty or '?'
+     */
+    boolean isMissing(int column);
+
+    /**
+     * Advances to the next record
+     * 
+     * @return false if there are no more records
+     * @throws IOException
+     */
+    boolean read() throws IOException;
+
+    /**
+     * Reads the next record as the header of the dump
+     * 
+     * @return the header columns
+     * @throws IOException
+     */
+    String[] readHeader() throws IOException;
+
+    /**
+     * @return the number of cells in the current record
+     */
+    int size();
+}
@@ -138,6 +138,10 @@ public final class Experimenter {
         _logger.info("Filtering data");
         // Apply whatever filters you want here
         _dataFilter = new InstancesFilter(instances);
+        // filters use the column statistics of the data file in place of a pass
+        if (_dataReader != null) {
+            _dataFilter.setStatistics(_dataReader.readStatistics());
+        }
         // The filter below removes attributes of type string & date
         // _dataFilter.removeTypeFilter(new String[] { "string", "date" });
         return _dataFilter.getFilteredInstances();
@@ -186,26 +190,64 @@ public final class Experimenter {
         checkExists(mode);
         _logger.info("Reading " + mode + " data");
         if (mode.equals("test")) {
-            // read data from .ARFF file
+            // read data from .ARFF or columnar file
             _dataReader = new InstancesReader(_config._testARFF);
-            _testSet = _dataReader.readFromARFF();
+            _testSet = _dataReader.readInstances();
             // set classification attribute
             _testSet.setClass(_testSet.attribute(_config._classValue));
         } else if (mode.equals("train")) {
-            // read data from .ARFF file
+            // read data from .ARFF or columnar file
             _dataReader = new InstancesReader(_config._trainingARFF);
-            _trainSet = _dataReader.readFromARFF();
+            _trainSet = _dataReader.readInstances();
             // set classification attribute
             _trainSet.setClass(_trainSet.attribute(_config._classValue));
         } else if (mode.equals("dump")) {
-            // read data from .ARFF file
+            // read data from .ARFF or columnar file
             _dataReader = new InstancesReader(_config._dumpARFF);
-            _dumpSet = _dataReader.readFromARFF();
+            _dumpSet = _dataReader.readInstances();
             // set classification attribute
             _dumpSet.setClass(_dumpSet.attribute(_config._classValue));
         }
     }
 
+    /**
+     * Compares the classifiers configured for the tournament on the training
+     * data, which is read and stratified once for all of them
+     * 
+     * @throws Exception
+     *             If no classifier can be evaluated
+     */
+    public void runTournament() throws Exception {
+        _logger.info("Running tournament");
+        // creates ARFF file if not found
+        convertDump();
+        // read in train data for cross validation
+        readARFF("train");
+        _appClassifier = new AppClassifier(filterData(_trainSet), _folds, _config);
+        _appClassifier.tournament();
+        // print results of the winner
+        _appClassifier.printSummary();
+    }
+
+    /**
+     * Searches the hyperparameters configured for the classifier, builds the
+     * model of the best candidate and prints its summary
+     * 
+     * @throws Exception
+     *             If no candidate can be evaluated
+     */
+    public void searchModel() throws Exception {
+        _logger.info("Searching hyperparameters");
+        // creates ARFF file if not found
+        convertDump();
+        // read in train data for cross validation
+        readARFF("train");
+        _appClassifier = new AppClassifier(filterData(_trainSet), _folds, _config);
+        _appClassifier.search();
+        // print results of the best candidate
+        _appClassifier.printSummary();
+    }
+
     /**
      * Splits the given ARFF Instances objects into training and test data based
      * on a supplied split ratio.
@@ -0,0 +1,718 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Arithmetic expression over the attributes of a row, compiled once into a
+ * tree of evaluators. Attributes are bound to the position of their input, so
+ * evaluating a row reads its decoded values directly. Missing values are NaN
+ * and propagate through every operator and function.
+ * <p>
+ * Expressions combine numbers and attribute names (quoted with backticks if
+ * they are not identifiers) with + - * / %, comparisons &lt; &lt;= &gt; &gt;=
+ * == != and logical &amp;&amp; || ! that yield 1 or 0, parentheses and the
+ * functions abs, log, exp, sqrt, pow, min, max, if(test, then, else) and
+ * bucket(value, bound...), which returns the number of bounds not above the
+ * value.
+ */
+public abstract class Expression {
+
+    /**
+     * Applies an arithmetic operator, through which NaN propagates by itself
+     */
+    private static final class Arithmetic extends Expression {
+
+        @Override
+        public double evaluate(FeatureRow row) {
+            switch (_operator) {
+            case '+':
+                return _left.evaluate(row) + _right.evaluate(row);
+            case '-':
+                return _left.evaluate(row) - _right.evaluate(row);
+            case '*':
+                return _left.evaluate(row) * _right.evaluate(row);
+            case '/':
+                return _left.evaluate(row) / _right.evaluate(row);
+            default:
+                return _left.evaluate(row) % _right.evaluate(row);
+            }
+        }
+
+        @Override
+        boolean isConstant() {
+            return _left.isConstant() && _right.isConstant();
+        }
+
+        /**
+         * the left operand
+         */
+        private final Expression _left;
+
+        /**
+         * the operator
+         */
+        private final char _operator;
+
+        /**
+         * the right operand
+         */
+        private final Expression _right;
+
+        /**
+         * @param operator
+         *            The operator
+         * @param left
+         *            The left operand
+         * @param right
+         *            The right operand
+         */
+        Arithmetic(char operator, Expression left, Expression right) {
+            _operator = operator;
+            _left = left;
+            _right = right;
+        }
+    }
+
+    /**
+     * Applies a comparison or logical operator, missing if an operand is
+     */
+    private static final class Binary extends Expression {
+
+        @Override
+        public double evaluate(FeatureRow row) {
+            double left = _left.evaluate(row);
+            double right = _right.evaluate(row);
+            if (left != left || right != right) {
+                return Double.NaN;
+            }
+            switch (_operator) {
+            case '<':
+                return left < right ? 1 : 0;
+            case 'l':
+                return left <= right ? 1 : 0;
+            case '>':
+                return left > right ? 1 : 0;
+            case 'g':
+                return left >= right ? 1 : 0;
+            case '=':
+                return left == right ? 1 : 0;
+            case '!':
+                return left != right ? 1 : 0;
+            case '&':
+                return left != 0 && right != 0 ? 1 : 0;
+            default:
+                return left != 0 || right != 0 ? 1 : 0;
+            }
+        }
+
+        @Override
+        boolean isConstant() {
+            return _left.isConstant() && _right.isConstant();
+        }
+
+        /**
+         * the left operand
+         */
+        private final Expression _left;
+
+        /**
+         * the operator, coded as one character
+         */
+        private final char _operator;
+
+        /**
+         * the right operand
+         */
+        private final Expression _right;
+
+        /**
+         * @param operator
+         *            The operator, coded as one character
+         * @param left
+         *            The left operand
+         * @param right
+         *            The right operand
+         */
+        Binary(char operator, Expression left, Expression right) {
+            _operator = operator;
+            _left = left;
+            _right = right;
+        }
+    }
+
+    /**
+     * Counts the bounds not above a value
+     */
+    private static final class Bucket extends Expression {
+
+        @Override
+        public double evaluate(FeatureRow row) {
+            double value = _value.evaluate(row);
+            if (value != value) {
+                return Double.NaN;
+            }
+            int bucket = 0;
+            while (bucket < _bounds.length && value >= _bounds[bucket]) {
+                bucket++;
+            }
+            return bucket;
+        }
+
+        @Override
+        boolean isConstant() {
+            return _value.isConstant();
+        }
+
+        /**
+         * the ascending bucket bounds
+         */
+        private final double[] _bounds;
+
+        /**
+         * the value to bucket
+         */
+        private final Expression _value;
+
+        /**
+         * @param value
+         *            The value to bucket
+         * @param bounds
+         *            The ascending bucket bounds
+         */
+        Bucket(Expression value, double[] bounds) {
+            _value = value;
+            _bounds = bounds;
+        }
+    }
+
+    /**
+     * Holds a constant
+     */
+    private static final class Constant extends Expression {
+
+        @Override
+        public double evaluate(FeatureRow row) {
+            return _value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+
+        /**
+         * the constant
+         */
+        private final double _value;
+
+        /**
+         * @param value
+         *            The constant
+         */
+        Constant(double value) {
+            _value = value;
+        }
+    }
+
+    /**
+     * Applies a function
+     */
+    private static final class Function extends Expression {
+
+        @Override
+        public double evaluate(FeatureRow row) {
+            double first = _arguments[0].evaluate(row);
+            if (first != first) {
+                return Double.NaN;
+            }
+            switch (_function) {
+            case IF:
+                return first != 0 ? _arguments[1].evaluate(row) : _arguments[2].evaluate(row);
+            case ABS:
+                return Math.abs(first);
+            case LOG:
+                return Math.log(first);
+            case EXP:
+                return Math.exp(first);
+            case SQRT:
+                return Math.sqrt(first);
+            default:
+                break;
+            }
+            double second = _arguments[1].evaluate(row);
+            if (second != second) {
+                return Double.NaN;
+            }
+            switch (_function) {
+            case POW:
+                return Math.pow(first, second);
+            case MIN:
+                return Math.min(first, second);
+            default:
+                return Math.max(first, second);
+            }
+        }
+
+        @Override
+        boolean isConstant() {
+            for (Expression argument : _arguments) {
+                if (!argument.isConstant()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * the arguments of the function
+         */
+        private final Expression[] _arguments;
+
+        /**
+         * the index of the function in FUNCTIONS
+         */
+        private final int _function;
+
+        /**
+         * @param function
+         *            The index of the function in FUNCTIONS
+         * @param arguments
+         *            The arguments of the function
+         */
+        Function(int function, Expression[] arguments) {
+            _function = function;
+            _arguments = arguments;
+        }
+    }
+
+    /**
+     * Recursive descent parser folding constant subexpressions as it goes
+     */
+    private static final class Parser {
+
+        /**
+         * @return the sum or difference of the following terms
+         */
+        Expression additive() throws ParseException {
+            Expression left = term();
+            while (true) {
+                if (accept("+")) {
+                    left = fold(new Arithmetic('+', left, term()));
+                } else if (accept("-")) {
+                    left = fold(new Arithmetic('-', left, term()));
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        /**
+         * @return the conjunction of the following comparisons
+         */
+        Expression and() throws ParseException {
+            Expression left = comparison();
+            while (accept("&&")) {
+                left = fold(new Binary('&', left, comparison()));
+            }
+            return left;
+        }
+
+        /**
+         * Consumes a token if it follows
+         * 
+         * @param token
+         *            The token
+         * @return true if the token was consumed
+         */
+        boolean accept(String token) {
+            skipSpace();
+            if (_source.startsWith(token, _position)) {
+                _position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the following comparison, or additive expression
+         */
+        Expression comparison() throws ParseException {
+            Expression left = additive();
+            char operator;
+            if (accept("<=")) {
+                operator = 'l';
+            } else if (accept(">=")) {
+                operator = 'g';
+            } else if (accept("==")) {
+                operator = '=';
+            } else if (accept("!=")) {
+                operator = '!';
+            } else if (accept("<")) {
+                operator = '<';
+            } else if (accept(">")) {
+                operator = '>';
+            } else {
+                return left;
+            }
+            return fold(new Binary(operator, left, additive()));
+        }
+
+        /**
+         * Consumes a token that must follow
+         * 
+         * @param token
+         *            The token
+         * @throws ParseException
+         *             If the token does not follow
+         */
+        void expect(String token) throws ParseException {
+            if (!accept(token)) {
+                throw error("Expected '" + token + "'");
+            }
+        }
+
+        /**
+         * @param message
+         *            The description of the error
+         * @return the error at the current position
+         */
+        ParseException error(String message) {
+            return new ParseException(message + " at position " + _position + " of " + _source, _position);
+        }
+
+        /**
+         * Replaces an expression of constants by its value
+         * 
+         * @param expression
+         *            The expression
+         * @return the constant value of the expression, or the expression if
+         *         it reads an attribute
+         */
+        Expression fold(Expression expression) {
+            return expression.isConstant() ? new Constant(expression.evaluate(null)) : expression;
+        }
+
+        /**
+         * @return the value of the following function call
+         */
+        Expression function(String name) throws ParseException {
+            List<Expression> arguments = new ArrayList<Expression>();
+            if (!accept(")")) {
+                do {
+                    arguments.add(or());
+                } while (accept(","));
+                expect(")");
+            }
+            int count = arguments.size();
+            Expression expression;
+            if (name.equals("bucket")) {
+                if (count < 2) {
+                    throw error("bucket takes a value and at least one bound");
+                }
+                double[] bounds = new double[count - 1];
+                for (int i = 1; i < count; i++) {
+                    if (!(arguments.get(i) instanceof Constant)) {
+                        throw error("bucket bounds must be constant");
+                    }
+                    bounds[i - 1] = arguments.get(i).evaluate(null);
+                    if (i > 1 && bounds[i - 1] < bounds[i - 2]) {
+                        throw error("bucket bounds must ascend");
+                    }
+                }
+                expression = new Bucket(arguments.get(0), bounds);
+            } else {
+                int function = FUNCTIONS.indexOf(name);
+                if (function < 0) {
+                    throw error("Unknown function " + name);
+                }
+                if (count != ARITIES[function]) {
+                    throw error(name + " takes " + ARITIES[function] + " argument(s)");
+                }
+                expression = new Function(function, arguments.toArray(new Expression[count]));
+            }
+            return fold(expression);
+        }
+
+        /**
+         * @return the disjunction of the following conjunctions
+         */
+        Expression or() throws ParseException {
+            Expression left = and();
+            while (accept("||")) {
+                left = fold(new Binary('|', left, and()));
+            }
+            return left;
+        }
+
+        /**
+         * @return the following number, attribute, call or parenthesized
+         *         expression
+         */
+        Expression primary() throws ParseException {
+            skipSpace();
+            if (_position >= _source.length()) {
+                throw error("Unexpected end");
+            }
+            char c = _source.charAt(_position);
+            int start = _position;
+            if (accept("(")) {
+                Expression expression = or();
+                expect(")");
+                return expression;
+            } else if (Character.isDigit(c) || c == '.') {
+                while (_position < _source.length()
+                        && (Character.isDigit(_source.charAt(_position)) || _source.charAt(_position) == '.'
+                                || _source.charAt(_position) == 'e' || _source.charAt(_position) == 'E' || ((_source
+                                .charAt(_position) == '-' || _source.charAt(_position) == '+') && (_source
+                                .charAt(_position - 1) == 'e' || _source.charAt(_position - 1) == 'E')))) {
+                    _position++;
+                }
+                try {
+                    return new Constant(Double.parseDouble(_source.substring(start, _position)));
+                } catch (NumberFormatException e) {
+                    _position = start;
+                    throw error("Malformed number");
+                }
+            } else if (c == '`') {
+                int end = _source.indexOf('`', start + 1);
+                if (end < 0) {
+                    throw error("Unterminated attribute name");
+                }
+                _position = end + 1;
+                return variable(_source.substring(start + 1, end));
+            } else if (Character.isJavaIdentifierStart(c)) {
+                while (_position < _source.length() && Character.isJavaIdentifierPart(_source.charAt(_position))) {
+                    _position++;
+                }
+                String name = _source.substring(start, _position);
+                if (accept("(")) {
+                    return function(name);
+                }
+                return variable(name);
+            }
+            throw error("Unexpected '" + c + "'");
+        }
+
+        /**
+         * Skips white space
+         */
+        void skipSpace() {
+            while (_position < _source.length() && Character.isWhitespace(_source.charAt(_position))) {
+                _position++;
+            }
+        }
+
+        /**
+         * @return the product or quotient of the following unary expressions
+         */
+        Expression term() throws ParseException {
+            Expression left = unary();
+            while (true) {
+                if (accept("*")) {
+                    left = fold(new Arithmetic('*', left, unary()));
+                } else if (accept("/")) {
+                    left = fold(new Arithmetic('/', left, unary()));
+                } else if (accept("%")) {
+                    left = fold(new Arithmetic('%', left, unary()));
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        /**
+         * @return the following, possibly negated, primary expression
+         */
+        Expression unary() throws ParseException {
+            if (accept("-")) {
+                return fold(new Unary(false, unary()));
+            } else if (_source.startsWith("!", _position) && !_source.startsWith("!=", _position)) {
+                _position++;
+                return fold(new Unary(true, unary()));
+            }
+            return primary();
+        }
+
+        /**
+         * Reads an attribute, adding it to the inputs the first time
+         * 
+         * @param name
+         *            The name of the attribute
+         * @return the attribute reader
+         */
+        Expression variable(String name) {
+            int input = _inputs.indexOf(name);
+            if (input < 0) {
+                input = _inputs.size();
+                _inputs.add(name);
+            }
+            return new Variable(input);
+        }
+
+        /**
+         * the names of the attributes read
+         */
+        private final List<String> _inputs;
+
+        /**
+         * the position of the next character
+         */
+        private int _position;
+
+        /**
+         * the expression parsed
+         */
+        private final String _source;
+
+        /**
+         * @param source
+         *            The expression to parse
+         * @param inputs
+         *            The list the names of the attributes read are added to
+         */
+        Parser(String source, List<String> inputs) {
+            _source = source;
+            _inputs = inputs;
+        }
+    }
+
+    /**
+     * Negates an operand, arithmetically or logically
+     */
+    private static final class Unary extends Expression {
+
+        @Override
+        public double evaluate(FeatureRow row) {
+            double value = _operand.evaluate(row);
+            if (_logical) {
+                return value != value ? Double.NaN : (value == 0 ? 1 : 0);
+            }
+            return -value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return _operand.isConstant();
+        }
+
+        /**
+         * indicates a logical rather than arithmetic negation
+         */
+        private final boolean _logical;
+
+        /**
+         * the operand
+         */
+        private final Expression _operand;
+
+        /**
+         * @param logical
+         *            Indicates a logical rather than arithmetic negation
+         * @param operand
+         *            The operand
+         */
+        Unary(boolean logical, Expression operand) {
+            _logical = logical;
+            _operand = operand;
+        }
+    }
+
+    /**
+     * Reads an attribute of the row
+     */
+    private static final class Variable extends Expression {
+
+        @Override
+        public double evaluate(FeatureRow row) {
+            return row.number(_input);
+        }
+
+        /**
+         * the position of the attribute in the inputs of the expression
+         */
+        private final int _input;
+
+        /**
+         * @param input
+         *            The position of the attribute in the inputs of the
+         *            expression
+         */
+        Variable(int input) {
+            _input = input;
+        }
+    }
+
+    /**
+     * the index of each function in FUNCTIONS
+     */
+    private static final int IF = 0, ABS = 1, LOG = 2, EXP = 3, SQRT = 4, POW = 5, MIN = 6;
+
+    /**
+     * the names of the functions other than bucket
+     */
+    private static final List<String> FUNCTIONS = Arrays.asList("if", "abs", "log", "exp", "sqrt", "pow", "min",
+            "max");
+
+    /**
+     * the number of arguments of each function in FUNCTIONS
+     */
+    private static final int[] ARITIES = { 3, 1, 1, 1, 1, 2, 2, 2 };
+
+    /**
+     * Compiles an expression
+     * 
+     * @param source
+     *            The expression to compile
+     * @param inputs
+     *            The list the names of the attributes read are added to, in
+     *            the order their values are read by FeatureRow.number
+     * @return the compiled expression
+     * @throws ParseException
+     *             If the expression is malformed
+     */
+    public static Expression compile(String source, List<String> inputs) throws ParseException {
+        Parser parser = new Parser(source, inputs);
+        Expression expression = parser.or();
+        parser.skipSpace();
+        if (parser._position < source.length()) {
+            throw parser.error("Unexpected '" + source.charAt(parser._position) + "'");
+        }
+        return expression;
+    }
+
+    /**
+     * Evaluates the expression for a row
+     * 
+     * @param row
+     *            The decoded row
+     * @return the value of the expression, NaN if it is missing
+     */
+    public abstract double evaluate(FeatureRow row);
+
+    /**
+     * @return true if the expression reads no attribute
+     */
+    boolean isConstant() {
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A feature derived by an expression declared in the configuration. The
+ * expression is compiled once; numeric and date features take its value, while
+ * nominal features take the label it indexes, or the value itself if the
+ * feature has no labels.
+ */
+public final class ExpressionFeature extends DerivedFeature {
+
+    @Override
+    public void compute(FeatureRow row) throws ParseException {
+        double value = _expression.evaluate(row);
+        if (value != value) {
+            row.setMissing();
+        } else if (!_nominal) {
+            row.set(value);
+        } else if (_labels == null) {
+            row.setNominal(value == (long) value ? Long.toString((long) value) : Double.toString(value));
+        } else if (value >= 0 && value < _labels.length) {
+            row.setNominal(_labels[(int) value]);
+        } else {
+            row.setMissing();
+        }
+    }
+
+    @Override
+    public Attributes getAttribute() {
+        return _attribute;
+    }
+
+    /**
+     * @return the compiled expression
+     */
+    public Expression getExpression() {
+        return _expression;
+    }
+
+    @Override
+    public String[] getInputs() {
+        return _inputs;
+    }
+
+    /**
+     * the attribute holding the feature
+     */
+    private final Attributes _attribute;
+
+    /**
+     * the compiled expression
+     */
+    private final Expression _expression;
+
+    /**
+     * the names of the attributes the expression reads
+     */
+    private final String[] _inputs;
+
+    /**
+     * the labels of a nominal feature, indexed by the expression, or null
+     */
+    private final String[] _labels;
+
+    /**
+     * indicates if the feature is nominal
+     */
+    private final boolean _nominal;
+
+    /**
+     * Class constructor - compiles the expression of a feature
+     * 
+     * @param attribute
+     *            The attribute holding the feature
+     * @param expression
+     *            The expression deriving the feature
+     * @param labels
+     *            The labels of a nominal feature, indexed by the expression, or
+     *            null
+     * @throws ParseException
+     *             If the expression is malformed
+     */
+    public ExpressionFeature(Attributes attribute, String expression, List<String> labels) throws ParseException {
+        _attribute = attribute;
+        List<String> inputs = new ArrayList<String>();
+        _expression = Expression.compile(expression, inputs);
+        _inputs = inputs.toArray(new String[inputs.size()]);
+        _nominal = attribute.getAttributeType().equals("nominal") || attribute.getAttributeType().equals("string");
+        _labels = labels == null ? null : labels.toArray(new String[labels.size()]);
+    }
+}
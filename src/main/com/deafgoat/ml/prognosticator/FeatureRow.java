@@ -0,0 +1,348 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Weka
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * The view of a decoded row a DerivedFeature computes from. A view binds the
+ * inputs and output of one feature to the slots of a row layout once, and is
+ * then reset to each row in turn; every ingest worker holds its own views.
+ */
+public final class FeatureRow {
+
+    /**
+     * Parses a nominal or string value as a number
+     * 
+     * @param value
+     *            The value
+     * @return the number or NaN if the value is not one
+     */
+    private static double parse(String value) {
+        if (value == null || ColumnDecoder.isMissing(value.trim())) {
+            return Utils.missingValue();
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Utils.missingValue();
+        }
+    }
+
+    /**
+     * Computes the feature for a row
+     * 
+     * @param values
+     *            The decoded values of the row, which the feature is written
+     *            into
+     * @param reader
+     *            The reader positioned at the record of the row, or null
+     * @throws ParseException
+     *             If a value can not be parsed
+     */
+    public void compute(double[] values, DumpReader reader) throws ParseException {
+        _values = values;
+        _reader = reader;
+        _record = null;
+        _feature.compute(this);
+    }
+
+    /**
+     * Decodes a value of the feature from its string form, as a dump cell of
+     * the feature's type is decoded
+     * 
+     * @param value
+     *            The value of the feature, empty or '?' if it is missing
+     * @throws ParseException
+     *             If a date can not be parsed
+     */
+    public void decode(String value) throws ParseException {
+        _decoder.decode(value, _values);
+    }
+
+    /**
+     * @return mapping of dump column name to its position in the raw record
+     */
+    public Map<String, Integer> getColumnMap() {
+        return _columnMap;
+    }
+
+    /**
+     * @return the application configuration object
+     */
+    public ConfigReader getConfig() {
+        return _config;
+    }
+
+    /**
+     * @return the feature computed by this view
+     */
+    public DerivedFeature getFeature() {
+        return _feature;
+    }
+
+    /**
+     * Returns the raw record of the row. Prefer the decoded values, which cost
+     * nothing more to read.
+     * 
+     * @return the cells of the record or null if the row has no record
+     */
+    public List<String> getRecord() {
+        if (_record == null && _reader != null) {
+            _record = _reader.getRecord();
+        }
+        return _record;
+    }
+
+    /**
+     * Indicates if an input is missing
+     * 
+     * @param input
+     *            The position of the input in DerivedFeature.getInputs
+     * @return true if the input value is missing
+     */
+    public boolean isMissing(int input) {
+        return Utils.isMissingValue(value(input));
+    }
+
+    /**
+     * Returns the numeric value of an input. Nominal and string values are
+     * parsed as numbers, each value of a dictionary once.
+     * 
+     * @param input
+     *            The position of the input in DerivedFeature.getInputs
+     * @return the numeric value or date in milliseconds of the input, NaN if
+     *         it is missing or not a number
+     */
+    public double number(int input) {
+        double value = value(input);
+        if (!_coded[input] || value != value) {
+            return value;
+        }
+        int code = (int) value;
+        NominalDictionary dictionary = _dictionaries[input];
+        if (dictionary == null) {
+            return parse(string(input));
+        }
+        // dictionaries only grow, so parse the values added since last time
+        if (code >= _parsed[input]) {
+            if (_numbers[input].length < dictionary.size()) {
+                _numbers[input] = Arrays.copyOf(_numbers[input],
+                        Math.max(dictionary.size(), 2 * _numbers[input].length));
+            }
+            for (int k = _parsed[input]; k < dictionary.size(); k++) {
+                _numbers[input][k] = parse(dictionary.value(k));
+            }
+            _parsed[input] = dictionary.size();
+        }
+        return _numbers[input][code];
+    }
+
+    /**
+     * Writes the value of the feature
+     * 
+     * @param value
+     *            The numeric value, date in milliseconds or nominal code
+     */
+    public void set(double value) {
+        _values[_target] = value;
+    }
+
+    /**
+     * Marks the value of the feature missing
+     */
+    public void setMissing() {
+        _values[_target] = Utils.missingValue();
+    }
+
+    /**
+     * Writes the value of a nominal or string feature, coding it as its
+     * attribute does
+     * 
+     * @param value
+     *            The value of the feature
+     * @throws ParseException
+     *             Never for nominal and string features
+     */
+    public void setNominal(String value) throws ParseException {
+        _decoder.decode(value, _values);
+    }
+
+    /**
+     * Returns the value of a nominal or string input
+     * 
+     * @param input
+     *            The position of the input in DerivedFeature.getInputs
+     * @return the value of the input or null if it is missing or not nominal
+     */
+    public String string(int input) {
+        double value = value(input);
+        if (Utils.isMissingValue(value)) {
+            return null;
+        }
+        if (_dictionaries[input] != null) {
+            return _dictionaries[input].value((int) value);
+        }
+        return _header != null && _header.attribute(_slots[input]).isString() ? _header.attribute(_slots[input])
+                .value((int) value) : null;
+    }
+
+    /**
+     * Returns the decoded value of an input
+     * 
+     * @param input
+     *            The position of the input in DerivedFeature.getInputs
+     * @return the numeric value, date in milliseconds or nominal code of the
+     *         input, NaN if it is missing
+     */
+    public double value(int input) {
+        return _slots[input] < 0 ? Utils.missingValue() : _values[_slots[input]];
+    }
+
+    /**
+     * indicates if each input holds nominal or string codes
+     */
+    private final boolean[] _coded;
+
+    /**
+     * mapping of dump column name to its position in the raw record
+     */
+    private final Map<String, Integer> _columnMap;
+
+    /**
+     * the application configuration object
+     */
+    private final ConfigReader _config;
+
+    /**
+     * the decoder of the feature's string form
+     */
+    private final ColumnDecoder _decoder;
+
+    /**
+     * the dictionaries coding the nominal inputs
+     */
+    private final NominalDictionary[] _dictionaries;
+
+    /**
+     * the feature computed by this view
+     */
+    private final DerivedFeature _feature;
+
+    /**
+     * the data set coding the string inputs, or null
+     */
+    private final Instances _header;
+
+    /**
+     * the parsed values of each nominal input, by code
+     */
+    private final double[][] _numbers;
+
+    /**
+     * the number of values of each nominal input parsed
+     */
+    private final int[] _parsed;
+
+    /**
+     * the reader positioned at the record of the current row
+     */
+    private DumpReader _reader;
+
+    /**
+     * the raw record of the current row once it has been read
+     */
+    private List<String> _record;
+
+    /**
+     * the slot of each input, -1 if it is not in the row
+     */
+    private final int[] _slots;
+
+    /**
+     * the slot the feature is written to
+     */
+    private final int _target;
+
+    /**
+     * the decoded values of the current row
+     */
+    private double[] _values;
+
+    /**
+     * Class constructor - binds the inputs and output of a feature to a row
+     * layout
+     * 
+     * @param feature
+     *            The feature to compute
+     * @param decoder
+     *            The decoder of the feature's string form, which also
+     *            determines the slot it is written to
+     * @param slots
+     *            Mapping of attribute name to its slot in the row
+     * @param dictionaries
+     *            The dictionary coding the nominal attribute of each slot, or
+     *            null for other slots
+     * @param header
+     *            The data set coding the string attributes of the row, or null
+     *            if dictionaries code them
+     * @param columnMap
+     *            Mapping of dump column name to its position in the raw record
+     * @param config
+     *            The application configuration object
+     */
+    public FeatureRow(DerivedFeature feature, ColumnDecoder decoder, Map<String, Integer> slots,
+            List<NominalDictionary> dictionaries, Instances header, Map<String, Integer> columnMap, ConfigReader config) {
+        _feature = feature;
+        _decoder = decoder;
+        _target = decoder.getTarget();
+        _header = header;
+        _columnMap = columnMap;
+        _config = config;
+        String[] inputs = feature.getInputs();
+        _slots = new int[inputs.length];
+        _dictionaries = new NominalDictionary[inputs.length];
+        _coded = new boolean[inputs.length];
+        _numbers = new double[inputs.length][];
+        _parsed = new int[inputs.length];
+        Integer slot;
+        for (int i = 0; i < inputs.length; i++) {
+            slot = slots.get(inputs[i]);
+            _slots[i] = slot == null ? -1 : slot;
+            if (slot == null) {
+                Logger.getLogger(AppLogger.class.getName()).error(
+                        "Could not find input " + inputs[i] + " of feature "
+                                + feature.getAttribute().getAttributeName());
+            } else {
+                _dictionaries[i] = slot < dictionaries.size() ? dictionaries.get(slot) : null;
+                _coded[i] = _dictionaries[i] != null || (header != null && !header.attribute(slot).isNumeric());
+                _numbers[i] = _dictionaries[i] == null ? null : new double[16];
+            }
+        }
+    }
+}
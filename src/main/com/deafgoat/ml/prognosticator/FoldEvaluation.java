@@ -0,0 +1,235 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.util.concurrent.Callable;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Weka
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.ConditionalDensityEstimator;
+import weka.classifiers.Evaluation;
+import weka.classifiers.IntervalEstimator;
+import weka.classifiers.misc.InputMappedClassifier;
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Trains a classifier copy on the training part of a cross-validation fold and
+ * predicts the distributions of the fold's test instances. The test instances
+ * are read from the shared dataset by index; a view of them is only
+ * materialized for classifiers that predict or are evaluated on whole
+ * Instances. Folds evaluated concurrently are recorded by the caller in fold
+ * order, so an evaluation is identical to that of a sequential run.
+ */
+public final class FoldEvaluation implements Callable<FoldEvaluation> {
+
+    @Override
+    public FoldEvaluation call() throws Exception {
+        Instances train = _folds.train(_index);
+        _test = _folds.testIndices(_index);
+        _classifier = AbstractClassifier.makeCopy(_template);
+        long start = System.nanoTime();
+        try {
+            _classifier.buildClassifier(train);
+        } catch (Exception e) {
+            _failed = true;
+            _logger.debug(_template.getClass().getSimpleName() + " can not be trained on fold " + (_index + 1)
+                    + " - msg: " + e.getMessage());
+        }
+        _trainTime = System.nanoTime() - start;
+        // estimators the evaluation queries beyond the distribution are
+        // evaluated in fold order by the caller
+        if (_classifier instanceof IntervalEstimator || _classifier instanceof ConditionalDensityEstimator
+                || _classifier instanceof InputMappedClassifier) {
+            return this;
+        }
+        _distributions = new double[_test.length][];
+        start = System.nanoTime();
+        try {
+            if (_classifier instanceof BatchPredictor) {
+                // batch predictors get copies whose class is missing, as
+                // WEKA's evaluation hands them
+                Instances classMissing = new Instances(_folds.test(_index));
+                for (int i = 0; i < classMissing.numInstances(); i++) {
+                    classMissing.instance(i).setClassMissing();
+                }
+                _distributions = ((BatchPredictor) _classifier).distributionsForInstances(classMissing);
+                _predicted = _distributions.length;
+            } else {
+                Instances data = _folds.getData();
+                Instance classMissing;
+                for (; _predicted < _distributions.length; _predicted++) {
+                    classMissing = (Instance) data.instance(_test[_predicted]).copy();
+                    classMissing.setDataset(data);
+                    classMissing.setClassMissing();
+                    _distributions[_predicted] = _classifier.distributionForInstance(classMissing);
+                }
+            }
+        } catch (Exception e) {
+            _failed = true;
+        }
+        _testTime = System.nanoTime() - start;
+        // only the distributions are recorded, release the trained copy
+        _classifier = null;
+        return this;
+    }
+
+    /**
+     * Records the predictions of this fold in an evaluation, exactly as
+     * evaluating the trained copy on the test instances would
+     * 
+     * @param eval
+     *            The evaluation to record the predictions in
+     * @return false if the fold could not be evaluated in full
+     */
+    public boolean evaluate(Evaluation eval) {
+        try {
+            if (_distributions == null) {
+                long start = System.nanoTime();
+                eval.evaluateModel(_classifier, _folds.test(_index));
+                _testTime = System.nanoTime() - start;
+                return true;
+            }
+            for (int i = 0; i < _predicted; i++) {
+                eval.evaluateModelOnceAndRecordPrediction(_distributions[i], _folds.instance(_test[i]));
+            }
+            if (_predicted < _distributions.length) {
+                throw new Exception("Can not predict fold " + (_index + 1));
+            }
+            return true;
+        } catch (Exception e) {
+            _logger.debug("Can not evaluate model");
+            return false;
+        }
+    }
+
+    /**
+     * @return the index of the fold
+     */
+    public int getIndex() {
+        return _index;
+    }
+
+    /**
+     * @return the number of test instances of the fold
+     */
+    public int getTestSize() {
+        return _test.length;
+    }
+
+    /**
+     * @return the time taken to predict the test instances, in nanoseconds
+     */
+    public long getTestTime() {
+        return _testTime;
+    }
+
+    /**
+     * @return the time taken to train the classifier copy, in nanoseconds
+     */
+    public long getTrainTime() {
+        return _trainTime;
+    }
+
+    /**
+     * @return true if the classifier copy could not be trained or could not
+     *         predict the test instances
+     */
+    public boolean isFailed() {
+        return _failed;
+    }
+
+    /**
+     * the classifier copy trained on the fold, only held until its
+     * distributions are predicted unless the fold is evaluated by the caller
+     */
+    private Classifier _classifier;
+
+    /**
+     * the predicted distribution of each test instance, or null if the fold is
+     * evaluated by the caller
+     */
+    private double[][] _distributions;
+
+    /**
+     * indicates if training or predicting failed
+     */
+    private boolean _failed;
+
+    /**
+     * the folds the fold is drawn from
+     */
+    private final Folds _folds;
+
+    /**
+     * the index of the fold
+     */
+    private final int _index;
+
+    /**
+     * handle to the logger
+     */
+    private final Logger _logger;
+
+    /**
+     * the number of test instances predicted
+     */
+    private int _predicted;
+
+    /**
+     * the classifier the trained copy is made of
+     */
+    private final Classifier _template;
+
+    /**
+     * the indices of the test instances of the fold
+     */
+    private int[] _test;
+
+    /**
+     * the time taken to predict the test instances, in nanoseconds
+     */
+    private long _testTime;
+
+    /**
+     * the time taken to train the classifier copy, in nanoseconds
+     */
+    private long _trainTime;
+
+    /**
+     * Class constructor
+     * 
+     * @param template
+     *            The untrained classifier to train a copy of
+     * @param folds
+     *            The folds the fold is drawn from
+     * @param index
+     *            The index of the fold
+     */
+    public FoldEvaluation(Classifier template, Folds folds, int index) {
+        _template = template;
+        _folds = folds;
+        _index = index;
+        _logger = Logger.getLogger(AppLogger.class.getName());
+    }
+}
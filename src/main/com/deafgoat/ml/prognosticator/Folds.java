@@ -0,0 +1,215 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Weka
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * The cross-validation folds of a dataset. The dataset is stratified once and
+ * each fold is a range of indices into it, so training and evaluation read
+ * the shared instances rather than copies of them. Classifiers that need a
+ * real Instances object get a view of the fold that references the shared
+ * instances, materialized once, the first time it is needed, so the folds can
+ * be shared by any number of classifiers evaluated concurrently.
+ */
+public final class Folds {
+
+    /**
+     * Instances referencing the instances of a dataset rather than copies of
+     * them
+     */
+    private static final class View extends Instances {
+
+        /**
+         * for serialization
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Class constructor
+         * 
+         * @param data
+         *            The dataset to reference
+         * @param indices
+         *            The indices of the referenced instances
+         */
+        View(Instances data, int[] indices) {
+            super(data, indices.length);
+            for (int index : indices) {
+                m_Instances.add(data.instance(index));
+            }
+        }
+    }
+
+    /**
+     * @return the stratified dataset the folds are drawn from
+     */
+    public Instances getData() {
+        return _data;
+    }
+
+    /**
+     * Returns an instance of the stratified dataset
+     * 
+     * @param index
+     *            The index of the instance
+     * @return the instance, which must not be modified
+     */
+    public Instance instance(int index) {
+        return _data.instance(index);
+    }
+
+    /**
+     * @return the number of folds
+     */
+    public int numFolds() {
+        return _train.length;
+    }
+
+    /**
+     * Returns the index of the first test instance of a fold, laid out as
+     * Instances.testCV lays out the folds
+     * 
+     * @param n
+     *            The index of the fold
+     * @return the index of the first test instance
+     */
+    private int testFirst(int n) {
+        int folds = _train.length;
+        int size = _data.numInstances();
+        return n * (size / folds) + Math.min(n, size % folds);
+    }
+
+    /**
+     * Returns the test instances of a fold
+     * 
+     * @param n
+     *            The index of the fold
+     * @return a view of the test instances, which must not be modified
+     */
+    public Instances test(int n) {
+        synchronized (_locks[n]) {
+            if (_test[n] == null) {
+                _test[n] = new View(_data, testIndices(n));
+            }
+            return _test[n];
+        }
+    }
+
+    /**
+     * Returns the indices of the test instances of a fold
+     * 
+     * @param n
+     *            The index of the fold
+     * @return the indices of the test instances in the stratified dataset
+     */
+    public int[] testIndices(int n) {
+        int first = testFirst(n);
+        int[] indices = new int[testFirst(n + 1) - first];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = first + i;
+        }
+        return indices;
+    }
+
+    /**
+     * Returns the training instances of a fold
+     * 
+     * @param n
+     *            The index of the fold
+     * @return a view of the training instances, which must not be modified
+     */
+    public Instances train(int n) {
+        synchronized (_locks[n]) {
+            if (_train[n] == null) {
+                _train[n] = new View(_data, trainIndices(n));
+            }
+            return _train[n];
+        }
+    }
+
+    /**
+     * Returns the indices of the training instances of a fold, in the order
+     * Instances.trainCV copies them
+     * 
+     * @param n
+     *            The index of the fold
+     * @return the indices of the training instances in the stratified dataset
+     */
+    public int[] trainIndices(int n) {
+        int first = testFirst(n);
+        int last = testFirst(n + 1);
+        int[] indices = new int[_data.numInstances() - (last - first)];
+        int i = 0;
+        for (int index = 0; index < first; index++) {
+            indices[i++] = index;
+        }
+        for (int index = last; index < _data.numInstances(); index++) {
+            indices[i++] = index;
+        }
+        return indices;
+    }
+
+    /**
+     * the stratified dataset the folds are drawn from
+     */
+    private final Instances _data;
+
+    /**
+     * the lock guarding the views of each fold
+     */
+    private final Object[] _locks;
+
+    /**
+     * the view of the test instances of each fold, null until needed
+     */
+    private final Instances[] _test;
+
+    /**
+     * the view of the training instances of each fold, null until needed
+     */
+    private final Instances[] _train;
+
+    /**
+     * Class constructor - stratifies the dataset for a nominal class
+     * attribute
+     * 
+     * @param data
+     *            The dataset to draw the folds from, which is stratified in
+     *            place
+     * @param folds
+     *            The number of folds
+     */
+    public Folds(Instances data, int folds) {
+        if (folds < 2 || folds > data.numInstances()) {
+            throw new IllegalArgumentException("Can not draw " + folds + " folds from " + data.numInstances()
+                    + " instances");
+        }
+        if (data.classAttribute().isNominal()) {
+            data.stratify(folds);
+        }
+        _data = data;
+        _train = new Instances[folds];
+        _test = new Instances[folds];
+        _locks = new Object[folds];
+        for (int n = 0; n < folds; n++) {
+            _locks[n] = new Object();
+        }
+    }
+}
@@ -24,11 +24,16 @@ import java.util.Map;
 import org.apache.log4j.Logger;
 
 // Weka
+import weka.core.DenseInstance;
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.SparseInstance;
 import weka.filters.Filter;
 import weka.filters.MultiFilter;
 import weka.filters.supervised.instance.StratifiedRemoveFolds;
 import weka.filters.unsupervised.attribute.Center;
+import weka.filters.unsupervised.attribute.Remove;
 import weka.filters.unsupervised.attribute.RemoveUseless;
 
 /**
@@ -37,7 +42,8 @@ import weka.filters.unsupervised.attribute.RemoveUseless;
 public class InstancesFilter {
 
     /**
-     * Makes numeric attributes have zero mean
+     * Makes numeric attributes have zero mean. The means are taken from the
+     * column statistics when they describe the instances.
      * 
      * @throws Exception
      *             If filter could not be applied
@@ -48,8 +54,52 @@ public class InstancesFilter {
         }
         // Might employ filtered classifier for production
         Center ct = new Center();
-        ct.setInputFormat(_instances);
-        _instances = Filter.useFilter(_instances, ct);
+        if (!hasStatistics()) {
+            ct.setInputFormat(_instances);
+            setInstances(Filter.useFilter(_instances, ct));
+            return;
+        }
+        // center as WEKA does, without a pass to compute the means
+        double[] means = new double[_instances.numAttributes()];
+        boolean[] center = new boolean[means.length];
+        for (int i = 0; i < means.length; i++) {
+            center[i] = _instances.attribute(i).isNumeric() && i != _instances.classIndex();
+            means[i] = Double.isNaN(_statistics.getMean(i)) ? 0 : _statistics.getMean(i);
+        }
+        Instances centered = new Instances(_instances, _instances.numInstances());
+        centered.setRelationName(filteredRelationName(ct));
+        Instance instance;
+        double[] values;
+        for (int j = 0; j < _instances.numInstances(); j++) {
+            instance = _instances.instance(j);
+            values = instance.toDoubleArray();
+            for (int i = 0; i < values.length; i++) {
+                if (center[i] && !instance.isMissing(i)) {
+                    values[i] -= means[i];
+                }
+            }
+            centered.add(instance instanceof SparseInstance ? new SparseInstance(instance.weight(), values)
+                    : new DenseInstance(instance.weight(), values));
+        }
+        setInstances(centered);
+    }
+
+    /**
+     * Names the relation of the filtered instances as a WEKA filter names it
+     * 
+     * @param filter
+     *            The filter applied
+     * @return the relation name followed by the filter name and options
+     */
+    private String filteredRelationName(Filter filter) {
+        StringBuilder name = new StringBuilder(_instances.relationName());
+        name.append('-').append(filter.getClass().getName());
+        if (filter instanceof OptionHandler) {
+            for (String option : ((OptionHandler) filter).getOptions()) {
+                name.append(option.trim());
+            }
+        }
+        return name.toString();
     }
 
     /**
@@ -74,6 +124,13 @@ public class InstancesFilter {
         return _instances;
     }
 
+    /**
+     * @return true if column statistics describing the instances are set
+     */
+    private boolean hasStatistics() {
+        return _statistics != null && _statistics.describes(_instances);
+    }
+
     /**
      * Applies a filter to remove supplied attribute names from the set of
      * instances
@@ -99,7 +156,7 @@ public class InstancesFilter {
         }
         mf.setOptions(options);
         mf.setInputFormat(_instances);
-        _instances = Filter.useFilter(_instances, mf);
+        setInstances(Filter.useFilter(_instances, mf));
     }
 
     /**
@@ -140,7 +197,7 @@ public class InstancesFilter {
         }
         srf.setOptions(options);
         srf.setInputFormat(_instances);
-        _instances = Filter.useFilter(_instances, srf);
+        setInstances(Filter.useFilter(_instances, srf));
     }
 
     /**
@@ -167,12 +224,13 @@ public class InstancesFilter {
         }
         mf.setOptions(options);
         mf.setInputFormat(_instances);
-        _instances = Filter.useFilter(_instances, mf);
+        setInstances(Filter.useFilter(_instances, mf));
     }
 
     /**
      * Applies a filter to remove useless attributes with a variance greater
-     * than the specified value
+     * than the specified value. The useless attributes are found from the
+     * column statistics when they describe the instances.
      * 
      * @param variance
      *            The maximum variance for the attribute
@@ -189,8 +247,19 @@ public class InstancesFilter {
         options[0] = "-M";
         options[1] = variance;
         ru.setOptions(options);
-        ru.setInputFormat(_instances);
-        _instances = Filter.useFilter(_instances, ru);
+        int[] useless = hasStatistics() ? uselessAttributes(ru.getMaximumVariancePercentageAllowed()) : null;
+        if (useless == null) {
+            ru.setInputFormat(_instances);
+            setInstances(Filter.useFilter(_instances, ru));
+            return;
+        }
+        Remove remove = new Remove();
+        remove.setAttributeIndicesArray(useless);
+        remove.setInputFormat(_instances);
+        String relation = filteredRelationName(ru);
+        Instances filtered = Filter.useFilter(_instances, remove);
+        filtered.setRelationName(relation);
+        setInstances(filtered);
     }
 
     /**
@@ -199,6 +268,52 @@ public class InstancesFilter {
      */
     private void setInstances(Instances instances) {
         _instances = instances;
+        // the statistics describe the instances before they were filtered
+        _statistics = null;
+    }
+
+    /**
+     * Sets the column statistics the filters may use in place of a pass over
+     * the instances. They are only used while they describe the instances.
+     * 
+     * @param statistics
+     *            The column statistics of the instances, or null
+     */
+    public void setStatistics(ColumnStatistics statistics) {
+        _statistics = statistics;
+    }
+
+    /**
+     * Applies the tests of RemoveUseless to the column statistics
+     * 
+     * @param maxVariance
+     *            The maximum variance percentage of nominal attributes
+     * @return the indices of the useless attributes, or null if the statistics
+     *         only estimate the distinct count of a nominal attribute
+     */
+    private int[] uselessAttributes(double maxVariance) {
+        int[] useless = new int[_instances.numAttributes()];
+        int numUseless = 0;
+        long present;
+        for (int i = 0; i < useless.length; i++) {
+            if (i == _instances.classIndex()) {
+                continue;
+            }
+            present = _statistics.getNumInstances() - _statistics.getMissing(i);
+            if (present == 0 || _statistics.getDistinct(i) < 2) {
+                useless[numUseless++] = i;
+            } else if (_instances.attribute(i).isNominal()) {
+                if (!_statistics.isDistinctExact(i)) {
+                    return null;
+                }
+                if ((double) _statistics.getDistinct(i) / present * 100 > maxVariance) {
+                    useless[numUseless++] = i;
+                }
+            }
+        }
+        int[] indices = new int[numUseless];
+        System.arraycopy(useless, 0, indices, 0, numUseless);
+        return indices;
     }
 
     /**
@@ -216,6 +331,11 @@ public class InstancesFilter {
      */
     private Logger _logger;
 
+    /**
+     * the column statistics of the unfiltered instances
+     */
+    private ColumnStatistics _statistics;
+
     /**
      * Class constructor
      * 
@@ -21,16 +21,21 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.text.ParseException;
+
+// JSON
+import org.json.JSONException;
 
 // Weka
+import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.converters.CSVLoader;
 import weka.core.converters.ConverterUtils.DataSource;
 
 /**
  * Utility to read from several data sources. This class provides an interface
- * to read from ARFF, CSV, and MongoDB. For MongoDB, it works with simple
- * collections with no nested fields.
+ * to read from ARFF, the binary columnar format, CSV, and MongoDB. For MongoDB,
+ * it works with simple collections with no nested fields.
  */
 public class InstancesReader {
 
@@ -55,6 +60,25 @@ public class InstancesReader {
         return _instances;
     }
 
+    /**
+     * Read from a file in the binary columnar format. The file is
+     * memory-mapped; row groups outside the range, if one is set, are skipped.
+     * 
+     * @throws IOException
+     *             If the file can not be read
+     * @throws ParseException
+     *             If a date in the range can not be parsed
+     * @return the set of instances read
+     */
+    public Instances readFromColumnar() throws IOException, ParseException {
+        ColumnarLoader loader = new ColumnarLoader(_filename);
+        if (_rangeAttribute != null) {
+            loader.setRange(_rangeAttribute, _rangeFrom, _rangeTo);
+        }
+        _instances = loader.read();
+        return _instances;
+    }
+
     /**
      * Read from a .CSV file
      * 
@@ -87,6 +111,78 @@ public class InstancesReader {
         return _instances;
     }
 
+    /**
+     * Read from a .ARFF or columnar file, chosen by the file extension. The
+     * range, if one is set, applies to either.
+     * 
+     * @throws IOException
+     *             If the file can not be read
+     * @throws ParseException
+     *             If a date in the range can not be parsed
+     * @return the set of instances read
+     */
+    public Instances readInstances() throws IOException, ParseException {
+        if (ColumnarFormat.isColumnar(_filename)) {
+            return readFromColumnar();
+        }
+        readFromARFF();
+        if (_rangeAttribute != null) {
+            Attribute attribute = _instances.attribute(_rangeAttribute);
+            if (attribute == null || !attribute.isNumeric()) {
+                throw new IOException("Can not range over attribute " + _rangeAttribute);
+            }
+            double[] bounds = ColumnarLoader.bounds(attribute, _rangeFrom, _rangeTo);
+            Instances kept = new Instances(_instances, _instances.numInstances());
+            double value;
+            for (int i = 0; i < _instances.numInstances(); i++) {
+                value = _instances.instance(i).value(attribute);
+                // missing values are NaN and never in range
+                if (value >= bounds[0] && value <= bounds[1]) {
+                    kept.add(_instances.instance(i));
+                }
+            }
+            _instances = kept;
+        }
+        return _instances;
+    }
+
+    /**
+     * Reads the column statistics saved next to the file, if there are any
+     * 
+     * @return the column statistics of the file or null if it has no readable
+     *         sidecar
+     */
+    public ColumnStatistics readStatistics() {
+        if (_filename == null || !new File(ColumnStatistics.sidecarOf(_filename)).exists()) {
+            return null;
+        }
+        try {
+            return ColumnStatistics.load(ColumnStatistics.sidecarOf(_filename));
+        } catch (IOException e) {
+            return null;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Restricts the rows read from .ARFF or columnar files to those whose
+     * value of an attribute lies in a range. Values are given as they appear
+     * in the data, so date attributes take dates in their own format.
+     * 
+     * @param attribute
+     *            The name of a numeric or date attribute
+     * @param from
+     *            The lowest value in the range
+     * @param to
+     *            The highest value in the range
+     */
+    public void setRange(String attribute, String from, String to) {
+        _rangeAttribute = attribute;
+        _rangeFrom = from;
+        _rangeTo = to;
+    }
+
     /**
      * working collection
      */
@@ -127,6 +223,21 @@ public class InstancesReader {
      */
     private Mongo2CSV _m2v;
 
+    /**
+     * the attribute the range is on
+     */
+    private String _rangeAttribute;
+
+    /**
+     * the lowest value in the range
+     */
+    private String _rangeFrom;
+
+    /**
+     * the highest value in the range
+     */
+    private String _rangeTo;
+
     /**
      * handler for data source
      */
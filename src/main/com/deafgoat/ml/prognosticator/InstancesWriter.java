@@ -20,15 +20,49 @@ import java.io.File;
 import java.io.IOException;
 
 import weka.core.Instances;
+import weka.core.converters.AbstractSaver;
 import weka.core.converters.ArffSaver;
 
 /**
- * Utility to write Instances objects to ARFF.
+ * Utility to write Instances objects to ARFF, or to the binary columnar format
+ * when the file name ends in {@link ColumnarFormat#EXTENSION}.
  */
 public class InstancesWriter {
 
     /**
-     * Saves an Instances object to .ARFF
+     * Returns the saver for a file
+     * 
+     * @param outFile
+     *            The file to which to write the instances
+     * @return a columnar saver for columnar files, an ARFF saver otherwise
+     */
+    private static AbstractSaver saverFor(String outFile) {
+        return ColumnarFormat.isColumnar(outFile) ? new ColumnarSaver() : new ArffSaver();
+    }
+
+    /**
+     * Starts writing instances to .ARFF or columnar one at a time. The header is written
+     * with the first instance; pass each instance to writeIncremental and null
+     * once all have been written.
+     * 
+     * @param structure
+     *            The header of the instances to write
+     * @param outFile
+     *            The file to which to write the instances
+     * @return the saver to write the instances with
+     * @throws IOException
+     *             If the file can not be written
+     */
+    public static AbstractSaver startInstances(Instances structure, String outFile) throws IOException {
+        AbstractSaver saver = saverFor(outFile);
+        saver.setRetrieval(AbstractSaver.INCREMENTAL);
+        saver.setInstances(structure);
+        saver.setFile(new File(outFile));
+        return saver;
+    }
+
+    /**
+     * Saves an Instances object to .ARFF or columnar
      * 
      * @param instances
      *            The set of instances to write
@@ -38,7 +72,7 @@ public class InstancesWriter {
      *             If instances object can not be written
      */
     public static void writeInstances(Instances instances, String outFile) throws IOException {
-        ArffSaver saver = new ArffSaver();
+        AbstractSaver saver = saverFor(outFile);
         saver.setInstances(instances);
         saver.setFile(new File(outFile));
         saver.writeBatch();
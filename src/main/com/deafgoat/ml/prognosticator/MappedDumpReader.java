@@ -0,0 +1,637 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a CSV dump by tokenizing a memory-mapped window of the file in place.
+ * Cells are kept as byte ranges of the mapping: numbers are parsed straight
+ * from the bytes and Strings are only created for the cells asked for with
+ * get. Records are split exactly as SuperCSV splits them with the Excel
+ * preference, so both readers yield the same cells. The dump must be in an
+ * ASCII compatible charset.
+ */
+public final class MappedDumpReader implements DumpReader {
+
+    /**
+     * the default size of the mapped window
+     */
+    static final int WINDOW = 1 << 28;
+
+    /**
+     * the largest mantissa that can take another digit
+     */
+    private static final long MAX_MANTISSA = (Long.MAX_VALUE - 9) / 10;
+
+    /**
+     * the powers of ten that are exactly representable as doubles
+     */
+    private static final double[] POWERS = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /**
+     * Appends a byte to the scratch buffer
+     * 
+     * @param b
+     *            The byte to append
+     */
+    private void append(byte b) {
+        if (_scratchLength == _scratch.length) {
+            _scratch = Arrays.copyOf(_scratch, _scratch.length * 2);
+        }
+        _scratch[_scratchLength++] = b;
+    }
+
+    /**
+     * Records a cell of the current record
+     * 
+     * @param start
+     *            The offset of the first byte of the cell in the mapping
+     * @param end
+     *            The offset just past the last byte of the cell
+     * @param cell
+     *            The decoded cell if it can not be read from the mapping
+     */
+    private void addCell(int start, int end, String cell) {
+        if (_size == _starts.length) {
+            _starts = Arrays.copyOf(_starts, _size * 2);
+            _ends = Arrays.copyOf(_ends, _size * 2);
+            _cells = Arrays.copyOf(_cells, _size * 2);
+        }
+        _starts[_size] = start;
+        _ends[_size] = end;
+        _cells[_size] = cell;
+        _size++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _buffer = null;
+        _file.close();
+    }
+
+    /**
+     * Decodes a byte range of the mapping to a String
+     * 
+     * @param start
+     *            The offset of the first byte
+     * @param end
+     *            The offset just past the last byte
+     * @return the decoded String
+     */
+    private String decode(int start, int end) {
+        char[] chars = new char[end - start];
+        byte b;
+        for (int i = start; i < end; i++) {
+            b = _buffer.get(i);
+            if (b < 0) {
+                // not ASCII, let the charset decode it
+                byte[] bytes = new byte[end - start];
+                for (int j = start; j < end; j++) {
+                    bytes[j - start] = _buffer.get(j);
+                }
+                return new String(bytes, _charset);
+            }
+            chars[i - start] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String get(int column) {
+        if (_cells[column] == null) {
+            _cells[column] = decode(_starts[column], _ends[column]);
+        }
+        return _cells[column];
+    }
+
+    @Override
+    public double getDouble(int column) {
+        if (_cells[column] == null) {
+            int start = trimStart(column), end = trimEnd(column);
+            double value = parseDouble(start, end);
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        }
+        // anything the fast path does not cover is left to the JDK
+        return Double.parseDouble(get(column).trim());
+    }
+
+    @Override
+    public List<String> getRecord() {
+        List<String> record = new ArrayList<String>(_size);
+        for (int i = 0; i < _size; i++) {
+            record.add(get(i));
+        }
+        return record;
+    }
+
+    @Override
+    public boolean isEmpty(int column) {
+        return _cells[column] == null ? _starts[column] == _ends[column] : _cells[column].length() == 0;
+    }
+
+    /**
+     * Indicates if a byte ends a line
+     * 
+     * @param b
+     *            The byte to check
+     * @return true if the byte is a carriage return or line feed
+     */
+    private boolean isEol(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    @Override
+    public boolean isMissing(int column) {
+        if (_cells[column] != null) {
+            return ColumnDecoder.isMissing(_cells[column].trim());
+        }
+        int start = trimStart(column), end = trimEnd(column);
+        return start == end || (end - start == 1 && _buffer.get(start) == '?');
+    }
+
+    /**
+     * Maps the window of the file starting at the given offset
+     * 
+     * @param position
+     *            The file offset to map from
+     * @throws IOException
+     */
+    private void map(long position) throws IOException {
+        _buffer = _channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(_window, _end - position));
+        _base = position;
+    }
+
+    /**
+     * Parses a decimal number from a byte range of the mapping. Only numbers
+     * whose digits fit a double's mantissa and whose exponent is a power of
+     * ten held exactly by a double are parsed; the result is then correctly
+     * rounded, as Double.parseDouble would round it.
+     * 
+     * @param start
+     *            The offset of the first byte
+     * @param end
+     *            The offset just past the last byte
+     * @return the number, or NaN if it must be parsed by Double.parseDouble
+     */
+    private double parseDouble(int start, int end) {
+        int i = start, exponent = 0;
+        long mantissa = 0;
+        boolean negative = false, digits = false;
+        byte b;
+        if (i < end && (_buffer.get(i) == '-' || _buffer.get(i) == '+')) {
+            negative = _buffer.get(i++) == '-';
+        }
+        for (; i < end && (b = _buffer.get(i)) >= '0' && b <= '9'; i++) {
+            if (mantissa > MAX_MANTISSA) {
+                return Double.NaN;
+            }
+            mantissa = mantissa * 10 + (b - '0');
+            digits = true;
+        }
+        if (i < end && _buffer.get(i) == '.') {
+            for (i++; i < end && (b = _buffer.get(i)) >= '0' && b <= '9'; i++) {
+                if (mantissa > MAX_MANTISSA) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                exponent--;
+                digits = true;
+            }
+        }
+        if (!digits) {
+            return Double.NaN;
+        }
+        if (i < end && (_buffer.get(i) == 'e' || _buffer.get(i) == 'E')) {
+            int sign = 1, power = 0;
+            boolean powerDigits = false;
+            i++;
+            if (i < end && (_buffer.get(i) == '-' || _buffer.get(i) == '+')) {
+                sign = _buffer.get(i++) == '-' ? -1 : 1;
+            }
+            for (; i < end && (b = _buffer.get(i)) >= '0' && b <= '9' && power < 1000; i++) {
+                power = power * 10 + (b - '0');
+                powerDigits = true;
+            }
+            if (!powerDigits) {
+                return Double.NaN;
+            }
+            exponent += sign * power;
+        }
+        if (i != end || mantissa >= (1L << 53) || exponent < -22 || exponent > 22) {
+            return Double.NaN;
+        }
+        double value = exponent >= 0 ? mantissa * POWERS[exponent] : mantissa / POWERS[-exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decodes a cell that holds quotes or carriage returns the way SuperCSV
+     * does: quoted sections are unescaped, line breaks within them become
+     * line feeds and spaces are dropped around the cell.
+     * 
+     * @param i
+     *            The offset of the first byte of the cell
+     * @param limit
+     *            The limit of the mapping
+     * @param last
+     *            Indicates if the mapping reaches the end of the range
+     * @return the offset just past the cell, or -1 if the mapping ends first
+     * @throws IOException
+     *             If the range ends within a quoted section
+     */
+    private int parseComplexCell(int i, int limit, boolean last) throws IOException {
+        boolean quoted = false;
+        int spaces = 0;
+        byte b;
+        _scratchLength = 0;
+        while (true) {
+            if (i >= limit) {
+                if (!last) {
+                    return -1;
+                } else if (quoted) {
+                    throw new IOException("File ended unexpectedly while reading a quoted cell at offset "
+                            + (_base + i));
+                }
+                break;
+            }
+            b = _buffer.get(i);
+            if (quoted) {
+                if ((b == '"' || b == '\r') && i + 1 >= limit && !last) {
+                    return -1;
+                }
+                if (b == '"') {
+                    // a doubled quote is escaped, a single one closes
+                    if (i + 1 < limit && _buffer.get(i + 1) == '"') {
+                        append(b);
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (b == '\r') {
+                    append((byte) '\n');
+                    if (i + 1 < limit && _buffer.get(i + 1) == '\n') {
+                        i++;
+                    }
+                } else {
+                    append(b);
+                }
+                i++;
+                continue;
+            }
+            if (b == ',' || isEol(b)) {
+                break;
+            }
+            if (b == ' ') {
+                spaces++;
+                i++;
+                continue;
+            }
+            // spaces are only kept between characters of the cell
+            for (; spaces > 0; spaces--) {
+                if (_scratchLength > 0) {
+                    append((byte) ' ');
+                }
+            }
+            if (b == '"') {
+                quoted = true;
+            } else {
+                append(b);
+            }
+            i++;
+        }
+        addCell(i, i, new String(_scratch, 0, _scratchLength, _charset));
+        return i;
+    }
+
+    @Override
+    public boolean read() throws IOException {
+        int next;
+        while (_position < _end) {
+            if (_buffer == null || _position >= _base + _buffer.limit()) {
+                map(_position);
+            }
+            int offset = (int) (_position - _base);
+            boolean last = _base + _buffer.limit() >= _end;
+            next = tokenize(offset, _buffer.limit(), last);
+            if (next >= 0) {
+                _position = _base + next;
+                // empty lines are skipped
+                if (_size > 0) {
+                    return true;
+                }
+                continue;
+            }
+            if (offset == 0) {
+                throw new IOException("Record at offset " + _position + " does not fit the mapped window");
+            }
+            // the record straddles the window, map it from its start
+            map(_position);
+        }
+        _size = 0;
+        return false;
+    }
+
+    @Override
+    public String[] readHeader() throws IOException {
+        if (!read()) {
+            return null;
+        }
+        String[] header = new String[_size];
+        for (int i = 0; i < _size; i++) {
+            header[i] = get(i);
+        }
+        return header;
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Skips the line break at the given offset
+     * 
+     * @param i
+     *            The offset of the line break
+     * @param limit
+     *            The limit of the mapping
+     * @param last
+     *            Indicates if the mapping reaches the end of the range
+     * @return the offset of the next line, or -1 if the mapping ends first
+     */
+    private int skipEol(int i, int limit, boolean last) {
+        if (_buffer.get(i) == '\r') {
+            if (i + 1 < limit) {
+                return _buffer.get(i + 1) == '\n' ? i + 2 : i + 1;
+            }
+            return last ? i + 1 : -1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Splits the record starting at the given offset into cells
+     * 
+     * @param i
+     *            The offset of the record in the mapping
+     * @param limit
+     *            The limit of the mapping
+     * @param last
+     *            Indicates if the mapping reaches the end of the range
+     * @return the offset of the next record, or -1 if the mapping ends first
+     * @throws IOException
+     *             If the range ends within a quoted section
+     */
+    private int tokenize(int i, int limit, boolean last) throws IOException {
+        int start, end, cell;
+        byte b;
+        _size = 0;
+        if (isEol(_buffer.get(i))) {
+            return skipEol(i, limit, last);
+        }
+        while (true) {
+            cell = i;
+            while (i < limit && _buffer.get(i) == ' ') {
+                i++;
+            }
+            start = i;
+            end = -1;
+            if (i < limit && _buffer.get(i) == '"') {
+                // a quoted cell is simple if it holds no escaped quotes or
+                // carriage returns and ends at its closing quote
+                for (i++; i < limit && (b = _buffer.get(i)) != '"' && b != '\r'; i++) {
+                }
+                if (i >= limit) {
+                    if (!last) {
+                        return -1;
+                    }
+                    throw new IOException("File ended unexpectedly while reading a quoted cell at offset "
+                            + (_base + start));
+                }
+                if (_buffer.get(i) == '"') {
+                    end = i;
+                    for (i++; i < limit && _buffer.get(i) == ' '; i++) {
+                    }
+                    if (i >= limit && !last) {
+                        return -1;
+                    }
+                    if (i < limit && _buffer.get(i) != ',' && !isEol(_buffer.get(i))) {
+                        end = -1;
+                    }
+                }
+                start++;
+            } else {
+                for (; i < limit && (b = _buffer.get(i)) != ',' && b != '"' && !isEol(b); i++) {
+                }
+                if (i >= limit && !last) {
+                    return -1;
+                }
+                if (i >= limit || _buffer.get(i) != '"') {
+                    for (end = i; end > start && _buffer.get(end - 1) == ' '; end--) {
+                    }
+                }
+            }
+            if (end < 0) {
+                i = parseComplexCell(cell, limit, last);
+                if (i < 0) {
+                    return -1;
+                }
+            } else {
+                addCell(start, end, null);
+            }
+            if (i >= limit) {
+                return i;
+            }
+            if (_buffer.get(i) != ',') {
+                return skipEol(i, limit, last);
+            }
+            i++;
+            if (i >= limit) {
+                if (!last) {
+                    return -1;
+                }
+                // a trailing delimiter ends with an empty cell
+                addCell(i, i, null);
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Finds the end of a cell with trailing whitespace trimmed
+     * 
+     * @param column
+     *            The column of the cell
+     * @return the offset just past the last byte that is not whitespace
+     */
+    private int trimEnd(int column) {
+        int start = _starts[column], end = _ends[column];
+        while (end > start && (_buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Finds the start of a cell with leading whitespace trimmed
+     * 
+     * @param column
+     *            The column of the cell
+     * @return the offset of the first byte that is not whitespace
+     */
+    private int trimStart(int column) {
+        int start = _starts[column], end = _ends[column];
+        while (start < end && (_buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * the file offset of the start of the mapping
+     */
+    private long _base;
+
+    /**
+     * the mapped window of the file
+     */
+    private MappedByteBuffer _buffer;
+
+    /**
+     * the decoded cells of the current record, null until asked for
+     */
+    private String[] _cells;
+
+    /**
+     * the channel of the mapped file
+     */
+    private FileChannel _channel;
+
+    /**
+     * the charset of the dump
+     */
+    private Charset _charset;
+
+    /**
+     * the file offset just past the range to read
+     */
+    private long _end;
+
+    /**
+     * the offset just past each cell of the current record in the mapping
+     */
+    private int[] _ends;
+
+    /**
+     * the mapped file
+     */
+    private RandomAccessFile _file;
+
+    /**
+     * the file offset of the next record
+     */
+    private long _position;
+
+    /**
+     * the bytes of the cell being decoded
+     */
+    private byte[] _scratch;
+
+    /**
+     * the number of bytes of the cell being decoded
+     */
+    private int _scratchLength;
+
+    /**
+     * the number of cells in the current record
+     */
+    private int _size;
+
+    /**
+     * the offset of each cell of the current record in the mapping
+     */
+    private int[] _starts;
+
+    /**
+     * the size of the mapped window
+     */
+    private int _window;
+
+    /**
+     * Class constructor - reads the whole dump
+     * 
+     * @param file
+     *            The CSV dump
+     * @throws IOException
+     */
+    public MappedDumpReader(String file) throws IOException {
+        this(file, 0, -1, WINDOW);
+    }
+
+    /**
+     * Class constructor - reads the records of a byte range of the dump
+     * 
+     * @param file
+     *            The CSV dump
+     * @param start
+     *            The offset of the first record
+     * @param end
+     *            The offset just past the last record, -1 for the end of file
+     * @throws IOException
+     */
+    public MappedDumpReader(String file, long start, long end) throws IOException {
+        this(file, start, end, WINDOW);
+    }
+
+    /**
+     * Class constructor
+     * 
+     * @param file
+     *            The CSV dump
+     * @param start
+     *            The offset of the first record
+     * @param end
+     *            The offset just past the last record, -1 for the end of file
+     * @param window
+     *            The size of the mapped window
+     * @throws IOException
+     */
+    MappedDumpReader(String file, long start, long end, int window) throws IOException {
+        _file = new RandomAccessFile(file, "r");
+        _channel = _file.getChannel();
+        _charset = Charset.defaultCharset();
+        _position = start;
+        _end = end < 0 ? _channel.size() : end;
+        _window = window;
+        _starts = new int[16];
+        _ends = new int[16];
+        _cells = new String[16];
+        _scratch = new byte[64];
+    }
+}
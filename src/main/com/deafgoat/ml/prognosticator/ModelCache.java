@@ -0,0 +1,295 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Weka
+import weka.classifiers.Classifier;
+
+/**
+ * Process-wide cache of deserialized models. A model is keyed by the relation
+ * it was trained on and the store it was read from, and is held along with
+ * the version of the stored model it was read at; a model whose stored
+ * version changed is loaded again. Once the models held exceed the memory
+ * budget, estimated from their serialized size, the least recently used ones
+ * are evicted.
+ * 
+ * Cached models are shared by all readers, which must not modify them.
+ */
+public final class ModelCache {
+
+    /**
+     * Loads a model from its store
+     */
+    public interface Loader {
+
+        /**
+         * @return the loaded model
+         * @throws Exception
+         *             If the model can not be loaded
+         */
+        Classifier load() throws Exception;
+    }
+
+    /**
+     * A cached model along with the version it was read at
+     */
+    private static final class Entry {
+
+        /**
+         * the cached model
+         */
+        private final Classifier _model;
+
+        /**
+         * the serialized size of the model in bytes
+         */
+        private final long _size;
+
+        /**
+         * the version of the stored model
+         */
+        private final long _version;
+
+        /**
+         * @param model
+         *            The cached model
+         * @param version
+         *            The version of the stored model
+         * @param size
+         *            The serialized size of the model in bytes
+         */
+        Entry(Classifier model, long version, long size) {
+            _model = model;
+            _version = version;
+            _size = size;
+        }
+    }
+
+    /**
+     * the default memory budget in bytes
+     */
+    public static final long DEFAULT_CAPACITY = 256L << 20;
+
+    /**
+     * the cache shared by the process
+     */
+    private static final ModelCache INSTANCE = new ModelCache(DEFAULT_CAPACITY);
+
+    /**
+     * @return the cache shared by the process
+     */
+    public static ModelCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Drops all cached models
+     */
+    public synchronized void clear() {
+        _entries.clear();
+        _size = 0;
+    }
+
+    /**
+     * Evicts the least recently used models until the models held fit the
+     * memory budget
+     */
+    private void evict() {
+        Iterator<Entry> entries = _entries.values().iterator();
+        Entry entry;
+        while (_size > _capacity && entries.hasNext()) {
+            entry = entries.next();
+            entries.remove();
+            _size -= entry._size;
+            _evictions++;
+        }
+    }
+
+    /**
+     * Returns a model, loading it if it is not cached at the given version.
+     * The cache is not locked while the model loads.
+     * 
+     * @param key
+     *            The key of the model
+     * @param version
+     *            The current version of the stored model, negative if the
+     *            store has no version for it
+     * @param size
+     *            The serialized size of the stored model in bytes
+     * @param loader
+     *            The loader of the stored model
+     * @return the model
+     * @throws Exception
+     *             If the model can not be loaded
+     */
+    public Classifier get(String key, long version, long size, Loader loader) throws Exception {
+        synchronized (this) {
+            Entry entry = _entries.get(key);
+            if (entry != null && entry._version == version && entry._size == size) {
+                _hits++;
+                return entry._model;
+            }
+            _misses++;
+        }
+        Classifier model = loader.load();
+        // a model without a version can not be told apart from a newer one
+        if (version >= 0) {
+            put(key, version, size, model);
+        }
+        return model;
+    }
+
+    /**
+     * @return the memory budget in bytes
+     */
+    public synchronized long getCapacity() {
+        return _capacity;
+    }
+
+    /**
+     * @return the number of models evicted to fit the memory budget
+     */
+    public synchronized long getEvictions() {
+        return _evictions;
+    }
+
+    /**
+     * @return the number of models read from the cache
+     */
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    /**
+     * @return the number of models loaded from their store
+     */
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    /**
+     * @return the serialized size of the models held in bytes
+     */
+    public synchronized long getSize() {
+        return _size;
+    }
+
+    /**
+     * Drops a cached model
+     * 
+     * @param key
+     *            The key of the model
+     */
+    public synchronized void invalidate(String key) {
+        Entry entry = _entries.remove(key);
+        if (entry != null) {
+            _size -= entry._size;
+        }
+    }
+
+    /**
+     * Caches a model, replacing any model cached under its key. Models larger
+     * than the memory budget are not cached.
+     * 
+     * @param key
+     *            The key of the model
+     * @param version
+     *            The version of the stored model
+     * @param size
+     *            The serialized size of the model in bytes
+     * @param model
+     *            The model
+     */
+    public synchronized void put(String key, long version, long size, Classifier model) {
+        invalidate(key);
+        if (_capacity <= 0 || size > _capacity) {
+            return;
+        }
+        _entries.put(key, new Entry(model, version, size));
+        _size += size;
+        evict();
+    }
+
+    /**
+     * Sets the memory budget, evicting models that no longer fit
+     * 
+     * @param capacity
+     *            The memory budget in bytes, 0 disables caching
+     */
+    public synchronized void setCapacity(long capacity) {
+        _capacity = capacity;
+        evict();
+    }
+
+    /**
+     * @return the number of models held
+     */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + _hits + ", misses=" + _misses + ", evictions=" + _evictions + ", models=" + _entries.size()
+                + ", bytes=" + _size + "/" + _capacity;
+    }
+
+    /**
+     * the memory budget in bytes
+     */
+    private long _capacity;
+
+    /**
+     * the cached models in order of last use
+     */
+    private final LinkedHashMap<String, Entry> _entries;
+
+    /**
+     * the number of models evicted to fit the memory budget
+     */
+    private long _evictions;
+
+    /**
+     * the number of models read from the cache
+     */
+    private long _hits;
+
+    /**
+     * the number of models loaded from their store
+     */
+    private long _misses;
+
+    /**
+     * the serialized size of the models held in bytes
+     */
+    private long _size;
+
+    /**
+     * Class constructor
+     * 
+     * @param capacity
+     *            The memory budget in bytes, 0 disables caching
+     */
+    public ModelCache(long capacity) {
+        _capacity = capacity;
+        _entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+}
@@ -0,0 +1,441 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Weka
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Version;
+
+/**
+ * Reads and writes trained models in a compact, versioned format: a small
+ * header naming the classifier, the WEKA version and the training schema the
+ * model was built with, followed by the deflated Java serialization of the
+ * model. Models are serialized straight into the compressed stream and
+ * deserialized straight out of it, so no serialized copy of a model is held in
+ * memory. Models written as raw Java serialization can still be read.
+ */
+public final class ModelStore {
+
+    /**
+     * The header of a stored model
+     */
+    public static final class Header {
+
+        /**
+         * @return the class name of the classifier
+         */
+        public String getClassifier() {
+            return _classifier;
+        }
+
+        /**
+         * @return the version of the format the model is stored in
+         */
+        public int getFormatVersion() {
+            return _formatVersion;
+        }
+
+        /**
+         * @return the hash of the schema the model was trained on
+         */
+        public long getSchemaHash() {
+            return _schemaHash;
+        }
+
+        /**
+         * @return the size of the serialized model in bytes, or -1 if it was
+         *         not known when the header was written
+         */
+        public long getSize() {
+            return _size;
+        }
+
+        /**
+         * @return the version of WEKA the model was written with
+         */
+        public String getWekaVersion() {
+            return _wekaVersion;
+        }
+
+        @Override
+        public String toString() {
+            return _classifier + " (WEKA " + _wekaVersion + ", schema " + Long.toHexString(_schemaHash) + ", "
+                    + _size + " bytes)";
+        }
+
+        /**
+         * the class name of the classifier
+         */
+        private final String _classifier;
+
+        /**
+         * the version of the format the model is stored in
+         */
+        private final int _formatVersion;
+
+        /**
+         * the hash of the schema the model was trained on
+         */
+        private final long _schemaHash;
+
+        /**
+         * the size of the serialized model in bytes
+         */
+        private long _size;
+
+        /**
+         * the version of WEKA the model was written with
+         */
+        private final String _wekaVersion;
+
+        /**
+         * Class constructor
+         * 
+         * @param formatVersion
+         *            The version of the format the model is stored in
+         * @param classifier
+         *            The class name of the classifier
+         * @param wekaVersion
+         *            The version of WEKA the model was written with
+         * @param schemaHash
+         *            The hash of the schema the model was trained on
+         * @param size
+         *            The size of the serialized model in bytes
+         */
+        public Header(int formatVersion, String classifier, String wekaVersion, long schemaHash, long size) {
+            _formatVersion = formatVersion;
+            _classifier = classifier;
+            _wekaVersion = wekaVersion;
+            _schemaHash = schemaHash;
+            _size = size;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            _count += len;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            _count++;
+        }
+
+        /**
+         * the number of bytes written
+         */
+        private long _count;
+
+        /**
+         * @param out
+         *            The stream to write to
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+    }
+
+    /**
+     * the version of the format written
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * the magic number opening a stored model
+     */
+    private static final int MAGIC = 0x50474D44;
+
+    /**
+     * the first two bytes of a raw Java serialization stream
+     */
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * Loads a model from file
+     * 
+     * @param file
+     *            The file holding the model
+     * @return the model
+     * @throws Exception
+     *             If the model can not be read
+     */
+    public static Classifier load(File file) throws Exception {
+        long start = System.nanoTime();
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            Classifier model = read(in);
+            Logger logger = Logger.getLogger(AppLogger.class.getName());
+            logger.info("Loaded model from " + file + " (" + file.length() + " bytes) in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+            return model;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the header of a model file without reading the model
+     * 
+     * @param file
+     *            The file holding the model
+     * @return the header or null if the model is stored as raw Java
+     *         serialization
+     * @throws IOException
+     *             If the header can not be read
+     */
+    public static Header loadHeader(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return readHeader(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a stored model
+     * 
+     * @param in
+     *            The stream holding the model, which is left open
+     * @return the model
+     * @throws Exception
+     *             If the model can not be read
+     */
+    public static Classifier read(InputStream in) throws Exception {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        if (readHeader(in) == null) {
+            return (Classifier) new ObjectInputStream(in).readObject();
+        }
+        Inflater inflater = new Inflater();
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new InflaterInputStream(in,
+                    inflater, 65536), 65536));
+            return (Classifier) ois.readObject();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads the header of a stored model, leaving the stream positioned at the
+     * model body
+     * 
+     * @param in
+     *            The stream holding the model, which must support mark
+     * @return the header or null if the model is stored as raw Java
+     *         serialization
+     * @throws IOException
+     *             If the header can not be read or the format is not known
+     */
+    public static Header readHeader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        in.mark(4);
+        if (data.readUnsignedShort() == SERIALIZATION_MAGIC) {
+            in.reset();
+            return null;
+        }
+        in.reset();
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a stored model");
+        }
+        int formatVersion = data.readUnsignedShort();
+        if (formatVersion > FORMAT_VERSION) {
+            throw new IOException("Unsupported model format version " + formatVersion);
+        }
+        String classifier = data.readUTF();
+        String wekaVersion = data.readUTF();
+        long schemaHash = data.readLong();
+        long size = data.readLong();
+        return new Header(formatVersion, classifier, wekaVersion, schemaHash, size);
+    }
+
+    /**
+     * Saves a model to file. The size of the serialized model is filled into
+     * the header once the model is written.
+     * 
+     * @param file
+     *            The file to save the model to
+     * @param model
+     *            The model
+     * @param schema
+     *            The instances the model was trained on, may be empty
+     * @return the header of the saved model
+     * @throws IOException
+     *             If the model can not be saved
+     */
+    public static Header save(File file, Classifier model, Instances schema) throws IOException {
+        long start = System.nanoTime();
+        Header header = new Header(FORMAT_VERSION, model.getClass().getName(), Version.VERSION, schemaHash(schema),
+                -1);
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        long offset;
+        try {
+            offset = writeHeader(out, header);
+            header._size = writeBody(out, model);
+        } finally {
+            out.close();
+        }
+        RandomAccessFile patch = new RandomAccessFile(file, "rw");
+        try {
+            patch.seek(offset);
+            patch.writeLong(header._size);
+        } finally {
+            patch.close();
+        }
+        Logger logger = Logger.getLogger(AppLogger.class.getName());
+        logger.info("Saved model to " + file + " (" + out._count + " of " + header._size + " bytes) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return header;
+    }
+
+    /**
+     * Hashes the structure of a dataset: the declaration of each attribute, in
+     * order, and the class attribute
+     * 
+     * @param schema
+     *            The dataset
+     * @return the hash of its structure
+     */
+    public static long schemaHash(Instances schema) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        Attribute attribute;
+        String declaration;
+        for (int i = 0; i < schema.numAttributes(); i++) {
+            attribute = schema.attribute(i);
+            // the values of string attributes depend on the data, not the schema
+            declaration = attribute.isString() ? attribute.name() + " string" : attribute.toString();
+            for (int j = 0; j < declaration.length(); j++) {
+                hash = (hash ^ declaration.charAt(j)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return (hash ^ schema.classIndex()) * 0x100000001b3L;
+    }
+
+    /**
+     * Writes a stored model to a stream. The size of the serialized model is
+     * only known once it is written, so the header holds -1 in its place.
+     * 
+     * @param out
+     *            The stream to write to, which is left open
+     * @param model
+     *            The model
+     * @param schema
+     *            The instances the model was trained on, may be empty
+     * @return the header of the written model, holding its size
+     * @throws IOException
+     *             If the model can not be written
+     */
+    public static Header write(OutputStream out, Classifier model, Instances schema) throws IOException {
+        Header header = new Header(FORMAT_VERSION, model.getClass().getName(), Version.VERSION, schemaHash(schema),
+                -1);
+        writeHeader(out, header);
+        header._size = writeBody(out, model);
+        return header;
+    }
+
+    /**
+     * Writes the deflated serialization of a model
+     * 
+     * @param out
+     *            The stream to write to, which is left open
+     * @param model
+     *            The model
+     * @return the size of the serialized model in bytes
+     * @throws IOException
+     *             If the model can not be written
+     */
+    private static long writeBody(OutputStream out, Classifier model) throws IOException {
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 65536);
+            CountingOutputStream counted = new CountingOutputStream(new BufferedOutputStream(deflated, 65536));
+            ObjectOutputStream oos = new ObjectOutputStream(counted);
+            oos.writeObject(model);
+            oos.flush();
+            deflated.finish();
+            return counted._count;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the header of a stored model
+     * 
+     * @param out
+     *            The stream to write to
+     * @param header
+     *            The header
+     * @return the offset of the size field from the start of the header
+     * @throws IOException
+     *             If the header can not be written
+     */
+    private static long writeHeader(OutputStream out, Header header) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(header._formatVersion);
+        data.writeUTF(header._classifier);
+        data.writeUTF(header._wekaVersion);
+        data.writeLong(header._schemaHash);
+        long offset = data.size();
+        data.writeLong(header._size);
+        data.flush();
+        return offset;
+    }
+
+    /**
+     * Class constructor - the store is not instantiated
+     */
+    private ModelStore() {
+    }
+}
@@ -18,43 +18,261 @@ package com.deafgoat.ml.prognosticator;
 
 // Java
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Log4j
+import org.apache.log4j.Logger;
 
 // Weka
 import weka.classifiers.Classifier;
+import weka.core.Instances;
 
 // Mongo
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
+import com.mongodb.gridfs.GridFS;
+import com.mongodb.gridfs.GridFSDBFile;
+import com.mongodb.gridfs.GridFSInputFile;
+import org.bson.BSONObject;
+import org.bson.types.ObjectId;
 
 /**
  * Stores model and experiment results to MongoDB.
  */
 public class MongoResult extends MongoMgr {
+
     /**
-     * Reads a stored WEKA classifier model from the database
+     * Read-only document view of one prediction of a batch, encoded without
+     * copying the prediction into a map
+     */
+    private static final class PredictionDocument implements BSONObject {
+
+        @Override
+        public boolean containsField(String key) {
+            return _keys.contains(key);
+        }
+
+        @Override
+        @Deprecated
+        public boolean containsKey(String key) {
+            return containsField(key);
+        }
+
+        @Override
+        public Object get(String key) {
+            if (!_keys.contains(key)) {
+                return null;
+            } else if (_predictions.isNumeric() || key.equals(CONFIDENCE)) {
+                return _predictions.getConfidence(_row);
+            }
+            return _predictions.getClassValue(_row);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return _keys;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            throw new UnsupportedOperationException("Prediction documents are read-only");
+        }
+
+        @Override
+        public void putAll(BSONObject object) {
+            throw new UnsupportedOperationException("Prediction documents are read-only");
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void putAll(Map map) {
+            throw new UnsupportedOperationException("Prediction documents are read-only");
+        }
+
+        @Override
+        public Object removeField(String key) {
+            throw new UnsupportedOperationException("Prediction documents are read-only");
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public Map toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            for (String key : _keys) {
+                map.put(key, get(key));
+            }
+            return map;
+        }
+
+        /**
+         * the keys of the document
+         */
+        private final Set<String> _keys;
+
+        /**
+         * the batch holding the prediction
+         */
+        private final PredictionBatch _predictions;
+
+        /**
+         * the row of the prediction
+         */
+        private final int _row;
+
+        /**
+         * @param predictions
+         *            The batch holding the prediction
+         * @param row
+         *            The row of the prediction
+         * @param keys
+         *            The keys of the document
+         */
+        PredictionDocument(PredictionBatch predictions, int row, Set<String> keys) {
+            _predictions = predictions;
+            _row = row;
+            _keys = keys;
+        }
+    }
+
+    /**
+     * the key of the confidence of a stored prediction
+     */
+    private static final String CONFIDENCE = "confidence";
+
+    /**
+     * the key of the classifier class of a stored model
+     */
+    public static final String MODEL_CLASS = "modelClass";
+
+    /**
+     * the key of the GridFS file holding a stored model
+     */
+    public static final String MODEL_FILE = "modelFile";
+
+    /**
+     * the key of the serialized size of a stored model
+     */
+    public static final String MODEL_SIZE = "modelSize";
+
+    /**
+     * the key of the version of a stored model, incremented on each write
+     */
+    public static final String MODEL_VERSION = "modelVersion";
+
+    /**
+     * the key of the training schema hash of a stored model
+     */
+    public static final String SCHEMA_HASH = "schemaHash";
+
+    /**
+     * the key of the WEKA version a stored model was written with
+     */
+    public static final String WEKA_VERSION = "wekaVersion";
+
+    /**
+     * Logs the time taken to load a model
+     * 
+     * @param modelName
+     *            The name of the model
+     * @param model
+     *            The loaded model
+     * @param size
+     *            The stored size of the model in bytes
+     * @param start
+     *            The time the load started at, in nanoseconds
+     * @return the model
+     */
+    private Classifier logLoad(String modelName, Classifier model, long size, long start) {
+        Logger logger = Logger.getLogger(AppLogger.class.getName());
+        logger.info("Loaded model " + modelName + " (" + size + " bytes) in " + (System.nanoTime() - start)
+                / 1000000 + " ms");
+        return model;
+    }
+
+    /**
+     * @return the GridFS bucket holding the models of the collection
+     */
+    private GridFS modelFiles() {
+        return new GridFS(_database, _collection.getName());
+    }
+
+    /**
+     * Reads a stored WEKA classifier model from the database. The model is
+     * deserialized as its chunks are read from GridFS; models stored inline by
+     * earlier versions are still read. A read that fails because the model is
+     * replaced meanwhile is retried with the new model.
      * 
      * @param modelName
      *            The name of the model to read from the database
-     * @throws IOException
-     * @throws ClassNotFoundException
+     * @return the model or null if there is no such model
+     * @throws Exception
+     *             If the model can not be read
      */
-    public Classifier readModel(String modelName) throws IOException, ClassNotFoundException {
+    public Classifier readModel(String modelName) throws Exception {
+        long start = System.nanoTime();
         DBObject query = new BasicDBObject();
         query.put("name", modelName);
-        DBObject dbObj = _collection.findOne(query);
-        if (dbObj == null) {
-            return null;
+        GridFS files = modelFiles();
+        DBObject dbObj, current;
+        GridFSDBFile file;
+        InputStream in;
+        ObjectId id;
+        // a model replaced since its document was read, or while its chunks
+        // were read, is resolved again
+        for (int attempt = 0; attempt < 3; attempt++) {
+            dbObj = _collection.findOne(query);
+            if (dbObj == null) {
+                return null;
+            }
+            if (dbObj.get(MODEL_FILE) == null) {
+                byte[] bytes = (byte[]) dbObj.get("serializedModelBytes");
+                if (bytes == null) {
+                    return null;
+                }
+                return logLoad(modelName, ModelStore.read(new ByteArrayInputStream(bytes)), bytes.length, start);
+            }
+            id = (ObjectId) dbObj.get(MODEL_FILE);
+            file = files.find(id);
+            if (file != null) {
+                in = file.getInputStream();
+                try {
+                    return logLoad(modelName, ModelStore.read(in), file.getLength(), start);
+                } catch (Exception e) {
+                    // the chunks of a replaced model are removed once the
+                    // new model is swapped in
+                    current = _collection.findOne(query, new BasicDBObject().append(MODEL_FILE, 1));
+                    if (current != null && id.equals(current.get(MODEL_FILE))) {
+                        throw e;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
         }
-        ByteArrayInputStream bis = new ByteArrayInputStream((byte[]) dbObj.get("serializedModelBytes"));
-        ObjectInputStream ois = new ObjectInputStream(bis);
-        return (Classifier) ois.readObject();
+        throw new IOException("Model " + modelName + " is being replaced");
+    }
+
+    /**
+     * Reads the version of a stored WEKA classifier model without reading the
+     * model itself
+     * 
+     * @param modelName
+     *            The name of the model
+     * @return the model document holding only its version and size, or null
+     *         if there is no such model
+     */
+    public DBObject readModelVersion(String modelName) {
+        DBObject fields = new BasicDBObject().append(MODEL_VERSION, 1).append(MODEL_SIZE, 1);
+        return _collection.findOne(new BasicDBObject().append("name", modelName), fields);
     }
 
     /**
@@ -75,39 +293,90 @@ public class MongoResult extends MongoMgr {
     }
 
     /**
-     * Writes a Weka classifier model to the database
+     * Writes a Weka classifier model to the database in the format of the
+     * model store. The model is serialized straight into a new GridFS file,
+     * which is then swapped in by a single update of the model document; the
+     * file it replaces is removed.
      * 
      * @param config
      *            Thename of the configuration used
      * @param model
      *            The model to write to the database
+     * @param schema
+     *            The instances the model was trained on, may be empty
      * @throws IOException
      *             If the model can not be written
      */
-    public void writeModel(String config, Classifier model) throws IOException {
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(byteStream);
-        oos.writeObject(model);
-        oos.flush();
-        oos.close();
-        /* create model object to write */
-        DBObject bso = new BasicDBObject().append("$set",
-                new BasicDBObject().append("serializedModelBytes", byteStream.toByteArray()));
-        /* overwrite if it already exists */
-        _collection.update(new BasicDBObject().append("name", config), bso, true, false);
+    public void writeModel(String config, Classifier model, Instances schema) throws IOException {
+        long start = System.nanoTime();
+        GridFS files = modelFiles();
+        GridFSInputFile file = files.createFile();
+        file.setFilename(config);
+        OutputStream out = file.getOutputStream();
+        ModelStore.Header header;
+        DBObject fields;
+        boolean saved = false;
+        try {
+            header = ModelStore.write(out, model, schema);
+            fields = new BasicDBObject().append(MODEL_SIZE, header.getSize())
+                    .append(MODEL_CLASS, header.getClassifier()).append(WEKA_VERSION, header.getWekaVersion())
+                    .append(SCHEMA_HASH, header.getSchemaHash());
+            // the file document is saved once the stream is closed
+            file.setMetaData(fields);
+            out.close();
+            saved = true;
+        } finally {
+            if (!saved) {
+                // drop the chunks written so far
+                files.remove((ObjectId) file.getId());
+            }
+        }
+        /* point the model document to the new file */
+        DBObject set = new BasicDBObject(fields.toMap()).append(MODEL_FILE, file.getId());
+        DBObject bso = new BasicDBObject().append("$set", set)
+                .append("$inc", new BasicDBObject().append(MODEL_VERSION, 1L))
+                .append("$unset", new BasicDBObject().append("serializedModelBytes", 1));
+        DBObject previous = _collection.findAndModify(new BasicDBObject().append("name", config),
+                new BasicDBObject().append(MODEL_FILE, 1), null, false, bso, false, true);
+        if (previous != null && previous.get(MODEL_FILE) != null) {
+            files.remove((ObjectId) previous.get(MODEL_FILE));
+        }
+        Logger logger = Logger.getLogger(AppLogger.class.getName());
+        logger.info("Saved model " + config + " (" + file.getLength() + " of " + header.getSize() + " bytes) in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
     }
 
     /**
-     * Writes prediction to mongoDB
+     * Writes predictions to mongoDB. Each prediction is encoded straight from
+     * the columns of the batch; nominal predictions are stored as their
+     * confidence and class, numeric ones as their predicted value.
      * 
      * @param config
      *            The name of configuration producing this reesult
+     * @param classValue
+     *            The name of the class attribute
      * @param predictions
      *            The predictions to be written to the database
      */
-    public void writeResult(String config, ArrayList<HashMap<String, String>> predictions) {
+    public void writeResult(String config, String classValue, final PredictionBatch predictions) {
+        final Set<String> keys = new LinkedHashSet<String>();
+        if (!predictions.isNumeric()) {
+            keys.add(CONFIDENCE);
+        }
+        keys.add(classValue);
+        List<BSONObject> documents = new AbstractList<BSONObject>() {
+            @Override
+            public BSONObject get(int row) {
+                return new PredictionDocument(predictions, row, keys);
+            }
+
+            @Override
+            public int size() {
+                return predictions.size();
+            }
+        };
         /* create result object to write */
-        BasicDBObject prediction = new BasicDBObject().append("$pushAll", new BasicDBObject("prediction", predictions));
+        BasicDBObject prediction = new BasicDBObject().append("$pushAll", new BasicDBObject("prediction", documents));
         /* overwrite if it already exists */
         _collection.update(new BasicDBObject().append("name", config), prediction, true, false);
     }
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Weka
+import weka.core.Attribute;
+
+/**
+ * Interning dictionary for the values of a nominal attribute. Values are coded
+ * with primitive ints in order of first appearance and looked up through an
+ * open addressing hash table, so coding a value costs the same however many
+ * values the attribute has.
+ */
+public final class NominalDictionary {
+
+    /**
+     * Creates a dictionary holding the values of a WEKA nominal attribute, coded
+     * by their index in the attribute
+     * 
+     * @param attribute
+     *            The nominal attribute
+     * @return the dictionary of the attribute values
+     */
+    public static NominalDictionary forAttribute(Attribute attribute) {
+        NominalDictionary dictionary = new NominalDictionary(attribute.numValues());
+        for (int i = 0; i < attribute.numValues(); i++) {
+            dictionary.intern(attribute.value(i));
+        }
+        return dictionary;
+    }
+
+    /**
+     * Creates a dictionary holding the given values, coded by their position
+     * 
+     * @param values
+     *            The values to hold
+     * @return the dictionary of the values
+     */
+    public static NominalDictionary forValues(List<String> values) {
+        NominalDictionary dictionary = new NominalDictionary(values.size());
+        for (String value : values) {
+            dictionary.intern(value);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the code of a value
+     * 
+     * @param value
+     *            The value to look up
+     * @return the code of the value or -1 if the value is not held
+     */
+    public int code(String value) {
+        int slot = slot(value);
+        return _keys[slot] == null ? -1 : _codes[slot];
+    }
+
+    /**
+     * Returns the code of a value, adding the value if it is not yet held
+     * 
+     * @param value
+     *            The value to intern
+     * @return the code of the value
+     */
+    public int intern(String value) {
+        int slot = slot(value);
+        if (_keys[slot] != null) {
+            return _codes[slot];
+        }
+        int code = _values.size();
+        _keys[slot] = value;
+        _codes[slot] = code;
+        _values.add(value);
+        if (_values.size() * 2 > _keys.length) {
+            resize();
+        }
+        return code;
+    }
+
+    /**
+     * Returns the codes of this dictionary's values in another dictionary
+     * 
+     * @param target
+     *            The dictionary to recode to
+     * @return mapping from each code of this dictionary to the code of the same
+     *         value in the target (-1 if the target does not hold the value)
+     */
+    public int[] recode(NominalDictionary target) {
+        int[] codes = new int[_values.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = target.code(_values.get(i));
+        }
+        return codes;
+    }
+
+    /**
+     * Doubles the hash table, rehashing all held values
+     */
+    private void resize() {
+        String[] keys = _keys;
+        int[] codes = _codes;
+        _keys = new String[keys.length * 2];
+        _codes = new int[keys.length * 2];
+        _mask = _keys.length - 1;
+        int slot;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                slot = slot(keys[i]);
+                _keys[slot] = keys[i];
+                _codes[slot] = codes[i];
+            }
+        }
+    }
+
+    /**
+     * @return the number of values held
+     */
+    public int size() {
+        return _values.size();
+    }
+
+    /**
+     * Finds the hash table slot holding a value, or the empty slot where it
+     * belongs
+     * 
+     * @param value
+     *            The value to find
+     * @return the slot of the value
+     */
+    private int slot(String value) {
+        int hash = value.hashCode();
+        // spread the high bits as string hashes often differ only there
+        hash ^= (hash >>> 16);
+        int slot = (hash * 0x9E3779B9) & _mask;
+        while (_keys[slot] != null && !_keys[slot].equals(value)) {
+            slot = (slot + 1) & _mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the value of a code
+     * 
+     * @param code
+     *            The code to look up
+     * @return the value of the code
+     */
+    public String value(int code) {
+        return _values.get(code);
+    }
+
+    /**
+     * @return the values held, ordered by code
+     */
+    public List<String> values() {
+        return Collections.unmodifiableList(_values);
+    }
+
+    /**
+     * the code held in each hash table slot
+     */
+    private int[] _codes;
+
+    /**
+     * the value held in each hash table slot
+     */
+    private String[] _keys;
+
+    /**
+     * mask reducing a hash to a hash table slot
+     */
+    private int _mask;
+
+    /**
+     * the values held, ordered by code
+     */
+    private ArrayList<String> _values;
+
+    /**
+     * Class constructor
+     */
+    public NominalDictionary() {
+        this(8);
+    }
+
+    /**
+     * Class constructor
+     * 
+     * @param expectedSize
+     *            The number of values the dictionary is expected to hold
+     */
+    public NominalDictionary(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        _keys = new String[capacity];
+        _codes = new int[capacity];
+        _mask = capacity - 1;
+        _values = new ArrayList<String>(expectedSize);
+    }
+}
@@ -0,0 +1,736 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// JSON
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Log4j
+import org.apache.log4j.Logger;
+
+// Weka
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Searches the hyperparameters of one or more classifiers. Candidates are
+ * drawn from option grids and random distributions and evaluated concurrently
+ * on one shared set of cross-validation folds. Successive halving stops the
+ * weaker candidates early: every rung evaluates the remaining candidates on
+ * more folds and keeps the best of them, until the survivors are evaluated on
+ * all folds.
+ */
+public final class ParameterSearch {
+
+    /**
+     * A configured classifier evaluated by the search
+     */
+    public static final class Candidate {
+
+        /**
+         * @return the untrained classifier
+         */
+        public Classifier getClassifier() {
+            return _classifier;
+        }
+
+        /**
+         * @return the evaluation of the folds evaluated so far
+         */
+        public Evaluation getEvaluation() {
+            return _evaluation;
+        }
+
+        /**
+         * @return the number of folds evaluated
+         */
+        public int getFolds() {
+            return _folds;
+        }
+
+        /**
+         * @return the name of the classifier
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * @return the WEKA options of the classifier
+         */
+        public String getOptions() {
+            return _options;
+        }
+
+        /**
+         * @return the metric value of the folds evaluated so far
+         */
+        public double getScore() {
+            return _score;
+        }
+
+        /**
+         * @return the number of test instances predicted
+         */
+        public int getTested() {
+            return _tested;
+        }
+
+        /**
+         * @return the time taken to predict the evaluated folds, in
+         *         nanoseconds
+         */
+        public long getTestTime() {
+            return _testTime;
+        }
+
+        /**
+         * @return the time taken to train on the evaluated folds, in
+         *         nanoseconds
+         */
+        public long getTrainTime() {
+            return _trainTime;
+        }
+
+        /**
+         * @return true if the classifier could not be evaluated on a fold
+         */
+        public boolean isFailed() {
+            return _failed;
+        }
+
+        /**
+         * the untrained classifier
+         */
+        private final Classifier _classifier;
+
+        /**
+         * the evaluation of the folds evaluated so far
+         */
+        private final Evaluation _evaluation;
+
+        /**
+         * indicates if the classifier could not be evaluated on a fold
+         */
+        private boolean _failed;
+
+        /**
+         * the number of folds evaluated
+         */
+        private int _folds;
+
+        /**
+         * the position of the candidate in the search, which breaks ties
+         */
+        private final int _index;
+
+        /**
+         * the name of the classifier
+         */
+        private final String _name;
+
+        /**
+         * the WEKA options of the classifier
+         */
+        private final String _options;
+
+        /**
+         * the metric value of the folds evaluated so far
+         */
+        private double _score;
+
+        /**
+         * the number of test instances predicted
+         */
+        private int _tested;
+
+        /**
+         * the time taken to predict the evaluated folds, in nanoseconds
+         */
+        private long _testTime;
+
+        /**
+         * the time taken to train on the evaluated folds, in nanoseconds
+         */
+        private long _trainTime;
+
+        /**
+         * Class constructor
+         * 
+         * @param index
+         *            The position of the candidate in the search
+         * @param name
+         *            The name of the classifier
+         * @param options
+         *            The WEKA options of the classifier
+         * @param classifier
+         *            The untrained classifier
+         * @param evaluation
+         *            The evaluation to record the folds in
+         */
+        Candidate(int index, String name, String options, Classifier classifier, Evaluation evaluation) {
+            _index = index;
+            _name = name;
+            _options = options;
+            _classifier = classifier;
+            _evaluation = evaluation;
+            _score = Double.NaN;
+        }
+    }
+
+    /**
+     * The metrics candidates can be ranked by
+     */
+    public enum Metric {
+        ACCURACY(true), AREA_UNDER_ROC(true), ERROR_RATE(false), KAPPA(true), MEAN_ABSOLUTE_ERROR(false),
+        ROOT_MEAN_SQUARED_ERROR(false);
+
+        /**
+         * Returns the metric of a configured name
+         * 
+         * @param name
+         *            The camel case name of the metric, e.g. areaUnderROC
+         * @return the metric
+         */
+        public static Metric forName(String name) {
+            return valueOf(name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+        }
+
+        /**
+         * @return true if larger values of the metric are better
+         */
+        public boolean isLargerBetter() {
+            return _largerBetter;
+        }
+
+        /**
+         * Returns the value of the metric
+         * 
+         * @param eval
+         *            The evaluation to measure
+         * @return the metric value
+         * @throws Exception
+         *             If the metric does not apply to the evaluation
+         */
+        public double value(Evaluation eval) throws Exception {
+            switch (this) {
+            case ACCURACY:
+                return eval.pctCorrect();
+            case AREA_UNDER_ROC:
+                return eval.weightedAreaUnderROC();
+            case ERROR_RATE:
+                return eval.errorRate();
+            case KAPPA:
+                return eval.kappa();
+            case MEAN_ABSOLUTE_ERROR:
+                return eval.meanAbsoluteError();
+            default:
+                return eval.rootMeanSquaredError();
+            }
+        }
+
+        /**
+         * indicates if larger values of the metric are better
+         */
+        private final boolean _largerBetter;
+
+        /**
+         * @param largerBetter
+         *            Indicates if larger values of the metric are better
+         */
+        private Metric(boolean largerBetter) {
+            _largerBetter = largerBetter;
+        }
+    }
+
+    /**
+     * the header of the leaderboard
+     */
+    public static final String LEADERBOARD_HEADER = "rank\tclassifier\toptions\tmetric\tfolds\ttrain ms\ttest ms";
+
+    /**
+     * Expands an option grid into every combination of its option values.
+     * Options are combined in the order of their names; boolean values switch
+     * a flag on or off.
+     * 
+     * @param grid
+     *            The values of each option
+     * @return the options of each combination
+     * @throws JSONException
+     *             If an option has no values
+     */
+    static List<String> expand(JSONObject grid) throws JSONException {
+        List<String> combinations = new ArrayList<String>();
+        combinations.add("");
+        String[] names = JSONObject.getNames(grid);
+        if (names == null) {
+            return combinations;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            JSONArray values = grid.optJSONArray(name);
+            if (values == null) {
+                values = new JSONArray().put(grid.get(name));
+            }
+            List<String> expanded = new ArrayList<String>();
+            for (String combination : combinations) {
+                for (int i = 0; i < values.length(); i++) {
+                    expanded.add(join(combination, option(name, values.get(i))));
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+
+    /**
+     * Joins two option strings
+     * 
+     * @param first
+     *            The first options
+     * @param second
+     *            The second options
+     * @return the joined options
+     */
+    static String join(String first, String second) {
+        if (first.length() == 0) {
+            return second;
+        }
+        return second.length() == 0 ? first : first + " " + second;
+    }
+
+    /**
+     * Formats an option value
+     * 
+     * @param name
+     *            The option name
+     * @param value
+     *            The option value
+     * @return the option, empty for a flag switched off
+     */
+    static String option(String name, Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean) value) ? name : "";
+        }
+        String text = value.toString();
+        if (text.length() == 0 || text.indexOf(' ') >= 0) {
+            text = Utils.quote(text);
+        }
+        return name + " " + text;
+    }
+
+    /**
+     * Draws the value of each option from its distribution. A distribution is
+     * either a list of choices or a range with a 'min', a 'max' and optionally
+     * 'integer' and 'log' flags.
+     * 
+     * @param distributions
+     *            The distribution of each option
+     * @param random
+     *            The random number generator
+     * @return the drawn options
+     * @throws JSONException
+     *             If a distribution is not valid
+     */
+    static String sample(JSONObject distributions, Random random) throws JSONException {
+        String options = "";
+        String[] names = JSONObject.getNames(distributions);
+        if (names == null) {
+            return options;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            JSONArray choices = distributions.optJSONArray(name);
+            if (choices != null) {
+                options = join(options, option(name, choices.get(random.nextInt(choices.length()))));
+                continue;
+            }
+            JSONObject range = distributions.getJSONObject(name);
+            double min = range.getDouble("min");
+            double max = range.getDouble("max");
+            boolean log = range.optBoolean("log", false);
+            double value;
+            if (log) {
+                value = Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min)));
+            } else {
+                value = min + random.nextDouble() * (max - min);
+            }
+            if (range.optBoolean("integer", false)) {
+                options = join(options, option(name, Math.min((long) max, Math.round(value))));
+            } else {
+                options = join(options, option(name, value));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Returns the number of folds each rung of successive halving evaluates
+     * candidates on. Every rung evaluates eta times as many folds as the
+     * previous one and the last rung evaluates all folds.
+     * 
+     * @param candidates
+     *            The number of candidates
+     * @param folds
+     *            The number of folds
+     * @param eta
+     *            The factor candidates are reduced by at each rung, halving is
+     *            disabled below 2
+     * @return the number of folds of each rung
+     */
+    static int[] schedule(int candidates, int folds, int eta) {
+        int levels = 0;
+        if (eta >= 2) {
+            for (long size = eta; size <= candidates && size <= folds; size *= eta) {
+                levels++;
+            }
+        }
+        int[] rungs = new int[levels + 1];
+        long size = 1;
+        for (int r = levels; r >= 0; r--) {
+            rungs[r] = (int) (folds / size);
+            size *= eta;
+        }
+        return rungs;
+    }
+
+    /**
+     * Evaluates the candidates on a range of folds. The folds of all
+     * candidates are evaluated concurrently, with a bounded number of folds
+     * running or waiting to be recorded, and each candidate records its folds
+     * in fold order as they finish.
+     * 
+     * @param candidates
+     *            The candidates to evaluate
+     * @param from
+     *            The first fold to evaluate
+     * @param to
+     *            The fold to stop at
+     * @param pool
+     *            The pool evaluating the folds
+     * @param limit
+     *            The maximum number of folds running or waiting to be recorded
+     * @throws Exception
+     *             If a fold can not be evaluated
+     */
+    private void evaluate(List<Candidate> candidates, int from, int to, ExecutorService pool, int limit)
+            throws Exception {
+        CompletionService<FoldEvaluation> completion = new ExecutorCompletionService<FoldEvaluation>(pool);
+        int folds = to - from;
+        int tasks = candidates.size() * folds;
+        // the task of each submitted fold and the folds finished ahead of
+        // the next fold of their candidate
+        Map<FoldEvaluation, Integer> submitted = new HashMap<FoldEvaluation, Integer>();
+        FoldEvaluation[] finished = new FoldEvaluation[tasks];
+        int[] next = new int[candidates.size()];
+        int task = 0, pending = 0;
+        FoldEvaluation fold;
+        while (task < tasks || pending > 0) {
+            for (; task < tasks && pending < limit; task++, pending++) {
+                fold = new FoldEvaluation(candidates.get(task / folds)._classifier, _folds, from + task % folds);
+                submitted.put(fold, task);
+                completion.submit(fold);
+            }
+            try {
+                fold = completion.take().get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+            int done = submitted.remove(fold);
+            finished[done] = fold;
+            int c = done / folds;
+            for (; next[c] < folds && finished[c * folds + next[c]] != null; next[c]++, pending--) {
+                record(candidates.get(c), finished[c * folds + next[c]]);
+                finished[c * folds + next[c]] = null;
+            }
+            if (next[c] == folds) {
+                score(candidates.get(c), to);
+            }
+        }
+    }
+
+    /**
+     * @return the best candidate or null if none could be evaluated
+     */
+    public Candidate getBest() {
+        List<Candidate> leaderboard = getLeaderboard();
+        return leaderboard.isEmpty() || leaderboard.get(0)._failed ? null : leaderboard.get(0);
+    }
+
+    /**
+     * @return the folds the candidates are evaluated on
+     */
+    public Folds getFolds() {
+        return _folds;
+    }
+
+    /**
+     * @return the candidates, the ones evaluated on the most folds first and
+     *         the best first among those
+     */
+    public List<Candidate> getLeaderboard() {
+        List<Candidate> leaderboard = new ArrayList<Candidate>(_candidates);
+        Collections.sort(leaderboard, new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate first, Candidate second) {
+                if (first._folds != second._folds) {
+                    return first._folds > second._folds ? -1 : 1;
+                }
+                return _ranking.compare(first, second);
+            }
+        });
+        return leaderboard;
+    }
+
+    /**
+     * @return the metric candidates are ranked by
+     */
+    public Metric getMetric() {
+        return _metric;
+    }
+
+    /**
+     * Records a fold evaluated for a candidate
+     * 
+     * @param candidate
+     *            The candidate the fold was evaluated for
+     * @param fold
+     *            The evaluated fold
+     */
+    private void record(Candidate candidate, FoldEvaluation fold) {
+        if (fold.isFailed() || !fold.evaluate(candidate._evaluation)) {
+            candidate._failed = true;
+        }
+        candidate._trainTime += fold.getTrainTime();
+        candidate._testTime += fold.getTestTime();
+        candidate._tested += fold.getTestSize();
+    }
+
+    /**
+     * Evaluates the candidates, halving them at each rung
+     * 
+     * @throws Exception
+     *             If a fold can not be evaluated
+     */
+    public void run() throws Exception {
+        int[] rungs = schedule(_candidates.size(), _folds.numFolds(), _eta);
+        int threads = _threads > 0 ? _threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Candidate> remaining = new ArrayList<Candidate>(_candidates);
+        int from = 0;
+        try {
+            for (int r = 0; r < rungs.length && !remaining.isEmpty(); r++) {
+                evaluate(remaining, from, rungs[r], pool, 2 * threads);
+                from = rungs[r];
+                Collections.sort(remaining, _ranking);
+                for (Iterator<Candidate> it = remaining.iterator(); it.hasNext();) {
+                    if (it.next()._failed) {
+                        it.remove();
+                    }
+                }
+                _logger.info("Evaluated " + remaining.size() + " candidates on " + rungs[r] + " folds");
+                if (r < rungs.length - 1) {
+                    int keep = (remaining.size() + _eta - 1) / _eta;
+                    remaining = new ArrayList<Candidate>(remaining.subList(0, keep));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Scores a candidate once all folds of a rung are recorded
+     * 
+     * @param candidate
+     *            The candidate to score
+     * @param folds
+     *            The number of folds recorded
+     */
+    private void score(Candidate candidate, int folds) {
+        candidate._folds = folds;
+        try {
+            candidate._score = candidate._failed ? Double.NaN : _metric.value(candidate._evaluation);
+        } catch (Exception e) {
+            candidate._score = Double.NaN;
+        }
+        if (Double.isNaN(candidate._score)) {
+            candidate._failed = true;
+        }
+    }
+
+    /**
+     * Writes the leaderboard as tab-delimited lines
+     * 
+     * @param writer
+     *            The writer to write the leaderboard to
+     * @throws IOException
+     *             If the leaderboard can not be written
+     */
+    public void writeLeaderboard(Writer writer) throws IOException {
+        writer.write(LEADERBOARD_HEADER + "\n");
+        int rank = 1;
+        for (Candidate candidate : getLeaderboard()) {
+            writer.write(rank++ + "\t" + candidate._name + "\t" + candidate._options + "\t"
+                    + (candidate._failed ? "?" : Utils.doubleToString(candidate._score, 6)) + "\t" + candidate._folds
+                    + "\t" + candidate._trainTime / 1000000 + "\t" + candidate._testTime / 1000000 + "\n");
+        }
+    }
+
+    /**
+     * the candidates in order of configuration
+     */
+    private final List<Candidate> _candidates;
+
+    /**
+     * the factor candidates are reduced by at each rung
+     */
+    private final int _eta;
+
+    /**
+     * the folds the candidates are evaluated on
+     */
+    private final Folds _folds;
+
+    /**
+     * handle to the logger
+     */
+    private final Logger _logger;
+
+    /**
+     * the metric candidates are ranked by
+     */
+    private final Metric _metric;
+
+    /**
+     * orders candidates best first, failed candidates last and ties in order
+     * of configuration
+     */
+    private final Comparator<Candidate> _ranking;
+
+    /**
+     * the number of threads evaluating folds, 0 for one per processor
+     */
+    private final int _threads;
+
+    /**
+     * Class constructor - draws the candidates of the search configuration
+     * 
+     * @param data
+     *            The dataset to search on, which is stratified in place
+     * @param folds
+     *            The number of cross-validation folds
+     * @param search
+     *            The search configuration
+     * @throws Exception
+     *             If the search configuration is not valid
+     */
+    public ParameterSearch(Instances data, int folds, JSONObject search) throws Exception {
+        _logger = Logger.getLogger(AppLogger.class.getName());
+        _folds = new Folds(data, folds);
+        _threads = search.optInt("threads", 0);
+        _eta = search.optInt("halving", 3);
+        if (search.has("metric")) {
+            _metric = Metric.forName(search.getString("metric"));
+        } else {
+            _metric = data.classAttribute().isNominal() ? Metric.ACCURACY : Metric.ROOT_MEAN_SQUARED_ERROR;
+        }
+        _ranking = new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate first, Candidate second) {
+                if (first._failed != second._failed) {
+                    return first._failed ? 1 : -1;
+                }
+                if (!first._failed && first._score != second._score) {
+                    return (first._score > second._score) == _metric.isLargerBetter() ? -1 : 1;
+                }
+                return first._index < second._index ? -1 : (first._index == second._index ? 0 : 1);
+            }
+        };
+
+        // draw the distinct configurations of every classifier
+        Random random = new Random(search.optLong("seed", 1));
+        JSONArray specs = search.getJSONArray("candidates");
+        Set<String> configurations = new LinkedHashSet<String>();
+        for (int i = 0; i < specs.length(); i++) {
+            JSONObject spec = specs.getJSONObject(i);
+            String name = spec.getString("classifier");
+            String fixed = spec.optString("options", "");
+            List<String> grid = spec.has("grid") ? expand(spec.getJSONObject("grid")) : Arrays.asList("");
+            int samples = spec.has("random") ? spec.optInt("samples", 10) : 0;
+            for (String options : grid) {
+                if (samples == 0) {
+                    configurations.add(name + "\t" + join(fixed, options));
+                }
+                for (int s = 0; s < samples; s++) {
+                    configurations.add(name + "\t"
+                            + join(join(fixed, options), sample(spec.getJSONObject("random"), random)));
+                }
+            }
+        }
+        List<String> drawn = new ArrayList<String>(configurations);
+        int budget = search.optInt("budget", 0);
+        if (budget > 0 && drawn.size() > budget) {
+            Collections.shuffle(drawn, random);
+            drawn = drawn.subList(0, budget);
+            // keep the order of configuration
+            List<String> ordered = new ArrayList<String>(configurations);
+            ordered.retainAll(drawn);
+            drawn = ordered;
+        }
+
+        _candidates = new ArrayList<Candidate>();
+        for (String configuration : drawn) {
+            String name = configuration.substring(0, configuration.indexOf('\t'));
+            String options = configuration.substring(name.length() + 1);
+            try {
+                Classifier classifier = AppClassifier.createClassifier(name, options);
+                _candidates.add(new Candidate(_candidates.size(), name, options, classifier, new Evaluation(data)));
+            } catch (Exception e) {
+                _logger.warn("Skipping " + name + " " + options + " - msg: " + e.getMessage());
+            }
+        }
+        _logger.info("Searching " + _candidates.size() + " candidates with " + _metric);
+    }
+}
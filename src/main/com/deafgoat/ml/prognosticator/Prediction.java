@@ -17,38 +17,150 @@
 package com.deafgoat.ml.prognosticator;
 
 // Java
-import java.io.IOException;
 import java.util.HashMap;
 
-import weka.core.Instance;
-
 // Weka
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
 
 /**
- * Models prediction results.
+ * Models prediction results. A prediction only holds the index, confidence
+ * and class code of the predicted instance; the attributes and the instance
+ * itself are resolved through the dataset all predictions share.
  */
 public final class Prediction implements Comparable<Prediction> {
 
+    /**
+     * The state shared by all predictions made on one dataset
+     */
+    public static final class Dataset {
+
+        /**
+         * Returns the index of an attribute
+         * 
+         * @param name
+         *            The attribute name
+         * @return the index of the attribute or null if there is none
+         */
+        Integer attributeIndex(String name) {
+            return _attributeIndex.get(name);
+        }
+
+        /**
+         * @return the predicted class attribute
+         */
+        Attribute getClassAttribute() {
+            return _classAttribute;
+        }
+
+        /**
+         * @return the instances predictions are made on
+         */
+        Instances getSource() {
+            return _source;
+        }
+
+        /**
+         * Returns the instance at a 1-based index
+         * 
+         * @param instanceIndex
+         *            The 1-based index of the instance
+         * @return the instance
+         */
+        Instance instance(int instanceIndex) {
+            return _source.instance(instanceIndex - 1);
+        }
+
+        /**
+         * @return true if the class attribute is numeric
+         */
+        boolean isNumeric() {
+            return _numeric;
+        }
+
+        /**
+         * mapping of attribute name to location
+         */
+        private final HashMap<String, Integer> _attributeIndex;
+
+        /**
+         * the predicted class attribute
+         */
+        private final Attribute _classAttribute;
+
+        /**
+         * indicates if the class attribute is numeric
+         */
+        private final boolean _numeric;
+
+        /**
+         * the instances predictions are made on
+         */
+        private final Instances _source;
+
+        /**
+         * Class constructor - maps the name of each attribute to its index once
+         * 
+         * @param source
+         *            The instances predictions are made on
+         * @param classAttribute
+         *            The predicted class attribute
+         */
+        public Dataset(Instances source, Attribute classAttribute) {
+            _source = source;
+            _classAttribute = classAttribute;
+            _numeric = classAttribute.isNumeric();
+            _attributeIndex = new HashMap<String, Integer>();
+            for (int i = 0; i < source.numAttributes(); i++) {
+                _attributeIndex.put(source.attribute(i).name(), i);
+            }
+        }
+    }
+
+    /**
+     * Returns the confidence of a prediction distribution
+     * 
+     * @param distribution
+     *            The prediction confidence distribution
+     * @return the maximum of the distribution
+     */
+    static double confidence(double[] distribution) {
+        double maximum = distribution[0];
+        for (int i = 1; i < distribution.length; i++) {
+            if (distribution[i] > maximum) {
+                maximum = distribution[i];
+            }
+        }
+        return maximum;
+    }
+
+    /**
+     * Gets the value of attribute in the instance
+     * 
+     * @return tab-delimited attribute distribution
+     */
+    public String attributeDistribution(String attribute) {
+        StringBuilder sb = new StringBuilder();
+        int location = _dataset.attributeIndex(attribute);
+        sb.append(_dataset.instance(_instanceIndex).toString(location) + _delimeter);
+        sb.append(_confidence + _delimeter);
+        return sb.toString();
+    }
+
     @Override
     public int compareTo(Prediction pred) {
-        if (pred._instance.classAttribute().isNumeric()) {
+        if (pred._dataset._numeric) {
             return 0;
         }
         return (_confidence > pred._confidence ? -1 : (_confidence == pred._confidence ? 0 : 1));
     }
 
     /**
-     * Generates a mapping for each of the instance's attributes (name) to their
-     * index location
-     * 
-     * @return map of instance attribute name to location
+     * @return the predicted class value, empty for numeric classes
      */
-    private HashMap<String, Integer> getAttributeMap() {
-        HashMap<String, Integer> attributeIndex = new HashMap<String, Integer>();
-        for (int i = 0; i < _instance.numAttributes(); i++) {
-            attributeIndex.put(_instance.dataset().attribute(i).name(), i);
-        }
-        return attributeIndex;
+    private String getClassValue() {
+        return _dataset._numeric ? "" : _dataset._classAttribute.value(_classCode);
     }
 
     /**
@@ -57,13 +169,7 @@ public final class Prediction implements Comparable<Prediction> {
      * @return predicted class confidence
      */
     public Double getConfidence() {
-        double maximum = _distribution[0];
-        for (int i = 1; i < _distribution.length; i++) {
-            if (_distribution[i] > maximum) {
-                maximum = _distribution[i];
-            }
-        }
-        return maximum;
+        return _confidence;
     }
 
     /**
@@ -76,15 +182,15 @@ public final class Prediction implements Comparable<Prediction> {
     }
 
     /**
-     * Gets the confidence of the all predicted classes
+     * Gets the predicted class, or the predicted value of a numeric class
      * 
-     * @return class confidence distribution
+     * @return the prediction
      */
     public String getPrediction() {
-        if (_instance.classAttribute().isNumeric()) {
+        if (_dataset._numeric) {
             return Double.toString(_confidence);
         }
-        return _prediction;
+        return getClassValue();
     }
 
     @Override
@@ -92,21 +198,7 @@ public final class Prediction implements Comparable<Prediction> {
         StringBuilder sb = new StringBuilder();
         sb.append(_instanceIndex + _delimeter);
         sb.append(_confidence + _delimeter);
-        sb.append(_prediction + _delimeter);
-        return sb.toString();
-    }
-
-    /**
-     * Gets the value of attribute in the instance
-     * 
-     * @return tab-delimited attribute distribution
-     */
-    public String attributeDistribution(String attribute) {
-        StringBuilder sb = new StringBuilder();
-        int location = 0;
-        location = _attributeIndex.get(attribute);
-        sb.append(_instance.toString(location) + _delimeter);
-        sb.append(_confidence + _delimeter);
+        sb.append(getClassValue() + _delimeter);
         return sb.toString();
     }
 
@@ -116,55 +208,58 @@ public final class Prediction implements Comparable<Prediction> {
     private static final String _delimeter = "\t";
 
     /**
-     * mapping of attribute name to location
-     */
-    private HashMap<String, Integer> _attributeIndex;
-
-    /**
-     * for NaiveBayes, holds the probability distribution
+     * the code of the predicted class
      */
-    private double[] _distribution;
+    private final int _classCode;
 
     /**
-     * the instance to be predicted
+     * the prediction confidence
      */
-    private Instance _instance;
+    private final double _confidence;
 
     /**
-     * the predicted class of the instance
+     * the dataset the instance is part of
      */
-    private String _prediction;
+    private final Dataset _dataset;
 
     /**
      * the index of the predicted instance
      */
-    private int _instanceIndex;
+    private final int _instanceIndex;
 
     /**
-     * the prediction confidence
+     * Constructor for instance prediction
+     * 
+     * @param dataset
+     *            The dataset the instance is part of
+     * @param instanceIndex
+     *            The 1-based index of the instance in the dataset
+     * @param classCode
+     *            The code of the predicted class
+     * @param confidence
+     *            The prediction confidence
      */
-    private double _confidence;
+    public Prediction(Dataset dataset, int instanceIndex, int classCode, double confidence) {
+        _dataset = dataset;
+        _instanceIndex = instanceIndex;
+        _classCode = classCode;
+        _confidence = confidence;
+    }
 
     /**
      * Constructor for instance prediction
      * 
+     * @param dataset
+     *            The dataset the instance is part of
      * @param instanceIndex
-     *            The instance index in dump
-     * @param prediction
-     *            The classifier prediction
+     *            The 1-based index of the instance in the dataset
+     * @param classCode
+     *            The code of the predicted class
      * @param distribution
-     *            The prediction confidence distribution
-     * @param instance
-     *            The test instance
-     * @throws IOException
+     *            The prediction confidence distribution, only its maximum is
+     *            kept
      */
-    public Prediction(int instanceIndex, String prediction, double[] distribution, Instance instance)
-            throws IOException {
-        _prediction = prediction;
-        _distribution = distribution;
-        _instance = instance;
-        _instanceIndex = instanceIndex;
-        _attributeIndex = getAttributeMap();
-        _confidence = getConfidence();
+    public Prediction(Dataset dataset, int instanceIndex, int classCode, double[] distribution) {
+        this(dataset, instanceIndex, classCode, confidence(distribution));
     }
 }
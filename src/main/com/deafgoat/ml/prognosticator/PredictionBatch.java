@@ -0,0 +1,299 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+// Weka
+import weka.core.Instance;
+
+/**
+ * Columnar container of predictions made on one dataset. The instance index,
+ * class code and confidence of each prediction, and optionally its
+ * distribution, are held in primitive arrays, so sinks read predictions
+ * without a per prediction object.
+ */
+public final class PredictionBatch {
+
+    /**
+     * Adds a prediction
+     * 
+     * @param instanceIndex
+     *            The 1-based index of the instance in the dataset
+     * @param classCode
+     *            The code of the predicted class
+     * @param distribution
+     *            The prediction confidence distribution
+     */
+    public void add(int instanceIndex, int classCode, double[] distribution) {
+        add(instanceIndex, classCode, Prediction.confidence(distribution));
+        if (_distributions != null) {
+            System.arraycopy(distribution, 0, _distributions, (_size - 1) * _width, _width);
+        }
+    }
+
+    /**
+     * Adds a prediction without its distribution
+     * 
+     * @param instanceIndex
+     *            The 1-based index of the instance in the dataset
+     * @param classCode
+     *            The code of the predicted class
+     * @param confidence
+     *            The prediction confidence
+     */
+    public void add(int instanceIndex, int classCode, double confidence) {
+        if (_size == _indexes.length) {
+            grow();
+        }
+        _indexes[_size] = instanceIndex;
+        _classCodes[_size] = classCode;
+        _confidences[_size] = confidence;
+        _size++;
+    }
+
+    /**
+     * Returns a prediction of the batch as an object
+     * 
+     * @param row
+     *            The row of the prediction
+     * @return the prediction
+     */
+    public Prediction get(int row) {
+        return new Prediction(_dataset, _indexes[row], _classCodes[row], _confidences[row]);
+    }
+
+    /**
+     * @param row
+     *            The row of the prediction
+     * @return the code of the predicted class
+     */
+    public int getClassCode(int row) {
+        return _classCodes[row];
+    }
+
+    /**
+     * @param row
+     *            The row of the prediction
+     * @return the predicted class, empty for numeric classes
+     */
+    public String getClassValue(int row) {
+        return _dataset.isNumeric() ? "" : _dataset.getClassAttribute().value(_classCodes[row]);
+    }
+
+    /**
+     * @param row
+     *            The row of the prediction
+     * @return the prediction confidence, or the predicted value of a numeric
+     *         class
+     */
+    public double getConfidence(int row) {
+        return _confidences[row];
+    }
+
+    /**
+     * @return the dataset the predictions are made on
+     */
+    public Prediction.Dataset getDataset() {
+        return _dataset;
+    }
+
+    /**
+     * @param row
+     *            The row of the prediction
+     * @return a copy of the prediction distribution, or null if the batch does
+     *         not hold distributions
+     */
+    public double[] getDistribution(int row) {
+        if (_distributions == null) {
+            return null;
+        }
+        return Arrays.copyOfRange(_distributions, row * _width, (row + 1) * _width);
+    }
+
+    /**
+     * @param row
+     *            The row of the prediction
+     * @return the 1-based index of the predicted instance
+     */
+    public int getIndex(int row) {
+        return _indexes[row];
+    }
+
+    /**
+     * @param row
+     *            The row of the prediction
+     * @return the predicted instance
+     */
+    public Instance getInstance(int row) {
+        return _dataset.instance(_indexes[row]);
+    }
+
+    /**
+     * Grows the columns to hold twice as many predictions
+     */
+    private void grow() {
+        int capacity = Math.max(16, _indexes.length * 2);
+        _indexes = Arrays.copyOf(_indexes, capacity);
+        _classCodes = Arrays.copyOf(_classCodes, capacity);
+        _confidences = Arrays.copyOf(_confidences, capacity);
+        if (_distributions != null) {
+            _distributions = Arrays.copyOf(_distributions, capacity * _width);
+        }
+    }
+
+    /**
+     * @return true if the class attribute is numeric
+     */
+    public boolean isNumeric() {
+        return _dataset.isNumeric();
+    }
+
+    /**
+     * Returns the predictions of some rows
+     * 
+     * @param rows
+     *            The rows to select, in the order to hold them in
+     * @return a batch holding the predictions of the rows
+     */
+    public PredictionBatch select(int[] rows) {
+        PredictionBatch batch = new PredictionBatch(_dataset, rows.length, _distributions != null);
+        for (int row : rows) {
+            batch.add(_indexes[row], _classCodes[row], _confidences[row]);
+            if (_distributions != null) {
+                System.arraycopy(_distributions, row * _width, batch._distributions, (batch._size - 1) * _width,
+                        _width);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return the number of predictions held
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Writes the value of an attribute of each predicted instance along with
+     * the prediction confidence, one tab-delimited prediction per line
+     * 
+     * @param writer
+     *            The writer to write to
+     * @param attribute
+     *            The name of the attribute
+     * @throws IOException
+     *             If the predictions can not be written
+     */
+    public void writeAttribute(Writer writer, String attribute) throws IOException {
+        int location = _dataset.attributeIndex(attribute);
+        for (int row = 0; row < _size; row++) {
+            writer.write(getInstance(row).toString(location));
+            writer.write(_delimeter);
+            writer.write(Double.toString(_confidences[row]));
+            writer.write(_delimeter);
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Writes the index, confidence and class of each prediction, one
+     * tab-delimited prediction per line. Numeric predictions are written as
+     * the index and predicted value.
+     * 
+     * @param writer
+     *            The writer to write to
+     * @throws IOException
+     *             If the predictions can not be written
+     */
+    public void writePredictions(Writer writer) throws IOException {
+        boolean numeric = _dataset.isNumeric();
+        for (int row = 0; row < _size; row++) {
+            writer.write(Integer.toString(_indexes[row]));
+            writer.write(_delimeter);
+            writer.write(Double.toString(_confidences[row]));
+            if (!numeric) {
+                writer.write(_delimeter);
+                writer.write(getClassValue(row));
+            }
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * the delimeter of written predictions
+     */
+    private static final String _delimeter = "\t";
+
+    /**
+     * the code of the predicted class of each prediction
+     */
+    private int[] _classCodes;
+
+    /**
+     * the confidence of each prediction
+     */
+    private double[] _confidences;
+
+    /**
+     * the dataset the predictions are made on
+     */
+    private final Prediction.Dataset _dataset;
+
+    /**
+     * the distribution of each prediction laid out row after row, or null
+     */
+    private double[] _distributions;
+
+    /**
+     * the 1-based index of each predicted instance
+     */
+    private int[] _indexes;
+
+    /**
+     * the number of predictions held
+     */
+    private int _size;
+
+    /**
+     * the length of a distribution
+     */
+    private final int _width;
+
+    /**
+     * Class constructor
+     * 
+     * @param dataset
+     *            The dataset the predictions are made on
+     * @param capacity
+     *            The number of predictions the batch is expected to hold
+     * @param distributions
+     *            Indicates if the distribution of each prediction is held
+     */
+    public PredictionBatch(Prediction.Dataset dataset, int capacity, boolean distributions) {
+        _dataset = dataset;
+        _width = dataset.isNumeric() ? 1 : dataset.getClassAttribute().numValues();
+        _indexes = new int[capacity];
+        _classCodes = new int[capacity];
+        _confidences = new double[capacity];
+        _distributions = distributions ? new double[capacity * _width] : null;
+    }
+}
@@ -0,0 +1,429 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Weka
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Scores instances with a trained classifier, running the model once per
+ * instance. The predicted class of a nominal class attribute is the most
+ * probable class of the distribution; numeric predictions are made by
+ * classifying the instance and are held as a distribution of length one.
+ * Blocks of instances may be scored on several threads, each with its own
+ * replica of the classifier.
+ */
+public final class Scorer {
+
+    /**
+     * Receives the distribution of each scored instance
+     */
+    public interface Sink {
+
+        /**
+         * @param index
+         *            The index of the instance that could not be scored
+         * @param e
+         *            The reason the instance could not be scored
+         * @throws Exception
+         *             If the failure ends the scoring
+         */
+        void failed(int index, Exception e) throws Exception;
+
+        /**
+         * @param index
+         *            The index of the scored instance
+         * @param distribution
+         *            The class distribution of the instance
+         * @throws Exception
+         *             If the distribution can not be handled
+         */
+        void scored(int index, double[] distribution) throws Exception;
+    }
+
+    /**
+     * Scores a contiguous block of instances
+     */
+    private static final class Block implements Callable<double[][]> {
+
+        @Override
+        public double[][] call() {
+            return _scorer.distributions(_instances, _start, _end, _failures);
+        }
+
+        /**
+         * the end (exclusive) of the block
+         */
+        private final int _end;
+
+        /**
+         * the reason each instance of the block could not be scored, null for
+         * the instances scored
+         */
+        private final Exception[] _failures;
+
+        /**
+         * the instances the block is part of
+         */
+        private final Instances _instances;
+
+        /**
+         * the scorer of the block
+         */
+        private final Scorer _scorer;
+
+        /**
+         * the start of the block
+         */
+        private final int _start;
+
+        /**
+         * @param scorer
+         *            The scorer of the block
+         * @param instances
+         *            The instances the block is part of
+         * @param start
+         *            The start of the block
+         * @param end
+         *            The end (exclusive) of the block
+         */
+        Block(Scorer scorer, Instances instances, int start, int end) {
+            _scorer = scorer;
+            _instances = instances;
+            _start = start;
+            _end = end;
+            _failures = new Exception[end - start];
+        }
+    }
+
+    /**
+     * the number of instances each thread scores at a time
+     */
+    public static final int BLOCK_SIZE = 1024;
+
+    /**
+     * the classifiers whose trained models are only read while scoring, so a
+     * single model may be shared across threads
+     */
+    private static final Set<String> THREAD_SAFE = new HashSet<String>(Arrays.asList(
+            "weka.classifiers.rules.ZeroR", "weka.classifiers.trees.DecisionStump", "weka.classifiers.trees.J48"));
+
+    /**
+     * Hands the distributions of a block, or the reasons its instances could
+     * not be scored, to a sink
+     * 
+     * @param distributions
+     *            The distributions of the block
+     * @param failures
+     *            The reason each instance of the block could not be scored
+     * @param start
+     *            The index of the first instance of the block
+     * @param sink
+     *            The sink receiving the distributions
+     * @throws Exception
+     *             If the sink fails
+     */
+    private static void feed(double[][] distributions, Exception[] failures, int start, Sink sink)
+            throws Exception {
+        for (int i = 0; i < distributions.length; i++) {
+            if (failures[i] != null) {
+                sink.failed(start + i, failures[i]);
+            } else {
+                sink.scored(start + i, distributions[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the predicted class value of a distribution
+     * 
+     * @param distribution
+     *            The distribution returned by this scorer
+     * @return the index of the most probable class, or the predicted value of
+     *         a numeric class
+     */
+    public double classify(double[] distribution) {
+        return _numeric ? distribution[0] : Utils.maxIndex(distribution);
+    }
+
+    /**
+     * Scores an instance
+     * 
+     * @param instance
+     *            The instance to score
+     * @return the class distribution of the instance
+     * @throws Exception
+     *             If the instance can not be scored
+     */
+    public double[] distribution(Instance instance) throws Exception {
+        if (_numeric) {
+            return new double[] { _classifier.classifyInstance(instance) };
+        }
+        return _classifier.distributionForInstance(instance);
+    }
+
+    /**
+     * Scores a block of instances in one call if the classifier is a
+     * BatchPredictor, one instance at a time otherwise
+     * 
+     * @param instances
+     *            The instances to score
+     * @return the class distribution of each instance
+     * @throws Exception
+     *             If an instance can not be scored
+     */
+    public double[][] distributions(Instances instances) throws Exception {
+        return distributions(instances, 0, instances.numInstances());
+    }
+
+    /**
+     * Scores a contiguous block of instances in one call if the classifier is
+     * a BatchPredictor, one instance at a time otherwise. A batch predictor is
+     * handed copies of the instances whose class is missing, as WEKA's
+     * evaluation does, so the class values can not reach the classifier.
+     * 
+     * @param instances
+     *            The instances the block is part of
+     * @param start
+     *            The start of the block
+     * @param end
+     *            The end (exclusive) of the block
+     * @return the class distribution of each instance of the block
+     * @throws Exception
+     *             If an instance can not be scored
+     */
+    public double[][] distributions(Instances instances, int start, int end) throws Exception {
+        if (isBatch()) {
+            Instances classMissing = new Instances(instances, start, end - start);
+            for (int i = 0; i < classMissing.numInstances(); i++) {
+                classMissing.instance(i).setClassMissing();
+            }
+            return ((BatchPredictor) _classifier).distributionsForInstances(classMissing);
+        }
+        double[][] distributions = new double[end - start][];
+        for (int i = 0; i < distributions.length; i++) {
+            distributions[i] = distribution(instances.instance(start + i));
+        }
+        return distributions;
+    }
+
+    /**
+     * Scores a contiguous block of instances like
+     * {@link #distributions(Instances, int, int)}, recording the instances
+     * that can not be scored instead of failing the block. If a batch
+     * predictor fails, the block is scored again one instance at a time to
+     * find the failing instances.
+     * 
+     * @param instances
+     *            The instances the block is part of
+     * @param start
+     *            The start of the block
+     * @param end
+     *            The end (exclusive) of the block
+     * @param failures
+     *            Receives the reason each instance of the block could not be
+     *            scored
+     * @return the class distribution of each instance of the block, null for
+     *         the instances that could not be scored
+     */
+    private double[][] distributions(Instances instances, int start, int end, Exception[] failures) {
+        if (isBatch()) {
+            try {
+                return distributions(instances, start, end);
+            } catch (Exception e) {
+                // fall back to single instance batches below
+            }
+        }
+        double[][] distributions = new double[end - start][];
+        for (int i = 0; i < distributions.length; i++) {
+            try {
+                distributions[i] = isBatch() ? distributions(instances, start + i, start + i + 1)[0]
+                        : distribution(instances.instance(start + i));
+            } catch (Exception e) {
+                failures[i] = e;
+            }
+        }
+        return distributions;
+    }
+
+    /**
+     * Scores instances on several threads, holding all distributions
+     * 
+     * @param instances
+     *            The instances to score
+     * @param threads
+     *            The number of threads to score on, 0 for one per core
+     * @return the class distribution of each instance, in the order of the
+     *         instances
+     * @throws Exception
+     *             If the classifier can not be copied or an instance can not
+     *             be scored
+     * @see #score(Instances, int, Sink)
+     */
+    public double[][] distributions(Instances instances, int threads) throws Exception {
+        final double[][] distributions = new double[instances.numInstances()][];
+        score(instances, threads, new Sink() {
+            @Override
+            public void failed(int index, Exception e) throws Exception {
+                throw e;
+            }
+
+            @Override
+            public void scored(int index, double[] distribution) {
+                distributions[index] = distribution;
+            }
+        });
+        return distributions;
+    }
+
+    /**
+     * @return true if the classifier scores blocks of instances in one call
+     */
+    public boolean isBatch() {
+        return _classifier instanceof BatchPredictor;
+    }
+
+    /**
+     * Returns a scorer that may score instances concurrently with this one
+     * 
+     * @return this scorer if the classifier is thread-safe, a scorer of a
+     *         deserialized copy of the classifier otherwise
+     * @throws Exception
+     *             If the classifier can not be copied
+     */
+    public Scorer replicate() throws Exception {
+        if (THREAD_SAFE.contains(_classifier.getClass().getName())) {
+            return this;
+        }
+        return new Scorer(AbstractClassifier.makeCopy(_classifier), _numeric);
+    }
+
+    /**
+     * Scores instances block by block, handing the distributions to a sink in
+     * the order of the instances. At most BLOCK_SIZE instances per thread are
+     * scored at a time, so the distributions held do not grow with the number
+     * of instances. Each thread scores its part of a block with its own
+     * replica of the classifier, unless the classifier is known to be
+     * thread-safe. An instance that can not be scored is handed to the sink as
+     * a failure and the other instances are still scored.
+     * 
+     * @param instances
+     *            The instances to score
+     * @param threads
+     *            The number of threads to score on, 0 for one per core
+     * @param sink
+     *            The sink receiving the distribution of each instance
+     * @throws Exception
+     *             If the classifier can not be copied or the sink fails
+     */
+    public void score(Instances instances, int threads, Sink sink) throws Exception {
+        int numInstances = instances.numInstances();
+        int workers = Math.max(1, Math.min(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                numInstances));
+        List<Scorer> replicas = new ArrayList<Scorer>();
+        replicas.add(this);
+        for (int i = 1; i < workers; i++) {
+            replicas.add(replicate());
+        }
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        try {
+            int end;
+            for (int start = 0; start < numInstances; start = end) {
+                end = (int) Math.min(numInstances, (long) start + BLOCK_SIZE * workers);
+                if (pool == null) {
+                    Exception[] failures = new Exception[end - start];
+                    feed(distributions(instances, start, end, failures), failures, start, sink);
+                    continue;
+                }
+                // split the block into one contiguous part per thread
+                List<Block> parts = new ArrayList<Block>();
+                int from = start, to;
+                for (int i = 0; i < workers; i++) {
+                    to = start + (int) ((long) (end - start) * (i + 1) / workers);
+                    parts.add(new Block(replicas.get(i), instances, from, to));
+                    from = to;
+                }
+                List<Future<double[][]>> futures = pool.invokeAll(parts);
+                for (int i = 0; i < workers; i++) {
+                    feed(futures.get(i).get(), parts.get(i)._failures, parts.get(i)._start, sink);
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * the trained classifier
+     */
+    private final Classifier _classifier;
+
+    /**
+     * indicates if the class attribute is numeric
+     */
+    private final boolean _numeric;
+
+    /**
+     * Class constructor
+     * 
+     * @param classifier
+     *            The trained classifier
+     * @param classAttribute
+     *            The class attribute of the instances to score
+     */
+    public Scorer(Classifier classifier, Attribute classAttribute) {
+        this(classifier, classAttribute.isNumeric());
+    }
+
+    /**
+     * Class constructor
+     * 
+     * @param classifier
+     *            The trained classifier
+     * @param numeric
+     *            Indicates if the class attribute is numeric
+     */
+    private Scorer(Classifier classifier, boolean numeric) {
+        _classifier = classifier;
+        _numeric = numeric;
+    }
+}
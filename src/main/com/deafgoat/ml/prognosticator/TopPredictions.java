@@ -0,0 +1,282 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.util.Arrays;
+
+/**
+ * Streaming selection of the best predictions. A bounded binary heap holds at
+ * most the limit of predictions in primitive arrays, with the worst retained
+ * prediction at its root, so selecting the best k of n predictions takes O(k)
+ * memory and O(n log k) time. Predictions that rank equally keep the order
+ * they were added in, as they would after a stable sort of all predictions.
+ */
+public final class TopPredictions {
+
+    /**
+     * The rankings of predictions
+     */
+    public enum Order {
+        /**
+         * predictions rank in the order they are added, as numeric
+         * predictions do
+         */
+        ADDED,
+        /**
+         * the least confident predictions rank first
+         */
+        ASCENDING,
+        /**
+         * the most confident predictions rank first
+         */
+        DESCENDING
+    }
+
+    /**
+     * Adds a prediction if it meets the minimum confidence and ranks among the
+     * best predictions added so far
+     * 
+     * @param instanceIndex
+     *            The 1-based index of the instance in the dataset
+     * @param classCode
+     *            The code of the predicted class
+     * @param confidence
+     *            The prediction confidence
+     */
+    public void add(int instanceIndex, int classCode, double confidence) {
+        long sequence = _added++;
+        if (_minConfidence > Double.NEGATIVE_INFINITY && !(confidence >= _minConfidence)) {
+            return;
+        }
+        if (_size < _limit) {
+            if (_size == _sequences.length) {
+                grow();
+            }
+            set(_size, instanceIndex, classCode, confidence, sequence);
+            siftUp(_size++);
+        } else if (_limit > 0 && compare(confidence, sequence, 0) < 0) {
+            // replace the worst retained prediction
+            set(0, instanceIndex, classCode, confidence, sequence);
+            siftDown(0, _size);
+        }
+    }
+
+    /**
+     * Ranks a prediction against a retained one
+     * 
+     * @param confidence
+     *            The confidence of the prediction
+     * @param sequence
+     *            The sequence the prediction was added in
+     * @param slot
+     *            The heap slot of the retained prediction
+     * @return a negative number if the prediction ranks before the retained
+     *         one, a positive number if it ranks after it
+     */
+    private int compare(double confidence, long sequence, int slot) {
+        double other = _confidences[slot];
+        if (_order == Order.DESCENDING && confidence != other) {
+            return confidence > other ? -1 : 1;
+        } else if (_order == Order.ASCENDING && confidence != other) {
+            return confidence < other ? -1 : 1;
+        }
+        return sequence < _sequences[slot] ? -1 : (sequence == _sequences[slot] ? 0 : 1);
+    }
+
+    /**
+     * Ranks the predictions of two heap slots
+     */
+    private int compare(int a, int b) {
+        return compare(_confidences[a], _sequences[a], b);
+    }
+
+    /**
+     * Grows the heap to hold twice as many predictions
+     */
+    private void grow() {
+        int capacity = (int) Math.min(_limit, Math.max(16L, _sequences.length * 2L));
+        _indexes = Arrays.copyOf(_indexes, capacity);
+        _classCodes = Arrays.copyOf(_classCodes, capacity);
+        _confidences = Arrays.copyOf(_confidences, capacity);
+        _sequences = Arrays.copyOf(_sequences, capacity);
+    }
+
+    /**
+     * Sets the prediction of a heap slot
+     */
+    private void set(int slot, int instanceIndex, int classCode, double confidence, long sequence) {
+        _indexes[slot] = instanceIndex;
+        _classCodes[slot] = classCode;
+        _confidences[slot] = confidence;
+        _sequences[slot] = sequence;
+    }
+
+    /**
+     * Moves the prediction of a slot down until no child ranks after it
+     * 
+     * @param slot
+     *            The slot to sift down
+     * @param size
+     *            The number of slots of the heap
+     */
+    private void siftDown(int slot, int size) {
+        int child;
+        while ((child = 2 * slot + 1) < size) {
+            if (child + 1 < size && compare(child + 1, child) > 0) {
+                child++;
+            }
+            if (compare(slot, child) >= 0) {
+                return;
+            }
+            swap(slot, child);
+            slot = child;
+        }
+    }
+
+    /**
+     * Moves the prediction of a slot up until its parent ranks after it
+     * 
+     * @param slot
+     *            The slot to sift up
+     */
+    private void siftUp(int slot) {
+        int parent;
+        while (slot > 0) {
+            parent = (slot - 1) / 2;
+            if (compare(parent, slot) >= 0) {
+                return;
+            }
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    /**
+     * @return the number of predictions selected
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the selected predictions. The selection is emptied.
+     * 
+     * @param dataset
+     *            The dataset the predictions are made on
+     * @return the selected predictions, best first
+     */
+    public PredictionBatch sorted(Prediction.Dataset dataset) {
+        // repeatedly move the worst retained prediction behind the heap
+        for (int size = _size - 1; size > 0; size--) {
+            swap(0, size);
+            siftDown(0, size);
+        }
+        PredictionBatch batch = new PredictionBatch(dataset, _size, false);
+        for (int slot = 0; slot < _size; slot++) {
+            batch.add(_indexes[slot], _classCodes[slot], _confidences[slot]);
+        }
+        _size = 0;
+        return batch;
+    }
+
+    /**
+     * Swaps the predictions of two heap slots
+     */
+    private void swap(int a, int b) {
+        int index = _indexes[a];
+        _indexes[a] = _indexes[b];
+        _indexes[b] = index;
+        int code = _classCodes[a];
+        _classCodes[a] = _classCodes[b];
+        _classCodes[b] = code;
+        double confidence = _confidences[a];
+        _confidences[a] = _confidences[b];
+        _confidences[b] = confidence;
+        long sequence = _sequences[a];
+        _sequences[a] = _sequences[b];
+        _sequences[b] = sequence;
+    }
+
+    /**
+     * the number of predictions added
+     */
+    private long _added;
+
+    /**
+     * the class code of each retained prediction
+     */
+    private int[] _classCodes;
+
+    /**
+     * the confidence of each retained prediction
+     */
+    private double[] _confidences;
+
+    /**
+     * the instance index of each retained prediction
+     */
+    private int[] _indexes;
+
+    /**
+     * the maximum number of predictions to select
+     */
+    private final int _limit;
+
+    /**
+     * the minimum confidence of a selected prediction
+     */
+    private final double _minConfidence;
+
+    /**
+     * the ranking of predictions
+     */
+    private final Order _order;
+
+    /**
+     * the sequence each retained prediction was added in
+     */
+    private long[] _sequences;
+
+    /**
+     * the number of retained predictions
+     */
+    private int _size;
+
+    /**
+     * Class constructor
+     * 
+     * @param limit
+     *            The maximum number of predictions to select
+     * @param minConfidence
+     *            The minimum confidence of a selected prediction, negative
+     *            infinity to select predictions of any confidence
+     * @param order
+     *            The ranking of predictions
+     */
+    public TopPredictions(int limit, double minConfidence, Order order) {
+        _limit = limit;
+        _minConfidence = minConfidence;
+        _order = order;
+        // the heap grows with the predictions it holds, the limit may be huge
+        int capacity = Math.max(0, Math.min(limit, 1024));
+        _indexes = new int[capacity];
+        _classCodes = new int[capacity];
+        _confidences = new double[capacity];
+        _sequences = new long[capacity];
+    }
+}
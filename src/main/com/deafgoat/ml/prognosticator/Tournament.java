@@ -0,0 +1,141 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+// JSON
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Weka
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Compares several classifiers in one run. The dataset is loaded and
+ * stratified once, each fold is a view of the shared instances, and every
+ * classifier is trained and evaluated on the shared folds by one pool of
+ * workers. The report ranks the classifiers by their metric next to what
+ * they cost: the time taken to train on a fold and the time taken to score
+ * an instance.
+ */
+public final class Tournament {
+
+    /**
+     * Returns the search evaluating every entrant of a tournament on all folds
+     * 
+     * @param tournament
+     *            The tournament configuration, whose 'classifiers' are either
+     *            names or objects with a 'classifier' name and 'options'
+     * @return the search configuration
+     * @throws JSONException
+     *             If the tournament configuration is not valid
+     */
+    static JSONObject toSearch(JSONObject tournament) throws JSONException {
+        JSONArray classifiers = tournament.getJSONArray("classifiers");
+        JSONArray candidates = new JSONArray();
+        for (int i = 0; i < classifiers.length(); i++) {
+            JSONObject entrant = classifiers.optJSONObject(i);
+            if (entrant == null) {
+                entrant = new JSONObject().put("classifier", classifiers.getString(i));
+            }
+            candidates.put(entrant);
+        }
+        JSONObject search = new JSONObject();
+        search.put("candidates", candidates);
+        search.put("halving", 0);
+        search.put("threads", tournament.optInt("threads", 0));
+        if (tournament.has("metric")) {
+            search.put("metric", tournament.getString("metric"));
+        }
+        return search;
+    }
+
+    /**
+     * @return the entrants, the best first
+     */
+    public List<ParameterSearch.Candidate> getResults() {
+        return _search.getLeaderboard();
+    }
+
+    /**
+     * @return the best entrant or null if none could be evaluated
+     */
+    public ParameterSearch.Candidate getWinner() {
+        return _search.getBest();
+    }
+
+    /**
+     * Evaluates every entrant on all folds
+     * 
+     * @throws Exception
+     *             If a fold can not be evaluated
+     */
+    public void run() throws Exception {
+        _search.run();
+    }
+
+    /**
+     * Writes the report as tab-delimited lines
+     * 
+     * @param writer
+     *            The writer to write the report to
+     * @throws IOException
+     *             If the report can not be written
+     */
+    public void writeReport(Writer writer) throws IOException {
+        writer.write("rank\tclassifier\toptions\t" + _search.getMetric() + "\ttrain ms/fold\tscoring us/instance\n");
+        int rank = 1;
+        for (ParameterSearch.Candidate entrant : getResults()) {
+            writer.write(rank++ + "\t" + entrant.getName() + "\t" + entrant.getOptions() + "\t");
+            if (entrant.isFailed()) {
+                writer.write("?\t?\t?\n");
+                continue;
+            }
+            writer.write(Utils.doubleToString(entrant.getScore(), 6) + "\t"
+                    + Utils.doubleToString(entrant.getTrainTime() / 1e6 / entrant.getFolds(), 3) + "\t"
+                    + Utils.doubleToString(entrant.getTestTime() / 1e3 / entrant.getTested(), 3) + "\n");
+        }
+    }
+
+    /**
+     * the search evaluating the entrants on all folds
+     */
+    private final ParameterSearch _search;
+
+    /**
+     * Class constructor
+     * 
+     * @param data
+     *            The dataset to compare the classifiers on, which is
+     *            stratified in place
+     * @param folds
+     *            The number of cross-validation folds
+     * @param tournament
+     *            The tournament configuration
+     * @throws Exception
+     *             If the tournament configuration is not valid
+     */
+    public Tournament(Instances data, int folds, JSONObject tournament) throws Exception {
+        _search = new ParameterSearch(data, folds, toSearch(tournament));
+    }
+}
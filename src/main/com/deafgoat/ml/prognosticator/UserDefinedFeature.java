@@ -0,0 +1,76 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+// Java
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Adapts a UserDefinedAttribute to the DerivedFeature contract. The attribute
+ * is still given the raw record and its value decoded from a string, but it is
+ * now evaluated once per row.
+ */
+public final class UserDefinedFeature extends DerivedFeature {
+
+    /**
+     * the inputs of the adapted attribute, which reads the raw record instead
+     */
+    private static final String[] NO_INPUTS = new String[0];
+
+    @Override
+    public void compute(FeatureRow row) throws ParseException {
+        List<String> record = row.getRecord();
+        if (record == null) {
+            row.setMissing();
+            return;
+        }
+        row.decode(_attribute.getAttributeValue(record, row.getColumnMap(), row.getConfig()));
+    }
+
+    @Override
+    public Attributes getAttribute() {
+        return _attribute.getUserDefinedAttribute();
+    }
+
+    @Override
+    public String[] getInputs() {
+        return NO_INPUTS;
+    }
+
+    /**
+     * @return the adapted user defined attribute
+     */
+    public UserDefinedAttribute getUserDefinedAttribute() {
+        return _attribute;
+    }
+
+    /**
+     * the adapted user defined attribute
+     */
+    private final UserDefinedAttribute _attribute;
+
+    /**
+     * Class constructor
+     * 
+     * @param attribute
+     *            The user defined attribute to adapt
+     */
+    public UserDefinedFeature(UserDefinedAttribute attribute) {
+        _attribute = attribute;
+    }
+}
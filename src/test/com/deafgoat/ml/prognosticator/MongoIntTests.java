@@ -20,6 +20,7 @@
 
 package com.deafgoat.ml.prognosticator;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -28,13 +29,23 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import com.mongodb.MongoException;
+import com.mongodb.gridfs.GridFS;
 
 public class MongoIntTests {
 
@@ -43,6 +54,7 @@ public class MongoIntTests {
     static ARFFWriter _dump;
     static final String[] _fields = new String[] { "name", "dumpARFF" };
     static final String _host = "localhost";
+    static final String _modelCollection = "models";
     static JSONObject[] _json;
     static final String _jsonStr = "{\"name\":\"weather\",\"dumpARFF\":\"weather-dump.arff\",\"data\":{\"dateFormat\":\"yyyy-MM-dd\",\"classValue\":\"RainTomorrow\",\"positiveClassValue\":\"1\",\"negativeClassValue\":\"0\",\"positiveClassWeight\":1,\"negativeClassWeight\":1},\"errorAnalysis\":{\"truePositives\":\"tp.txt\",\"trueNegatives\":\"tn.txt\",\"falsePositives\":\"fp.txt\",\"falseNegatives\":\"fn.txt\"},\"classifier\":{\"model\":{\"classifier\":\"LogitBoost\",\"outputModel\":\"classifier.model\"},\"crossValidation\":{\"numFolds\":10,\"arguments\":\"\",\"seed\":10},\"classify\":{\"testARFF\":\"weather-test.arff\",\"trainingARFF\":\"weather-training.arff\"},\"prediction\":{\"maxCount\":0,\"minProb\":0,\"file\":\"weather.tsv\"},\"writeToMongoDB\":false,\"writeToFile\":true},\"mongoDB\":{\"hostname\":\"localhost\",\"port\":27017,\"database\":\"weather\",\"configCollection\":\"config\",\"modelCollection\":\"experiments\",\"predictionCollection\":\"predictions\"},\"dump\":{\"file\":\"weather.csv\",\"attributes\":[{\"rawAttributeName\":\"Date\",\"attributeName\":\"\",\"attributeType\":\"nominal\",\"include\":true}]}}";
     static MongoExport _mongoExport;
@@ -74,6 +86,38 @@ public class MongoIntTests {
         assertTrue("Name mismatch!", configuration.getString("dumpARFF").equals("weather-dump.arff"));
     }
 
+    @Test
+    public final void testModelStorage() throws Exception {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("temperature"));
+        attributes.add(new Attribute("outlook", new ArrayList<String>(Arrays.asList("sunny", "rainy"))));
+        Instances data = new Instances("weather", attributes, 20);
+        data.setClassIndex(1);
+        for (int i = 0; i < 20; i++) {
+            data.add(new DenseInstance(1, new double[] { i, i < 10 ? 0 : 1 }));
+        }
+        J48 model = new J48();
+        model.buildClassifier(data);
+
+        MongoResult mongoResult = new MongoResult(_host, _port, _database, _modelCollection);
+        GridFS files = new GridFS(mongoResult.getDatabase(), _modelCollection);
+        try {
+            mongoResult.getCollection().remove(new BasicDBObject().append("name", "weather"));
+            files.remove(new BasicDBObject().append("filename", "weather"));
+            mongoResult.writeModel("weather", model, data);
+            mongoResult.writeModel("weather", model, data);
+            DBObject version = mongoResult.readModelVersion("weather");
+            assertEquals("Unexpected model version!", 2L, ((Number) version.get(MongoResult.MODEL_VERSION))
+                    .longValue());
+            // the replaced model file is removed
+            assertEquals("Unexpected model files!", 1, files.find("weather").size());
+            Classifier read = mongoResult.readModel("weather");
+            assertEquals("Unexpected model!", model.toString(), read.toString());
+        } finally {
+            mongoResult.close();
+        }
+    }
+
     @Test
     public final void testMongo2CSV() throws UnknownHostException, IOException {
         Mongo2CSV x = new Mongo2CSV(_host, _port, _database, _collection);
@@ -20,18 +20,30 @@
 
 package com.deafgoat.ml.prognosticator;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
 public class ARFFWriterUnitTests {
 
     static final String _config = "weatherConfig.json";
     static ARFFWriter _dump;
     static final String _inputCsv = "weather.csv";
+    static final String _parallelArff = "weather-parallel.arff";
+    static final String _singlePassArff = "weather-single-pass.arff";
+    static final String _sparseArff = "weather-sparse.arff";
+    static final String _streamingArff = "weather-streaming.arff";
     static final String _targetArff = "weather-dump.arff";
 
     @Before
@@ -52,4 +64,75 @@ public class ARFFWriterUnitTests {
         assertTrue("ARFF not written!", arff.exists());
 
     }
+
+    /**
+     * This will test that a parallel chunked conversion writes the same ARFF.
+     */
+    @Test
+    public final void testParallelArffWrite() throws Exception {
+        File arff = new File(_targetArff);
+        File parallelArff = new File(_parallelArff);
+        _dump.writeARFF();
+        ARFFWriter parallel = new ARFFWriter(new ConfigReader(_config), _inputCsv, _parallelArff);
+        parallel.setParallel(true);
+        parallel.setThreads(4);
+        parallel.writeARFF();
+        assertTrue("ARFF not written!", parallelArff.exists());
+        assertEquals("Parallel ARFF differs!", FileUtils.readFileToString(arff),
+                FileUtils.readFileToString(parallelArff));
+    }
+
+    /**
+     * This will test that a single pass conversion writes the same ARFF.
+     */
+    @Test
+    public final void testSinglePassArffWrite() throws Exception {
+        File arff = new File(_targetArff);
+        File singlePassArff = new File(_singlePassArff);
+        _dump.writeARFF();
+        ARFFWriter singlePass = new ARFFWriter(new ConfigReader(_config), _inputCsv, _singlePassArff);
+        singlePass.setSinglePass(true);
+        singlePass.writeARFF();
+        assertTrue("ARFF not written!", singlePassArff.exists());
+        assertEquals("Single pass ARFF differs!", FileUtils.readFileToString(arff),
+                FileUtils.readFileToString(singlePassArff));
+    }
+
+    /**
+     * This will test that a sparse conversion writes the same instances in
+     * sparse ARFF, whether held or streamed.
+     */
+    @Test
+    public final void testSparseArffWrite() throws Exception {
+        _dump.writeARFF();
+        Instances dense = new Instances(new FileReader(_targetArff));
+        for (boolean streamed : new boolean[] { false, true }) {
+            ARFFWriter sparse = new ARFFWriter(new ConfigReader(_config), _inputCsv, _sparseArff);
+            sparse.setSparseThreshold(0);
+            sparse.setStreaming(streamed);
+            sparse.writeARFF();
+            Instances read = new Instances(new FileReader(_sparseArff));
+            assertEquals("Unexpected instance count!", dense.numInstances(), read.numInstances());
+            for (int i = 0; i < dense.numInstances(); i++) {
+                assertTrue("Instance not sparse!", read.instance(i) instanceof SparseInstance);
+                assertTrue("Sparse instance differs!",
+                        Arrays.equals(dense.instance(i).toDoubleArray(), read.instance(i).toDoubleArray()));
+            }
+        }
+    }
+
+    /**
+     * This will test that a streaming conversion writes the same instances.
+     */
+    @Test
+    public final void testStreamingArffWrite() throws Exception {
+        File streamingArff = new File(_streamingArff);
+        _dump.writeARFF();
+        ARFFWriter streaming = new ARFFWriter(new ConfigReader(_config), _inputCsv, _streamingArff);
+        streaming.setStreaming(true);
+        streaming.writeARFF();
+        assertTrue("ARFF not written!", streamingArff.exists());
+        assertEquals("Streaming ARFF differs!", new Instances(new FileReader(_targetArff)).toString(),
+                new Instances(new FileReader(_streamingArff)).toString());
+    }
 }
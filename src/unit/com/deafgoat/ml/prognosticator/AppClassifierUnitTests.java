@@ -20,10 +20,18 @@
 
 package com.deafgoat.ml.prognosticator;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
 
 import org.junit.Test;
 
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.bayes.NaiveBayes;
 import weka.core.Instances;
 
 public class AppClassifierUnitTests {
@@ -39,4 +47,63 @@ public class AppClassifierUnitTests {
         _classifier = new AppClassifier(_instances, new ConfigReader(_config));
         assertNotNull("Could not create classifier", _classifier);
     }
+
+    @Test
+    public final void testModelCacheSize() throws Exception {
+        ConfigReader config = new ConfigReader(_config);
+        config.readConfig();
+        config._writeToFile = true;
+        config._writeToMongoDB = false;
+        config._modelFile = "cache-test.model";
+        Instances data = SampleData.trainable(60);
+        NaiveBayes model = new NaiveBayes();
+        model.buildClassifier(data);
+        ModelStore.Header header = ModelStore.save(new File(config._modelFile), model, data);
+        assertTrue("Unexpected stored size!", new File(config._modelFile).length() < header.getSize());
+        ModelCache cache = ModelCache.getInstance();
+        cache.clear();
+        new AppClassifier(data, config).readModel();
+        // the budget counts the serialized size, not the deflated file
+        assertEquals("Unexpected cached size!", header.getSize(), cache.getSize());
+        cache.clear();
+        new File(config._modelFile).delete();
+    }
+
+    @Test
+    public final void testParallelCrossValidation() throws Exception {
+        int folds = 5;
+        ConfigReader config = new ConfigReader(_config);
+        config.readConfig();
+        config._writeToFile = false;
+        config._writeToMongoDB = false;
+        config._foldThreads = 3;
+        Instances data = SampleData.trainable(60);
+        for (String name : new String[] { "weka.classifiers.meta.LogitBoost", "weka.classifiers.bayes.NaiveBayes",
+                "weka.classifiers.lazy.IBk" }) {
+            config._classifier = name.substring(name.lastIndexOf('.') + 1);
+            AppClassifier classifier = new AppClassifier(data, folds, config);
+            classifier.initializeClassifier();
+            classifier.crossValidate();
+            Evaluation parallel = classifier.getEvaluation();
+
+            // evaluate the folds one after the other
+            Classifier cls = AbstractClassifier.forName(name, null);
+            Instances train = new Instances(data);
+            train.stratify(folds);
+            Evaluation sequential = new Evaluation(train);
+            for (int n = 0; n < folds; n++) {
+                Classifier copy = AbstractClassifier.makeCopy(cls);
+                copy.buildClassifier(train.trainCV(folds, n));
+                sequential.evaluateModel(copy, train.testCV(folds, n));
+            }
+            assertEquals("Unexpected number of predictions!", sequential.numInstances(), parallel.numInstances(), 0);
+            assertEquals("Unexpected correct predictions!", sequential.correct(), parallel.correct(), 0);
+            assertEquals("Unexpected mean absolute error!", sequential.meanAbsoluteError(),
+                    parallel.meanAbsoluteError(), 0);
+            assertEquals("Unexpected scheme entropy!", sequential.SFMeanSchemeEntropy(),
+                    parallel.SFMeanSchemeEntropy(), 0);
+            assertEquals("Unexpected summary!", sequential.toSummaryString(), parallel.toSummaryString());
+            assertEquals("Unexpected confusion matrix!", sequential.toMatrixString(), parallel.toMatrixString());
+        }
+    }
 }
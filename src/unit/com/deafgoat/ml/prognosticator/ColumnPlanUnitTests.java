@@ -0,0 +1,75 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ColumnPlanTests.java 
+ * Purpose: Unit tests for ColumnPlan
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+
+import weka.core.Utils;
+
+public class ColumnPlanUnitTests {
+
+    static final String _config = "weatherConfig.json";
+    static final String _inputCsv = "weather.csv";
+
+    @Test
+    public final void testDecode() throws Exception {
+        ConfigReader config = new ConfigReader(_config);
+        config.readConfig();
+        config.setAttributeMap();
+        CsvListReader reader = new CsvListReader(new FileReader(_inputCsv), CsvPreference.EXCEL_PREFERENCE);
+        String[] header = reader.getCSVHeader(true);
+        reader.close();
+        ColumnPlan plan = new ColumnPlan(header, config);
+        int classColumn = plan.getClassColumn();
+        assertEquals("Unexpected class column!", config._classValue, header[classColumn]);
+        assertEquals("Unexpected default decoder!", ColumnDecoder.Kind.SKIP, plan.getDecoder(0).getKind());
+
+        NominalDictionary dictionary = new NominalDictionary();
+        List<Integer> order = new ArrayList<Integer>();
+        plan.setDecoder(classColumn, ColumnDecoder.nominalDiscovery(0, dictionary, order));
+        List<String> record = new ArrayList<String>(Arrays.asList(new String[header.length]));
+        double[] values = new double[1];
+        for (String value : new String[] { " Yes ", "?", "No", "Yes" }) {
+            for (int i = 0; i < header.length; i++) {
+                record.set(i, i == classColumn ? value : "");
+            }
+            assertEquals("Unexpected class value!", value.trim(), plan.decode(record, values));
+            if (value.equals("?")) {
+                assertTrue("Expected missing value!", Utils.isMissingValue(values[0]));
+            } else {
+                assertEquals("Unexpected code!", dictionary.code(value.trim()), (int) values[0]);
+            }
+        }
+        // '?' is kept in the discovered range
+        assertEquals("Unexpected range!", Arrays.asList("Yes", "?", "No"), dictionary.values());
+        assertEquals("Unexpected discovery order!", Arrays.asList(0), order);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ColumnStatisticsTests.java 
+ * Purpose: Unit tests for the column statistics and their sidecar
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import weka.core.AttributeStats;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+public class ColumnStatisticsUnitTests {
+
+    static final String _file = "statistics-test.arff";
+
+    /**
+     * Builds a data set with useless, weighted and missing values
+     */
+    static Instances sample() throws Exception {
+        Instances data = SampleData.days(40);
+        data.insertAttributeAt(new Attribute("constant"), 1);
+        data.insertAttributeAt(new Attribute("empty"), 2);
+        data.insertAttributeAt(new Attribute("id", new ArrayList<String>(Arrays.asList("a", "b", "c", "d"))), 3);
+        for (int i = 0; i < data.numInstances(); i++) {
+            data.instance(i).setValue(1, 3);
+            data.instance(i).setMissing(2);
+            data.instance(i).setValue(3, i % 4);
+        }
+        return data;
+    }
+
+    @Test
+    public final void testDistinct() {
+        DistinctCounter counter = new DistinctCounter();
+        for (int i = 0; i < 1000; i++) {
+            counter.add(i % 100);
+        }
+        assertTrue("Unexpected estimate!", counter.isExact());
+        assertEquals("Unexpected distinct count!", 100, counter.count());
+        for (int i = 0; i < 100000; i++) {
+            counter.add(i * 0.5);
+        }
+        assertFalse("Unexpected exact count!", counter.isExact());
+        assertEquals("Unexpected distinct estimate!", 100000, counter.count(), 100000 * 0.05);
+        counter = new DistinctCounter();
+        counter.add(0.0);
+        counter.add(-0.0);
+        counter.add(Double.longBitsToDouble(1L));
+        assertEquals("Unexpected distinct count!", 2, counter.count());
+    }
+
+    @Test
+    public final void testFilters() throws Exception {
+        Instances data = sample();
+        ColumnStatistics statistics = ColumnStatistics.of(data);
+        InstancesFilter weka = new InstancesFilter(data);
+        InstancesFilter filter = new InstancesFilter(data);
+        filter.setStatistics(statistics);
+        weka.removeUselessFilter("50");
+        filter.removeUselessFilter("50");
+        assertEquals("Unexpected attributes!", 5, filter.getFilteredInstances().numAttributes());
+        assertEquals("Unexpected instances!", weka.getFilteredInstances().toString(), filter.getFilteredInstances()
+                .toString());
+
+        weka = new InstancesFilter(data);
+        filter = new InstancesFilter(data);
+        filter.setStatistics(statistics);
+        weka.centerFilter();
+        filter.centerFilter();
+        assertEquals("Unexpected instances!", weka.getFilteredInstances().toString(), filter.getFilteredInstances()
+                .toString());
+    }
+
+    @Test
+    public final void testIncremental() throws Exception {
+        Instances data = sample();
+        ColumnStatistics statistics = new ColumnStatistics(data);
+        statistics.add(1, data.instance(1).toDoubleArray());
+        assertEquals("Unexpected distinct count!", 1, statistics.getDistinct(4));
+        assertEquals("Unexpected mean!", data.instance(1).value(4), statistics.getMean(4), 0);
+        statistics.add(1, data.instance(2).toDoubleArray());
+        assertEquals("Unexpected distinct count!", 2, statistics.getDistinct(4));
+        assertEquals("Unexpected mean!", (data.instance(1).value(4) + data.instance(2).value(4)) / 2,
+                statistics.getMean(4), 1e-12);
+    }
+
+    @Test
+    public final void testSidecar() throws Exception {
+        Instances data = sample();
+        ColumnStatistics statistics = ColumnStatistics.of(data);
+        statistics.save(ColumnStatistics.sidecarOf(_file));
+        ColumnStatistics loaded = ColumnStatistics.load(ColumnStatistics.sidecarOf(_file));
+        new File(ColumnStatistics.sidecarOf(_file)).delete();
+        assertTrue("Unexpected description!", loaded.describes(data));
+        for (int i = 0; i < data.numAttributes(); i++) {
+            assertEquals("Unexpected name!", statistics.getName(i), loaded.getName(i));
+            assertEquals("Unexpected missing count!", statistics.getMissing(i), loaded.getMissing(i));
+            assertEquals("Unexpected distinct count!", statistics.getDistinct(i), loaded.getDistinct(i));
+            assertEquals("Unexpected min!", statistics.getMin(i), loaded.getMin(i), 0);
+            assertEquals("Unexpected max!", statistics.getMax(i), loaded.getMax(i), 0);
+            assertEquals("Unexpected mean!", statistics.getMean(i), loaded.getMean(i), 0);
+            assertEquals("Unexpected variance!", statistics.getVariance(i), loaded.getVariance(i), 0);
+        }
+        data.delete(0);
+        assertFalse("Unexpected description!", loaded.describes(data));
+    }
+
+    @Test
+    public final void testStatistics() throws Exception {
+        Instances data = sample();
+        ColumnStatistics statistics = new ColumnStatistics(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            statistics.add(data.instance(i).weight(), data.instance(i).toDoubleArray());
+        }
+        assertEquals("Unexpected instance count!", data.numInstances(), statistics.getNumInstances());
+        AttributeStats stats;
+        for (int i = 0; i < data.numAttributes(); i++) {
+            stats = data.attributeStats(i);
+            assertEquals("Unexpected missing count!", stats.missingCount, statistics.getMissing(i));
+            assertEquals("Unexpected distinct count!", stats.distinctCount, statistics.getDistinct(i));
+            if (data.attribute(i).isNumeric() && stats.numericStats.count > 0) {
+                assertEquals("Unexpected min!", stats.numericStats.min, statistics.getMin(i), 0);
+                assertEquals("Unexpected max!", stats.numericStats.max, statistics.getMax(i), 0);
+                assertEquals("Unexpected mean!", data.meanOrMode(i), statistics.getMean(i), 0);
+                assertEquals("Unexpected variance!", data.variance(i), statistics.getVariance(i),
+                        1e-9 * data.variance(i));
+            }
+        }
+        assertTrue("Unexpected missing mean!", Double.isNaN(statistics.getMean(2)));
+        data.add(new DenseInstance(1, new double[data.numAttributes()]));
+        data.instance(data.numInstances() - 1).setValue(4, Utils.missingValue());
+        assertFalse("Unexpected description!", statistics.describes(data));
+    }
+}
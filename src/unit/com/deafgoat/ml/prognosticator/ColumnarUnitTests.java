@@ -0,0 +1,127 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ColumnarTests.java 
+ * Purpose: Unit tests for the columnar saver and loader
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.converters.AbstractSaver;
+
+public class ColumnarUnitTests {
+
+    static final String _file = "columnar-test" + ColumnarFormat.EXTENSION;
+
+    static void assertSameInstances(Instances expected, Instances actual) {
+        assertEquals("Unexpected header!", expected.toString(), actual.toString());
+        for (int i = 0; i < expected.numInstances(); i++) {
+            assertEquals("Unexpected weight!", expected.instance(i).weight(), actual.instance(i).weight(), 0);
+        }
+    }
+
+    @Test
+    public final void testRange() throws Exception {
+        Instances data = SampleData.days(30);
+        ColumnarSaver saver = new ColumnarSaver();
+        saver.setRowGroupSize(4);
+        saver.setInstances(data);
+        saver.setFile(new File(_file));
+        saver.writeBatch();
+        ColumnarLoader loader = new ColumnarLoader(_file);
+        loader.setRange("day", "2012-01-10", "2012-01-13");
+        Instances range = loader.read();
+        assertEquals("Unexpected row groups!", 8, loader.getRowGroups());
+        // only the groups holding days 9-12 and 13-16 overlap the range
+        assertEquals("Unexpected skipped row groups!", 6, loader.getSkippedRowGroups());
+        assertEquals("Unexpected instances in range!", 4, range.numInstances());
+        assertEquals("Unexpected first day!", "2012-01-10", range.instance(0).stringValue(0));
+        loader.setRange("temperature", "0", "10");
+        Instances warm = loader.read();
+        for (int i = 0; i < warm.numInstances(); i++) {
+            assertEquals("Unexpected temperature!", true, warm.instance(i).value(1) >= 0
+                    && warm.instance(i).value(1) <= 10);
+        }
+        assertEquals("Unexpected instances in range!", 5, warm.numInstances());
+        new File(_file).delete();
+    }
+
+    @Test
+    public final void testReaderRange() throws Exception {
+        Instances data = SampleData.days(30);
+        InstancesWriter.writeInstances(data, "columnar-test.arff");
+        InstancesWriter.writeInstances(data, _file);
+        InstancesReader arff = new InstancesReader("columnar-test.arff");
+        arff.setRange("day", "2012-01-05", "2012-01-20");
+        InstancesReader columnar = new InstancesReader(_file);
+        columnar.setRange("day", "2012-01-05", "2012-01-20");
+        assertSameInstances(arff.readInstances(), columnar.readInstances());
+        assertEquals("Unexpected instances in range!", 16, columnar.getInstances().numInstances());
+        new File("columnar-test.arff").delete();
+        new File(_file).delete();
+    }
+
+    @Test
+    public final void testSparseRoundTrip() throws Exception {
+        Instances data = SampleData.days(30);
+        data.deleteStringAttributes();
+        Instances mixed = new Instances(data, data.numInstances());
+        for (int i = 0; i < data.numInstances(); i++) {
+            mixed.add(i % 3 == 0 ? new SparseInstance(data.instance(i)) : data.instance(i));
+        }
+        ColumnarSaver saver = new ColumnarSaver();
+        saver.setRowGroupSize(4);
+        saver.setInstances(mixed);
+        saver.setFile(new File(_file));
+        saver.writeBatch();
+        Instances read = new ColumnarLoader(_file).read();
+        assertSameInstances(mixed, read);
+        for (int i = 0; i < read.numInstances(); i++) {
+            assertEquals("Unexpected sparse instance!", i % 3 == 0, read.instance(i) instanceof SparseInstance);
+            assertSame("Unexpected dataset!", read, read.instance(i).dataset());
+        }
+        new File(_file).delete();
+    }
+
+    @Test
+    public final void testRoundTrip() throws Exception {
+        Instances data = SampleData.days(300);
+        InstancesWriter.writeInstances(data, _file);
+        Instances read = new InstancesReader(_file).readInstances();
+        assertSameInstances(data, read);
+        assertEquals("Unexpected class!", data.classIndex(), read.classIndex());
+        // incremental saving over several row groups
+        AbstractSaver saver = InstancesWriter.startInstances(data, _file);
+        ((ColumnarSaver) saver).setRowGroupSize(7);
+        for (int i = 0; i < data.numInstances(); i++) {
+            saver.writeIncremental(data.instance(i));
+        }
+        saver.writeIncremental(null);
+        ColumnarLoader loader = new ColumnarLoader(_file);
+        assertSameInstances(data, loader.read());
+        assertEquals("Unexpected row groups!", 43, loader.getRowGroups());
+        new File(_file).delete();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ConfidenceProfileTests.java 
+ * Purpose: Unit tests for the confidence profiles of error analysis
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+public class ConfidenceProfileUnitTests {
+
+    @Test
+    public final void testCategorical() throws Exception {
+        Instances data = SampleData.days(12);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        ConfidenceProfile outlook = new ConfidenceProfile(dataset, "outlook");
+        ConfidenceProfile day = new ConfidenceProfile(dataset, "day");
+        for (int i = 0; i < data.numInstances(); i++) {
+            outlook.add(data.instance(i), i / 10.0);
+            day.add(data.instance(i), 0.5);
+        }
+        assertFalse("Unexpected numeric profile!", outlook.isNumeric());
+        assertFalse("Unexpected numeric profile!", day.isNumeric());
+        assertEquals("Unexpected size!", 12, outlook.size());
+        Map<String, Double> averages = outlook.getAverageConfidence();
+        // instances 3 and 10 miss their outlook
+        assertEquals("Unexpected values!", 4, averages.size());
+        assertEquals("Unexpected sunny confidence!", (0 + 0.6 + 0.9) / 3, averages.get("sunny"), 1e-12);
+        assertEquals("Unexpected rainy confidence!", (0.1 + 0.4 + 0.7) / 3, averages.get("rainy"), 1e-12);
+        assertEquals("Unexpected overcast confidence!", (0.2 + 0.5 + 0.8 + 1.1) / 4, averages.get("overcast"),
+                1e-12);
+        assertEquals("Unexpected missing confidence!", (0.3 + 1.0) / 2, averages.get("?"), 1e-12);
+        assertEquals("Unexpected days!", 12, day.getAverageConfidence().size());
+        assertEquals("Unexpected numeric values!", 0, outlook.getValues().length);
+    }
+
+    @Test
+    public final void testNumeric() throws Exception {
+        Instances data = SampleData.days(8);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        ConfidenceProfile temperature = new ConfidenceProfile(dataset, "temperature");
+        for (int i = 0; i < data.numInstances(); i++) {
+            temperature.add(data.instance(i), i / 10.0);
+        }
+        assertTrue("Unexpected categorical profile!", temperature.isNumeric());
+        // instances 0 and 5 miss their temperature
+        assertEquals("Unexpected size!", 6, temperature.size());
+        assertArrayEquals("Unexpected values!", new double[] { -5.5, -4, -2.5, -1, 2, 3.5 },
+                temperature.getValues(), 0);
+        assertArrayEquals("Unexpected confidences!", new double[] { 0.1, 0.2, 0.3, 0.4, 0.6, 0.7 },
+                temperature.getConfidences(), 0);
+        assertTrue("Unexpected averages!", temperature.getAverageConfidence().isEmpty());
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * CsvChunkTests.java 
+ * Purpose: Unit tests for CsvChunk
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import org.junit.Test;
+
+public class CsvChunkUnitTests {
+
+    static final String _shard = "chunk-shard-";
+
+    @Test
+    public final void testClassCarry() throws Exception {
+        // only every tenth record has a class cell, the others take the class
+        // value of the record before them
+        List<String> lines = FileUtils.readLines(new File(ARFFWriterUnitTests._inputCsv));
+        StringBuilder csv = new StringBuilder(lines.get(0)).append('\n');
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            csv.append(i % 10 == 1 ? line.substring(0, line.lastIndexOf(',') + 1) + "1" : line.substring(0, line
+                    .lastIndexOf(','))).append('\n');
+        }
+        File file = new File("chunk-unclassified.csv");
+        FileUtils.writeStringToFile(file, csv.toString());
+        int columns = CsvChunk.readHeader(file.getPath()).length;
+        boolean unclassified = false;
+        for (CsvChunk chunk : CsvChunk.split(file.getPath(), 4)) {
+            DumpReader reader = chunk.open(DumpReader.MAPPED);
+            reader.read();
+            unclassified |= chunk.getStart() > 0 && reader.size() < columns;
+            reader.close();
+        }
+        assertTrue("No missing class cell at a chunk boundary!", unclassified);
+        String[] arffs = { "chunk-sequential.arff", "chunk-parallel.arff" };
+        for (String arff : arffs) {
+            ConfigReader config = new ConfigReader(ARFFWriterUnitTests._config);
+            ARFFWriter writer = new ARFFWriter(config, file.getPath(), arff);
+            config._positiveClassWeight = 3;
+            // the mapped reader accepts records without a class cell
+            writer.setDumpReader(DumpReader.MAPPED);
+            writer.setSinglePass(true);
+            writer.setParallel(arff.equals(arffs[1]));
+            writer.setThreads(4);
+            writer.writeARFF();
+        }
+        assertEquals("Parallel ARFF differs!", FileUtils.readFileToString(new File(arffs[0])), FileUtils
+                .readFileToString(new File(arffs[1])));
+        file.delete();
+        for (String arff : arffs) {
+            new File(arff).delete();
+            new File(ColumnStatistics.sidecarOf(arff)).delete();
+        }
+    }
+
+    @Test
+    public final void testExpand() throws Exception {
+        for (int i = 2; i >= 0; i--) {
+            FileUtils.writeStringToFile(new File(_shard + i + ".csv"), "a,b\n1,2\n");
+        }
+        assertEquals("Unexpected shards!", Arrays.asList(_shard + "0.csv", _shard + "1.csv", _shard + "2.csv"),
+                CsvChunk.expand(_shard + "*.csv"));
+        assertEquals("Unexpected shards!", 3, CsvChunk.expand(_shard + "?.csv").size());
+        assertEquals("Unexpected file!", Arrays.asList(_shard + "1.csv"), CsvChunk.expand(_shard + "1.csv"));
+        for (int i = 0; i < 3; i++) {
+            new File(_shard + i + ".csv").delete();
+        }
+    }
+
+    @Test
+    public final void testQuotedRanges() throws Exception {
+        // a quoted cell spanning several ranges holds newlines and quotes
+        File file = new File("chunk-long.csv");
+        StringBuilder note = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            note.append("\"\"").append(i % 3 == 0 ? "\n" : "x");
+        }
+        StringBuilder csv = new StringBuilder("id,note\n");
+        for (int i = 0; i < 20; i++) {
+            csv.append(i).append(",\"").append(i == 5 ? note : "short\n" + i).append("\"\n");
+        }
+        FileUtils.writeStringToFile(file, csv.toString());
+        List<CsvChunk> chunks = CsvChunk.split(file.getPath(), 16);
+        assertTrue("Unexpected chunk count!", chunks.size() > 1 && chunks.size() < 16);
+        List<String> ids = new ArrayList<String>();
+        long end = chunks.get(0).getStart();
+        for (CsvChunk chunk : chunks) {
+            assertEquals("Chunks are not contiguous!", end, chunk.getStart());
+            end = chunk.getEnd();
+            DumpReader reader = chunk.open(DumpReader.SUPERCSV);
+            while (reader.read()) {
+                ids.add(reader.get(0));
+                assertEquals("Unexpected note!", reader.get(0).equals("5") ? note.toString().replace("\"\"", "\"")
+                        : "short\n" + reader.get(0), reader.get(1));
+            }
+            reader.close();
+        }
+        assertEquals("Unexpected end!", file.length(), end);
+        assertEquals("Unexpected record count!", 20, ids.size());
+        file.delete();
+    }
+
+    @Test
+    public final void testSplit() throws Exception {
+        File file = new File(_shard + "quoted.csv");
+        StringBuilder csv = new StringBuilder("\"id\",\"note\"\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append(i).append(",\"line\n").append(i).append(" \"\"quoted\"\"\"\n");
+        }
+        FileUtils.writeStringToFile(file, csv.toString());
+        assertArrayEquals("Unexpected header!", new String[] { "id", "note" }, CsvChunk.readHeader(file.getPath()));
+        List<CsvChunk> chunks = CsvChunk.split(file.getPath(), 7);
+        assertEquals("Unexpected chunk count!", 7, chunks.size());
+        for (String readerType : new String[] { DumpReader.SUPERCSV, DumpReader.MAPPED }) {
+            List<String> ids = new ArrayList<String>();
+            long end = chunks.get(0).getStart();
+            for (CsvChunk chunk : chunks) {
+                assertEquals("Chunks are not contiguous!", end, chunk.getStart());
+                end = chunk.getEnd();
+                DumpReader reader = chunk.open(readerType);
+                while (reader.read()) {
+                    assertEquals("Unexpected note!", "line\n" + reader.get(0) + " \"quoted\"", reader.get(1));
+                    ids.add(reader.get(0));
+                }
+                reader.close();
+            }
+            assertEquals("Unexpected end!", file.length(), end);
+            assertEquals("Unexpected record count!", 100, ids.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Records out of order!", String.valueOf(i), ids.get(i));
+            }
+        }
+        file.delete();
+    }
+}
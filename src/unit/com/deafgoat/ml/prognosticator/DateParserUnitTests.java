@@ -0,0 +1,101 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * DateParserTests.java 
+ * Purpose: Unit tests for DateParser
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import weka.core.Attribute;
+
+public class DateParserUnitTests {
+
+    static final String _format = "yyyy-MM-dd HH:mm";
+
+    static String date(int i) {
+        return String.format("20%02d-%02d-%02d %02d:%02d", i % 30, i % 12 + 1, i % 28 + 1, i % 24, i % 60);
+    }
+
+    @Test
+    public final void testConcurrentParse() throws Exception {
+        final DateParser parser = new DateParser(_format);
+        Attribute attribute = new Attribute("date", _format);
+        final double[] expected = new double[20000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = attribute.parseDate(date(i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < 8; t++) {
+            final int offset = t * 997;
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int wrong = 0;
+                    for (int i = 0; i < expected.length; i++) {
+                        int j = (i + offset) % expected.length;
+                        if (parser.parse(date(j)) != expected[j]) {
+                            wrong++;
+                        }
+                    }
+                    return wrong;
+                }
+            }));
+        }
+        for (Future<Integer> result : results) {
+            assertEquals("Unexpected concurrent parse!", Integer.valueOf(0), result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public final void testForFormat() {
+        assertSame("Parser not shared!", DateParser.forFormat(_format), DateParser.forFormat(_format));
+        assertEquals("Unexpected format!", _format, DateParser.forFormat(_format).getFormat());
+    }
+
+    @Test(expected = ParseException.class)
+    public final void testInvalidDate() throws Exception {
+        DateParser parser = new DateParser("yyyy-MM-dd");
+        parser.parse("2012-02-28");
+        parser.parse("2012-02-30");
+    }
+
+    @Test
+    public final void testParse() throws Exception {
+        DateParser parser = new DateParser("yyyy-MM-dd");
+        Attribute attribute = new Attribute("date", "yyyy-MM-dd");
+        for (String date : new String[] { "2007-11-6", "2007-11-06", "2012-02-29", "1970-01-01" }) {
+            assertEquals("Unexpected date!", attribute.parseDate(date), parser.parse(date), 0);
+            // the second parse is served from the cache
+            assertEquals("Unexpected cached date!", attribute.parseDate(date), parser.parse(date), 0);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * DerivedFeatureTests.java 
+ * Purpose: Unit tests for features derived from decoded rows
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileReader;
+import java.text.DecimalFormat;
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import weka.core.Instances;
+
+public class DerivedFeatureUnitTests {
+
+    static final String _config = "weatherConfig.json";
+    static final String _featureArff = "weather-feature.arff";
+    static final String _inputCsv = "weather.csv";
+
+    /**
+     * Computes the change in temperature from 9am to 3pm
+     */
+    static final class TempChange extends DerivedFeature {
+        final AtomicInteger _calls = new AtomicInteger();
+
+        @Override
+        public void compute(FeatureRow row) {
+            _calls.incrementAndGet();
+            if (row.isMissing(0) || row.isMissing(1)) {
+                row.setMissing();
+                return;
+            }
+            row.set(Double.parseDouble(row.string(0)) - Double.parseDouble(row.string(1)));
+        }
+
+        @Override
+        public Attributes getAttribute() {
+            return Attributes.createAttribute("TempChange9to3", "TempChange9to3", "numeric", true);
+        }
+
+        @Override
+        public String[] getInputs() {
+            return new String[] { "Temp3pm", "Temp9am" };
+        }
+    }
+
+    /**
+     * Reads the temperature change derived before it and codes its direction
+     */
+    static final class Warming extends DerivedFeature {
+        final AtomicInteger _calls = new AtomicInteger();
+
+        @Override
+        public void compute(FeatureRow row) throws ParseException {
+            _calls.incrementAndGet();
+            if (row.isMissing(0)) {
+                row.setMissing();
+                return;
+            }
+            row.setNominal(row.value(0) > 0 ? "warmer" : "cooler");
+        }
+
+        @Override
+        public Attributes getAttribute() {
+            return Attributes.createAttribute("Warming", "Warming", "nominal", true);
+        }
+
+        @Override
+        public String[] getInputs() {
+            return new String[] { "TempChange9to3" };
+        }
+    }
+
+    /**
+     * Formats the temperature change from the raw record, as user defined
+     * attributes did
+     */
+    static final class FormattedTempChange extends UserDefinedAttribute {
+        @Override
+        public String getAttributeName() {
+            return "FormattedTempChange";
+        }
+
+        @Override
+        public String getAttributeValue(List<String> instance, Map<String, Integer> attributeMap, ConfigReader config) {
+            return new DecimalFormat("#0.00").format(Double.parseDouble(instance.get(attributeMap.get("Temp3pm")))
+                    - Double.parseDouble(instance.get(attributeMap.get("Temp9am"))));
+        }
+
+        @Override
+        public Attributes getUserDefinedAttribute() {
+            return Attributes.createAttribute(getAttributeName(), getAttributeName(), "nominal", true);
+        }
+    }
+
+    /**
+     * Writes the weather dump with the derived features in a conversion mode
+     */
+    static String write(String mode, DerivedFeature... features) throws Exception {
+        ARFFWriter writer = new ARFFWriter(new ConfigReader(_config), _inputCsv, _featureArff);
+        for (DerivedFeature feature : features) {
+            writer.addDerivedFeature(feature);
+        }
+        if (mode.equals("single")) {
+            writer.setSinglePass(true);
+        } else if (mode.equals("parallel")) {
+            writer.setParallel(true);
+            writer.setThreads(4);
+        } else if (mode.equals("streaming")) {
+            writer.setStreaming(true);
+        }
+        writer.writeARFF();
+        return new Instances(new FileReader(_featureArff)).toString();
+    }
+
+    @Test
+    public final void testAdapter() throws Exception {
+        String expected = write("", new UserDefinedFeature(new FormattedTempChange()));
+        Instances data = new Instances(new FileReader(_featureArff));
+        assertEquals("Unexpected value!", "3.90", data.instance(0).stringValue(data.attribute("FormattedTempChange")));
+        assertEquals("Unexpected parallel instances!", expected,
+                write("parallel", new UserDefinedFeature(new FormattedTempChange())));
+    }
+
+    @Test
+    public final void testFeatureWrite() throws Exception {
+        int rows = FileUtils.readLines(new File(_inputCsv)).size() - 1;
+        TempChange change = new TempChange();
+        write("", change);
+        assertEquals("Feature not computed once per row!", rows, change._calls.get());
+        Warming warming = new Warming();
+        String expected = write("", new TempChange(), warming);
+        // the range of nominal features is discovered in a pass of its own
+        assertEquals("Feature not computed once per row and pass!", 2 * rows, warming._calls.get());
+        Instances data = new Instances(new FileReader(_featureArff));
+        assertEquals("Unexpected value!", 3.9, data.instance(0).value(data.attribute("TempChange9to3")), 1e-9);
+        assertEquals("Unexpected value!", "warmer", data.instance(0).stringValue(data.attribute("Warming")));
+        for (String mode : new String[] { "single", "parallel", "streaming" }) {
+            change = new TempChange();
+            assertEquals("Unexpected " + mode + " instances!", expected, write(mode, change, new Warming()));
+            // streaming discovers nominal ranges in a pass of its own too
+            assertEquals("Feature not computed once per row and pass!", mode.equals("streaming") ? 2 * rows : rows,
+                    change._calls.get());
+        }
+    }
+}
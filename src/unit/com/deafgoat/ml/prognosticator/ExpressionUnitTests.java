@@ -0,0 +1,127 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ExpressionTests.java 
+ * Purpose: Unit tests for derived attribute expressions
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import weka.core.Instances;
+import weka.core.Utils;
+
+public class ExpressionUnitTests {
+
+    static final String _config = "weatherConfig.json";
+    static final String _expressionArff = "weather-expression.arff";
+    static final String _expressionConfig = "weather-expression.json";
+    static final String _inputCsv = "weather.csv";
+
+    /**
+     * Evaluates an expression over the values of the attributes a and b
+     */
+    static double evaluate(String expression, double a, double b) throws Exception {
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        slots.put("a", 0);
+        slots.put("b", 1);
+        ExpressionFeature feature = new ExpressionFeature(Attributes.createAttribute("c", "c", "numeric", true),
+                expression, null);
+        FeatureRow row = new FeatureRow(feature, ColumnDecoder.numeric(2), slots, new ArrayList<NominalDictionary>(),
+                null, null, null);
+        double[] values = new double[] { a, b, 0 };
+        row.compute(values, null);
+        return values[2];
+    }
+
+    @Test
+    public final void testConfigExpressions() throws Exception {
+        JSONObject config = new JSONObject(FileUtils.readFileToString(new File(_config)));
+        JSONArray derived = new JSONArray();
+        derived.put(new JSONObject().put("attributeName", "TempChange").put("expression", "Temp3pm - Temp9am"));
+        derived.put(new JSONObject().put("attributeName", "TempBand").put("attributeType", "nominal")
+                .put("expression", "bucket(Temp3pm, 15, 25)")
+                .put("labels", new JSONArray(Arrays.asList("cold", "mild", "hot"))));
+        config.getJSONObject("dump").put("derivedAttributes", derived);
+        FileUtils.writeStringToFile(new File(_expressionConfig), config.toString());
+        ConfigReader reader = new ConfigReader(_expressionConfig);
+        ARFFWriter writer = new ARFFWriter(reader, _inputCsv, _expressionArff);
+        assertEquals("Unexpected derived features!", 2, reader._derivedFeatures.size());
+        writer.writeARFF();
+        new File(_expressionConfig).delete();
+        Instances data = new Instances(new FileReader(_expressionArff));
+        double temp3pm, temp9am;
+        for (int i = 0; i < data.numInstances(); i++) {
+            if (data.instance(i).isMissing(data.attribute("Temp3pm"))
+                    || data.instance(i).isMissing(data.attribute("Temp9am"))) {
+                assertTrue("Unexpected value!", data.instance(i).isMissing(data.attribute("TempChange")));
+                continue;
+            }
+            temp3pm = Double.parseDouble(data.instance(i).stringValue(data.attribute("Temp3pm")));
+            temp9am = Double.parseDouble(data.instance(i).stringValue(data.attribute("Temp9am")));
+            assertEquals("Unexpected value!", temp3pm - temp9am,
+                    data.instance(i).value(data.attribute("TempChange")), 1e-6);
+            assertEquals("Unexpected label!", temp3pm < 15 ? "cold" : temp3pm < 25 ? "mild" : "hot", data
+                    .instance(i).stringValue(data.attribute("TempBand")));
+        }
+    }
+
+    @Test
+    public final void testErrors() {
+        for (String expression : new String[] { "a +", "(a", "foo(a)", "bucket(a, b)", "min(a)", "a # b", "`a" }) {
+            try {
+                Expression.compile(expression, new ArrayList<String>());
+                fail("Expression compiled: " + expression);
+            } catch (ParseException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public final void testEvaluate() throws Exception {
+        assertEquals("Unexpected value!", -1, evaluate("a - b", 2, 3), 0);
+        assertEquals("Unexpected value!", 14, evaluate("2 + 3 * 4", 0, 0), 0);
+        assertEquals("Unexpected value!", 20, evaluate("(2 + 3) * 4", 0, 0), 0);
+        assertEquals("Unexpected value!", 1, evaluate("a > b || !(a == 2)", 3, 2), 0);
+        assertEquals("Unexpected value!", 0, evaluate("a >= b && b != 2", 3, 2), 0);
+        assertEquals("Unexpected value!", 2, evaluate("bucket(a, 0, 10, 20)", 15, 0), 0);
+        assertEquals("Unexpected value!", 7, evaluate("if(a < b, max(a, b), min(a, b))", 3, 7), 0);
+        assertEquals("Unexpected value!", 0.5, evaluate("sqrt(abs(a)) / pow(2, 1e0)", -1, 0), 0);
+        assertTrue("Missing value not propagated!", Utils.isMissingValue(evaluate("a + 1", Double.NaN, 0)));
+        assertTrue("Missing value not propagated!", Utils.isMissingValue(evaluate("if(a, b, 0)", Double.NaN, 1)));
+        List<String> inputs = new ArrayList<String>();
+        Expression.compile("`Temp 3pm` * 2 + Temp9am - `Temp 3pm`", inputs);
+        assertEquals("Unexpected inputs!", Arrays.asList("Temp 3pm", "Temp9am"), inputs);
+    }
+}
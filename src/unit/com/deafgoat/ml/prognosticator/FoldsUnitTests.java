@@ -0,0 +1,124 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * FoldsUnitTests.java 
+ * Purpose: Unit tests for the index-view cross-validation folds
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import weka.classifiers.Evaluation;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.core.Instances;
+
+public class FoldsUnitTests {
+
+    /**
+     * Refuses to predict instances whose class is set
+     */
+    static final class BlindClassifier extends ScorerUnitTests.CountingClassifier {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double[][] distributionsForInstances(Instances instances) throws Exception {
+            for (int i = 0; i < instances.numInstances(); i++) {
+                if (!instances.instance(i).classIsMissing()) {
+                    throw new Exception("Class value leaked!");
+                }
+            }
+            return super.distributionsForInstances(instances);
+        }
+
+        BlindClassifier() {
+            super(new NaiveBayes());
+        }
+    }
+
+    @Test
+    public final void testBatchEvaluation() throws Exception {
+        int numFolds = 3;
+        Instances data = SampleData.trainable(60);
+        Folds folds = new Folds(new Instances(data), numFolds);
+        Evaluation parallel = new Evaluation(folds.getData());
+        Evaluation sequential = new Evaluation(folds.getData());
+        for (int n = 0; n < numFolds; n++) {
+            FoldEvaluation fold = new FoldEvaluation(new BlindClassifier(), folds, n).call();
+            assertFalse("Unexpected failure!", fold.isFailed());
+            assertTrue("Unexpected evaluation!", fold.evaluate(parallel));
+            NaiveBayes bayes = new NaiveBayes();
+            bayes.buildClassifier(folds.train(n));
+            sequential.evaluateModel(bayes, folds.test(n));
+        }
+        assertEquals("Unexpected summary!", sequential.toSummaryString(), parallel.toSummaryString());
+    }
+
+    @Test
+    public final void testFolds() throws Exception {
+        for (int size : new int[] { 30, 37 }) {
+            int numFolds = 7;
+            Instances data = SampleData.days(size);
+            Folds folds = new Folds(new Instances(data), numFolds);
+            data.stratify(numFolds);
+            for (int n = 0; n < numFolds; n++) {
+                Instances train = data.trainCV(numFolds, n);
+                Instances test = data.testCV(numFolds, n);
+                int[] trainIndices = folds.trainIndices(n);
+                int[] testIndices = folds.testIndices(n);
+                assertEquals("Unexpected training instances!", train.numInstances(), trainIndices.length);
+                assertEquals("Unexpected test instances!", test.numInstances(), testIndices.length);
+                for (int i = 0; i < trainIndices.length; i++) {
+                    assertEquals("Unexpected training instance!", train.instance(i).toString(),
+                            folds.instance(trainIndices[i]).toString());
+                }
+                for (int i = 0; i < testIndices.length; i++) {
+                    assertEquals("Unexpected test instance!", test.instance(i).toString(),
+                            folds.instance(testIndices[i]).toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public final void testViews() throws Exception {
+        Folds folds = new Folds(SampleData.days(30), 3);
+        Instances train = folds.train(1);
+        Instances test = folds.test(1);
+        assertSame("Unexpected view!", train, folds.train(1));
+        assertEquals("Unexpected training instances!", 20, train.numInstances());
+        assertEquals("Unexpected test instances!", 10, test.numInstances());
+        // views reference the shared instances rather than copies
+        int[] indices = folds.trainIndices(1);
+        for (int i = 0; i < indices.length; i++) {
+            assertSame("Unexpected training instance!", folds.instance(indices[i]), train.instance(i));
+        }
+        assertSame("Unexpected test instance!", folds.instance(folds.testIndices(1)[0]), test.instance(0));
+        assertEquals("Unexpected copy!", train.instance(0).toString(), new Instances(train).instance(0).toString());
+        try {
+            new Folds(SampleData.days(3), 4);
+            fail("Unexpected folds!");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
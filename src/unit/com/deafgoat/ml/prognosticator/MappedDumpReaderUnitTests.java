@@ -0,0 +1,90 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * MappedDumpReaderTests.java 
+ * Purpose: Unit tests for MappedDumpReader
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+
+import org.apache.commons.io.FileUtils;
+
+import org.junit.Test;
+
+public class MappedDumpReaderUnitTests {
+
+    static final String _inputCsv = "weather.csv";
+    static final String _trickyCsv = "mapped-tricky.csv";
+
+    /**
+     * Asserts that both readers yield the same cells
+     */
+    private void assertSameCells(DumpReader expected, DumpReader actual) throws Exception {
+        assertArrayEquals("Unexpected header!", expected.readHeader(), actual.readHeader());
+        while (expected.read()) {
+            assertTrue("Too few records!", actual.read());
+            assertEquals("Unexpected record!", expected.getRecord(), actual.getRecord());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals("Unexpected emptiness!", expected.isEmpty(i), actual.isEmpty(i));
+                assertEquals("Unexpected missing value!", expected.isMissing(i), actual.isMissing(i));
+            }
+        }
+        assertFalse("Too many records!", actual.read());
+        expected.close();
+        actual.close();
+    }
+
+    @Test
+    public final void testGetDouble() throws Exception {
+        String[] numbers = { "0", "-0", "5.8", " 1023.8 ", "+12", "1e5", "-2.5E-3", "0.1", "123456789012345678",
+                "9007199254740993", "1e-30", "3.4028234663852886E38", ".5", "5.", "4.9e-324", "NaN", "1d" };
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < numbers.length; i++) {
+            csv.append(i == 0 ? "" : ",").append(numbers[i]);
+        }
+        File file = new File(_trickyCsv);
+        FileUtils.writeStringToFile(file, csv.append("\n").toString());
+        DumpReader reader = new MappedDumpReader(file.getPath());
+        assertTrue("Record not read!", reader.read());
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals("Unexpected number!", Double.doubleToLongBits(Double.parseDouble(numbers[i].trim())),
+                    Double.doubleToLongBits(reader.getDouble(i)));
+        }
+        reader.close();
+        file.delete();
+    }
+
+    @Test
+    public final void testRecords() throws Exception {
+        assertSameCells(new CsvDumpReader(new FileReader(_inputCsv), null), new MappedDumpReader(_inputCsv));
+        File file = new File(_trickyCsv);
+        FileUtils.writeStringToFile(file, "a,b,c\n1, x ,\"q\"\"z\"\n\n\"multi\r\nline\",  \"sp\" ,\r\n4,5\n"
+                + "\"tail\"x,6,\n a b ,\tx\t,\" s \"\n  ,\"\",x\"y\"z\n7,?,9");
+        assertSameCells(new CsvDumpReader(new FileReader(file), null), new MappedDumpReader(file.getPath()));
+        // a small window makes records straddle mappings
+        assertSameCells(new CsvDumpReader(new FileReader(file), null), new MappedDumpReader(file.getPath(), 0, -1,
+                24));
+        file.delete();
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ModelCacheTests.java 
+ * Purpose: Unit tests for the process-wide model cache
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.rules.ZeroR;
+
+public class ModelCacheUnitTests {
+
+    /**
+     * Loads a new model on each call
+     */
+    static final class CountingLoader implements ModelCache.Loader {
+
+        @Override
+        public Classifier load() {
+            _loads++;
+            return new ZeroR();
+        }
+
+        int _loads;
+    }
+
+    @Test
+    public final void testEviction() throws Exception {
+        ModelCache cache = new ModelCache(100);
+        CountingLoader loader = new CountingLoader();
+        Classifier a = cache.get("a", 1, 40, loader);
+        cache.get("b", 1, 40, loader);
+        // a is now more recently used than b
+        assertSame("Unexpected model!", a, cache.get("a", 1, 40, loader));
+        cache.get("c", 1, 40, loader);
+        assertEquals("Unexpected evictions!", 1, cache.getEvictions());
+        assertEquals("Unexpected models!", 2, cache.size());
+        assertEquals("Unexpected size!", 80, cache.getSize());
+        assertSame("Unexpected model!", a, cache.get("a", 1, 40, loader));
+        cache.get("b", 1, 40, loader);
+        assertEquals("Unexpected loads!", 4, loader._loads);
+
+        // models over budget are never held
+        cache.get("d", 1, 101, loader);
+        cache.get("d", 1, 101, loader);
+        assertEquals("Unexpected loads!", 6, loader._loads);
+        cache.setCapacity(50);
+        assertEquals("Unexpected models!", 1, cache.size());
+        cache.setCapacity(0);
+        assertEquals("Unexpected models!", 0, cache.size());
+        cache.get("a", 1, 0, loader);
+        cache.get("a", 1, 0, loader);
+        assertEquals("Unexpected loads!", 8, loader._loads);
+    }
+
+    @Test
+    public final void testVersion() throws Exception {
+        ModelCache cache = new ModelCache(1000);
+        CountingLoader loader = new CountingLoader();
+        Classifier first = cache.get("weather@model", 10, 100, loader);
+        assertSame("Unexpected model!", first, cache.get("weather@model", 10, 100, loader));
+        assertEquals("Unexpected hits!", 1, cache.getHits());
+        assertEquals("Unexpected misses!", 1, cache.getMisses());
+
+        // a newer stored model is loaded again
+        Classifier second = cache.get("weather@model", 11, 100, loader);
+        assertNotSame("Unexpected model!", first, second);
+        assertSame("Unexpected model!", second, cache.get("weather@model", 11, 100, loader));
+        assertEquals("Unexpected size!", 100, cache.getSize());
+
+        cache.invalidate("weather@model");
+        assertEquals("Unexpected size!", 0, cache.getSize());
+        cache.get("weather@model", 11, 100, loader);
+
+        // unversioned models can not be reused
+        cache.get("weather@mongodb", -1, 0, loader);
+        cache.get("weather@mongodb", -1, 0, loader);
+        assertEquals("Unexpected loads!", 5, loader._loads);
+        assertEquals("Unexpected hits!", 2, cache.getHits());
+        assertEquals("Unexpected misses!", 5, cache.getMisses());
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ModelStoreTests.java 
+ * Purpose: Unit tests for the compressed model format
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.core.Version;
+
+public class ModelStoreUnitTests {
+
+    static final String _file = "model-store-test.model";
+
+    static Instances train() throws Exception {
+        Instances data = SampleData.days(60);
+        data.deleteStringAttributes();
+        return data;
+    }
+
+    static void assertSameModel(Classifier expected, Classifier actual, Instances data) throws Exception {
+        assertEquals("Unexpected model!", expected.toString(), actual.toString());
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertArrayEquals("Unexpected distribution!", expected.distributionForInstance(data.instance(i)),
+                    actual.distributionForInstance(data.instance(i)), 0);
+        }
+    }
+
+    @Test
+    public final void testFile() throws Exception {
+        Instances data = train();
+        J48 model = new J48();
+        model.buildClassifier(data);
+        File file = new File(_file);
+        try {
+            ModelStore.Header saved = ModelStore.save(file, model, new Instances(data, 0));
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(raw);
+            oos.writeObject(model);
+            oos.close();
+            assertEquals("Unexpected size!", raw.size(), saved.getSize());
+            assertTrue("Model not compressed!", file.length() < raw.size());
+
+            ModelStore.Header header = ModelStore.loadHeader(file);
+            assertEquals("Unexpected format!", ModelStore.FORMAT_VERSION, header.getFormatVersion());
+            assertEquals("Unexpected classifier!", J48.class.getName(), header.getClassifier());
+            assertEquals("Unexpected WEKA version!", Version.VERSION, header.getWekaVersion());
+            assertEquals("Unexpected schema!", ModelStore.schemaHash(data), header.getSchemaHash());
+            assertEquals("Unexpected size!", raw.size(), header.getSize());
+            assertSameModel(model, ModelStore.load(file), data);
+
+            // models saved as raw Java serialization are still read
+            SerializationHelper.write(_file, model);
+            assertNull("Unexpected header!", ModelStore.loadHeader(file));
+            assertSameModel(model, ModelStore.load(file), data);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public final void testSchemaHash() throws Exception {
+        Instances data = train();
+        Instances other = SampleData.days(10);
+        other.deleteStringAttributes();
+        assertEquals("Unexpected schema!", ModelStore.schemaHash(data), ModelStore.schemaHash(other));
+        // string values depend on the data only
+        assertEquals("Unexpected schema!", ModelStore.schemaHash(SampleData.days(60)),
+                ModelStore.schemaHash(SampleData.days(10)));
+        other.setClassIndex(1);
+        assertFalse("Unexpected schema!", ModelStore.schemaHash(data) == ModelStore.schemaHash(other));
+        other.setClassIndex(2);
+        other.renameAttributeValue(2, 0, "bright");
+        assertFalse("Unexpected schema!", ModelStore.schemaHash(data) == ModelStore.schemaHash(other));
+    }
+
+    @Test
+    public final void testStream() throws Exception {
+        Instances data = train();
+        J48 model = new J48();
+        model.buildClassifier(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ModelStore.Header written = ModelStore.write(out, model, data);
+        assertTrue("Unexpected size!", written.getSize() > 0);
+        byte[] bytes = out.toByteArray();
+        // the size is only known once the model is written
+        assertEquals("Unexpected size!", -1, ModelStore.readHeader(new ByteArrayInputStream(bytes)).getSize());
+        assertSameModel(model, ModelStore.read(new ByteArrayInputStream(bytes)), data);
+
+        bytes[0] = 0;
+        try {
+            ModelStore.read(new ByteArrayInputStream(bytes));
+            fail("Model read from a corrupt stream");
+        } catch (IOException e) {
+            assertEquals("Unexpected error!", "Not a stored model", e.getMessage());
+        }
+    }
+}
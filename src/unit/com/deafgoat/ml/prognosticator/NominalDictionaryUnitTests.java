@@ -0,0 +1,52 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * NominalDictionaryTests.java 
+ * Purpose: Unit tests for NominalDictionary
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class NominalDictionaryUnitTests {
+
+    @Test
+    public final void testIntern() {
+        NominalDictionary dictionary = new NominalDictionary();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("Unexpected code!", i, dictionary.intern("value" + i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("Unexpected code!", i, dictionary.intern("value" + i));
+            assertEquals("Unexpected value!", "value" + i, dictionary.value(i));
+        }
+        assertEquals("Unexpected size!", 10000, dictionary.size());
+        assertEquals("Unexpected code for missing value!", -1, dictionary.code("missing"));
+    }
+
+    @Test
+    public final void testRecode() {
+        NominalDictionary provisional = NominalDictionary.forValues(Arrays.asList("c", "a", "b"));
+        NominalDictionary target = NominalDictionary.forValues(Arrays.asList("a", "b", "c"));
+        assertArrayEquals("Unexpected recoding!", new int[] { 2, 0, 1 }, provisional.recode(target));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ParameterSearchUnitTests.java 
+ * Purpose: Unit tests for the hyperparameter search
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instances;
+
+public class ParameterSearchUnitTests {
+
+    @Test
+    public final void testCreateClassifier() throws Exception {
+        Classifier cls = AppClassifier.createClassifier("IBk", "-K 3");
+        assertTrue("Unexpected classifier!", cls instanceof IBk);
+        assertEquals("Unexpected option!", 3, ((IBk) cls).getKNN());
+        cls = AppClassifier.createClassifier("weka.classifiers.lazy.IBk", "");
+        assertEquals("Unexpected option!", 1, ((IBk) cls).getKNN());
+        try {
+            AppClassifier.createClassifier("NoSuchClassifier", "");
+            fail("Unexpected classifier!");
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public final void testExpand() throws Exception {
+        JSONObject grid = new JSONObject();
+        grid.put("-U", new JSONArray(Arrays.asList(true, false)));
+        grid.put("-C", new JSONArray(Arrays.asList(0.1, 0.25)));
+        List<String> expected = Arrays.asList("-C 0.1 -U", "-C 0.1", "-C 0.25 -U", "-C 0.25");
+        assertEquals("Unexpected combinations!", expected, ParameterSearch.expand(grid));
+
+        JSONObject random = new JSONObject();
+        random.put("-K", new JSONObject().put("min", 1).put("max", 20).put("integer", true).put("log", true));
+        Random generator = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            String[] option = ParameterSearch.sample(random, generator).split(" ");
+            int k = Integer.parseInt(option[1]);
+            assertTrue("Unexpected value!", k >= 1 && k <= 20);
+        }
+    }
+
+    @Test
+    public final void testSchedule() {
+        assertArrayEquals("Unexpected schedule!", new int[] { 1, 3, 10 }, ParameterSearch.schedule(27, 10, 3));
+        assertArrayEquals("Unexpected schedule!", new int[] { 3, 10 }, ParameterSearch.schedule(4, 10, 3));
+        assertArrayEquals("Unexpected schedule!", new int[] { 10 }, ParameterSearch.schedule(1, 10, 3));
+        assertArrayEquals("Unexpected schedule!", new int[] { 10 }, ParameterSearch.schedule(27, 10, 1));
+        assertArrayEquals("Unexpected schedule!", new int[] { 1, 2, 5, 10 }, ParameterSearch.schedule(8, 10, 2));
+    }
+
+    @Test
+    public final void testSearch() throws Exception {
+        int folds = 9;
+        Instances data = SampleData.trainable(60);
+        JSONObject search = new JSONObject();
+        search.put("threads", 3);
+        search.put("candidates", new JSONArray().put(
+                new JSONObject().put("classifier", "IBk").put("grid",
+                        new JSONObject().put("-K", new JSONArray(Arrays.asList(1, 3, 5, 7, 9))))).put(
+                new JSONObject().put("classifier", "ZeroR")));
+        ParameterSearch parameterSearch = new ParameterSearch(new Instances(data), folds, search);
+        parameterSearch.run();
+        List<ParameterSearch.Candidate> leaderboard = parameterSearch.getLeaderboard();
+        assertEquals("Unexpected candidates!", 6, leaderboard.size());
+
+        // the two best of the first rung are evaluated on all folds
+        ParameterSearch.Candidate best = parameterSearch.getBest();
+        assertEquals("Unexpected best!", best, leaderboard.get(0));
+        assertEquals("Unexpected folds!", folds, leaderboard.get(0).getFolds());
+        assertEquals("Unexpected folds!", folds, leaderboard.get(1).getFolds());
+        assertEquals("Unexpected folds!", 3, leaderboard.get(2).getFolds());
+        assertTrue("Unexpected ranking!", best.getScore() >= leaderboard.get(1).getScore());
+
+        // the evaluation matches a sequential cross validation of the best
+        Instances train = new Instances(data);
+        train.stratify(folds);
+        Evaluation sequential = new Evaluation(train);
+        for (int n = 0; n < folds; n++) {
+            Classifier copy = AbstractClassifier.makeCopy(best.getClassifier());
+            copy.buildClassifier(train.trainCV(folds, n));
+            sequential.evaluateModel(copy, train.testCV(folds, n));
+        }
+        assertEquals("Unexpected accuracy!", sequential.pctCorrect(), best.getScore(), 0);
+
+        // a single thread records the same folds with fewer folds in flight
+        search.put("threads", 1);
+        ParameterSearch single = new ParameterSearch(new Instances(data), folds, search);
+        single.run();
+        for (int i = 0; i < leaderboard.size(); i++) {
+            assertEquals("Unexpected options!", leaderboard.get(i).getOptions(), single.getLeaderboard().get(i)
+                    .getOptions());
+            assertEquals("Unexpected score!", leaderboard.get(i).getScore(), single.getLeaderboard().get(i)
+                    .getScore(), 0);
+        }
+
+        StringWriter writer = new StringWriter();
+        parameterSearch.writeLeaderboard(writer);
+        String[] lines = writer.toString().split("\n");
+        assertEquals("Unexpected header!", ParameterSearch.LEADERBOARD_HEADER, lines[0]);
+        assertEquals("Unexpected lines!", 7, lines.length);
+        assertTrue("Unexpected leader!", lines[1].startsWith("1\t" + best.getName() + "\t" + best.getOptions()));
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * PredictionBatchTests.java 
+ * Purpose: Unit tests for the columnar prediction container
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+public class PredictionBatchUnitTests {
+
+    @Test
+    public final void testNominal() throws Exception {
+        Instances data = SampleData.days(40);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        // start small so the columns grow
+        PredictionBatch batch = new PredictionBatch(dataset, 1, true);
+        for (int i = 0; i < data.numInstances(); i++) {
+            batch.add(i + 1, i % 3, new double[] { 0.1, 0.2, i / 40.0 });
+        }
+        assertEquals("Unexpected size!", 40, batch.size());
+        assertEquals("Unexpected index!", 21, batch.getIndex(20));
+        assertEquals("Unexpected class code!", 2, batch.getClassCode(20));
+        assertEquals("Unexpected class!", "overcast", batch.getClassValue(20));
+        assertEquals("Unexpected confidence!", 0.5, batch.getConfidence(20), 0);
+        assertArrayEquals("Unexpected distribution!", new double[] { 0.1, 0.2, 0.5 }, batch.getDistribution(20), 0);
+        assertEquals("Unexpected prediction!", "overcast", batch.get(20).getPrediction());
+
+        PredictionBatch selected = batch.select(new int[] { 39, 0 });
+        assertEquals("Unexpected size!", 2, selected.size());
+        assertEquals("Unexpected index!", 40, selected.getIndex(0));
+        assertArrayEquals("Unexpected distribution!", new double[] { 0.1, 0.2, 0.0 }, selected.getDistribution(1),
+                0);
+
+        StringWriter writer = new StringWriter();
+        selected.writePredictions(writer);
+        assertEquals("Unexpected predictions!", "40\t0.975\tsunny\n1\t0.2\tsunny\n", writer.toString());
+        writer = new StringWriter();
+        selected.writeAttribute(writer, "outlook");
+        assertEquals("Unexpected attribute distribution!", data.instance(39).toString(2) + "\t0.975\t\n"
+                + data.instance(0).toString(2) + "\t0.2\t\n", writer.toString());
+    }
+
+    @Test
+    public final void testNumeric() throws Exception {
+        Instances data = SampleData.days(10);
+        data.setClassIndex(1);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        PredictionBatch batch = new PredictionBatch(dataset, 10, false);
+        batch.add(3, 0, new double[] { -1.5 });
+        assertNull("Unexpected distribution!", batch.getDistribution(0));
+        assertEquals("Unexpected class!", "", batch.getClassValue(0));
+        StringWriter writer = new StringWriter();
+        batch.writePredictions(writer);
+        assertEquals("Unexpected predictions!", "3\t-1.5\n", writer.toString());
+    }
+}
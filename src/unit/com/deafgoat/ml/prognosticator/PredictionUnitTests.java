@@ -0,0 +1,56 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * PredictionTests.java 
+ * Purpose: Unit tests for predictions sharing their dataset
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+public class PredictionUnitTests {
+
+    @Test
+    public final void testNominal() throws Exception {
+        Instances data = SampleData.days(10);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        Prediction prediction = new Prediction(dataset, 3, 2, new double[] { 0.1, 0.3, 0.6 });
+        assertEquals("Unexpected index!", 3, prediction.getIndex());
+        assertEquals("Unexpected confidence!", 0.6, prediction.getConfidence(), 0);
+        assertEquals("Unexpected prediction!", "overcast", prediction.getPrediction());
+        // the attribute is read from the third instance when it is needed
+        assertEquals("Unexpected attribute distribution!", data.instance(2).toString(1) + "\t0.6\t",
+                prediction.attributeDistribution("temperature"));
+        assertEquals("Unexpected string!", "3\t0.6\tovercast\t", prediction.toString());
+    }
+
+    @Test
+    public final void testNumeric() throws Exception {
+        Instances data = SampleData.days(10);
+        data.setClassIndex(1);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        Prediction low = new Prediction(dataset, 1, 0, new double[] { -2.5 });
+        Prediction high = new Prediction(dataset, 2, 0, new double[] { 4 });
+        assertEquals("Unexpected prediction!", "-2.5", low.getPrediction());
+        assertEquals("Unexpected numeric ordering!", 0, low.compareTo(high));
+        assertEquals("Unexpected string!", "2\t4.0\t\t", high.toString());
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * SampleData.java 
+ * Purpose: Sample instances shared by the unit tests
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+final class SampleData {
+
+    /**
+     * Builds one instance per day with every attribute type, missing values
+     * and varying weights. The nominal outlook is the class attribute.
+     */
+    static Instances days(int days) throws Exception {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("day", "yyyy-MM-dd"));
+        attributes.add(new Attribute("temperature"));
+        attributes.add(new Attribute("outlook", new ArrayList<String>(Arrays.asList("sunny", "rainy", "overcast"))));
+        attributes.add(new Attribute("note", (ArrayList<String>) null));
+        Instances data = new Instances("sample", attributes, days);
+        data.setClassIndex(2);
+        for (int i = 0; i < days; i++) {
+            double[] values = new double[4];
+            values[0] = data.attribute(0).parseDate("2012-01-01") + i * 86400000L;
+            values[1] = i % 5 == 0 ? Utils.missingValue() : i * 1.5 - 7;
+            values[2] = i % 7 == 3 ? Utils.missingValue() : i % 3;
+            values[3] = i % 4 == 0 ? Utils.missingValue() : data.attribute(3).addStringValue("note " + i % 6);
+            Instance instance = new DenseInstance(i % 2 == 0 ? 1 : 0.5 * i, values);
+            data.add(instance);
+        }
+        return data;
+    }
+
+    /**
+     * Builds the days without their date and string attributes, so that any
+     * classifier can be trained on them
+     */
+    static Instances trainable(int days) throws Exception {
+        Instances data = days(days);
+        data.deleteStringAttributes();
+        data.deleteAttributeAt(0);
+        return data;
+    }
+
+    private SampleData() {
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ScorerTests.java 
+ * Purpose: Unit tests for scoring instances with a single inference
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.classifiers.functions.LinearRegression;
+import weka.classifiers.trees.J48;
+import weka.core.BatchPredictor;
+import weka.core.Instance;
+import weka.core.Instances;
+
+public class ScorerUnitTests {
+
+    /**
+     * Counts the inferences and batch calls made on a wrapped classifier
+     */
+    static class CountingClassifier extends AbstractClassifier implements BatchPredictor {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void buildClassifier(Instances data) throws Exception {
+            _classifier.buildClassifier(data);
+        }
+
+        @Override
+        public double classifyInstance(Instance instance) throws Exception {
+            _inferences++;
+            return _classifier.classifyInstance(instance);
+        }
+
+        @Override
+        public double[] distributionForInstance(Instance instance) throws Exception {
+            _inferences++;
+            return _classifier.distributionForInstance(instance);
+        }
+
+        @Override
+        public double[][] distributionsForInstances(Instances instances) throws Exception {
+            _batches++;
+            double[][] distributions = new double[instances.numInstances()][];
+            for (int i = 0; i < distributions.length; i++) {
+                if (!instances.instance(i).classIsMissing()) {
+                    _labelled++;
+                }
+                distributions[i] = _classifier.distributionForInstance(instances.instance(i));
+            }
+            return distributions;
+        }
+
+        @Override
+        public String getBatchSize() {
+            return "100";
+        }
+
+        @Override
+        public void setBatchSize(String size) {
+        }
+
+        int _batches;
+        Classifier _classifier;
+        int _inferences;
+        int _labelled;
+
+        CountingClassifier(Classifier classifier) {
+            _classifier = classifier;
+        }
+    }
+
+    /**
+     * Fails to score the instances whose first attribute is missing
+     */
+    static class FailingClassifier extends AbstractClassifier {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void buildClassifier(Instances data) throws Exception {
+            _classifier.buildClassifier(data);
+        }
+
+        @Override
+        public double[] distributionForInstance(Instance instance) throws Exception {
+            if (instance.isMissing(0)) {
+                throw new Exception("Missing first attribute");
+            }
+            return _classifier.distributionForInstance(instance);
+        }
+
+        Classifier _classifier;
+
+        FailingClassifier(Classifier classifier) {
+            _classifier = classifier;
+        }
+    }
+
+    /**
+     * Fails a whole batch if any of its instances can not be scored
+     */
+    static class FailingBatchClassifier extends FailingClassifier implements BatchPredictor {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double[][] distributionsForInstances(Instances instances) throws Exception {
+            double[][] distributions = new double[instances.numInstances()][];
+            for (int i = 0; i < distributions.length; i++) {
+                distributions[i] = distributionForInstance(instances.instance(i));
+            }
+            return distributions;
+        }
+
+        @Override
+        public String getBatchSize() {
+            return "100";
+        }
+
+        @Override
+        public void setBatchSize(String size) {
+        }
+
+        FailingBatchClassifier(Classifier classifier) {
+            super(classifier);
+        }
+    }
+
+    @Test
+    public final void testBatch() throws Exception {
+        Instances data = SampleData.trainable(60);
+        CountingClassifier classifier = new CountingClassifier(new NaiveBayes());
+        classifier.buildClassifier(data);
+        Scorer scorer = new Scorer(classifier, data.classAttribute());
+        assertTrue("Unexpected batch support!", scorer.isBatch());
+        double[][] distributions = scorer.distributions(data);
+        assertEquals("Unexpected batch calls!", 1, classifier._batches);
+        assertEquals("Unexpected inferences!", 0, classifier._inferences);
+        assertEquals("Unexpected number of distributions!", data.numInstances(), distributions.length);
+        assertEquals("Unexpected class values!", 0, classifier._labelled);
+        // the scored instances are left untouched
+        assertFalse("Unexpected missing class!", data.instance(0).classIsMissing());
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertArrayEquals("Unexpected distribution!", classifier._classifier.distributionForInstance(data
+                    .instance(i)), distributions[i], 0);
+        }
+    }
+
+    @Test
+    public final void testBlocks() throws Exception {
+        Instances data = SampleData.trainable(2500);
+        NaiveBayes bayes = new NaiveBayes();
+        bayes.buildClassifier(data);
+        for (int threads : new int[] { 1, 3 }) {
+            final CountingClassifier counting = new CountingClassifier(bayes);
+            final Scorer scorer = new Scorer(counting, data.classAttribute());
+            final Instances instances = data;
+            final int[] scored = new int[1];
+            scorer.score(data, threads, new Scorer.Sink() {
+                @Override
+                public void failed(int index, Exception e) {
+                    fail("Unexpected failure!");
+                }
+
+                @Override
+                public void scored(int index, double[] distribution) throws Exception {
+                    assertEquals("Unexpected order!", scored[0]++, index);
+                    assertArrayEquals("Unexpected distribution!", counting._classifier
+                            .distributionForInstance(instances.instance(index)), distribution, 0);
+                }
+            });
+            assertEquals("Unexpected number of distributions!", data.numInstances(), scored[0]);
+            // a batch call per block, the other threads score on replicas
+            assertEquals("Unexpected batch calls!", threads == 1 ? 3 : 1, counting._batches);
+        }
+    }
+
+    @Test
+    public final void testFailures() throws Exception {
+        final Instances data = SampleData.trainable(60);
+        NaiveBayes bayes = new NaiveBayes();
+        bayes.buildClassifier(data);
+        for (Classifier classifier : new Classifier[] { new FailingClassifier(bayes),
+                new FailingBatchClassifier(bayes) }) {
+            for (int threads : new int[] { 1, 3 }) {
+                final Scorer scorer = new Scorer(classifier, data.classAttribute());
+                final int[] handed = new int[1];
+                scorer.score(data, threads, new Scorer.Sink() {
+                    @Override
+                    public void failed(int index, Exception e) {
+                        assertEquals("Unexpected order!", handed[0]++, index);
+                        assertTrue("Unexpected failure!", data.instance(index).isMissing(0));
+                    }
+
+                    @Override
+                    public void scored(int index, double[] distribution) {
+                        assertEquals("Unexpected order!", handed[0]++, index);
+                        assertFalse("Unexpected distribution!", data.instance(index).isMissing(0));
+                    }
+                });
+                assertEquals("Unexpected number of instances!", data.numInstances(), handed[0]);
+            }
+        }
+        try {
+            new Scorer(new FailingBatchClassifier(bayes), data.classAttribute()).distributions(data, 2);
+            fail("Unexpected distributions!");
+        } catch (Exception e) {
+        }
+    }
+
+    @Test
+    public final void testNominal() throws Exception {
+        Instances data = SampleData.trainable(60);
+        NaiveBayes classifier = new NaiveBayes();
+        classifier.buildClassifier(data);
+        Scorer scorer = new Scorer(classifier, data.classAttribute());
+        assertFalse("Unexpected batch support!", scorer.isBatch());
+        double[][] distributions = scorer.distributions(data);
+        for (int i = 0; i < data.numInstances(); i++) {
+            assertArrayEquals("Unexpected distribution!", classifier.distributionForInstance(data.instance(i)),
+                    distributions[i], 0);
+            assertEquals("Unexpected predicted class!", classifier.classifyInstance(data.instance(i)),
+                    scorer.classify(distributions[i]), 0);
+        }
+
+        // a single inference per instance
+        CountingClassifier counting = new CountingClassifier(classifier);
+        scorer = new Scorer(counting, data.classAttribute());
+        for (int i = 0; i < data.numInstances(); i++) {
+            scorer.classify(scorer.distribution(data.instance(i)));
+        }
+        assertEquals("Unexpected inferences!", data.numInstances(), counting._inferences);
+    }
+
+    @Test
+    public final void testNumeric() throws Exception {
+        Instances data = SampleData.trainable(60);
+        data.setClassIndex(0);
+        data.deleteWithMissingClass();
+        LinearRegression classifier = new LinearRegression();
+        classifier.buildClassifier(data);
+        Scorer scorer = new Scorer(classifier, data.classAttribute());
+        double[] distribution;
+        for (int i = 0; i < data.numInstances(); i++) {
+            distribution = scorer.distribution(data.instance(i));
+            assertEquals("Unexpected distribution length!", 1, distribution.length);
+            assertEquals("Unexpected prediction!", classifier.classifyInstance(data.instance(i)),
+                    scorer.classify(distribution), 0);
+        }
+    }
+
+    @Test
+    public final void testParallel() throws Exception {
+        Instances data = SampleData.trainable(60);
+        for (Classifier classifier : new Classifier[] { new NaiveBayes(), new J48() }) {
+            classifier.buildClassifier(data);
+            Scorer scorer = new Scorer(classifier, data.classAttribute());
+            double[][] expected = scorer.distributions(data);
+            for (int threads : new int[] { 0, 2, 7, 100 }) {
+                double[][] distributions = scorer.distributions(data, threads);
+                assertEquals("Unexpected number of distributions!", expected.length, distributions.length);
+                for (int i = 0; i < expected.length; i++) {
+                    assertArrayEquals("Unexpected distribution!", expected[i], distributions[i], 0);
+                }
+            }
+        }
+        // models that are not known to be thread-safe are copied
+        NaiveBayes bayes = new NaiveBayes();
+        bayes.buildClassifier(data);
+        Scorer scorer = new Scorer(bayes, data.classAttribute());
+        assertNotSame("Unexpected shared replica!", scorer, scorer.replicate());
+        J48 tree = new J48();
+        tree.buildClassifier(data);
+        scorer = new Scorer(tree, data.classAttribute());
+        assertSame("Unexpected replica!", scorer, scorer.replicate());
+
+        // batch predictors score their block in one call, the rest go to replicas
+        CountingClassifier counting = new CountingClassifier(tree);
+        scorer = new Scorer(counting, data.classAttribute());
+        scorer.distributions(data, 3);
+        assertEquals("Unexpected batch calls!", 1, counting._batches);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * TopPredictionsTests.java 
+ * Purpose: Unit tests for the bounded selection of the best predictions
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import weka.core.Instances;
+
+public class TopPredictionsUnitTests {
+
+    /**
+     * Selects predictions the way a full stable sort does
+     */
+    static List<Prediction> sortAll(List<Prediction> predictions, int limit, double minConfidence,
+            Comparator<Prediction> order) {
+        List<Prediction> sorted = new ArrayList<Prediction>(predictions);
+        Collections.sort(sorted, order);
+        List<Prediction> selected = new ArrayList<Prediction>();
+        for (Prediction prediction : sorted) {
+            if (selected.size() == limit) {
+                break;
+            }
+            if (prediction.getConfidence() >= minConfidence) {
+                selected.add(prediction);
+            }
+        }
+        return selected;
+    }
+
+    static void assertSelection(Prediction.Dataset dataset, List<Prediction> predictions, int limit,
+            double minConfidence, TopPredictions.Order order) {
+        TopPredictions top = new TopPredictions(limit, minConfidence, order);
+        for (Prediction prediction : predictions) {
+            top.add(prediction.getIndex(), 0, prediction.getConfidence());
+        }
+        Comparator<Prediction> comparator = Collections.reverseOrder();
+        if (order == TopPredictions.Order.DESCENDING) {
+            comparator = Collections.reverseOrder(comparator);
+        }
+        List<Prediction> expected = sortAll(predictions, limit, minConfidence, comparator);
+        PredictionBatch actual = top.sorted(dataset);
+        assertEquals("Unexpected number of predictions!", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Unexpected prediction!", expected.get(i).getIndex(), actual.getIndex(i));
+            assertEquals("Unexpected confidence!", expected.get(i).getConfidence(), actual.getConfidence(i), 0);
+        }
+    }
+
+    @Test
+    public final void testSelection() throws Exception {
+        Instances data = SampleData.days(500);
+        Random random = new Random(7);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        List<Prediction> predictions = new ArrayList<Prediction>();
+        double[] distribution;
+        for (int i = 0; i < data.numInstances(); i++) {
+            // coarse confidences produce many ties
+            distribution = new double[3];
+            distribution[random.nextInt(3)] = random.nextInt(10) / 10.0;
+            predictions.add(new Prediction(dataset, i + 1, 0, distribution));
+        }
+        for (int limit : new int[] { 0, 1, 10, 499, 500, Integer.MAX_VALUE }) {
+            assertSelection(dataset, predictions, limit, Double.NEGATIVE_INFINITY, TopPredictions.Order.DESCENDING);
+            assertSelection(dataset, predictions, limit, 0.5, TopPredictions.Order.DESCENDING);
+            assertSelection(dataset, predictions, limit, Double.NEGATIVE_INFINITY, TopPredictions.Order.ASCENDING);
+            assertSelection(dataset, predictions, limit, 0.3, TopPredictions.Order.ASCENDING);
+        }
+    }
+
+    @Test
+    public final void testNumeric() throws Exception {
+        Instances data = SampleData.days(100);
+        data.setClassIndex(1);
+        Prediction.Dataset dataset = new Prediction.Dataset(data, data.classAttribute());
+        List<Prediction> predictions = new ArrayList<Prediction>();
+        for (int i = 0; i < data.numInstances(); i++) {
+            predictions.add(new Prediction(dataset, i + 1, 0, new double[] { (i * 37) % 11 }));
+        }
+        // numeric predictions all rank equally and keep their order
+        assertSelection(dataset, predictions, 10, 2, TopPredictions.Order.ADDED);
+    }
+}
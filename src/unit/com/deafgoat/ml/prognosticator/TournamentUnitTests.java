@@ -0,0 +1,79 @@
+/**
+ * Copyright 2012, Wisdom Omuya.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * TournamentUnitTests.java 
+ * Purpose: Unit tests for the classifier tournament
+ * 
+ */
+
+package com.deafgoat.ml.prognosticator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import weka.core.Instances;
+
+public class TournamentUnitTests {
+
+    @Test
+    public final void testToSearch() throws Exception {
+        JSONObject tournament = new JSONObject();
+        tournament.put("classifiers", new JSONArray().put("J48").put(
+                new JSONObject().put("classifier", "IBk").put("options", "-K 3")));
+        tournament.put("metric", "kappa");
+        JSONObject search = Tournament.toSearch(tournament);
+        assertEquals("Unexpected halving!", 0, search.getInt("halving"));
+        assertEquals("Unexpected metric!", "kappa", search.getString("metric"));
+        JSONArray candidates = search.getJSONArray("candidates");
+        assertEquals("Unexpected candidates!", 2, candidates.length());
+        assertEquals("Unexpected classifier!", "J48", candidates.getJSONObject(0).getString("classifier"));
+        assertEquals("Unexpected options!", "-K 3", candidates.getJSONObject(1).getString("options"));
+    }
+
+    @Test
+    public final void testTournament() throws Exception {
+        int folds = 5;
+        Instances data = SampleData.trainable(60);
+        JSONObject config = new JSONObject();
+        config.put("threads", 2);
+        config.put("classifiers", new JSONArray().put("J48").put("NaiveBayes").put("ZeroR"));
+        Tournament tournament = new Tournament(new Instances(data), folds, config);
+        tournament.run();
+        List<ParameterSearch.Candidate> results = tournament.getResults();
+        assertEquals("Unexpected entrants!", 3, results.size());
+        for (ParameterSearch.Candidate entrant : results) {
+            assertFalse("Unexpected failure!", entrant.isFailed());
+            assertEquals("Unexpected folds!", folds, entrant.getFolds());
+            assertEquals("Unexpected instances!", data.numInstances(), entrant.getTested());
+        }
+        assertEquals("Unexpected winner!", results.get(0), tournament.getWinner());
+        assertTrue("Unexpected ranking!", results.get(0).getScore() >= results.get(2).getScore());
+
+        StringWriter writer = new StringWriter();
+        tournament.writeReport(writer);
+        String[] lines = writer.toString().split("\n");
+        assertEquals("Unexpected lines!", 4, lines.length);
+        assertTrue("Unexpected header!", lines[0].endsWith("train ms/fold\tscoring us/instance"));
+        assertEquals("Unexpected columns!", 6, lines[1].split("\t", -1).length);
+    }
+}